@@ -0,0 +1,122 @@
+/**
+ * @file    BenchmarkFixture.java
+ * @brief Synthetic configurations and property sets for the JMH benchmarks
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+
+/**
+ * Benchmark Fixture - builds (under target/jmh/) an editor configuration based on the shipped one and a service
+ * properties file of a given size, so the benchmarks run the real load/render/save code on realistic files
+ * @author Doug Anson
+ */
+public class BenchmarkFixture {
+    // where the fixtures are written (relative to the working directory)
+    private static final String DIR = "/target/jmh/";
+
+    // settings replaced in the shipped configuration
+    private static final String REPLACED = "^(config_files_root|properties_file|targets_dir|save_debounce_ms|static_resources|admin_password|password_hash_iterations)=.*";
+
+    // the real System.out (while silenced)
+    private static PrintStream s_stdout = null;
+
+    // utility class
+    private BenchmarkFixture() {
+    }
+
+    /**
+     * A synthetic property set: keys "mqtt_key_{n}" with typical length values
+     * @param size - number of keys
+     * @return key -> value (in order)
+     */
+    public static LinkedHashMap<String,String> properties(int size) {
+        LinkedHashMap<String,String> props = new LinkedHashMap<String,String>();
+        for(int i=0;i<size;++i) {
+            props.put("mqtt_key_" + i,"value_" + i + "_some_typical_length_config_value");
+        }
+        return props;
+    }
+
+    /**
+     * Write an editor configuration (the shipped one, saving immediately) and a service properties file of a given size
+     * @param name - fixture name
+     * @param size - number of service properties
+     * @return the editor configuration file (fully qualified)
+     * @throws IOException
+     */
+    public static String setUp(String name,int size) throws IOException {
+        File dir = new File(Utils.getWorkingDirectory() + DIR + name + "-" + size);
+        if (dir.isDirectory() == false && dir.mkdirs() == false) {
+            throw new IOException("Unable to create " + dir);
+        }
+        StringBuilder config = new StringBuilder();
+        for(String line : new String(Files.readAllBytes(new File(Utils.getWorkingDirectory() + "/conf/properties-editor.properties").toPath()),StandardCharsets.ISO_8859_1).split("\n")) {
+            if (line.matches(REPLACED) == false) {
+                config.append(line).append('\n');
+            }
+        }
+        config.append("config_files_root=" + DIR + name + "-" + size + "/\nproperties_file=service.properties\n");
+        config.append("save_debounce_ms=0\nstatic_resources=false\nadmin_password=admin\npassword_hash_iterations=1000\n");
+        Files.write(new File(dir,"properties-editor.properties").toPath(),config.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        StringBuilder service = new StringBuilder("# benchmark service properties (" + size + " keys)\n");
+        for(java.util.Map.Entry<String,String> entry : BenchmarkFixture.properties(size).entrySet()) {
+            service.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        Files.write(new File(dir,"service.properties").toPath(),service.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return new File(dir,"properties-editor.properties").getAbsolutePath();
+    }
+
+    /**
+     * Discard System.out (the editor logs every update/save... the benchmarks measure the work, not the console)
+     */
+    public static synchronized void silence() {
+        if (s_stdout == null) {
+            s_stdout = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b,int off,int len) {
+                }
+            }));
+        }
+    }
+
+    /**
+     * Restore System.out
+     */
+    public static synchronized void restore() {
+        if (s_stdout != null) {
+            System.setOut(s_stdout);
+            s_stdout = null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * @file    CompressedPageBenchmark.java
+ * @brief JMH benchmarks of the page codings: identity, gzip of the whole page and gzip with precompressed static parts
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compressed Page Benchmark - the CPU cost of each coding of a page shaped like the editor (large inlined CSS around
+ * a table of "size" rows): identity, gzip of the whole page per request and gzip with the static parts precompressed
+ * (CompressedPage). Each returns the bytes sent, to compare against the time taken.
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressedPageBenchmark {
+    @Param({ "10", "100", "1000", "10000" })
+    public int size;
+
+    private PageTemplate m_template = null;
+    private CompressedPage m_compressed = null;
+    private PageTemplate.SlotWriter m_rows = null;
+
+    /**
+     * Compile the page
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder css = new StringBuilder("<html><head><style>");
+        for(int i=0;i<400;++i) {
+            css.append(".row").append(i).append(" { color: #").append(Integer.toHexString(0x100000 + i * 7919)).append("; padding: 2px; }\n");
+        }
+        css.append("</style></head><body>");
+        this.m_template = PageTemplate.compile(css + "<table>__ROWS__</table></body></html>","__ROWS__");
+        this.m_compressed = new CompressedPage(this.m_template,6);
+        final int rows = this.size;
+        this.m_rows = new PageTemplate.SlotWriter() {
+            @Override
+            public void writeSlot(String slot,Writer out) throws IOException {
+                for(int i=0;i<rows;++i) {
+                    out.write("<tr><td id=\"mqtt_key_" + i + "-key\">mqtt_key_" + i + "</td><td>value_" + i + "_some_typical_length_config_value</td></tr>\n");
+                }
+            }
+        };
+    }
+
+    @Benchmark
+    public long identity() throws IOException {
+        CountingStream bytes = new CountingStream();
+        Writer out = new OutputStreamWriter(bytes,StandardCharsets.UTF_8);
+        this.m_template.render(out,this.m_rows);
+        out.close();
+        return bytes.m_count;
+    }
+
+    @Benchmark
+    public long gzipWholePage() throws IOException {
+        CountingStream bytes = new CountingStream();
+        Writer out = new OutputStreamWriter(new GZIPOutputStream(bytes),StandardCharsets.UTF_8);
+        this.m_template.render(out,this.m_rows);
+        out.close();
+        return bytes.m_count;
+    }
+
+    @Benchmark
+    public long gzipPrecompressed() throws IOException {
+        CountingStream bytes = new CountingStream();
+        this.m_compressed.render(bytes,CompressedPage.GZIP,this.m_rows);
+        return bytes.m_count;
+    }
+
+    // counts and discards the response bytes
+    private static final class CountingStream extends OutputStream {
+        private long m_count = 0;
+
+        @Override
+        public void write(int b) {
+            ++this.m_count;
+        }
+
+        @Override
+        public void write(byte[] b,int off,int len) {
+            this.m_count += len;
+        }
+    }
+}
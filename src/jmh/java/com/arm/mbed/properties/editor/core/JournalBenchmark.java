@@ -0,0 +1,139 @@
+/**
+ * @file    JournalBenchmark.java
+ * @brief JMH benchmarks of the change journal: a durable append (and its save mark), the replay on open and a key history
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Journal Benchmark - the change journal (under target/jmh/): an edit appended (durably) and marked saved as the
+ * editor does it (compacted every DEFAULT_CHECKPOINT_RECORDS changes), the replay when a journal of "size" changes
+ * (over 1000 keys, in batches of 100) is opened and the history of one key through the per-key index
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    // where the journals are written (relative to the working directory)
+    private static final String DIR = "/target/jmh/journal/";
+
+    // keys changed in the replayed journal
+    private static final int KEYS = 1000;
+
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    private String m_replayed_file = null;
+    private ChangeJournal m_replayed = null;
+    private ChangeJournal m_appended = null;
+    private final Map<String,String> m_edit = new LinkedHashMap<String,String>();
+    private long m_version = 0;
+
+    /**
+     * Write the journal to replay and open the one appended to
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixture.silence();
+        this.m_replayed_file = JournalBenchmark.journalFile("replay-" + this.size);
+        ChangeJournal journal = ChangeJournal.open(this.m_replayed_file,this.size * 2);
+        Map<String,String> batch = new LinkedHashMap<String,String>();
+        for(int i=0;i<this.size;++i) {
+            batch.put("mqtt_key_" + (i % KEYS),"value_" + i + "_some_typical_length_config_value");
+            if (batch.size() == 100) {
+                journal.append(ChangeJournal.PROPERTIES,batch,"admin",i);
+                batch.clear();
+            }
+        }
+        journal.close();
+        this.m_replayed = ChangeJournal.open(this.m_replayed_file,this.size * 2);
+        this.m_appended = ChangeJournal.open(JournalBenchmark.journalFile("append-" + this.size),ChangeJournal.DEFAULT_CHECKPOINT_RECORDS);
+    }
+
+    /**
+     * Close the journals and restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.m_replayed.close();
+        this.m_appended.close();
+        BenchmarkFixture.restore();
+    }
+
+    // a fresh journal file (and no checkpoint)
+    private static String journalFile(String name) throws IOException {
+        File dir = new File(Utils.getWorkingDirectory() + DIR);
+        if (dir.isDirectory() == false && dir.mkdirs() == false) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File journal = new File(dir,name + ChangeJournal.SUFFIX);
+        journal.delete();
+        new File(journal.getPath() + ChangeJournal.CHECKPOINT_SUFFIX).delete();
+        return journal.getAbsolutePath();
+    }
+
+    @Benchmark
+    public long appendSaved() {
+        ++this.m_version;
+        this.m_edit.put("mqtt_key_" + (this.m_version % KEYS),"edited_" + this.m_version);
+        this.m_appended.append(ChangeJournal.PROPERTIES,this.m_edit,"admin",this.m_version);
+        this.m_appended.saved(ChangeJournal.PROPERTIES,this.m_version);
+        this.m_edit.clear();
+        return this.m_appended.getSeq();
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        ChangeJournal journal = ChangeJournal.open(this.m_replayed_file,this.size * 2);
+        int records = journal.getRecords();
+        journal.close();
+        return records;
+    }
+
+    @Benchmark
+    public List<ChangeJournal.Change> history() {
+        return this.m_replayed.history(ChangeJournal.PROPERTIES,"mqtt_key_" + (++this.m_version % KEYS),0,1000);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * @file    KeyIndexBenchmark.java
+ * @brief JMH benchmarks of the key index: build, prefix search and the incremental update after an edit
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Key Index Benchmark - the sorted prefix index over keys (clustered by prefix, as the bridge's are): building it for
+ * a snapshot, a prefix search and the incremental update for an edit adding a key (no rescan or re-sort)
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyIndexBenchmark {
+    // key prefixes (as in the shipped properties)
+    private static final String[] PREFIXES = { "mqtt_", "aws_iot_", "iot_event_hub_", "webhook_validator_", "database_validator_" };
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int size;
+
+    private final Map<String,String> m_labels = new HashMap<String,String>();
+    private PropertiesSnapshot m_snapshot = null;
+    private PropertiesSnapshot m_added = null;
+    private KeyIndex m_index = null;
+    private String[] m_queries = null;
+    private int m_searches = 0;
+
+    /**
+     * Build the properties and their index
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String,String> props = new LinkedHashMap<String,String>();
+        for(int i=0;i<this.size;++i) {
+            props.put(PREFIXES[i % PREFIXES.length] + "setting_" + i,"value_" + i);
+        }
+        this.m_labels.put("mqtt_setting_1","MQTT Setting 1");
+        PropertiesStore store = new PropertiesStore();
+        this.m_snapshot = store.replace(props);
+        this.m_added = store.put("mqtt_added_key","value");
+        this.m_index = new KeyIndex(this.m_labels);
+        this.m_index.rebuild(this.m_snapshot);
+        this.m_queries = new String[] { "mqtt_setting_1", "aws_iot_setting_", "iot_event_hub_", "webhook_validator_setting_" + (this.size - 2), "database" };
+    }
+
+    @Benchmark
+    public int rebuild() {
+        KeyIndex index = new KeyIndex(this.m_labels);
+        index.rebuild(this.m_snapshot);
+        return index.size();
+    }
+
+    @Benchmark
+    public Map<String,String> search() {
+        return this.m_index.search(this.m_snapshot,this.m_queries[++this.m_searches % this.m_queries.length],KeyIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public int updateAddedKey() {
+        // an index not yet updated (built each time): the update's own cost is the difference from rebuild()
+        KeyIndex index = new KeyIndex(this.m_labels);
+        index.rebuild(this.m_snapshot);
+        index.update(this.m_snapshot,this.m_added,Collections.singleton("mqtt_added_key"));
+        return index.size();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * @file    MetricsBenchmark.java
+ * @brief JMH benchmarks of the metrics: what timing a phase or counting adds to a request, and the exposition
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Metrics Benchmark - the instrumentation's own cost: stopping a phase timer (read the clock, record into its
+ * buckets), a counter increment and writing the Prometheus exposition of a registry like the editor's. Compare the
+ * timer with RenderBenchmark's page renders: it should stay well under 1% of one.
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    // phases timed (as the editor does)
+    private static final String[] PHASES = { "handle", "render", "save", "journal", "script", "api", "keys", "history", "revisions" };
+
+    private Metrics m_metrics = null;
+    private Metrics.Timer m_timer = null;
+    private Metrics.Counter m_counter = null;
+    private final StringBuilder m_out = new StringBuilder();
+
+    /**
+     * Build a registry with recorded phases
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.m_metrics = new Metrics();
+        for(String phase : PHASES) {
+            Metrics.Timer timer = this.m_metrics.timer("properties_editor_phase_seconds","Phase latency","phase=\"" + phase + "\"");
+            for(long i=1;i<=1000;++i) {
+                timer.record(i * 1000);
+            }
+        }
+        this.m_timer = this.m_metrics.timer("properties_editor_phase_seconds","Phase latency","phase=\"render\"");
+        this.m_counter = this.m_metrics.counter("properties_editor_saves_total","Saves","");
+    }
+
+    @Benchmark
+    public long stopTimer() {
+        this.m_timer.stop(System.nanoTime());
+        return this.m_timer.getCount();
+    }
+
+    @Benchmark
+    public long incrementCounter() {
+        this.m_counter.increment();
+        return this.m_counter.get();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        this.m_out.setLength(0);
+        this.m_metrics.write(this.m_out);
+        return this.m_out.length();
+    }
+}
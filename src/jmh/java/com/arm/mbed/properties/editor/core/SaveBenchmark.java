@@ -0,0 +1,85 @@
+/**
+ * @file    SaveBenchmark.java
+ * @brief JMH benchmark of saving an edited properties file
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import com.arm.mbed.properties.editor.processor.PropertiesEditorProcessor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Save Benchmark - writePropertiesFile() of a file with one changed value: the edit spliced into the document, then the
+ * atomic write (temporary file, fsync, rename) of the whole file
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int size;
+
+    private PropertiesEditorProcessor m_editor = null;
+    private long m_edits = 0;
+
+    /**
+     * Load the editor on a fixture of the given size
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixture.silence();
+        this.m_editor = new PropertiesEditorProcessor(false);
+        this.m_editor.loadProperties(BenchmarkFixture.setUp("save",this.size));
+        this.m_editor.getPropertiesSnapshot();
+    }
+
+    /**
+     * Restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.m_editor.shutdown();
+        BenchmarkFixture.restore();
+    }
+
+    @Benchmark
+    public boolean writePropertiesFile() {
+        PropertiesSnapshot snapshot = this.m_editor.m_properties.put("mqtt_key_" + (this.m_edits % this.size),"edited_" + (++this.m_edits));
+        return this.m_editor.writePropertiesFile(this.m_editor.m_properties_document,snapshot,this.m_editor.m_properties_file);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * @file    SchemaBenchmark.java
+ * @brief JMH benchmarks of the schema: loading the shipped one and validating edited values against it
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Schema Benchmark - loading (compiling) the shipped schema and validating a value: a cached rule lookup plus its
+ * checks, for keys with a type/range, a glob pattern rule and no rule at all
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaBenchmark {
+    // key, value pairs validated in turn (all valid)
+    private static final String[][] CHECKS = { { "mqtt_port", "1883" }, { "mqtt_use_ssl", "true" }, { "webhook_validator_interval_ms", "60000" }, { "mqtt_client_id", "client" } };
+
+    private String m_file = null;
+    private Schema m_schema = null;
+    private int m_validations = 0;
+
+    /**
+     * Load the shipped schema
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkFixture.silence();
+        this.m_file = Utils.getWorkingDirectory() + "/conf/schema.properties";
+        this.m_schema = Schema.load(this.m_file);
+    }
+
+    /**
+     * Restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixture.restore();
+    }
+
+    @Benchmark
+    public Schema load() {
+        return Schema.load(this.m_file);
+    }
+
+    @Benchmark
+    public String validate() {
+        String[] check = CHECKS[++this.m_validations % CHECKS.length];
+        return this.m_schema.validate(check[0],check[1]);
+    }
+}
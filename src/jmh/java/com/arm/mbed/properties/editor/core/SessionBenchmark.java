@@ -0,0 +1,79 @@
+/**
+ * @file    SessionBenchmark.java
+ * @brief JMH benchmarks of the per-request authentication: a session token, the verified credentials cache and a full PBKDF2 check
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Session Benchmark - what authenticating a request costs: validating its session token, a hit in the verified
+ * credentials cache and (what both avoid) a PBKDF2 check of the password at the default iterations
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+    private SessionTokens m_sessions = null;
+    private String m_token = null;
+    private String m_hash = null;
+
+    /**
+     * Issue a session and hash the password
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.m_sessions = new SessionTokens(SessionTokens.DEFAULT_MAX_SESSIONS,SessionTokens.DEFAULT_TIMEOUT_SEC);
+        this.m_token = this.m_sessions.issue("admin");
+        this.m_sessions.setVerified("admin","admin");
+        this.m_hash = PasswordHash.hash("admin",PasswordHash.DEFAULT_ITERATIONS);
+    }
+
+    @Benchmark
+    public String validateToken() {
+        return this.m_sessions.validate(this.m_token);
+    }
+
+    @Benchmark
+    public boolean verifiedCredentials() {
+        return this.m_sessions.isVerified("admin","admin");
+    }
+
+    @Benchmark
+    public boolean verifyPassword() {
+        return PasswordHash.verify(this.m_hash,"admin");
+    }
+}
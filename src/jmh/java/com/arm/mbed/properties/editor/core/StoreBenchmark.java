@@ -0,0 +1,92 @@
+/**
+ * @file    StoreBenchmark.java
+ * @brief JMH benchmarks of the properties store: edits, lookups, diffs and reverts of revisions
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Store Benchmark - a one key edit published as a new snapshot (and kept as a revision), a lookup, the diff of two
+ * revisions one edit apart and a revert to an earlier revision. The edit's gc.alloc.rate.norm bounds the memory a kept
+ * revision adds (the path to the edited key, not a copy of the properties).
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int size;
+
+    private PropertiesStore m_store = null;
+    private PropertiesSnapshot m_before = null;
+    private PropertiesSnapshot m_after = null;
+    private long m_edits = 0;
+
+    /**
+     * Load a store of the given size (with its revisions)
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.m_store = new PropertiesStore();
+        this.m_before = this.m_store.replace(BenchmarkFixture.properties(this.size));
+        this.m_after = this.m_store.put("mqtt_key_" + (this.size / 2),"edited");
+    }
+
+    @Benchmark
+    public PropertiesSnapshot put() {
+        return this.m_store.put("mqtt_key_" + (this.m_edits % this.size),"edited_" + (++this.m_edits));
+    }
+
+    @Benchmark
+    public String get() {
+        return this.m_after.get("mqtt_key_" + (++this.m_edits % this.size));
+    }
+
+    @Benchmark
+    public Map<String,String> diff() {
+        return this.m_before.changesTo(this.m_after);
+    }
+
+    @Benchmark
+    public PropertiesSnapshot revert() {
+        PropertiesSnapshot current = this.m_store.snapshot();
+        this.m_store.put("mqtt_key_1","reverted next");
+        return this.m_store.revert(current.getVersion());
+    }
+}
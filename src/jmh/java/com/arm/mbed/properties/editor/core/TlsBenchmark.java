@@ -0,0 +1,197 @@
+/**
+ * @file    TlsBenchmark.java
+ * @brief JMH benchmarks of full and resumed TLS handshakes with the computed parameters
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TLS Benchmark - in memory handshakes between a server engine configured as Main does it (TlsParameters, session
+ * cache) and a client: a full handshake (a new peer every time, nothing to resume) against a resumed one (the same peer)
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlsBenchmark {
+    // the sample keystore
+    private static final String KEYSTORE = "mdsconfigurator.jks";
+    private static final char[] PASSWORD = "arm1234".toCharArray();
+
+    // the resumed peer's port
+    private static final int RESUMED_PORT = 1;
+
+    @Param({ "TLSv1.3", "TLSv1.2" })
+    public String protocol;
+
+    private SSLContext m_server_context = null;
+    private SSLContext m_client_context = null;
+    private SSLParameters m_parameters = null;
+    private int m_next_port = 10000;
+
+    /**
+     * Build the server and client contexts... and connect the resumed peer once
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixture.silence();
+        KeyStore ks = KeyStore.getInstance("JKS");
+        FileInputStream fis = new FileInputStream(Utils.getWorkingDirectory() + "/" + KEYSTORE);
+        try {
+            ks.load(fis,PASSWORD);
+        }
+        finally {
+            fis.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks,PASSWORD);
+        this.m_server_context = SSLContext.getInstance("TLS");
+        this.m_server_context.init(kmf.getKeyManagers(),null,null);
+        TlsParameters.configureSessions(this.m_server_context,TlsParameters.DEFAULT_SESSION_CACHE_SIZE,TlsParameters.DEFAULT_SESSION_TIMEOUT_SEC);
+        this.m_parameters = TlsParameters.create(this.m_server_context,this.protocol,null);
+
+        // the sample certificate is self signed and expired: the client trusts anything
+        this.m_client_context = SSLContext.getInstance("TLS");
+        this.m_client_context.init(null,new TrustManager[] { new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain,String auth_type) {
+            }
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain,String auth_type) {
+            }
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }},null);
+        this.connect(RESUMED_PORT);
+    }
+
+    /**
+     * Restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixture.restore();
+    }
+
+    @Benchmark
+    public SSLEngine fullHandshake() throws Exception {
+        return this.connect(++this.m_next_port);
+    }
+
+    @Benchmark
+    public SSLEngine resumedHandshake() throws Exception {
+        return this.connect(RESUMED_PORT);
+    }
+
+    // one connection to localhost:port... the client engine
+    private SSLEngine connect(int port) throws Exception {
+        SSLEngine server = this.m_server_context.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setSSLParameters(this.m_parameters);
+        SSLEngine client = this.m_client_context.createSSLEngine("localhost",port);
+        client.setUseClientMode(true);
+        TlsBenchmark.handshake(client,server);
+        return client;
+    }
+
+    // run a handshake between two engines in memory (plus one application record so TLS 1.3 tickets are delivered)
+    private static void handshake(SSLEngine client,SSLEngine server) throws Exception {
+        int size = Math.max(client.getSession().getPacketBufferSize(),server.getSession().getPacketBufferSize());
+        int app_size = Math.max(client.getSession().getApplicationBufferSize(),server.getSession().getApplicationBufferSize());
+        ByteBuffer to_server = ByteBuffer.allocate(size);
+        ByteBuffer to_client = ByteBuffer.allocate(size);
+        ByteBuffer client_in = ByteBuffer.allocate(app_size);
+        ByteBuffer server_in = ByteBuffer.allocate(app_size);
+        ByteBuffer request = ByteBuffer.wrap("GET".getBytes("UTF-8"));
+        ByteBuffer response = ByteBuffer.wrap("OK".getBytes("UTF-8"));
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        client.beginHandshake();
+        server.beginHandshake();
+        for(int i=0;i<1000 && (request.hasRemaining() || response.hasRemaining() || client_in.position() < 2);++i) {
+            TlsBenchmark.step(client,request,to_server);
+            TlsBenchmark.step(server,server_in.position() > 0 ? response : empty,to_client);
+            TlsBenchmark.unwrap(server,to_server,server_in);
+            TlsBenchmark.unwrap(client,to_client,client_in);
+        }
+        if (client_in.position() < 2) {
+            throw new IllegalStateException("handshake did not complete: " + client.getHandshakeStatus());
+        }
+    }
+
+    // produce (handshake or application) records and run any delegated tasks
+    private static void step(SSLEngine engine,ByteBuffer out,ByteBuffer net) throws Exception {
+        SSLEngineResult result;
+        do {
+            result = engine.wrap(out,net);
+            TlsBenchmark.runTasks(engine);
+        } while (result.bytesProduced() > 0 && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP);
+    }
+
+    // consume the peer's records
+    private static void unwrap(SSLEngine engine,ByteBuffer net,ByteBuffer in) throws Exception {
+        net.flip();
+        SSLEngineResult result;
+        do {
+            result = engine.unwrap(net,in);
+            TlsBenchmark.runTasks(engine);
+        } while (net.hasRemaining() && result.bytesConsumed() > 0);
+        net.compact();
+    }
+
+    // delegated tasks (certificate checks, key generation)
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * @file    UtilsBenchmark.java
+ * @brief JMH benchmarks of the request decoding utilities
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Utils Benchmark - query string parsing and the base64 decoding of edited values. "size" is the number of query
+ * parameters (queryToMap, parseQuery) or the length of the decoded value in characters (decoders, the page's edit
+ * query, character replacement).
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int size;
+
+    private String m_query = null;
+    private String m_base64 = null;
+    private String m_urlsafe_base64 = null;
+    private String m_value = null;
+    private String m_edit_query = null;
+
+    /**
+     * Build the inputs
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixture.silence();
+        StringBuilder query = new StringBuilder();
+        for(int i=0;i<this.size;++i) {
+            query.append((i > 0) ? "&" : "").append("key_").append(i).append("=value_").append(i);
+        }
+        this.m_query = query.toString();
+
+        // a value as the page sends it: base64 of the UTF-8 text, then URL encoded
+        StringBuilder value = new StringBuilder();
+        while (value.length() < this.size) {
+            value.append("mqtt://broker.example.com:1883/topic_").append(value.length()).append(' ');
+        }
+        this.m_value = value.substring(0,this.size);
+        this.m_base64 = Utils.base64_encode(this.m_value.getBytes(StandardCharsets.UTF_8));
+        this.m_urlsafe_base64 = URLEncoder.encode(this.m_base64,"UTF-8");
+        this.m_edit_query = "updated_key=mqtt_client_id&updated_value=" + this.m_urlsafe_base64 + "&file=service.properties&new_key=";
+    }
+
+    /**
+     * Restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixture.restore();
+    }
+
+    @Benchmark
+    public Map<String,String> queryToMap() {
+        return Utils.queryToMap(this.m_query);
+    }
+
+    @Benchmark
+    public Map<String,String> parseQuery() {
+        return Utils.parseQuery(this.m_query,null);
+    }
+
+    @Benchmark
+    public Map<String,String> parseEditQuery() {
+        return Utils.parseQuery(this.m_edit_query,"updated_value");
+    }
+
+    @Benchmark
+    public String urlsafeBase64Decode() {
+        return Utils.urlsafe_base64_decode(this.m_urlsafe_base64);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Utils.base64_decode(this.m_base64);
+    }
+
+    @Benchmark
+    public String replaceAllCharOccurances() {
+        return Utils.replaceAllCharOccurances(this.m_value,' ','_');
+    }
+}
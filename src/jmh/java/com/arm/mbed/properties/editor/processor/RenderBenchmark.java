@@ -0,0 +1,256 @@
+/**
+ * @file    RenderBenchmark.java
+ * @brief JMH benchmarks of the configuration table renderers and the page
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.BenchmarkFixture;
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import com.arm.mbed.properties.editor.core.PropertiesStore;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Render Benchmark - the configuration table renderers (the whole table, and one page of the file order or of a
+ * sorted/filtered view), the page compile (initializeResponse: cached and after a template change) and a whole page
+ * request through handle()
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int size;
+
+    // renderer inputs
+    private ConfigTableRenderer m_renderer = null;
+    private PropertiesSnapshot m_props = null;
+    private List<String> m_keys = null;
+    private TableView m_page_view = null;
+    private TableView m_selective_view = null;
+    private final StringBuilder m_out = new StringBuilder();
+
+    // the editor (page compile and page requests)
+    private PropertiesEditorProcessor m_processor = null;
+
+    /**
+     * Build the property set and load the editor on a fixture of the given size
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixture.silence();
+        PropertiesStore store = new PropertiesStore();
+        this.m_props = store.replace(BenchmarkFixture.properties(this.size));
+        this.m_keys = new ArrayList<String>(this.m_props.keys());
+        this.m_renderer = new ConfigTableRenderer(null);
+        this.m_page_view = TableView.fromQuery(null,TableView.DEFAULT_PAGE_SIZE,TableView.DEFAULT_MAX_PAGE_SIZE);
+        this.m_selective_view = TableView.fromQuery("sort=-value&filter=1_some",TableView.DEFAULT_PAGE_SIZE,TableView.DEFAULT_MAX_PAGE_SIZE);
+
+        this.m_processor = new PropertiesEditorProcessor(false);
+        this.m_processor.loadProperties(BenchmarkFixture.setUp("render",this.size));
+        this.m_processor.getPropertiesSnapshot();
+    }
+
+    /**
+     * Restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.m_processor.shutdown();
+        BenchmarkFixture.restore();
+    }
+
+    @Benchmark
+    public int renderTable() throws IOException {
+        this.m_out.setLength(0);
+        this.m_renderer.render(this.m_out,this.m_props,this.m_keys,"service.properties",false);
+        return this.m_out.length();
+    }
+
+    @Benchmark
+    public int renderPage() throws IOException {
+        this.m_out.setLength(0);
+        this.m_renderer.renderPage(this.m_out,this.m_props,this.m_keys,"service.properties",false,true,this.m_page_view);
+        return this.m_out.length();
+    }
+
+    @Benchmark
+    public int renderSortedFilteredPage() throws IOException {
+        // a new key list: the row selection is recomputed (sort and filter of all rows) as for a new snapshot
+        this.m_out.setLength(0);
+        this.m_renderer.renderPage(this.m_out,this.m_props,new ArrayList<String>(this.m_keys),"service.properties",false,true,this.m_selective_view);
+        return this.m_out.length();
+    }
+
+    @Benchmark
+    public Object initializeResponse() {
+        return this.m_processor.initializeResponse();
+    }
+
+    @Benchmark
+    public Object initializeResponseRecompile() {
+        this.m_processor.getTemplateCache().invalidateAll();
+        return this.m_processor.initializeResponse();
+    }
+
+    @Benchmark
+    public long handlePage() throws IOException {
+        BenchmarkExchange exchange = new BenchmarkExchange("/");
+        this.m_processor.handle(exchange);
+        return exchange.m_bytes;
+    }
+
+    // a GET exchange whose response is counted and discarded
+    private static final class BenchmarkExchange extends HttpExchange {
+        private final Headers m_request_headers = new Headers();
+        private final Headers m_response_headers = new Headers();
+        private final URI m_uri;
+        private int m_status = -1;
+        private long m_bytes = 0;
+
+        private BenchmarkExchange(String uri) {
+            this.m_uri = URI.create(uri);
+        }
+
+        private final OutputStream m_body = new OutputStream() {
+            @Override
+            public void write(int b) {
+                ++m_bytes;
+            }
+
+            @Override
+            public void write(byte[] b,int off,int len) {
+                m_bytes += len;
+            }
+        };
+
+        @Override
+        public Headers getRequestHeaders() {
+            return this.m_request_headers;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return this.m_response_headers;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return this.m_uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return "GET";
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return this.m_body;
+        }
+
+        @Override
+        public void sendResponseHeaders(int status,long length) {
+            this.m_status = status;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return new InetSocketAddress("127.0.0.1",0);
+        }
+
+        @Override
+        public int getResponseCode() {
+            return this.m_status;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return new InetSocketAddress("127.0.0.1",0);
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name,Object value) {
+        }
+
+        @Override
+        public void setStreams(InputStream in,OutputStream out) {
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * @file    TargetBenchmark.java
+ * @brief JMH benchmarks of a multi-target mode target: a request to a loaded target and the reload of an evicted one
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.BenchmarkFixture;
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Target Benchmark - one process serving many property files (multi-target mode): the properties of a loaded target
+ * (a store cache touch) and of one evicted from the cache (reloaded from its file). Their gc.alloc.rate.norm is what
+ * a target costs to bring back, to compare with keeping it loaded (its store cache estimate) or with a JVM per file.
+ * @author Doug Anson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TargetBenchmark {
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int size;
+
+    private PropertiesEditorProcessor m_processor = null;
+    private PropertiesEditorProcessor m_target = null;
+
+    /**
+     * Load the main editor with one target whose file has the given size
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixture.silence();
+        String config = BenchmarkFixture.setUp("targets",this.size);
+        File dir = new File(config).getParentFile();
+        File targets = new File(dir,"targets");
+        if (targets.isDirectory() == false && targets.mkdirs() == false) {
+            throw new IllegalStateException("Unable to create " + targets);
+        }
+        Files.write(new File(targets,"t1.properties").toPath(),("properties_file=" + new File(dir,"service.properties").getAbsolutePath() + "\ntitle=Target 1\n").getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(new File(config).toPath(),"targets_dir=targets\n".getBytes(StandardCharsets.ISO_8859_1),StandardOpenOption.APPEND);
+
+        this.m_processor = new PropertiesEditorProcessor(false);
+        this.m_processor.loadProperties(config);
+        this.m_target = this.m_processor.loadTargets().get("t1");
+        this.m_target.getPropertiesSnapshot();
+    }
+
+    /**
+     * Restore the console
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.m_processor.shutdown();
+        BenchmarkFixture.restore();
+    }
+
+    @Benchmark
+    public PropertiesSnapshot loadedTarget() {
+        return this.m_target.getPropertiesSnapshot();
+    }
+
+    @Benchmark
+    public PropertiesSnapshot reloadEvictedTarget() {
+        this.m_target.unload();
+        return this.m_target.getPropertiesSnapshot();
+    }
+}
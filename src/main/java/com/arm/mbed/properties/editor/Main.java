@@ -14,11 +14,19 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.TrustManagerFactory;
+import com.arm.mbed.properties.editor.core.ServerExecutors;
+import com.arm.mbed.properties.editor.core.TlsParameters;
+import com.arm.mbed.properties.editor.processor.HistoryHandler;
+import com.arm.mbed.properties.editor.processor.KeySearchHandler;
+import com.arm.mbed.properties.editor.processor.MetricsHandler;
+import com.arm.mbed.properties.editor.processor.PropertiesApiHandler;
 import com.arm.mbed.properties.editor.processor.PropertiesEditorProcessor;
+import com.arm.mbed.properties.editor.processor.RevisionsHandler;
+import com.arm.mbed.properties.editor.processor.StaticResources;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Main - this application will read and permit editing of java properties files
@@ -29,17 +37,31 @@ public class Main
     // our own configuration properties file (must be fully qualified)
     public static final String PROPERTIES_EDITOR_DEFAULT_CONFIG = "/home/arm/properties-editor/conf/properties-editor.properties";
     
+    // default time (in seconds) to wait for in-flight requests on shutdown
+    private static final int DEFAULT_SHUTDOWN_TIMEOUT_SEC = 5;
+    
     /**
      * Primary entry point for properties-editor Application
-     * @param args - command line arguments
+     * @param args - command line arguments (optional: our configuration properties file, fully qualified)
      * @throws Exception 
      */
     public static void main(String[] args) throws Exception {
         // initialize and load the properties file...
-        PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
+        final PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
         
         // load the properties up in the processor
-        processor.loadProperties(PROPERTIES_EDITOR_DEFAULT_CONFIG);
+        processor.loadProperties((args.length > 0) ? args[0] : PROPERTIES_EDITOR_DEFAULT_CONFIG);
+        
+        // pick up external changes to the property files
+        processor.startWatching();
+        
+        // multi-target mode: further property files (targets_dir) served by this process
+        processor.loadTargets();
+        
+        // small (API) responses otherwise stall on Nagle + delayed ACK (~40ms each)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay","true");
+        }
         
         try {
             // Create the HTTPS Server and SSL/TLS Context
@@ -60,28 +82,23 @@ public class Main
             TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
             tmf.init(ks);
 
-            // setup the HTTPS context and parameters
+            // setup the HTTPS context
             sslContext.init(kmf.getKeyManagers(),tmf.getTrustManagers(),null);
+            
+            // session resumption: returning clients skip the full handshake
+            TlsParameters.configureSessions(sslContext,
+                                            processor.getIntProperty("tls_session_cache_size",TlsParameters.DEFAULT_SESSION_CACHE_SIZE),
+                                            processor.getIntProperty("tls_session_timeout_sec",TlsParameters.DEFAULT_SESSION_TIMEOUT_SEC));
+            
+            // the TLS parameters are computed once (from our context, not the JVM default one) and shared by all connections
+            final SSLParameters sslParameters = TlsParameters.create(sslContext,processor.getProperty("tls_protocols"),processor.getProperty("tls_cipher_suites"));
             server.setHttpsConfigurator( 
                 new HttpsConfigurator(sslContext)
                 {
                     @Override
                     public void configure(HttpsParameters params) {
-                        try {
-                            // initialise the SSL context
-                            SSLContext c = SSLContext.getDefault ();
-                            SSLEngine engine = c.createSSLEngine ();
-                            params.setNeedClientAuth ( false );
-                            params.setCipherSuites ( engine.getEnabledCipherSuites () );
-                            params.setProtocols ( engine.getEnabledProtocols () );
-
-                            // get the default parameters
-                            SSLParameters defaultSSLParameters = c.getDefaultSSLParameters ();
-                            params.setSSLParameters ( defaultSSLParameters );
-                        }
-                        catch ( NoSuchAlgorithmException ex ) {
-                            System.out.println("Main: Failed to create HTTPS port. Exception: " + ex.getMessage());
-                        }
+                        // the engine copies the parameters
+                        params.setSSLParameters(sslParameters);
                     }
                 } );
                         
@@ -91,8 +108,60 @@ public class Main
             // Create a basic auth authenticator context
             context.setAuthenticator(processor);
             
-            // no executor
-            server.setExecutor(null);
+            // CSS/JS assets (content-hashed, cached by the browser)
+            if (processor.getStaticResources() != null) {
+                HttpContext static_context = server.createContext(StaticResources.CONTEXT, processor.getStaticResources());
+                static_context.setAuthenticator(processor);
+            }
+            
+            // JSON API for scripted access (same credentials)
+            HttpContext api_context = server.createContext(PropertiesApiHandler.CONTEXT, new PropertiesApiHandler(processor));
+            api_context.setAuthenticator(processor);
+            HttpContext keys_context = server.createContext(KeySearchHandler.CONTEXT, new KeySearchHandler(processor));
+            keys_context.setAuthenticator(processor);
+            HttpContext history_context = server.createContext(HistoryHandler.CONTEXT, new HistoryHandler(processor));
+            history_context.setAuthenticator(processor);
+            HttpContext revisions_context = server.createContext(RevisionsHandler.CONTEXT, new RevisionsHandler(processor));
+            revisions_context.setAuthenticator(processor);
+            
+            // Prometheus metrics (of the editor and all targets... same credentials)
+            HttpContext metrics_context = server.createContext(MetricsHandler.CONTEXT, new MetricsHandler(processor));
+            metrics_context.setAuthenticator(processor);
+            
+            // each target: its page and JSON API under /targets/{name}/
+            for(PropertiesEditorProcessor target : processor.getTargets().values()) {
+                HttpContext target_context = server.createContext(target.getContextPath(), target);
+                target_context.setAuthenticator(target);
+                HttpContext target_api_context = server.createContext(target.getContextPath() + PropertiesApiHandler.CONTEXT.substring(1), new PropertiesApiHandler(target));
+                target_api_context.setAuthenticator(target);
+                HttpContext target_keys_context = server.createContext(target.getContextPath() + KeySearchHandler.CONTEXT.substring(1), new KeySearchHandler(target));
+                target_keys_context.setAuthenticator(target);
+                HttpContext target_history_context = server.createContext(target.getContextPath() + HistoryHandler.CONTEXT.substring(1), new HistoryHandler(target));
+                target_history_context.setAuthenticator(target);
+                HttpContext target_revisions_context = server.createContext(target.getContextPath() + RevisionsHandler.CONTEXT.substring(1), new RevisionsHandler(target));
+                target_revisions_context.setAuthenticator(target);
+            }
+            
+            // request executor (configurable: none, fixed, bounded or virtual)
+            final ExecutorService executor = ServerExecutors.create(processor.getProperty("executor_type"),
+                                                                    processor.getIntProperty("executor_threads",ServerExecutors.DEFAULT_THREADS),
+                                                                    processor.getIntProperty("executor_queue_size",ServerExecutors.DEFAULT_QUEUE_SIZE));
+            server.setExecutor(executor);
+            
+            // stop accepting requests and drain the executor on shutdown
+            final HttpsServer running_server = server;
+            final int shutdown_timeout = processor.getIntProperty("executor_shutdown_timeout_sec",DEFAULT_SHUTDOWN_TIMEOUT_SEC);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    System.out.println("Main: shutting down...");
+                    running_server.stop(shutdown_timeout);
+                    ServerExecutors.shutdown(executor,shutdown_timeout);
+                    
+                    // write out any pending (write-behind) saves
+                    processor.shutdown();
+                }
+            });
             
             // start the service
             server.start();
@@ -0,0 +1,174 @@
+/**
+ * @file    AwsCredentialsHook.java
+ * @brief Writes the AWS CLI config/credentials files when the AWS keys change
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * AWS Credentials Hook - (re)writes the AWS CLI "config" and "credentials" files atomically whenever the aws_iot_* keys change. By default
+ * they are written to /home/arm/.aws owner-only (600, and 700 for a directory the hook creates)... a bridge running as another user needs
+ * an explicit mode of 644.
+ * @author Doug Anson
+ */
+public class AwsCredentialsHook implements KeyChangeHook {
+    /**
+     * Default AWS CLI directory
+     */
+    public static final String DEFAULT_DIRECTORY = "/home/arm/.aws";
+
+    /**
+     * Default mode of the files (octal, as for chmod): owner-only, the credentials file holds the secret access key
+     */
+    public static final String DEFAULT_MODE = "600";
+
+    private static final String REGION_KEY = "aws_iot_region";
+    private static final String KEY_ID_KEY = "aws_iot_access_key_id";
+    private static final String ACCESS_KEY_KEY = "aws_iot_secret_access_key";
+    private static final String[] KEYS = { REGION_KEY, KEY_ID_KEY, ACCESS_KEY_KEY };
+
+    // placeholder values shipped in the sample configuration
+    private static final String REGION_PLACEHOLDER = "AWS_region_goes_here";
+    private static final String KEY_ID_PLACEHOLDER = "AWS_Access_Key_ID_goes_here";
+    private static final String ACCESS_KEY_PLACEHOLDER = "AWS_Secret_Access_Key_goes_here";
+
+    private final String m_aws_dir;
+    private final String m_file_permissions;
+    private final String m_dir_permissions;
+    private long m_writes = 0;
+
+    /**
+     * Default constructor (files written with the default mode)
+     * @param aws_dir - the AWS CLI directory (i.e. /home/arm/.aws)
+     */
+    public AwsCredentialsHook(String aws_dir) {
+        this(aws_dir,DEFAULT_MODE);
+    }
+
+    /**
+     * Constructor
+     * @param aws_dir - the AWS CLI directory (i.e. /home/arm/.aws)
+     * @param mode - the mode of the files, octal (i.e. "644" for a bridge running as another user)... a created directory is also searchable where readable
+     */
+    public AwsCredentialsHook(String aws_dir,String mode) {
+        String permissions = toPermissions(mode);
+        if (permissions == null) {
+            System.out.println("AwsCredentialsHook: invalid mode: " + mode + " (using " + DEFAULT_MODE + ")");
+            permissions = toPermissions(DEFAULT_MODE);
+        }
+        this.m_aws_dir = aws_dir;
+        this.m_file_permissions = permissions;
+        this.m_dir_permissions = searchable(permissions);
+    }
+
+    /**
+     * The keys this hook watches
+     * @return the aws_iot_* keys
+     */
+    @Override
+    public String[] getKeys() {
+        return KEYS;
+    }
+
+    /**
+     * Write the files (only when all three keys hold real values)
+     * @param snapshot - the snapshot containing the change
+     * @param changed - the keys that changed
+     */
+    @Override
+    public void keysChanged(PropertiesSnapshot snapshot,Set<String> changed) {
+        String region = snapshot.get(REGION_KEY);
+        String key_id = snapshot.get(KEY_ID_KEY);
+        String access_key = snapshot.get(ACCESS_KEY_KEY);
+        if (isSet(region,REGION_PLACEHOLDER) == false || isSet(key_id,KEY_ID_PLACEHOLDER) == false || isSet(access_key,ACCESS_KEY_PLACEHOLDER) == false) {
+            return;
+        }
+
+        try {
+            Path dir = Paths.get(this.m_aws_dir);
+            if (Files.isDirectory(dir) == false) {
+                Files.createDirectories(dir);
+                try {
+                    Files.setPosixFilePermissions(dir,PosixFilePermissions.fromString(this.m_dir_permissions));
+                }
+                catch (UnsupportedOperationException ex) {
+                    // not a posix filesystem
+                }
+            }
+            Utils.atomicWrite(dir.resolve("config").toString(),("[default]\nregion = " + region.trim() + "\n").getBytes(StandardCharsets.UTF_8),this.m_file_permissions);
+            Utils.atomicWrite(dir.resolve("credentials").toString(),("[default]\naws_access_key_id = " + key_id.trim() + "\naws_secret_access_key = " + access_key.trim() + "\n").getBytes(StandardCharsets.UTF_8),this.m_file_permissions);
+            synchronized (this) {
+                ++this.m_writes;
+            }
+
+            // DEBUG (never the secret)
+            System.out.println("AwsCredentialsHook: updated AWS CLI credentials in " + this.m_aws_dir + " (changed: " + changed + ")");
+        }
+        catch (IOException ex) {
+            System.out.println("AwsCredentialsHook: Unable to write AWS CLI credentials to " + this.m_aws_dir + " Exception: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Number of times the files have been written
+     * @return the write count
+     */
+    public synchronized long getWrites() {
+        return this.m_writes;
+    }
+
+    // an octal mode (i.e. "644") as posix permissions ("rw-r--r--"), NULL if not a mode
+    private static String toPermissions(String mode) {
+        if (mode == null || mode.trim().matches("0?[0-7]{3}") == false) {
+            return null;
+        }
+        mode = mode.trim();
+        StringBuilder permissions = new StringBuilder(9);
+        for(char digit : mode.substring(mode.length() - 3).toCharArray()) {
+            int bits = digit - '0';
+            permissions.append((bits & 4) != 0 ? 'r' : '-').append((bits & 2) != 0 ? 'w' : '-').append((bits & 1) != 0 ? 'x' : '-');
+        }
+        return permissions.toString();
+    }
+
+    // directory permissions: searchable by whoever may read the files
+    private static String searchable(String permissions) {
+        char[] bits = permissions.toCharArray();
+        for(int i=0;i<bits.length;i+=3) {
+            if (bits[i] == 'r') {
+                bits[i + 2] = 'x';
+            }
+        }
+        return new String(bits);
+    }
+
+    // a real (non-placeholder) value
+    private static boolean isSet(String value,String placeholder) {
+        return value != null && value.trim().length() > 0 && value.equalsIgnoreCase(placeholder) == false;
+    }
+}
@@ -0,0 +1,756 @@
+/**
+ * @file    ChangeJournal.java
+ * @brief Append-only, memory-mapped journal of the edits made to the property files
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Change Journal - an append-only log of every change made to the (service) properties and to the editor configuration:
+ * the key, its new value (or its removal), when and by whom. Records are written through a memory-mapped FileChannel and
+ * indexed per key (the offsets of the key's records) so "changes to a key since T" reads only that key's records.
+ *
+ * The savers mark what reached the files: changes recorded after the last mark (lost in the write-behind window by a
+ * crash) are re-applied on startup unless the file was changed by something else since. Compaction folds the journal into
+ * a checkpoint (the state of both files at a sequence number) and starts an empty journal... the history then starts
+ * at the checkpoint.
+ *
+ *   journal:    magic, checkpoint sequence number, then records: body length, CRC32 of the body, body
+ *               (sequence number, time, type, file, user, key, value)... a zero length ends the journal
+ *   checkpoint: magic, sequence number, time, then per file the number of entries and the key/value pairs
+ *
+ * @author Doug Anson
+ */
+public class ChangeJournal {
+    /**
+     * Suffix of the journal (after the properties file it is kept next to)
+     */
+    public static final String SUFFIX = ".journal";
+
+    /**
+     * Suffix of the checkpoint (after the journal)
+     */
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /**
+     * The (service) properties
+     */
+    public static final int PROPERTIES = 0;
+
+    /**
+     * The editor configuration
+     */
+    public static final int EDITOR = 1;
+
+    /**
+     * Default number of changes recorded before the journal is compacted into a checkpoint
+     */
+    public static final int DEFAULT_CHECKPOINT_RECORDS = 10000;
+
+    // files journaled
+    private static final int FILES = 2;
+
+    // layout
+    private static final int MAGIC = 0x50454a31;                  // "PEJ1"
+    private static final int CHECKPOINT_MAGIC = 0x50454331;       // "PEC1"
+    private static final int HEADER_BYTES = 16;                   // magic, checkpoint sequence number, reserved
+    private static final int RECORD_HEADER_BYTES = 8;             // body length, CRC32
+    private static final int BODY_FIXED_BYTES = 18;               // sequence number, time, type, file
+    private static final int MAP_CHUNK = 64 * 1024;               // the mapping grows in chunks (at least doubling)
+
+    // record types
+    private static final byte SET = 1;
+    private static final byte REMOVE = 2;
+    private static final byte SAVED = 3;                          // the file holds every change up to the sequence number
+
+    /**
+     * A recorded change
+     */
+    public static final class Change {
+        private final long m_seq;
+        private final long m_time_ms;
+        private final String m_user;
+        private final int m_file;
+        private final String m_key;
+        private final String m_value;
+
+        private Change(long seq,long time_ms,String user,int file,String key,String value) {
+            this.m_seq = seq;
+            this.m_time_ms = time_ms;
+            this.m_user = user;
+            this.m_file = file;
+            this.m_key = key;
+            this.m_value = value;
+        }
+
+        /**
+         * Sequence number (increasing, across both files)
+         * @return the sequence number
+         */
+        public long getSeq() {
+            return this.m_seq;
+        }
+
+        /**
+         * When the change was made
+         * @return the time in milliseconds since the epoch
+         */
+        public long getTime() {
+            return this.m_time_ms;
+        }
+
+        /**
+         * Who made the change
+         * @return the user (NULL if not known)
+         */
+        public String getUser() {
+            return this.m_user;
+        }
+
+        /**
+         * The file changed
+         * @return PROPERTIES or EDITOR
+         */
+        public int getFile() {
+            return this.m_file;
+        }
+
+        /**
+         * The key changed
+         * @return the key
+         */
+        public String getKey() {
+            return this.m_key;
+        }
+
+        /**
+         * The new value
+         * @return the value, NULL if the key was removed
+         */
+        public String getValue() {
+            return this.m_value;
+        }
+    }
+
+    // the offsets of a key's records (in journal order)
+    private static final class Offsets {
+        private int[] m_offsets = new int[2];
+        private int m_size = 0;
+
+        private void add(int offset) {
+            if (this.m_size == this.m_offsets.length) {
+                this.m_offsets = Arrays.copyOf(this.m_offsets,this.m_size * 2);
+            }
+            this.m_offsets[this.m_size++] = offset;
+        }
+    }
+
+    private final String m_filename;
+    private final String m_checkpoint_filename;
+    private final int m_checkpoint_records;
+
+    // the mapped journal
+    private FileChannel m_channel = null;
+    private MappedByteBuffer m_map = null;
+    private int m_position = HEADER_BYTES;
+
+    // sequence numbers
+    private long m_seq = 0;                                                   // last one used
+    private long m_checkpoint_seq = 0;                                        // folded into the checkpoint
+    private long m_checkpoint_time = 0;                                       // when the checkpoint was written
+    private int m_records = 0;                                                // changes recorded since the checkpoint
+    private final long[] m_last_change = new long[FILES];                     // last change per file
+    private final long[] m_saved = new long[FILES];                           // last change known to be in each file
+
+    // per file: key -> offsets of its records, and (until saved) snapshot version -> last change applied in it
+    private final List<Map<String,Offsets>> m_index = new ArrayList<Map<String,Offsets>>();
+    private final List<TreeMap<Long,Long>> m_versions = new ArrayList<TreeMap<Long,Long>>();
+
+    // record encoding
+    private final CRC32 m_crc = new CRC32();
+    private ByteBuffer m_record = ByteBuffer.allocate(1024);
+
+    // use open()
+    private ChangeJournal(String fq_filename,int checkpoint_records) {
+        this.m_filename = fq_filename;
+        this.m_checkpoint_filename = fq_filename + CHECKPOINT_SUFFIX;
+        this.m_checkpoint_records = (checkpoint_records > 0) ? checkpoint_records : DEFAULT_CHECKPOINT_RECORDS;
+        for(int i=0;i<FILES;++i) {
+            this.m_index.add(new HashMap<String,Offsets>());
+            this.m_versions.add(new TreeMap<Long,Long>());
+        }
+    }
+
+    /**
+     * Open (or create) a journal and replay it: the per-key index is rebuilt and a torn last record is discarded
+     * @param fq_filename - the journal file (fully qualified)
+     * @param checkpoint_records - changes recorded before the journal is compacted into a checkpoint
+     * @return the journal
+     * @throws IOException
+     */
+    public static ChangeJournal open(String fq_filename,int checkpoint_records) throws IOException {
+        ChangeJournal journal = new ChangeJournal(fq_filename,checkpoint_records);
+        journal.replay();
+        return journal;
+    }
+
+    // read the checkpoint header, map the journal and index its records
+    private void replay() throws IOException {
+        long start = System.nanoTime();
+        this.readCheckpoint(null);
+        this.m_channel = FileChannel.open(Paths.get(this.m_filename),StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+        long size = this.m_channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal too large: " + this.m_filename);
+        }
+        this.map(Math.max((int)size,MAP_CHUNK));
+        if (size < HEADER_BYTES) {
+            this.writeHeader();
+        }
+        else if (this.m_map.getInt(0) != MAGIC) {
+            throw new IOException("Not a change journal: " + this.m_filename);
+        }
+
+        // index the records (those folded into the checkpoint already are skipped)
+        int position = HEADER_BYTES;
+        boolean torn = false;
+        while (position + RECORD_HEADER_BYTES <= this.m_map.capacity()) {
+            int length = this.m_map.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < BODY_FIXED_BYTES || position + RECORD_HEADER_BYTES + length > this.m_map.capacity() || this.crc(position + RECORD_HEADER_BYTES,length) != this.m_map.getInt(position + 4)) {
+                torn = true;
+                break;
+            }
+            int body = position + RECORD_HEADER_BYTES;
+            long seq = this.m_map.getLong(body);
+            byte type = this.m_map.get(body + 16);
+            int file = this.m_map.get(body + 17);
+            if (file >= 0 && file < FILES) {
+                if (type == SAVED) {
+                    this.m_saved[file] = Math.max(this.m_saved[file],seq);
+                }
+                else if (seq > this.m_checkpoint_seq) {
+                    this.index(file,this.readKey(body),position,seq);
+                }
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+        this.m_position = position;
+        if (torn) {
+            // an append cut short (i.e. by a crash): drop it so later appends are not mistaken for part of it
+            ByteBuffer zeros = this.m_map.duplicate();
+            zeros.position(position);
+            while (zeros.hasRemaining()) {
+                zeros.put((byte)0);
+            }
+            System.out.println("ChangeJournal: discarded a torn record at offset " + position + " of " + this.m_filename);
+        }
+        this.m_seq = Math.max(this.m_seq,this.m_checkpoint_seq);
+        for(int i=0;i<FILES;++i) {
+            // the checkpoint is only written once everything in it was saved
+            this.m_saved[i] = Math.max(this.m_saved[i],this.m_checkpoint_seq);
+        }
+
+        // DEBUG
+        System.out.println("ChangeJournal: replayed " + this.m_records + " changes from " + this.m_filename + " in " + ((System.nanoTime() - start) / 1000) + "us");
+    }
+
+    // record a change in the index
+    private void index(int file,String key,int position,long seq) {
+        Offsets offsets = this.m_index.get(file).get(key);
+        if (offsets == null) {
+            offsets = new Offsets();
+            this.m_index.get(file).put(key,offsets);
+        }
+        offsets.add(position);
+        this.m_seq = Math.max(this.m_seq,seq);
+        this.m_last_change[file] = Math.max(this.m_last_change[file],seq);
+        ++this.m_records;
+    }
+
+    /**
+     * The changes between two snapshots (only the properties they do not share are compared)
+     * @param previous - the snapshot replaced
+     * @param updated - the new snapshot
+     * @return key -> new value (NULL: removed)
+     */
+    public static Map<String,String> diff(PropertiesSnapshot previous,PropertiesSnapshot updated) {
+        return previous.changesTo(updated);
+    }
+
+    /**
+     * Record changes made to a file (and made durable before returning)
+     * @param file - PROPERTIES or EDITOR
+     * @param changes - key -> new value (NULL: removed)
+     * @param user - who made them (NULL if not known)
+     * @param version - version of the snapshot holding them (the save of that version marks them saved)
+     * @return TRUE if recorded
+     */
+    public synchronized boolean append(int file,Map<String,String> changes,String user,long version) {
+        if (this.m_channel == null || changes.isEmpty()) {
+            return false;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            for(Map.Entry<String,String> entry : changes.entrySet()) {
+                long seq = this.m_seq + 1;
+                int position = this.write(seq,now,(entry.getValue() != null) ? SET : REMOVE,file,user,entry.getKey(),entry.getValue());
+                this.index(file,entry.getKey(),position,seq);
+            }
+            this.m_map.force();
+            this.m_versions.get(file).put(version,this.m_seq);
+            return true;
+        }
+        catch (IOException ex) {
+            System.out.println("ChangeJournal: Unable to append to " + this.m_filename + " Exception: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * A snapshot of a file was saved: its changes are marked saved (and the journal compacted if it is due)
+     * @param file - PROPERTIES or EDITOR
+     * @param version - version of the saved snapshot
+     */
+    public synchronized void saved(int file,long version) {
+        if (this.m_channel == null) {
+            return;
+        }
+        TreeMap<Long,Long> versions = this.m_versions.get(file);
+        Map.Entry<Long,Long> entry = versions.floorEntry(version);
+        if (entry == null) {
+            return;
+        }
+        long seq = entry.getValue();
+        versions.headMap(version,true).clear();
+        try {
+            if (seq > this.m_saved[file]) {
+                this.write(seq,System.currentTimeMillis(),SAVED,file,null,"",null);
+                this.m_saved[file] = seq;
+            }
+            if (this.m_records >= this.m_checkpoint_records && this.allSaved()) {
+                this.compact();
+            }
+        }
+        catch (IOException ex) {
+            System.out.println("ChangeJournal: Unable to mark saved in " + this.m_filename + " Exception: " + ex.getMessage());
+        }
+    }
+
+    // is every change in its file?
+    private boolean allSaved() {
+        for(int i=0;i<FILES;++i) {
+            if (this.m_last_change[i] > this.m_saved[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The changes to re-apply to a file just loaded: keys changed (in the journal) after the file was last known to be
+     * saved. If the file was written since the first of them, only those whose value in the file is still the saved one
+     * are re-applied (if something else changed it, the file wins)
+     * @param file - PROPERTIES or EDITOR
+     * @param contents - the file's contents
+     * @param modified_ms - when the file was last modified (milliseconds since the epoch)
+     * @return key -> value to re-apply (NULL: remove)
+     */
+    public synchronized Map<String,String> unsaved(int file,Map<String,String> contents,long modified_ms) {
+        Map<String,String> updates = new LinkedHashMap<String,String>();
+        if (this.m_channel == null || this.m_last_change[file] <= this.m_saved[file]) {
+            return updates;
+        }
+        Map<String,String> checkpoint = null;
+        Map<String,String> unmatched = new LinkedHashMap<String,String>();
+        long first_unsaved = Long.MAX_VALUE;
+        for(Map.Entry<String,Offsets> entry : this.m_index.get(file).entrySet()) {
+            Offsets offsets = entry.getValue();
+            Change last = this.read(offsets.m_offsets[offsets.m_size - 1]);
+            if (last.getSeq() <= this.m_saved[file]) {
+                continue;
+            }
+
+            // the value the file was saved with: the last change saved... or the checkpoint's
+            String saved = null;
+            boolean found = false;
+            long first = last.getTime();
+            for(int i=offsets.m_size - 2;i >= 0 && found == false;--i) {
+                Change change = this.read(offsets.m_offsets[i]);
+                if (change.getSeq() <= this.m_saved[file]) {
+                    saved = change.getValue();
+                    found = true;
+                }
+                else {
+                    first = change.getTime();
+                }
+            }
+            first_unsaved = Math.min(first_unsaved,first);
+            String key = entry.getKey();
+            if (equal(last.getValue(),contents.get(key))) {
+                continue;
+            }
+            if (found == false) {
+                if (checkpoint == null) {
+                    checkpoint = this.readCheckpointFile(file);
+                }
+                saved = checkpoint.get(key);
+                found = checkpoint.containsKey(key);
+            }
+            if (found && equal(saved,contents.get(key))) {
+                updates.put(key,last.getValue());
+            }
+            else {
+                unmatched.put(key,last.getValue());
+            }
+        }
+
+        // not written since the unsaved changes: nothing else changed it
+        if (modified_ms < first_unsaved) {
+            updates.putAll(unmatched);
+        }
+        return updates;
+    }
+
+    /**
+     * Changes re-applied (from unsaved()) are in a snapshot: its save marks them saved
+     * @param file - PROPERTIES or EDITOR
+     * @param version - version of the snapshot holding them
+     */
+    public synchronized void recovered(int file,long version) {
+        this.m_versions.get(file).put(version,this.m_last_change[file]);
+    }
+
+    /**
+     * The changes to a key since a time (from the checkpoint on), read through the key's index
+     * @param file - PROPERTIES or EDITOR
+     * @param key - the key
+     * @param since_ms - earliest change returned (milliseconds since the epoch)
+     * @param limit - most changes returned
+     * @return the changes, newest first
+     */
+    public synchronized List<Change> history(int file,String key,long since_ms,int limit) {
+        List<Change> changes = new ArrayList<Change>();
+        Offsets offsets = (this.m_channel != null) ? this.m_index.get(file).get(key) : null;
+        if (offsets == null) {
+            return changes;
+        }
+        for(int i=offsets.m_size - 1;i >= 0 && changes.size() < limit;--i) {
+            Change change = this.read(offsets.m_offsets[i]);
+            if (change.getTime() < since_ms) {
+                break;
+            }
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    /**
+     * When the history starts (the checkpoint was written)
+     * @return milliseconds since the epoch (0: no checkpoint... the journal holds everything)
+     */
+    public synchronized long getCheckpointTime() {
+        return this.m_checkpoint_time;
+    }
+
+    /**
+     * Changes recorded since the checkpoint
+     * @return the record count
+     */
+    public synchronized int getRecords() {
+        return this.m_records;
+    }
+
+    /**
+     * Last sequence number used
+     * @return the sequence number
+     */
+    public synchronized long getSeq() {
+        return this.m_seq;
+    }
+
+    /**
+     * Fold the journal into a checkpoint (the state of both files now) and start an empty journal
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        if (this.m_channel == null) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        // the state: the checkpoint plus the journal's changes
+        List<Map<String,String>> state = new ArrayList<Map<String,String>>();
+        this.readCheckpoint(state);
+        for(int position = HEADER_BYTES;position < this.m_position;position += RECORD_HEADER_BYTES + this.m_map.getInt(position)) {
+            int body = position + RECORD_HEADER_BYTES;
+            if (this.m_map.get(body + 16) != SAVED && this.m_map.getLong(body) > this.m_checkpoint_seq) {
+                Change change = this.read(position);
+                if (change.getValue() != null) {
+                    state.get(change.getFile()).put(change.getKey(),change.getValue());
+                }
+                else {
+                    state.get(change.getFile()).remove(change.getKey());
+                }
+            }
+        }
+
+        // write the checkpoint... then replace the journal with an empty one continuing from it
+        long now = System.currentTimeMillis();
+        ByteBuffer checkpoint = ByteBuffer.allocate(1024);
+        checkpoint.putInt(CHECKPOINT_MAGIC).putLong(this.m_seq).putLong(now);
+        for(Map<String,String> properties : state) {
+            checkpoint = ensure(checkpoint,4).putInt(properties.size());
+            for(Map.Entry<String,String> entry : properties.entrySet()) {
+                checkpoint = putString(checkpoint,entry.getKey());
+                checkpoint = putString(checkpoint,entry.getValue());
+            }
+        }
+        Utils.atomicWrite(this.m_checkpoint_filename,Arrays.copyOf(checkpoint.array(),checkpoint.position()));
+        this.m_checkpoint_seq = this.m_seq;
+        this.m_checkpoint_time = now;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putLong(this.m_checkpoint_seq).putInt(0);
+        Utils.atomicWrite(this.m_filename,header.array());
+        this.m_channel.close();
+        this.m_channel = FileChannel.open(Paths.get(this.m_filename),StandardOpenOption.READ,StandardOpenOption.WRITE);
+        this.map(MAP_CHUNK);
+        this.m_position = HEADER_BYTES;
+        int records = this.m_records;
+        this.m_records = 0;
+        for(Map<String,Offsets> index : this.m_index) {
+            index.clear();
+        }
+
+        // DEBUG
+        System.out.println("ChangeJournal: compacted " + records + " changes into " + this.m_checkpoint_filename + " in " + ((System.nanoTime() - start) / 1000) + "us");
+    }
+
+    /**
+     * Close the journal (appends are ignored from then on)
+     */
+    public synchronized void close() {
+        if (this.m_channel == null) {
+            return;
+        }
+        try {
+            this.m_map.force();
+            this.m_channel.close();
+        }
+        catch (IOException ex) {
+            System.out.println("ChangeJournal: Unable to close " + this.m_filename + " Exception: " + ex.getMessage());
+        }
+        this.m_channel = null;
+        this.m_map = null;
+    }
+
+    // (re)map the journal with at least the given capacity
+    private void map(int capacity) throws IOException {
+        this.m_map = this.m_channel.map(FileChannel.MapMode.READ_WRITE,0,capacity);
+    }
+
+    // a new journal: the header
+    private void writeHeader() {
+        this.m_map.putInt(0,MAGIC);
+        this.m_map.putLong(4,this.m_checkpoint_seq);
+        this.m_map.putInt(12,0);
+        this.m_map.force();
+    }
+
+    // append a record... returns its offset
+    private int write(long seq,long time_ms,byte type,int file,String user,String key,String value) throws IOException {
+        ByteBuffer record = this.m_record;
+        record.clear();
+        record.position(RECORD_HEADER_BYTES);
+        record.putLong(seq).putLong(time_ms).put(type).put((byte)file);
+        record = putString(record,user);
+        record = putString(record,key);
+        record = putString(record,value);
+        this.m_record = record;
+        int length = record.position() - RECORD_HEADER_BYTES;
+        this.m_crc.reset();
+        this.m_crc.update(record.array(),RECORD_HEADER_BYTES,length);
+        record.putInt(0,length);
+        record.putInt(4,(int)this.m_crc.getValue());
+
+        // grow the mapping (keeping a zero length after the record to end the journal)
+        int needed = this.m_position + record.position() + RECORD_HEADER_BYTES;
+        if (needed > this.m_map.capacity()) {
+            this.map(Math.max(needed + MAP_CHUNK,Math.min(Integer.MAX_VALUE / 2,this.m_map.capacity()) * 2));
+        }
+
+        // the body first, then its length: a record is never seen before it is complete
+        int position = this.m_position;
+        ByteBuffer target = this.m_map.duplicate();
+        target.position(position + 4);
+        target.put(record.array(),4,record.position() - 4);
+        this.m_map.putInt(position,length);
+        this.m_position += record.position();
+        return position;
+    }
+
+    // read the record at an offset
+    private Change read(int position) {
+        ByteBuffer record = this.m_map.duplicate();
+        record.position(position + RECORD_HEADER_BYTES);
+        long seq = record.getLong();
+        long time_ms = record.getLong();
+        record.get();
+        int file = record.get();
+        String user = getString(record);
+        String key = getString(record);
+        String value = getString(record);
+        return new Change(seq,time_ms,user,file,key,value);
+    }
+
+    // read just the key of the record whose body is at an offset
+    private String readKey(int body) {
+        ByteBuffer record = this.m_map.duplicate();
+        record.position(body + BODY_FIXED_BYTES);
+        int length = record.getInt();
+        if (length > 0) {
+            record.position(record.position() + length);
+        }
+        return getString(record);
+    }
+
+    // CRC32 of a mapped range
+    private int crc(int position,int length) {
+        ByteBuffer range = this.m_map.duplicate();
+        range.position(position);
+        range.limit(position + length);
+        this.m_crc.reset();
+        this.m_crc.update(range);
+        return (int)this.m_crc.getValue();
+    }
+
+    // read the checkpoint: its sequence number and time... and its contents (per file) if asked for
+    private void readCheckpoint(List<Map<String,String>> state) throws IOException {
+        if (state != null) {
+            state.clear();
+            for(int i=0;i<FILES;++i) {
+                state.add(new LinkedHashMap<String,String>());
+            }
+        }
+        byte[] bytes = null;
+        try {
+            bytes = Files.readAllBytes(Paths.get(this.m_checkpoint_filename));
+        }
+        catch (NoSuchFileException ex) {
+            return;
+        }
+        ByteBuffer checkpoint = ByteBuffer.wrap(bytes);
+        try {
+            if (checkpoint.getInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a journal checkpoint: " + this.m_checkpoint_filename);
+            }
+            this.m_checkpoint_seq = checkpoint.getLong();
+            this.m_checkpoint_time = checkpoint.getLong();
+            for(int i=0;i<FILES && state != null;++i) {
+                int count = checkpoint.getInt();
+                for(int j=0;j<count;++j) {
+                    String key = getString(checkpoint);
+                    state.get(i).put(key,getString(checkpoint));
+                }
+            }
+        }
+        catch (RuntimeException ex) {
+            throw new IOException("Corrupt journal checkpoint: " + this.m_checkpoint_filename);
+        }
+    }
+
+    // the checkpoint's contents for a file (empty if it cannot be read)
+    private Map<String,String> readCheckpointFile(int file) {
+        List<Map<String,String>> state = new ArrayList<Map<String,String>>();
+        try {
+            this.readCheckpoint(state);
+        }
+        catch (IOException ex) {
+            System.out.println("ChangeJournal: " + ex.getMessage());
+        }
+        return (state.size() > file) ? state.get(file) : new HashMap<String,String>();
+    }
+
+    // append a string (UTF-8, length prefixed... -1 for NULL), growing the buffer as needed
+    private static ByteBuffer putString(ByteBuffer buffer,String value) {
+        if (value == null) {
+            return ensure(buffer,4).putInt(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return ensure(buffer,4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    // read a string written by putString()
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+
+    // make room in a (heap) buffer
+    private static ByteBuffer ensure(ByteBuffer buffer,int more) {
+        if (buffer.remaining() >= more) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,buffer.position() + more));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    // NULL safe equality
+    private static boolean equal(String a,String b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    /**
+     * The journal file kept next to a properties file
+     * @param fq_properties_file - the properties file (fully qualified)
+     * @return the journal file
+     */
+    public static String journalFile(String fq_properties_file) {
+        return new File(fq_properties_file).getAbsolutePath() + SUFFIX;
+    }
+}
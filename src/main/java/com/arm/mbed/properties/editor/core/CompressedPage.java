@@ -0,0 +1,304 @@
+/**
+ * @file    CompressedPage.java
+ * @brief Page template with its literal segments compressed once
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+/**
+ * Compressed Page - a page template whose literal segments are deflated once (as byte aligned, independent deflate blocks)
+ * so that rendering only compresses the slot contents. The segments are spliced into a single gzip or zlib (deflate) stream.
+ * @author Doug Anson
+ */
+public class CompressedPage {
+    /**
+     * gzip content coding
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * deflate (zlib) content coding
+     */
+    public static final String DEFLATE = "deflate";
+
+    // gzip header: magic, deflate, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = { (byte)0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff };
+
+    // zlib header: deflate with a 32K window, default compression (FCHECK makes it a multiple of 31)
+    private static final byte[] ZLIB_HEADER = { (byte)0x78, (byte)0x9c };
+
+    // an empty final block (fixed Huffman, end-of-block only) terminates the spliced deflate stream
+    private static final byte[] FINAL_BLOCK = { 3, 0 };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PageTemplate m_template;
+    private final byte[][] m_raw;                    // literal segments as UTF-8
+    private final byte[][] m_deflated;               // literal segments as independent deflate blocks
+    private final int m_level;                       // compression level for the slot contents
+    private long m_raw_bytes = 0;
+    private long m_deflated_bytes = 0;
+
+    /**
+     * Default constructor - compresses the literal segments (at the best compression, it is only done once)
+     * @param template - the compiled page template
+     * @param level - compression level for the slot contents (rendered per request)
+     */
+    public CompressedPage(PageTemplate template,int level) {
+        this.m_template = template;
+        this.m_level = level;
+        int count = template.getSlotCount() + 1;
+        this.m_raw = new byte[count][];
+        this.m_deflated = new byte[count][];
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION,true);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for(int i = 0; i < count; ++i) {
+                this.m_raw[i] = template.getLiteral(i).getBytes(StandardCharsets.UTF_8);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(this.m_raw[i].length / 4 + 16);
+                if (this.m_raw[i].length > 0) {
+                    deflater.reset();
+                    deflater.setInput(this.m_raw[i]);
+                    CompressedPage.syncFlush(deflater,buffer,out);
+                }
+                this.m_deflated[i] = out.toByteArray();
+                this.m_raw_bytes += this.m_raw[i].length;
+                this.m_deflated_bytes += this.m_deflated[i].length;
+            }
+        }
+        catch (IOException ex) {
+            // not thrown by ByteArrayOutputStream
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Choose a content coding from an Accept-Encoding header (gzip preferred over deflate, q=0 excludes)
+     * @param accept_encoding - the Accept-Encoding header (may be NULL)
+     * @return GZIP, DEFLATE or NULL for identity
+     */
+    public static String negotiate(String accept_encoding) {
+        if (accept_encoding == null) {
+            return null;
+        }
+        double gzip_q = 0.0;
+        double deflate_q = 0.0;
+        double any_q = 0.0;
+        for(String coding : accept_encoding.split(",")) {
+            String name = coding;
+            double q = 1.0;
+            int semi = coding.indexOf(';');
+            if (semi >= 0) {
+                name = coding.substring(0,semi);
+                String param = coding.substring(semi + 1).trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    }
+                    catch (NumberFormatException ex) {
+                        q = 0.0;
+                    }
+                }
+            }
+            name = name.trim().toLowerCase();
+            if (name.equals(GZIP) || name.equals("x-gzip")) {
+                gzip_q = q;
+            }
+            else if (name.equals(DEFLATE)) {
+                deflate_q = q;
+            }
+            else if (name.equals("*")) {
+                any_q = q;
+            }
+        }
+        if (gzip_q == 0.0 && accept_encoding.toLowerCase().contains("gzip") == false) {
+            gzip_q = any_q;
+        }
+        if (gzip_q > 0.0 && gzip_q >= deflate_q) {
+            return GZIP;
+        }
+        if (deflate_q > 0.0) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Render the page compressed with the given coding
+     * @param out - the output stream (closed when done)
+     * @param coding - GZIP or DEFLATE
+     * @param slot_writer - callback filling in the slots
+     * @throws IOException
+     */
+    public void render(OutputStream out,String coding,PageTemplate.SlotWriter slot_writer) throws IOException {
+        SplicedDeflaterOutputStream deflated = new SplicedDeflaterOutputStream(out,coding,this.m_level);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(deflated,StandardCharsets.UTF_8),BUFFER_SIZE);
+        try {
+            int slots = this.m_template.getSlotCount();
+            for(int i = 0; i < slots; ++i) {
+                deflated.writePrecompressed(this.m_raw[i],this.m_deflated[i]);
+                slot_writer.writeSlot(this.m_template.getSlot(i),writer);
+                writer.flush();
+            }
+            deflated.writePrecompressed(this.m_raw[slots],this.m_deflated[slots]);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Size of the literal segments
+     * @return the uncompressed size in bytes
+     */
+    public long getStaticBytes() {
+        return this.m_raw_bytes;
+    }
+
+    /**
+     * Size of the compressed literal segments
+     * @return the compressed size in bytes
+     */
+    public long getStaticCompressedBytes() {
+        return this.m_deflated_bytes;
+    }
+
+    // compress all of the deflater's input and end on a byte boundary (no final block)
+    private static void syncFlush(Deflater deflater,byte[] buffer,OutputStream out) throws IOException {
+        int length = 0;
+        do {
+            length = deflater.deflate(buffer,0,buffer.length,Deflater.SYNC_FLUSH);
+            out.write(buffer,0,length);
+        } while (length == buffer.length);
+    }
+
+    // a gzip/zlib stream made of precompressed segments and segments compressed as they are written
+    private static final class SplicedDeflaterOutputStream extends OutputStream {
+        private final OutputStream m_out;
+        private final boolean m_gzip;
+        private final Checksum m_checksum;
+        private final Deflater m_deflater;
+        private final byte[] m_buffer = new byte[BUFFER_SIZE];
+        private long m_size = 0;
+        private boolean m_segment_open = false;
+        private boolean m_closed = false;
+
+        // constructor - writes the header
+        private SplicedDeflaterOutputStream(OutputStream out,String coding,int level) throws IOException {
+            this.m_out = out;
+            this.m_gzip = GZIP.equals(coding);
+            this.m_checksum = this.m_gzip ? new CRC32() : new Adler32();
+            this.m_deflater = new Deflater(level,true);
+            this.m_out.write(this.m_gzip ? GZIP_HEADER : ZLIB_HEADER);
+        }
+
+        // splice in a precompressed segment (the current segment is ended first)
+        private void writePrecompressed(byte[] raw,byte[] deflated) throws IOException {
+            this.endSegment();
+            this.m_checksum.update(raw,0,raw.length);
+            this.m_size += raw.length;
+            this.m_out.write(deflated);
+        }
+
+        // end the current segment on a byte boundary... the next one cannot refer back into spliced data
+        private void endSegment() throws IOException {
+            if (this.m_segment_open) {
+                CompressedPage.syncFlush(this.m_deflater,this.m_buffer,this.m_out);
+                this.m_deflater.reset();
+                this.m_segment_open = false;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte)b },0,1);
+        }
+
+        @Override
+        public void write(byte[] b,int off,int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            this.m_checksum.update(b,off,len);
+            this.m_size += len;
+            this.m_segment_open = true;
+            this.m_deflater.setInput(b,off,len);
+            while (this.m_deflater.needsInput() == false) {
+                int length = this.m_deflater.deflate(this.m_buffer,0,this.m_buffer.length,Deflater.NO_FLUSH);
+                this.m_out.write(this.m_buffer,0,length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // segments are only flushed at their end (flushing more often costs compression)
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.m_closed) {
+                return;
+            }
+            this.m_closed = true;
+            try {
+                this.endSegment();
+                this.m_out.write(FINAL_BLOCK);
+                long value = this.m_checksum.getValue();
+                if (this.m_gzip) {
+                    // CRC32 and size (mod 2^32), little endian
+                    this.writeInt(value,true);
+                    this.writeInt(this.m_size,true);
+                }
+                else {
+                    // Adler32, big endian
+                    this.writeInt(value,false);
+                }
+            }
+            finally {
+                this.m_deflater.end();
+                this.m_out.close();
+            }
+        }
+
+        // write 32 bits
+        private void writeInt(long value,boolean little_endian) throws IOException {
+            for(int i = 0; i < 4; ++i) {
+                int shift = little_endian ? (i * 8) : ((3 - i) * 8);
+                this.m_out.write((int)((value >>> shift) & 0xff));
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * @file    Json.java
+ * @brief Minimal JSON support for flat string key/value objects
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Json - compact writer and single pass (streaming) reader for flat JSON objects whose values are strings (properties)
+ * @author Doug Anson
+ */
+public class Json {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Malformed JSON
+     */
+    public static class ParseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Default constructor
+         * @param message - what was wrong
+         */
+        public ParseException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The JSON exceeded the allowed size
+     */
+    public static class LimitException extends ParseException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Default constructor
+         * @param max_chars - the limit
+         */
+        public LimitException(long max_chars) {
+            super("JSON exceeds " + max_chars + " characters");
+        }
+    }
+
+    /**
+     * Write a JSON string (quoted and escaped)
+     * @param out - the output
+     * @param value - the string (NULL writes null)
+     * @throws IOException
+     */
+    public static void writeString(Appendable out,String value) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int length = value.length();
+        int start = 0;
+        for(int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(value,start,i);
+            start = i + 1;
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    out.append("\\u00").append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+                    break;
+            }
+        }
+        out.append(value,start,length);
+        out.append('"');
+    }
+
+    /**
+     * Write a flat JSON object
+     * @param out - the output
+     * @param properties - the key/value pairs (in order)
+     * @throws IOException
+     */
+    public static void writeObject(Appendable out,Map<String,String> properties) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for(Map.Entry<String,String> entry : properties.entrySet()) {
+            if (first == false) {
+                out.append(',');
+            }
+            first = false;
+            Json.writeString(out,entry.getKey());
+            out.append(':');
+            Json.writeString(out,entry.getValue());
+        }
+        out.append('}');
+    }
+
+    /**
+     * Read a flat JSON object in a single pass. Values may be strings, numbers or booleans (kept as their text) or null.
+     * @param in - the input (not closed)
+     * @param max_chars - maximum number of characters to read (0 = unlimited)
+     * @return the key/value pairs in document order (null values are kept as NULL)
+     * @throws ParseException if malformed
+     * @throws LimitException if larger than max_chars
+     * @throws IOException
+     */
+    public static Map<String,String> readObject(Reader in,long max_chars) throws IOException {
+        return new Json.Parser(in,max_chars).readObject();
+    }
+
+    // single pass recursive-descent parser over a Reader (one character of lookahead)
+    private static class Parser {
+        private final Reader m_in;
+        private final long m_max_chars;
+        private final StringBuilder m_buffer = new StringBuilder(64);
+        private long m_count = 0;
+        private int m_next = -2;
+
+        // constructor
+        private Parser(Reader in,long max_chars) {
+            this.m_in = in;
+            this.m_max_chars = max_chars;
+        }
+
+        // the object and nothing but whitespace after it
+        private Map<String,String> readObject() throws IOException {
+            Map<String,String> result = new LinkedHashMap<String,String>();
+            this.expect('{');
+            if (this.peekToken() == '}') {
+                this.read();
+            }
+            else {
+                while (true) {
+                    if (this.peekToken() != '"') {
+                        throw new ParseException("expected a string key at character " + this.m_count);
+                    }
+                    String key = this.readString();
+                    this.expect(':');
+                    result.put(key,this.readValue());
+                    int c = this.readToken();
+                    if (c == '}') {
+                        break;
+                    }
+                    if (c != ',') {
+                        throw new ParseException("expected ',' or '}' at character " + this.m_count);
+                    }
+                }
+            }
+            if (this.peekToken() != -1) {
+                throw new ParseException("unexpected content after the object at character " + this.m_count);
+            }
+            return result;
+        }
+
+        // a scalar value as text
+        private String readValue() throws IOException {
+            int c = this.peekToken();
+            if (c == '"') {
+                return this.readString();
+            }
+            this.m_buffer.setLength(0);
+            while ((c = this.peek()) != -1 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+                this.m_buffer.append((char)this.read());
+            }
+            String literal = this.m_buffer.toString();
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || (literal.length() > 0 && (literal.charAt(0) == '-' || Character.isDigit(literal.charAt(0))))) {
+                return literal;
+            }
+            throw new ParseException("expected a string, number, boolean or null value at character " + this.m_count);
+        }
+
+        // a quoted string (opening quote next)
+        private String readString() throws IOException {
+            this.read();
+            this.m_buffer.setLength(0);
+            while (true) {
+                int c = this.read();
+                if (c == -1) {
+                    throw new ParseException("unterminated string");
+                }
+                if (c == '"') {
+                    return this.m_buffer.toString();
+                }
+                if (c < 0x20) {
+                    throw new ParseException("control character in string at character " + this.m_count);
+                }
+                if (c != '\\') {
+                    this.m_buffer.append((char)c);
+                    continue;
+                }
+                c = this.read();
+                switch (c) {
+                    case '"':  this.m_buffer.append('"'); break;
+                    case '\\': this.m_buffer.append('\\'); break;
+                    case '/':  this.m_buffer.append('/'); break;
+                    case 'b':  this.m_buffer.append('\b'); break;
+                    case 'f':  this.m_buffer.append('\f'); break;
+                    case 'n':  this.m_buffer.append('\n'); break;
+                    case 'r':  this.m_buffer.append('\r'); break;
+                    case 't':  this.m_buffer.append('\t'); break;
+                    case 'u':
+                        int value = 0;
+                        for(int i = 0; i < 4; ++i) {
+                            int digit = Character.digit(this.read(),16);
+                            if (digit < 0) {
+                                throw new ParseException("bad \\u escape at character " + this.m_count);
+                            }
+                            value = (value << 4) | digit;
+                        }
+                        this.m_buffer.append((char)value);
+                        break;
+                    default:
+                        throw new ParseException("bad escape at character " + this.m_count);
+                }
+            }
+        }
+
+        // the next non-whitespace character must be c
+        private void expect(char c) throws IOException {
+            if (this.readToken() != c) {
+                throw new ParseException("expected '" + c + "' at character " + this.m_count);
+            }
+        }
+
+        // next non-whitespace character (consumed)
+        private int readToken() throws IOException {
+            this.peekToken();
+            return this.read();
+        }
+
+        // next non-whitespace character (not consumed)
+        private int peekToken() throws IOException {
+            int c = this.peek();
+            while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                this.read();
+                c = this.peek();
+            }
+            return c;
+        }
+
+        // next character (not consumed)
+        private int peek() throws IOException {
+            if (this.m_next == -2) {
+                this.m_next = this.m_in.read();
+                if (this.m_next != -1 && ++this.m_count > this.m_max_chars && this.m_max_chars > 0) {
+                    throw new LimitException(this.m_max_chars);
+                }
+            }
+            return this.m_next;
+        }
+
+        // next character (consumed)
+        private int read() throws IOException {
+            int c = this.peek();
+            this.m_next = -2;
+            return c;
+        }
+    }
+}
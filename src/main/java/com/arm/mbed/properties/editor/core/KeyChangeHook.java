@@ -0,0 +1,44 @@
+/**
+ * @file    KeyChangeHook.java
+ * @brief Side effect fired when specific property keys change
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.Set;
+
+/**
+ * Key Change Hook - a side effect (i.e. syncing credentials) fired only when one of its keys changes value
+ * @author Doug Anson
+ */
+public interface KeyChangeHook {
+    /**
+     * The keys this hook watches
+     * @return the watched keys
+     */
+    public String[] getKeys();
+
+    /**
+     * One or more of the watched keys changed (added, removed or given a new value)
+     * @param snapshot - the snapshot containing the change
+     * @param changed - the watched keys that changed
+     */
+    public void keysChanged(PropertiesSnapshot snapshot,Set<String> changed);
+}
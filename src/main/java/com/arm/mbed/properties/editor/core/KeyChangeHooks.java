@@ -0,0 +1,91 @@
+/**
+ * @file    KeyChangeHooks.java
+ * @brief Fires key change hooks when a store publishes a snapshot
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Key Change Hooks - compares only the watched keys of each published snapshot with the previous one and fires the hooks whose keys changed
+ * @author Doug Anson
+ */
+public class KeyChangeHooks implements PropertiesStore.Listener {
+    private final CopyOnWriteArrayList<KeyChangeHook> m_hooks = new CopyOnWriteArrayList<KeyChangeHook>();
+    private final AtomicLong m_fired = new AtomicLong(0);
+
+    /**
+     * Default constructor
+     */
+    public KeyChangeHooks() {
+    }
+
+    /**
+     * Add a hook
+     * @param hook - the hook
+     */
+    public void add(KeyChangeHook hook) {
+        this.m_hooks.add(hook);
+    }
+
+    /**
+     * Number of times a hook has been fired
+     * @return the fired count
+     */
+    public long getFired() {
+        return this.m_fired.get();
+    }
+
+    /**
+     * Called (serialized, in publish order) for every published snapshot
+     * @param previous - the snapshot replaced
+     * @param current - the published snapshot
+     */
+    @Override
+    public void published(PropertiesSnapshot previous,PropertiesSnapshot current) {
+        for(KeyChangeHook hook : this.m_hooks) {
+            Set<String> changed = null;
+            for(String key : hook.getKeys()) {
+                String before = previous.get(key);
+                String after = current.get(key);
+                if (before == null ? after != null : before.equals(after) == false) {
+                    if (changed == null) {
+                        changed = new LinkedHashSet<String>();
+                    }
+                    changed.add(key);
+                }
+            }
+            if (changed != null) {
+                this.m_fired.incrementAndGet();
+                try {
+                    hook.keysChanged(current,changed);
+                }
+                catch (RuntimeException ex) {
+                    // a failing side effect must never fail the edit itself
+                    System.out.println("KeyChangeHooks: Exception caught in hook for: " + changed + " Exception: " + ex.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * @file    KeyIndex.java
+ * @brief Sorted prefix index over the property keys and their human readable labels
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Key Index - the keys of a snapshot and their labels as lower case terms in one sorted array, so prefix queries are a
+ * binary search plus a scan of the matches. Like the snapshots it indexes, an index is immutable: edits publish a new
+ * index with the changed keys' entries binary searched into place (no rescan or re-sort of the properties). Reloaded snapshots are reindexed
+ * lazily on the next query.
+ * @author Doug Anson
+ */
+public class KeyIndex {
+    // defaults
+    public static final int DEFAULT_LIMIT = 20;
+
+    // the human readable labels (may be NULL)
+    private final Map<String,String> m_labels;
+
+    // the current index
+    private volatile Index m_index = null;
+
+    // statistics
+    private final AtomicLong m_rebuilds = new AtomicLong(0);
+    private final AtomicLong m_updates = new AtomicLong(0);
+
+    // an immutable index: terms sorted (ties by key) with the key each term belongs to
+    private static final class Index {
+        private final long m_version;
+        private final String[] m_terms;
+        private final String[] m_keys;
+
+        private Index(long version,String[] terms,String[] keys) {
+            this.m_version = version;
+            this.m_terms = terms;
+            this.m_keys = keys;
+        }
+
+        // the first entry at or after (term,key)
+        private int lowerBound(String term,String key) {
+            int low = 0;
+            int high = this.m_terms.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (KeyIndex.compare(this.m_terms[middle],this.m_keys[middle],term,key) < 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    // a (term,key) entry being added
+    private static final class Entry implements Comparable<Entry> {
+        private final String m_term;
+        private final String m_key;
+
+        private Entry(String term,String key) {
+            this.m_term = term;
+            this.m_key = key;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return KeyIndex.compare(this.m_term,this.m_key,other.m_term,other.m_key);
+        }
+    }
+
+    /**
+     * Default constructor
+     * @param labels - the human readable labels of the keys (may be NULL)
+     */
+    public KeyIndex(Map<String,String> labels) {
+        this.m_labels = labels;
+    }
+
+    /**
+     * Index all keys of a snapshot
+     * @param snapshot - the snapshot
+     */
+    public synchronized void rebuild(PropertiesSnapshot snapshot) {
+        List<Entry> entries = new ArrayList<Entry>(snapshot.size() + 16);
+        for(String key : snapshot.keys()) {
+            this.addEntries(entries,key);
+        }
+        Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted);
+        String[] terms = new String[sorted.length];
+        String[] keys = new String[sorted.length];
+        for(int i=0;i<sorted.length;++i) {
+            terms[i] = sorted[i].m_term;
+            keys[i] = sorted[i].m_key;
+        }
+        this.m_index = new Index(snapshot.getVersion(),terms,keys);
+        this.m_rebuilds.incrementAndGet();
+    }
+
+    /**
+     * Bring the index in line with an edit: only keys added or removed by it change the index (values are not indexed).
+     * If the index was not built from the edited snapshot (or other edits were published in between) it is left to be rebuilt
+     * on the next query.
+     * @param previous - the snapshot the edit was applied to
+     * @param current - the published snapshot
+     * @param touched - the keys the edit may have added or removed
+     */
+    public synchronized void update(PropertiesSnapshot previous,PropertiesSnapshot current,Collection<String> touched) {
+        Index index = this.m_index;
+        if (index == null || index.m_version != previous.getVersion() || current.getVersion() != previous.getVersion() + 1) {
+            return;
+        }
+
+        // the entries of the keys that came and went
+        List<Entry> removed = new ArrayList<Entry>();
+        List<Entry> added = new ArrayList<Entry>();
+        for(String key : touched) {
+            if (key == null) {
+                continue;
+            }
+            boolean before = previous.containsKey(key);
+            boolean after = current.containsKey(key);
+            if (before && after == false) {
+                this.addEntries(removed,key);
+            }
+            else if (before == false && after) {
+                this.addEntries(added,key);
+            }
+        }
+
+        // positions: binary searched in the current entries (removed entries that are not indexed are ignored)
+        int size = index.m_terms.length;
+        int[] removals = new int[removed.size()];
+        int removal_count = 0;
+        for(Entry entry : removed) {
+            int position = index.lowerBound(entry.m_term,entry.m_key);
+            if (position < size && index.m_terms[position].equals(entry.m_term) && index.m_keys[position].equals(entry.m_key)) {
+                removals[removal_count++] = position;
+            }
+        }
+        Arrays.sort(removals,0,removal_count);
+        Entry[] additions = added.toArray(new Entry[added.size()]);
+        Arrays.sort(additions);
+        if (removal_count == 0 && additions.length == 0) {
+            this.m_index = new Index(current.getVersion(),index.m_terms,index.m_keys);
+            this.m_updates.incrementAndGet();
+            return;
+        }
+
+        // copy the unchanged runs between the positions, inserting the added entries and skipping the removed ones
+        String[] terms = new String[size - removal_count + additions.length];
+        String[] keys = new String[terms.length];
+        int from = 0;
+        int to = 0;
+        int r = 0;
+        int a = 0;
+        while (r < removal_count || a < additions.length) {
+            int insert_at = (a < additions.length) ? index.lowerBound(additions[a].m_term,additions[a].m_key) : size;
+            int remove_at = (r < removal_count) ? removals[r] : size;
+            int position = Math.min(insert_at,remove_at);
+            System.arraycopy(index.m_terms,from,terms,to,position - from);
+            System.arraycopy(index.m_keys,from,keys,to,position - from);
+            to += position - from;
+            from = position;
+            if (insert_at <= remove_at) {
+                terms[to] = additions[a].m_term;
+                keys[to] = additions[a].m_key;
+                ++to;
+                ++a;
+            }
+            else {
+                ++from;
+                ++r;
+            }
+        }
+        System.arraycopy(index.m_terms,from,terms,to,size - from);
+        System.arraycopy(index.m_keys,from,keys,to,size - from);
+        this.m_index = new Index(current.getVersion(),terms,keys);
+        this.m_updates.incrementAndGet();
+    }
+
+    /**
+     * Find the keys whose key or label starts with a prefix (case insensitive), in term order
+     * @param snapshot - the current snapshot (the index is rebuilt first if it is older)
+     * @param prefix - the prefix
+     * @param limit - most keys returned
+     * @return the matching keys and their labels (the key itself if it has no label)
+     */
+    public Map<String,String> search(PropertiesSnapshot snapshot,String prefix,int limit) {
+        Index index = this.m_index;
+        if (index == null || index.m_version < snapshot.getVersion()) {
+            synchronized (this) {
+                index = this.m_index;
+                if (index == null || index.m_version < snapshot.getVersion()) {
+                    this.rebuild(snapshot);
+                    index = this.m_index;
+                }
+            }
+        }
+
+        // binary search to the first match, then scan the matches
+        String term = (prefix != null) ? prefix.toLowerCase(Locale.ROOT) : "";
+        Map<String,String> matches = new LinkedHashMap<String,String>();
+        for(int i=index.lowerBound(term,"");i < index.m_terms.length && matches.size() < limit && index.m_terms[i].startsWith(term);++i) {
+            String key = index.m_keys[i];
+            if (matches.containsKey(key) == false) {
+                matches.put(key,this.getLabel(key));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Drop the index (i.e. the store was unloaded)... it is rebuilt on the next query
+     */
+    public synchronized void clear() {
+        this.m_index = null;
+    }
+
+    /**
+     * Number of indexed terms (keys and labels)
+     * @return the term count
+     */
+    public int size() {
+        Index index = this.m_index;
+        return (index != null) ? index.m_terms.length : 0;
+    }
+
+    /**
+     * Number of full (re)builds
+     * @return the rebuild count
+     */
+    public long getRebuilds() {
+        return this.m_rebuilds.get();
+    }
+
+    /**
+     * Number of incremental updates
+     * @return the update count
+     */
+    public long getUpdates() {
+        return this.m_updates.get();
+    }
+
+    // the terms of a key: the key and its label (if it has a different one)
+    private void addEntries(List<Entry> entries,String key) {
+        String key_term = key.toLowerCase(Locale.ROOT);
+        entries.add(new Entry(key_term,key));
+        String label = this.getLabel(key);
+        if (label != key) {
+            String label_term = label.toLowerCase(Locale.ROOT);
+            if (label_term.equals(key_term) == false) {
+                entries.add(new Entry(label_term,key));
+            }
+        }
+    }
+
+    // the label of a key (the key itself if it has none)
+    private String getLabel(String key) {
+        if (this.m_labels != null) {
+            String label = this.m_labels.get(key);
+            if (label != null) {
+                return label;
+            }
+        }
+        return key;
+    }
+
+    // entry order: by term, then key
+    private static int compare(String term1,String key1,String term2,String key2) {
+        int result = term1.compareTo(term2);
+        return (result != 0) ? result : key1.compareTo(key2);
+    }
+}
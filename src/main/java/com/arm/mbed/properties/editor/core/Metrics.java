@@ -0,0 +1,377 @@
+/**
+ * @file    Metrics.java
+ * @brief Lock-free counters and latency timers exported in the Prometheus text format
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics - a registry of counters, latency timers and sampled values. Recording is lock-free (striped adders and an
+ * atomic bucket array, no allocation) so instrumenting a hot path costs a couple of System.nanoTime() calls. Timers keep
+ * log-linear buckets (8 per power of two, so quantiles are within ~6%) over the life of the process and are exported as
+ * Prometheus summaries (p50/p90/p99, sum and count... rates come from rate() over the count).
+ * @author Doug Anson
+ */
+public class Metrics {
+    /**
+     * Content type of the exposition format
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // metric types
+    public static final String COUNTER = "counter";
+    public static final String GAUGE = "gauge";
+    public static final String SUMMARY = "summary";
+
+    // exported quantiles
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    // timer buckets: 8 sub buckets per power of two of nanoseconds
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * A value sampled when the metrics are exported (i.e. an existing statistic)
+     */
+    public interface Source {
+        /**
+         * Sample the value
+         * @return the current value
+         */
+        public double sample();
+    }
+
+    /**
+     * A monotonic counter
+     */
+    public static final class Counter {
+        private final LongAdder m_value = new LongAdder();
+
+        private Counter() {
+        }
+
+        /**
+         * Add one
+         */
+        public void increment() {
+            this.m_value.increment();
+        }
+
+        /**
+         * Add an amount
+         * @param amount - the amount (not negative)
+         */
+        public void add(long amount) {
+            this.m_value.add(amount);
+        }
+
+        /**
+         * Current value
+         * @return the count
+         */
+        public long get() {
+            return this.m_value.sum();
+        }
+    }
+
+    /**
+     * A latency timer: count, total and the distribution of the recorded durations
+     */
+    public static final class Timer {
+        private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder m_count = new LongAdder();
+        private final LongAdder m_sum_ns = new LongAdder();
+
+        private Timer() {
+        }
+
+        /**
+         * Record the time since a start
+         * @param start_ns - System.nanoTime() when the timed phase started
+         */
+        public void stop(long start_ns) {
+            this.record(System.nanoTime() - start_ns);
+        }
+
+        /**
+         * Record a duration
+         * @param duration_ns - the duration in nanoseconds (negative durations count as 0)
+         */
+        public void record(long duration_ns) {
+            long duration = Math.max(0,duration_ns);
+            this.m_buckets.incrementAndGet(Metrics.bucket(duration));
+            this.m_count.increment();
+            this.m_sum_ns.add(duration);
+        }
+
+        /**
+         * Number of recorded durations
+         * @return the count
+         */
+        public long getCount() {
+            return this.m_count.sum();
+        }
+
+        /**
+         * Total of the recorded durations
+         * @return the total in nanoseconds
+         */
+        public long getSumNanos() {
+            return this.m_sum_ns.sum();
+        }
+
+        /**
+         * Estimated quantile of the recorded durations
+         * @param quantile - the quantile (0..1)
+         * @return the duration in nanoseconds (the middle of its bucket... 0 if nothing was recorded)
+         */
+        public long getQuantileNanos(double quantile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for(int i=0;i<BUCKETS;++i) {
+                counts[i] = this.m_buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1,(long)Math.ceil(quantile * total));
+            long seen = 0;
+            for(int i=0;i<BUCKETS;++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Metrics.lowerBound(i) + (Metrics.lowerBound(i + 1) - Metrics.lowerBound(i)) / 2;
+                }
+            }
+            return Metrics.lowerBound(BUCKETS - 1);
+        }
+    }
+
+    /**
+     * A stream counting the bytes written through it
+     */
+    public static final class CountingOutputStream extends FilterOutputStream {
+        private final Counter m_counter;
+
+        /**
+         * Default constructor
+         * @param out - the stream written to
+         * @param counter - the counter the written bytes are added to
+         */
+        public CountingOutputStream(OutputStream out,Counter counter) {
+            super(out);
+            this.m_counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.m_counter.increment();
+        }
+
+        @Override
+        public void write(byte[] b,int off,int len) throws IOException {
+            this.out.write(b,off,len);
+            this.m_counter.add(len);
+        }
+    }
+
+    // a metric family: its help and type, and the instruments by their labels
+    private static final class Family {
+        private final String m_help;
+        private final String m_type;
+        private final LinkedHashMap<String,Object> m_instruments = new LinkedHashMap<String,Object>();
+
+        private Family(String help,String type) {
+            this.m_help = help;
+            this.m_type = type;
+        }
+    }
+
+    // families by name (in registration order)
+    private final LinkedHashMap<String,Family> m_families = new LinkedHashMap<String,Family>();
+
+    /**
+     * Default constructor
+     */
+    public Metrics() {
+    }
+
+    /**
+     * Get (or register) a counter
+     * @param name - the metric name (i.e. "properties_editor_saves_total")
+     * @param help - what it counts
+     * @param labels - its labels (i.e. "phase=\"save\""... "" for none)
+     * @return the counter
+     */
+    public Counter counter(String name,String help,String labels) {
+        return (Counter)this.instrument(name,help,COUNTER,labels);
+    }
+
+    /**
+     * Get (or register) a timer
+     * @param name - the metric name (i.e. "properties_editor_phase_seconds")
+     * @param help - what it times
+     * @param labels - its labels (i.e. "phase=\"save\""... "" for none)
+     * @return the timer
+     */
+    public Timer timer(String name,String help,String labels) {
+        return (Timer)this.instrument(name,help,SUMMARY,labels);
+    }
+
+    /**
+     * Register (or replace) a value sampled on export
+     * @param name - the metric name
+     * @param help - what it is
+     * @param type - COUNTER or GAUGE
+     * @param labels - its labels ("" for none)
+     * @param source - samples the value
+     */
+    public synchronized void register(String name,String help,String type,String labels,Source source) {
+        this.family(name,help,type).m_instruments.put(labels,source);
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format
+     * @param out - where to write
+     * @throws IOException
+     */
+    public void write(Appendable out) throws IOException {
+        List<Map.Entry<String,Family>> families = null;
+        synchronized (this) {
+            families = new ArrayList<Map.Entry<String,Family>>(this.m_families.entrySet());
+        }
+        for(Map.Entry<String,Family> entry : families) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            List<Map.Entry<String,Object>> instruments = null;
+            synchronized (this) {
+                instruments = new ArrayList<Map.Entry<String,Object>>(family.m_instruments.entrySet());
+            }
+            out.append("# HELP ").append(name).append(' ').append(family.m_help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.m_type).append('\n');
+            for(Map.Entry<String,Object> instrument : instruments) {
+                String labels = instrument.getKey();
+                Object value = instrument.getValue();
+                if (value instanceof Counter) {
+                    Metrics.sample(out,name,labels,null,Long.toString(((Counter)value).get()));
+                }
+                else if (value instanceof Timer) {
+                    Timer timer = (Timer)value;
+                    for(double quantile : QUANTILES) {
+                        Metrics.sample(out,name,labels,"quantile=\"" + quantile + "\"",Metrics.seconds(timer.getQuantileNanos(quantile)));
+                    }
+                    Metrics.sample(out,name + "_sum",labels,null,Metrics.seconds(timer.getSumNanos()));
+                    Metrics.sample(out,name + "_count",labels,null,Long.toString(timer.getCount()));
+                }
+                else if (value instanceof Source) {
+                    Metrics.sample(out,name,labels,null,Metrics.number(((Source)value).sample()));
+                }
+            }
+        }
+    }
+
+    // get or create an instrument
+    private synchronized Object instrument(String name,String help,String type,String labels) {
+        Family family = this.family(name,help,type);
+        Object instrument = family.m_instruments.get(labels);
+        if (instrument == null) {
+            instrument = type.equals(SUMMARY) ? new Timer() : new Counter();
+            family.m_instruments.put(labels,instrument);
+        }
+        return instrument;
+    }
+
+    // get or create a family (a name is registered with one type only)
+    private Family family(String name,String help,String type) {
+        Family family = this.m_families.get(name);
+        if (family == null) {
+            family = new Family(help,type);
+            this.m_families.put(name,family);
+        }
+        else if (family.m_type.equals(type) == false) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.m_type + " not a " + type);
+        }
+        return family;
+    }
+
+    // one sample line: name{labels,extra} value
+    private static void sample(Appendable out,String name,String labels,String extra,String value) throws IOException {
+        out.append(name);
+        if (labels.length() > 0 || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null) {
+                if (labels.length() > 0) {
+                    out.append(',');
+                }
+                out.append(extra);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    // nanoseconds as seconds
+    private static String seconds(long nanos) {
+        return Metrics.number(nanos / 1e9);
+    }
+
+    // a sample value (integral values without a fraction)
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long)value);
+        }
+        return Double.toString(value);
+    }
+
+    // the bucket of a duration: exact below 8ns, then 8 linear sub buckets per power of two
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int)nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // the smallest duration of a bucket
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        if (exponent >= 63) {
+            return Long.MAX_VALUE;
+        }
+        return (long)(SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+}
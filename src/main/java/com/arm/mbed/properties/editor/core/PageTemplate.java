@@ -0,0 +1,127 @@
+/**
+ * @file    PageTemplate.java
+ * @brief Pre-split HTML page template rendered straight to a Writer
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Page Template - the page split once into literal segments and named slots so it can be streamed without building the whole page in memory
+ * @author Doug Anson
+ */
+public class PageTemplate {
+    /**
+     * Callback used to fill in a slot while rendering
+     */
+    public interface SlotWriter {
+        /**
+         * Write the content of the named slot
+         * @param slot - the slot name (as passed to compile())
+         * @param out - the output writer
+         * @throws IOException
+         */
+        public void writeSlot(String slot,Writer out) throws IOException;
+    }
+
+    private final String[] m_literals;                   // literal segments (always one more than the slots)
+    private final String[] m_slots;                      // slot names between the literal segments
+
+    // constructor
+    private PageTemplate(String[] literals,String[] slots) {
+        this.m_literals = literals;
+        this.m_slots = slots;
+    }
+
+    /**
+     * Compile a page template by splitting it at each occurrence of the slot names
+     * @param html - the (already substituted) page contents
+     * @param slot_names - slot markers to split on
+     * @return the compiled page template
+     */
+    public static PageTemplate compile(String html,String... slot_names) {
+        ArrayList<String> literals = new ArrayList<String>();
+        ArrayList<String> slots = new ArrayList<String>();
+        int start = 0;
+        while (true) {
+            // find the earliest slot marker from the current position
+            int found = -1;
+            String found_slot = null;
+            for(int i=0;i<slot_names.length;++i) {
+                int index = html.indexOf(slot_names[i],start);
+                if (index >= 0 && (found < 0 || index < found)) {
+                    found = index;
+                    found_slot = slot_names[i];
+                }
+            }
+            if (found < 0) {
+                break;
+            }
+            literals.add(html.substring(start,found));
+            slots.add(found_slot);
+            start = found + found_slot.length();
+        }
+        literals.add(html.substring(start));
+        return new PageTemplate(literals.toArray(new String[literals.size()]),slots.toArray(new String[slots.size()]));
+    }
+
+    /**
+     * Number of slots (there is always one more literal segment)
+     * @return the slot count
+     */
+    public int getSlotCount() {
+        return this.m_slots.length;
+    }
+
+    /**
+     * Get a slot name
+     * @param index - the slot index
+     * @return the slot name
+     */
+    public String getSlot(int index) {
+        return this.m_slots[index];
+    }
+
+    /**
+     * Get a literal segment (segment i precedes slot i, the last one follows the last slot)
+     * @param index - the literal index
+     * @return the literal segment
+     */
+    public String getLiteral(int index) {
+        return this.m_literals[index];
+    }
+
+    /**
+     * Render the page to the given writer
+     * @param out - the output writer
+     * @param slot_writer - callback filling in the slots
+     * @throws IOException
+     */
+    public void render(Writer out,SlotWriter slot_writer) throws IOException {
+        for(int i=0;i<this.m_slots.length;++i) {
+            out.write(this.m_literals[i]);
+            slot_writer.writeSlot(this.m_slots[i],out);
+        }
+        out.write(this.m_literals[this.m_slots.length]);
+    }
+}
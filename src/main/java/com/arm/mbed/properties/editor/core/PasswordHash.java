@@ -0,0 +1,113 @@
+/**
+ * @file    PasswordHash.java
+ * @brief PBKDF2 password hashes for the editor's admin credentials
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Password Hash - salted PBKDF2 (HMAC-SHA256) hashes stored as "pbkdf2_sha256$iterations$salt$hash" (base64 salt and hash)
+ * @author Doug Anson
+ */
+public class PasswordHash {
+    /**
+     * Prefix of a stored hash
+     */
+    public static final String PREFIX = "pbkdf2_sha256$";
+
+    // defaults
+    public static final int DEFAULT_ITERATIONS = 210000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Is the value a stored hash (as opposed to a legacy plaintext password)?
+     * @param value - the stored value
+     * @return true if it is a hash, false otherwise
+     */
+    public static boolean isHash(String value) {
+        return value != null && value.startsWith(PREFIX);
+    }
+
+    /**
+     * Hash a password with a new random salt
+     * @param password - the password
+     * @param iterations - PBKDF2 iterations
+     * @return the stored form of the hash
+     */
+    public static String hash(String password,int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return PREFIX + iterations + "$" + Utils.base64_encode(salt) + "$" + Utils.base64_encode(PasswordHash.pbkdf2(password,salt,iterations,HASH_BITS));
+    }
+
+    /**
+     * Verify a password against a stored hash (constant time comparison). This runs the KDF: callers should cache the result.
+     * @param stored - the stored hash
+     * @param password - the password to check
+     * @return true if the password matches, false otherwise (including malformed hashes)
+     */
+    public static boolean verify(String stored,String password) {
+        if (PasswordHash.isHash(stored) == false || password == null) {
+            return false;
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            byte[] salt = Utils.base64_decode(parts[1]);
+            byte[] expected = Utils.base64_decode(parts[2]);
+            if (iterations <= 0 || salt.length == 0 || expected.length == 0) {
+                return false;
+            }
+            return MessageDigest.isEqual(expected,PasswordHash.pbkdf2(password,salt,iterations,expected.length * 8));
+        }
+        catch (RuntimeException ex) {
+            // malformed iterations/base64
+            return false;
+        }
+    }
+
+    // PBKDF2-HMAC-SHA256
+    private static byte[] pbkdf2(String password,byte[] salt,int iterations,int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(),salt,iterations,bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        }
+        catch (GeneralSecurityException ex) {
+            // PBKDF2WithHmacSHA256 is always available (Java 8+)
+            throw new IllegalStateException(ex);
+        }
+        finally {
+            spec.clearPassword();
+        }
+    }
+}
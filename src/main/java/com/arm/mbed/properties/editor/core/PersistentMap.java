@@ -0,0 +1,703 @@
+/**
+ * @file    PersistentMap.java
+ * @brief Immutable, insertion ordered map whose versions share their unchanged parts
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Persistent Map - an immutable String map iterated in insertion order (like a LinkedHashMap). Keys are looked up
+ * through a hash array mapped trie (HAMT) and the order is kept in a radix trie indexed by insertion sequence: a change
+ * copies only the (at most 7) nodes on the path to the changed entry, so versions share everything else and keeping N
+ * of them costs memory in proportion to the changed keys. Changes are made through an Editor, which updates the nodes it
+ * copied in place (a batch of changes copies each node once).
+ * @author Doug Anson
+ */
+public final class PersistentMap extends AbstractMap<String,String> {
+    /**
+     * The empty map
+     */
+    public static final PersistentMap EMPTY = new PersistentMap(null,null,0,0,0);
+
+    // trie geometry: 32 way nodes
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    // removed keys leave holes in the order trie: renumbered once they outnumber the entries (and this)
+    private static final int MAX_HOLES = WIDTH * WIDTH;
+
+    // an entry: a leaf of the HAMT (by hash) and of the order trie (by insertion sequence)
+    private static final class Leaf implements Map.Entry<String,String> {
+        private final String m_key;
+        private final String m_value;
+        private final int m_hash;
+        private final int m_seq;
+
+        private Leaf(String key,String value,int hash,int seq) {
+            this.m_key = key;
+            this.m_value = value;
+            this.m_hash = hash;
+            this.m_seq = seq;
+        }
+
+        @Override
+        public String getKey() {
+            return this.m_key;
+        }
+
+        @Override
+        public String getValue() {
+            return this.m_value;
+        }
+
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if ((other instanceof Map.Entry) == false) {
+                return false;
+            }
+            Map.Entry<?,?> entry = (Map.Entry<?,?>)other;
+            return this.m_key.equals(entry.getKey()) && equal(this.m_value,entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.m_key.hashCode() ^ ((this.m_value != null) ? this.m_value.hashCode() : 0);
+        }
+
+        @Override
+        public String toString() {
+            return this.m_key + "=" + this.m_value;
+        }
+    }
+
+    // HAMT node: a bitmap of the slots in use and (packed) for each a Leaf, a Collision or a Node one level down
+    private static final class Node {
+        private final Object m_owner;
+        private int m_bitmap;
+        private Object[] m_slots;
+
+        private Node(Object owner,int bitmap,Object[] slots) {
+            this.m_owner = owner;
+            this.m_bitmap = bitmap;
+            this.m_slots = slots;
+        }
+    }
+
+    // entries whose (whole) hashes are the same
+    private static final class Collision {
+        private final int m_hash;
+        private final Leaf[] m_entries;
+
+        private Collision(int hash,Leaf[] entries) {
+            this.m_hash = hash;
+            this.m_entries = entries;
+        }
+    }
+
+    // order trie node: WIDTH slots of Entries (leaves) or of OrderNodes one level down
+    private static final class OrderNode {
+        private final Object m_owner;
+        private final Object[] m_slots;
+
+        private OrderNode(Object owner,Object[] slots) {
+            this.m_owner = owner;
+            this.m_slots = slots;
+        }
+    }
+
+    private final Object m_root;            // NULL, a Leaf, a Collision or a Node
+    private final OrderNode m_order;        // NULL when empty
+    private final int m_shift;              // shift of the order trie's root
+    private final int m_size;
+    private final int m_next_seq;           // sequence of the next key added
+
+    // constructor
+    private PersistentMap(Object root,OrderNode order,int shift,int size,int next_seq) {
+        this.m_root = root;
+        this.m_order = order;
+        this.m_shift = shift;
+        this.m_size = size;
+        this.m_next_seq = next_seq;
+    }
+
+    /**
+     * A persistent copy of a map (in its iteration order)
+     * @param map - the map
+     * @return the persistent map
+     */
+    public static PersistentMap from(Map<String,String> map) {
+        if (map instanceof PersistentMap) {
+            return (PersistentMap)map;
+        }
+        Editor editor = EMPTY.edit();
+        editor.putAll(map);
+        return editor.persistent();
+    }
+
+    /**
+     * An editor starting from this map (which is not changed)
+     * @return the editor
+     */
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * This map with a key set
+     * @param key - the key
+     * @param value - the value
+     * @return the new map (this one if the value is the same)
+     */
+    public PersistentMap with(String key,String value) {
+        Editor editor = this.edit();
+        editor.put(key,value);
+        return editor.persistent();
+    }
+
+    /**
+     * This map without a key
+     * @param key - the key
+     * @return the new map (this one if the key is not present)
+     */
+    public PersistentMap without(String key) {
+        Editor editor = this.edit();
+        editor.remove(key);
+        return editor.persistent();
+    }
+
+    @Override
+    public String get(Object key) {
+        Leaf entry = (key instanceof String) ? find(this.m_root,(String)key) : null;
+        return (entry != null) ? entry.m_value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof String) && find(this.m_root,(String)key) != null;
+    }
+
+    @Override
+    public int size() {
+        return this.m_size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.m_size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String,String>> entrySet() {
+        return new AbstractSet<Map.Entry<String,String>>() {
+            @Override
+            public Iterator<Map.Entry<String,String>> iterator() {
+                return new OrderIterator(PersistentMap.this,null);
+            }
+
+            @Override
+            public int size() {
+                return m_size;
+            }
+        };
+    }
+
+    /**
+     * The changes from one map to another: only the parts they do not share are compared
+     * @param from - the earlier map
+     * @param to - the later map
+     * @return key -> value in "to" (NULL: removed) for each key added, changed or removed
+     */
+    public static Map<String,String> diff(PersistentMap from,PersistentMap to) {
+        Map<String,String> changes = new LinkedHashMap<String,String>();
+        diff(from.m_root,to.m_root,0,changes);
+        return changes;
+    }
+
+    /**
+     * Changes to a persistent map: a mutable map (iterated in insertion order) whose persistent() result shares the
+     * unchanged parts of the map it started from. Not thread safe.
+     */
+    public static final class Editor extends AbstractMap<String,String> {
+        private final PersistentMap m_source;
+        private Object m_owner = new Object();     // nodes created (or copied) by this editor are changed in place
+        private Object m_root;
+        private OrderNode m_order;
+        private int m_shift;
+        private int m_size;
+        private int m_next_seq;
+        private int m_modifications = 0;
+
+        // constructor
+        private Editor(PersistentMap map) {
+            this.m_source = map;
+            this.m_root = map.m_root;
+            this.m_order = map.m_order;
+            this.m_shift = map.m_shift;
+            this.m_size = map.m_size;
+            this.m_next_seq = map.m_next_seq;
+        }
+
+        /**
+         * The edited map... further changes are made to copies
+         * @return the persistent map (the one edited if nothing was changed)
+         */
+        public PersistentMap persistent() {
+            if (this.m_modifications == 0) {
+                return this.m_source;
+            }
+            this.m_owner = new Object();
+            if (this.m_next_seq - this.m_size > Math.max(this.m_size,MAX_HOLES)) {
+                // renumber (this version shares nothing with the earlier ones)
+                Editor renumbered = EMPTY.edit();
+                renumbered.putAll(this);
+                return renumbered.persistent();
+            }
+            return new PersistentMap(this.m_root,this.m_order,this.m_shift,this.m_size,this.m_next_seq);
+        }
+
+        @Override
+        public String get(Object key) {
+            Leaf entry = (key instanceof String) ? find(this.m_root,(String)key) : null;
+            return (entry != null) ? entry.m_value : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof String) && find(this.m_root,(String)key) != null;
+        }
+
+        @Override
+        public String put(String key,String value) {
+            int hash = hash(key);
+            Leaf previous = find(this.m_root,key);
+            if (previous != null && equal(previous.m_value,value)) {
+                // unchanged: nothing copied
+                return value;
+            }
+            Leaf entry = new Leaf(key,value,hash,(previous != null) ? previous.m_seq : this.m_next_seq++);
+            this.m_root = insert(this.m_owner,this.m_root,0,entry);
+            this.setOrder(entry.m_seq,entry);
+            if (previous == null) {
+                ++this.m_size;
+            }
+            ++this.m_modifications;
+            return (previous != null) ? previous.m_value : null;
+        }
+
+        @Override
+        public String remove(Object key) {
+            Leaf previous = (key instanceof String) ? find(this.m_root,(String)key) : null;
+            if (previous == null) {
+                return null;
+            }
+            this.m_root = delete(this.m_owner,this.m_root,0,previous.m_key,previous.m_hash);
+            this.setOrder(previous.m_seq,null);
+            --this.m_size;
+            ++this.m_modifications;
+            return previous.m_value;
+        }
+
+        @Override
+        public void clear() {
+            this.m_root = null;
+            this.m_order = null;
+            this.m_shift = 0;
+            this.m_size = 0;
+            this.m_next_seq = 0;
+            ++this.m_modifications;
+        }
+
+        @Override
+        public int size() {
+            return this.m_size;
+        }
+
+        @Override
+        public Set<Map.Entry<String,String>> entrySet() {
+            return new AbstractSet<Map.Entry<String,String>>() {
+                @Override
+                public Iterator<Map.Entry<String,String>> iterator() {
+                    return new OrderIterator(null,Editor.this);
+                }
+
+                @Override
+                public int size() {
+                    return m_size;
+                }
+            };
+        }
+
+        // set (or clear) a slot of the order trie, growing it as needed
+        private void setOrder(int seq,Leaf entry) {
+            while (this.m_order != null && this.m_shift < 30 && (seq >>> (this.m_shift + BITS)) != 0) {
+                Object[] slots = new Object[WIDTH];
+                slots[0] = this.m_order;
+                this.m_order = new OrderNode(this.m_owner,slots);
+                this.m_shift += BITS;
+            }
+            if (this.m_order == null) {
+                while ((seq >>> (this.m_shift + BITS)) != 0) {
+                    this.m_shift += BITS;
+                }
+            }
+            this.m_order = order(this.m_owner,this.m_order,this.m_shift,seq,entry);
+        }
+    }
+
+    // iterates the order trie of a map or (live) of an editor
+    private static final class OrderIterator implements Iterator<Map.Entry<String,String>> {
+        private final Editor m_editor;
+        private OrderNode m_order;
+        private int m_shift;
+        private int m_next_seq;
+        private int m_modifications;
+        private Object[] m_leaf = null;
+        private int m_seq = 0;
+        private Leaf m_next = null;
+        private Leaf m_last = null;
+
+        private OrderIterator(PersistentMap map,Editor editor) {
+            this.m_editor = editor;
+            if (editor != null) {
+                this.refresh();
+            }
+            else {
+                this.m_order = map.m_order;
+                this.m_shift = map.m_shift;
+                this.m_next_seq = map.m_next_seq;
+            }
+            this.advance();
+        }
+
+        // the editor changed: its current trie (from the entry that was next)
+        private void refresh() {
+            if (this.m_next != null) {
+                this.m_seq = this.m_next.m_seq;
+            }
+            this.m_order = this.m_editor.m_order;
+            this.m_shift = this.m_editor.m_shift;
+            this.m_next_seq = this.m_editor.m_next_seq;
+            this.m_modifications = this.m_editor.m_modifications;
+            this.m_leaf = null;
+        }
+
+        // the next entry from m_seq on
+        private void advance() {
+            this.m_next = null;
+            while (this.m_next == null && this.m_seq < this.m_next_seq) {
+                if (this.m_leaf == null || (this.m_seq & MASK) == 0) {
+                    this.m_leaf = leaf(this.m_order,this.m_shift,this.m_seq);
+                    if (this.m_leaf == null) {
+                        this.m_seq = (this.m_seq | MASK) + 1;
+                        continue;
+                    }
+                }
+                this.m_next = (Leaf)this.m_leaf[this.m_seq & MASK];
+                ++this.m_seq;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.m_editor != null && this.m_editor.m_modifications != this.m_modifications) {
+                // changed while iterating: continue after the last entry returned, in the current trie
+                this.refresh();
+                this.advance();
+            }
+            return this.m_next != null;
+        }
+
+        @Override
+        public Map.Entry<String,String> next() {
+            if (this.hasNext() == false) {
+                throw new NoSuchElementException();
+            }
+            this.m_last = this.m_next;
+            this.advance();
+            return this.m_last;
+        }
+
+        @Override
+        public void remove() {
+            if (this.m_editor == null) {
+                throw new UnsupportedOperationException();
+            }
+            if (this.m_last == null) {
+                throw new IllegalStateException();
+            }
+            this.m_editor.remove(this.m_last.m_key);
+            this.m_last = null;
+        }
+    }
+
+    // spread the high bits of the key's hash down (the low bits index the first levels)
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    // NULL safe equality
+    private static boolean equal(Object a,Object b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    // the entry of a key
+    private static Leaf find(Object slot,String key) {
+        int hash = hash(key);
+        int shift = 0;
+        while (slot instanceof Node) {
+            Node node = (Node)slot;
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.m_bitmap & bit) == 0) {
+                return null;
+            }
+            slot = node.m_slots[Integer.bitCount(node.m_bitmap & (bit - 1))];
+            shift += BITS;
+        }
+        if (slot instanceof Leaf) {
+            Leaf entry = (Leaf)slot;
+            return (entry.m_hash == hash && entry.m_key.equals(key)) ? entry : null;
+        }
+        if (slot instanceof Collision && ((Collision)slot).m_hash == hash) {
+            for(Leaf entry : ((Collision)slot).m_entries) {
+                if (entry.m_key.equals(key)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    // a node the owner may change in place
+    private static Node editable(Object owner,Node node) {
+        if (node.m_owner == owner) {
+            return node;
+        }
+        return new Node(owner,node.m_bitmap,node.m_slots.clone());
+    }
+
+    // put an entry into the subtree at a slot (whose node indexes the hash from shift on)... returns the new slot
+    private static Object insert(Object owner,Object slot,int shift,Leaf entry) {
+        if (slot == null) {
+            return entry;
+        }
+        if (slot instanceof Leaf) {
+            Leaf current = (Leaf)slot;
+            if (current.m_key.equals(entry.m_key)) {
+                return entry;
+            }
+            if (current.m_hash == entry.m_hash) {
+                return new Collision(entry.m_hash,new Leaf[] { current, entry });
+            }
+            return pair(owner,shift,current,current.m_hash,entry);
+        }
+        if (slot instanceof Collision) {
+            Collision collision = (Collision)slot;
+            if (collision.m_hash != entry.m_hash) {
+                return pair(owner,shift,collision,collision.m_hash,entry);
+            }
+            Leaf[] entries = collision.m_entries;
+            for(int i=0;i<entries.length;++i) {
+                if (entries[i].m_key.equals(entry.m_key)) {
+                    entries = entries.clone();
+                    entries[i] = entry;
+                    return new Collision(entry.m_hash,entries);
+                }
+            }
+            Leaf[] added = new Leaf[entries.length + 1];
+            System.arraycopy(entries,0,added,0,entries.length);
+            added[entries.length] = entry;
+            return new Collision(entry.m_hash,added);
+        }
+        Node node = (Node)slot;
+        int bit = 1 << ((entry.m_hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.m_bitmap & (bit - 1));
+        if ((node.m_bitmap & bit) != 0) {
+            Object child = node.m_slots[index];
+            Object replacement = insert(owner,child,shift + BITS,entry);
+            if (replacement == child) {
+                return node;
+            }
+            Node edited = editable(owner,node);
+            edited.m_slots[index] = replacement;
+            return edited;
+        }
+        Object[] slots = new Object[node.m_slots.length + 1];
+        System.arraycopy(node.m_slots,0,slots,0,index);
+        slots[index] = entry;
+        System.arraycopy(node.m_slots,index,slots,index + 1,node.m_slots.length - index);
+        if (node.m_owner == owner) {
+            node.m_bitmap |= bit;
+            node.m_slots = slots;
+            return node;
+        }
+        return new Node(owner,node.m_bitmap | bit,slots);
+    }
+
+    // a node (at shift) holding an existing slot and a new entry whose hashes differ
+    private static Node pair(Object owner,int shift,Object slot,int hash,Leaf entry) {
+        int a = (hash >>> shift) & MASK;
+        int b = (entry.m_hash >>> shift) & MASK;
+        if (a == b) {
+            return new Node(owner,1 << a,new Object[] { pair(owner,shift + BITS,slot,hash,entry) });
+        }
+        return new Node(owner,(1 << a) | (1 << b),(a < b) ? new Object[] { slot, entry } : new Object[] { entry, slot });
+    }
+
+    // remove a (present) key from the subtree at a slot... returns the new slot (a lone entry moves up)
+    private static Object delete(Object owner,Object slot,int shift,String key,int hash) {
+        if (slot instanceof Leaf) {
+            return null;
+        }
+        if (slot instanceof Collision) {
+            Leaf[] entries = ((Collision)slot).m_entries;
+            Leaf[] kept = new Leaf[entries.length - 1];
+            int count = 0;
+            for(Leaf entry : entries) {
+                if (entry.m_key.equals(key) == false) {
+                    kept[count++] = entry;
+                }
+            }
+            return (kept.length == 1) ? kept[0] : new Collision(hash,kept);
+        }
+        Node node = (Node)slot;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.m_bitmap & (bit - 1));
+        Object replacement = delete(owner,node.m_slots[index],shift + BITS,key,hash);
+        int length = node.m_slots.length;
+        if (replacement == null) {
+            if (length == 1) {
+                return null;
+            }
+            if (length == 2 && (node.m_slots[1 - index] instanceof Node) == false) {
+                return node.m_slots[1 - index];
+            }
+            Object[] slots = new Object[length - 1];
+            System.arraycopy(node.m_slots,0,slots,0,index);
+            System.arraycopy(node.m_slots,index + 1,slots,index,length - index - 1);
+            if (node.m_owner == owner) {
+                node.m_bitmap &= ~bit;
+                node.m_slots = slots;
+                return node;
+            }
+            return new Node(owner,node.m_bitmap & ~bit,slots);
+        }
+        if (length == 1 && (replacement instanceof Node) == false) {
+            return replacement;
+        }
+        Node edited = editable(owner,node);
+        edited.m_slots[index] = replacement;
+        return edited;
+    }
+
+    // set (or clear) the order trie slot of a sequence... returns the new node
+    private static OrderNode order(Object owner,OrderNode node,int shift,int seq,Leaf entry) {
+        OrderNode edited = node;
+        if (node == null) {
+            edited = new OrderNode(owner,new Object[WIDTH]);
+        }
+        else if (node.m_owner != owner) {
+            edited = new OrderNode(owner,node.m_slots.clone());
+        }
+        int index = (seq >>> shift) & MASK;
+        if (shift == 0) {
+            edited.m_slots[index] = entry;
+        }
+        else {
+            edited.m_slots[index] = order(owner,(OrderNode)edited.m_slots[index],shift - BITS,seq,entry);
+        }
+        return edited;
+    }
+
+    // the leaf slots holding a sequence (NULL if none)
+    private static Object[] leaf(OrderNode node,int shift,int seq) {
+        for(int level=shift;node != null && level > 0;level -= BITS) {
+            node = (OrderNode)node.m_slots[(seq >>> level) & MASK];
+        }
+        return (node != null) ? node.m_slots : null;
+    }
+
+    // compare two subtrees (at the same position): shared ones are skipped, nodes are compared slot by slot
+    private static void diff(Object from,Object to,int shift,Map<String,String> changes) {
+        if (from == to) {
+            return;
+        }
+        if (from instanceof Node && to instanceof Node) {
+            Node a = (Node)from;
+            Node b = (Node)to;
+            int bits = a.m_bitmap | b.m_bitmap;
+            while (bits != 0) {
+                int bit = Integer.lowestOneBit(bits);
+                bits &= ~bit;
+                Object a_slot = ((a.m_bitmap & bit) != 0) ? a.m_slots[Integer.bitCount(a.m_bitmap & (bit - 1))] : null;
+                Object b_slot = ((b.m_bitmap & bit) != 0) ? b.m_slots[Integer.bitCount(b.m_bitmap & (bit - 1))] : null;
+                diff(a_slot,b_slot,shift + BITS,changes);
+            }
+            return;
+        }
+
+        // different shapes: compare their entries
+        Map<String,Leaf> before = new HashMap<String,Leaf>();
+        collect(from,before);
+        Map<String,Leaf> after = new LinkedHashMap<String,Leaf>();
+        collect(to,after);
+        for(Leaf entry : after.values()) {
+            Leaf previous = before.remove(entry.m_key);
+            if (previous == null || equal(previous.m_value,entry.m_value) == false) {
+                changes.put(entry.m_key,entry.m_value);
+            }
+        }
+        for(String key : before.keySet()) {
+            changes.put(key,null);
+        }
+    }
+
+    // the entries of a subtree
+    private static void collect(Object slot,Map<String,Leaf> entries) {
+        if (slot instanceof Leaf) {
+            entries.put(((Leaf)slot).m_key,(Leaf)slot);
+        }
+        else if (slot instanceof Collision) {
+            for(Leaf entry : ((Collision)slot).m_entries) {
+                entries.put(entry.m_key,entry);
+            }
+        }
+        else if (slot instanceof Node) {
+            for(Object child : ((Node)slot).m_slots) {
+                collect(child,entries);
+            }
+        }
+    }
+}
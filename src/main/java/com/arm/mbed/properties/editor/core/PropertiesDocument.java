@@ -0,0 +1,500 @@
+/**
+ * @file    PropertiesDocument.java
+ * @brief Comment and order preserving model of a java properties file
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Properties Document - keeps the original lines, comments and continuations of a properties file along with the byte offsets of each entry so edits only splice the affected region
+ * @author Doug Anson
+ */
+public class PropertiesDocument {
+    // properties files are ISO-8859-1: one char per byte, so char offsets in m_text are byte offsets in the file
+    private final StringBuilder m_text;
+
+    // entries in file order and the (last) entry for each key
+    private final ArrayList<Entry> m_entries = new ArrayList<Entry>();
+    private final HashMap<String,Entry> m_index = new HashMap<String,Entry>();
+
+    // line separator used by the file (for appended entries)
+    private String m_line_separator = "\n";
+
+    // checksum of the contents last read from (or written to) disk
+    private long m_checksum = 0;
+
+    // a single key/value entry (one logical line, possibly continued over several physical lines)
+    private static final class Entry {
+        private final String m_key;
+        private String m_value;
+        private int m_start;                // start of the logical line
+        private int m_value_start;          // start of the value
+        private int m_value_end;            // end of the value (before the line terminator)
+        private int m_end;                  // end of the logical line (after the line terminator)
+
+        private Entry(String key,String value,int start,int value_start,int value_end,int end) {
+            this.m_key = key;
+            this.m_value = value;
+            this.m_start = start;
+            this.m_value_start = value_start;
+            this.m_value_end = value_end;
+            this.m_end = end;
+        }
+
+        // shift the entry offsets by delta
+        private void shift(int delta) {
+            this.m_start += delta;
+            this.m_value_start += delta;
+            this.m_value_end += delta;
+            this.m_end += delta;
+        }
+    }
+
+    // constructor
+    private PropertiesDocument(byte[] bytes) {
+        this.m_text = new StringBuilder(new String(bytes,StandardCharsets.ISO_8859_1));
+        this.m_checksum = PropertiesDocument.checksum(bytes);
+        this.parse();
+    }
+
+    /**
+     * Parse a document from its contents
+     * @param bytes - the file contents (ISO-8859-1)
+     * @return the document
+     */
+    public static PropertiesDocument parse(byte[] bytes) {
+        return new PropertiesDocument(bytes);
+    }
+
+    /**
+     * Re-parse the document from new contents (only if they differ from what was last read or written)
+     * @param bytes - the file contents (ISO-8859-1)
+     * @return TRUE if the contents changed and were re-parsed
+     */
+    public synchronized boolean reload(byte[] bytes) {
+        long checksum = PropertiesDocument.checksum(bytes);
+        if (checksum == this.m_checksum) {
+            return false;
+        }
+        this.m_text.setLength(0);
+        this.m_text.append(new String(bytes,StandardCharsets.ISO_8859_1));
+        this.m_entries.clear();
+        this.m_index.clear();
+        this.m_checksum = checksum;
+        this.parse();
+        return true;
+    }
+
+    /**
+     * Load a document from a file (a missing file is an empty document)
+     * @param fq_filename - the fully qualified filename
+     * @return the document
+     * @throws IOException
+     */
+    public static PropertiesDocument load(String fq_filename) throws IOException {
+        try {
+            return PropertiesDocument.parse(Files.readAllBytes(Paths.get(fq_filename)));
+        }
+        catch (NoSuchFileException ex) {
+            return new PropertiesDocument(new byte[0]);
+        }
+    }
+
+    /**
+     * Length of the document
+     * @return the length in characters (= bytes)
+     */
+    public synchronized int length() {
+        return this.m_text.length();
+    }
+
+    /**
+     * The properties, in file order
+     * @return a copy of the key/value pairs
+     */
+    public synchronized LinkedHashMap<String,String> toMap() {
+        LinkedHashMap<String,String> map = new LinkedHashMap<String,String>();
+        for(Entry entry : this.m_entries) {
+            map.put(entry.m_key,entry.m_value);
+        }
+        return map;
+    }
+
+    /**
+     * Get a value
+     * @param key - the key
+     * @return the value, NULL if not present
+     */
+    public synchronized String get(String key) {
+        Entry entry = this.m_index.get(key);
+        return entry != null ? entry.m_value : null;
+    }
+
+    /**
+     * Byte offset of the entry for a key
+     * @param key - the key
+     * @return the byte offset of the entry's line, -1 if not present
+     */
+    public synchronized int getOffset(String key) {
+        Entry entry = this.m_index.get(key);
+        return entry != null ? entry.m_start : -1;
+    }
+
+    /**
+     * Set a value: only the value region of an existing entry is replaced, new keys are appended
+     * @param key - the key
+     * @param value - the value
+     */
+    public synchronized void set(String key,String value) {
+        if (value == null) {
+            value = "";
+        }
+        Entry entry = this.m_index.get(key);
+        if (entry != null) {
+            if (value.equals(entry.m_value)) {
+                return;
+            }
+            String escaped = escape(value,false);
+            this.splice(entry,entry.m_value_start,entry.m_value_end,escaped);
+            entry.m_value_end = entry.m_value_start + escaped.length();
+            entry.m_value = value;
+            return;
+        }
+
+        // append (making sure the last line is terminated)
+        int length = this.m_text.length();
+        if (length > 0 && this.m_text.charAt(length - 1) != '\n' && this.m_text.charAt(length - 1) != '\r') {
+            this.m_text.append(this.m_line_separator);
+        }
+        String escaped_key = escape(key,true);
+        String escaped_value = escape(value,false);
+        int start = this.m_text.length();
+        this.m_text.append(escaped_key).append('=').append(escaped_value).append(this.m_line_separator);
+        int value_start = start + escaped_key.length() + 1;
+        entry = new Entry(key,value,start,value_start,value_start + escaped_value.length(),this.m_text.length());
+        this.m_entries.add(entry);
+        this.m_index.put(key,entry);
+    }
+
+    /**
+     * Remove a key (every occurrence of it)
+     * @param key - the key
+     */
+    public synchronized void remove(String key) {
+        if (this.m_index.remove(key) == null) {
+            return;
+        }
+        for(int i=this.m_entries.size()-1;i>=0;--i) {
+            Entry entry = this.m_entries.get(i);
+            if (entry.m_key.equals(key)) {
+                this.splice(entry,entry.m_start,entry.m_end,"");
+                this.m_entries.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Apply the differences between the document and a snapshot (changed, added and removed keys)
+     * @param props - the properties the document should hold
+     * @return the number of keys changed
+     */
+    public synchronized int apply(Map<String,String> props) {
+        int changed = 0;
+
+        // removed keys
+        Iterator<String> keys = new ArrayList<String>(this.m_index.keySet()).iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (props.containsKey(key) == false) {
+                this.remove(key);
+                ++changed;
+            }
+        }
+
+        // changed and added keys
+        for(Map.Entry<String,String> prop : props.entrySet()) {
+            String current = this.get(prop.getKey());
+            String value = prop.getValue() != null ? prop.getValue() : "";
+            if (current == null || current.equals(value) == false) {
+                this.set(prop.getKey(),value);
+                ++changed;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * The document contents
+     * @return the document bytes (ISO-8859-1)
+     */
+    public synchronized byte[] toBytes() {
+        return this.m_text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Atomically save the document
+     * @param fq_filename - the fully qualified filename
+     * @throws IOException
+     */
+    public synchronized void save(String fq_filename) throws IOException {
+        byte[] bytes = this.toBytes();
+        long previous = this.m_checksum;
+
+        // record the checksum first so a file watcher recognizes our own write
+        this.m_checksum = PropertiesDocument.checksum(bytes);
+        try {
+            Utils.atomicWrite(fq_filename,bytes);
+        }
+        catch (IOException ex) {
+            this.m_checksum = previous;
+            throw ex;
+        }
+    }
+
+    // checksum of the file contents
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes,0,bytes.length);
+        return crc.getValue();
+    }
+
+    // replace [from,to) of the text (within the given entry) and shift every following entry
+    private void splice(Entry entry,int from,int to,String replacement) {
+        this.m_text.replace(from,to,replacement);
+        int delta = replacement.length() - (to - from);
+        if (delta == 0) {
+            return;
+        }
+        entry.m_end += delta;
+        boolean following = false;
+        for(int i=0;i<this.m_entries.size();++i) {
+            Entry other = this.m_entries.get(i);
+            if (following) {
+                other.shift(delta);
+            }
+            else if (other == entry) {
+                following = true;
+            }
+        }
+    }
+
+    // parse the text into entries (mirrors java.util.Properties.load())
+    private void parse() {
+        String text = this.m_text.toString();
+        int length = text.length();
+        int pos = 0;
+        boolean separator_found = false;
+        while (pos < length) {
+            int line_start = pos;
+
+            // skip leading whitespace
+            while (pos < length && isWhitespace(text.charAt(pos))) {
+                ++pos;
+            }
+
+            // blank or comment line (never continued)
+            if (pos >= length || text.charAt(pos) == '\n' || text.charAt(pos) == '\r' || text.charAt(pos) == '#' || text.charAt(pos) == '!') {
+                int end = lineEnd(text,pos);
+                if (separator_found == false) {
+                    separator_found = this.detectLineSeparator(text,end);
+                }
+                pos = skipTerminator(text,end);
+                continue;
+            }
+
+            // find the end of the logical line (lines ending in an odd number of backslashes continue)
+            int key_start = pos;
+            int logical_end = lineEnd(text,pos);
+            while (endsWithContinuation(text,key_start,logical_end) && logical_end < length) {
+                logical_end = lineEnd(text,skipTerminator(text,logical_end));
+            }
+            if (separator_found == false) {
+                separator_found = this.detectLineSeparator(text,logical_end);
+            }
+
+            // the key ends at the first unescaped separator or whitespace
+            int key_end = key_start;
+            while (key_end < logical_end) {
+                char c = text.charAt(key_end);
+                if (c == '\\') {
+                    key_end += 2;
+                    continue;
+                }
+                if (c == '=' || c == ':' || isWhitespace(c) || c == '\n' || c == '\r') {
+                    break;
+                }
+                ++key_end;
+            }
+            key_end = Math.min(key_end,logical_end);
+
+            // skip whitespace, a single separator and whitespace again
+            int value_start = key_end;
+            while (value_start < logical_end && isWhitespace(text.charAt(value_start))) {
+                ++value_start;
+            }
+            if (value_start < logical_end && (text.charAt(value_start) == '=' || text.charAt(value_start) == ':')) {
+                ++value_start;
+            }
+            while (value_start < logical_end && isWhitespace(text.charAt(value_start))) {
+                ++value_start;
+            }
+
+            int end = skipTerminator(text,logical_end);
+            String key = unescape(text,key_start,key_end);
+            Entry entry = new Entry(key,unescape(text,value_start,logical_end),line_start,value_start,logical_end,end);
+            this.m_entries.add(entry);
+            this.m_index.put(key,entry);
+            pos = end;
+        }
+    }
+
+    // remember the first line separator used
+    private boolean detectLineSeparator(String text,int end) {
+        if (end >= text.length()) {
+            return false;
+        }
+        if (text.charAt(end) == '\r') {
+            this.m_line_separator = (end + 1 < text.length() && text.charAt(end + 1) == '\n') ? "\r\n" : "\r";
+        }
+        else {
+            this.m_line_separator = "\n";
+        }
+        return true;
+    }
+
+    // end of the physical line starting at pos (position of the terminator)
+    private static int lineEnd(String text,int pos) {
+        while (pos < text.length() && text.charAt(pos) != '\n' && text.charAt(pos) != '\r') {
+            ++pos;
+        }
+        return pos;
+    }
+
+    // skip the line terminator at pos
+    private static int skipTerminator(String text,int pos) {
+        if (pos < text.length() && text.charAt(pos) == '\r') {
+            ++pos;
+        }
+        if (pos < text.length() && text.charAt(pos) == '\n') {
+            ++pos;
+        }
+        return pos;
+    }
+
+    // TRUE if [start,end) ends with an odd number of backslashes
+    private static boolean endsWithContinuation(String text,int start,int end) {
+        int count = 0;
+        for(int i=end-1;i>=start && text.charAt(i) == '\\';--i) {
+            ++count;
+        }
+        return (count % 2) == 1;
+    }
+
+    // properties whitespace
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    // unescape [start,end) of the text (escapes, \\uXXXX and line continuations)
+    private static String unescape(String text,int start,int end) {
+        StringBuilder out = new StringBuilder(end - start);
+        int pos = start;
+        while (pos < end) {
+            char c = text.charAt(pos++);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (pos >= end) {
+                break;
+            }
+            c = text.charAt(pos++);
+            if (c == '\r' || c == '\n') {
+                // continuation: skip the terminator and the leading whitespace of the next line
+                if (c == '\r' && pos < end && text.charAt(pos) == '\n') {
+                    ++pos;
+                }
+                while (pos < end && isWhitespace(text.charAt(pos))) {
+                    ++pos;
+                }
+            }
+            else if (c == 'u' && pos + 4 <= end) {
+                try {
+                    out.append((char)Integer.parseInt(text.substring(pos,pos + 4),16));
+                    pos += 4;
+                }
+                catch (NumberFormatException ex) {
+                    out.append('u');
+                }
+            }
+            else if (c == 't') out.append('\t');
+            else if (c == 'n') out.append('\n');
+            else if (c == 'r') out.append('\r');
+            else if (c == 'f') out.append('\f');
+            else out.append(c);
+        }
+        return out.toString();
+    }
+
+    // escape a key or value (mirrors java.util.Properties.store())
+    private static String escape(String str,boolean is_key) {
+        StringBuilder out = new StringBuilder(str.length() + 16);
+        for(int i=0;i<str.length();++i) {
+            char c = str.charAt(i);
+            switch (c) {
+                case ' ':
+                    if (i == 0 || is_key) {
+                        out.append('\\');
+                    }
+                    out.append(' ');
+                    break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\f': out.append("\\f"); break;
+                case '\\': out.append("\\\\"); break;
+                case '=': case ':': case '#': case '!':
+                    out.append('\\').append(c);
+                    break;
+                default:
+                    if (c < 0x0020 || c > 0x007e) {
+                        out.append("\\u").append(String.format("%04X",(int)c));
+                    }
+                    else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        return out.toString();
+    }
+}
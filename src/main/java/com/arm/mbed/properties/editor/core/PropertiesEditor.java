@@ -23,12 +23,18 @@
 package com.arm.mbed.properties.editor.core;
 
 import com.sun.net.httpserver.BasicAuthenticator;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.Properties;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Properties Editor Base Class
@@ -36,6 +42,16 @@ import java.util.Properties;
  */
 public class PropertiesEditor extends BasicAuthenticator {
    private static final String DEFAULT_TITLE = "Configuration";                      // Default Title
+   private static final int DEFAULT_SAVE_DEBOUNCE_MS = 0;                            // write-behind disabled by default
+   private static final int DEFAULT_SAVE_MAX_DELAY_MS = 5000;                        // max time a save may stay pending
+   private static final int DEFAULT_WATCH_SETTLE_MS = 100;                           // let external writers finish before reloading
+   
+   // metrics: latency of the editor's phases (request handling, page render, file save, script fork)
+   protected static final String PHASE_METRIC = "properties_editor_phase_seconds";
+   protected static final String PHASE_METRIC_HELP = "Latency of the editor's phases (handle: page request, render: page render, save: file write, journal: change journal append, script: script fork, api/keys/history/revisions: API requests)";
+   
+   // change journal: who is recorded for changes made to the files by something else
+   protected static final String FILE_USER = "(file)";
    
    protected String m_div_hider_tag = null;                                          // DIV hiding table tag
    protected String m_hide_template = null;                                          // DIV hid directive template
@@ -50,25 +66,55 @@ public class PropertiesEditor extends BasicAuthenticator {
    protected String m_editor_properties_file = null;                                 // EditProcessor (self) properties file
    protected String m_title = DEFAULT_TITLE;                                         // our title
    protected String m_configurator_config_fields = null;                             // config_fields (self)
-   protected String m_config_fields = null;                                          // config_fields option
    protected String m_service_name = null;                                           // service name
 
-   protected Properties m_properties = null;                                         // Properties to edit
-   protected Properties m_editor_properties = null;                                  // EditProcessor (self) properties
+   protected PropertiesStore m_properties = null;                                    // Properties to edit
+   protected PropertiesStore m_editor_properties = null;                             // EditProcessor (self) properties
+   
+   // on-disk documents (comments, order and layout of the files)
+   protected PropertiesDocument m_properties_document = null;                        // Properties to edit
+   protected PropertiesDocument m_editor_properties_document = null;                 // EditProcessor (self) properties
+   
+   // (write-behind) savers
+   protected WriteBehindSaver m_properties_saver = null;                             // saves the properties to edit
+   protected WriteBehindSaver m_editor_properties_saver = null;                      // saves the EditProcessor (self) properties
+   
+   // journal of the changes made to both files (NULL if disabled)
+   protected ChangeJournal m_journal = null;
+   
+   // side effects fired on specific (service) property changes
+   protected final KeyChangeHooks m_key_change_hooks = new KeyChangeHooks();
+   
+   // external change detection
+   protected PropertiesFileWatcher m_watcher = null;                                 // watches both files
+   protected final AtomicLong m_reloads = new AtomicLong(0);                         // external changes applied
+   protected final AtomicLong m_reload_conflicts = new AtomicLong(0);                // keys changed both locally and externally
+   protected final AtomicLong m_last_reload_us = new AtomicLong(0);                  // latency of the last reload
+   
+   // metrics (shared by the targets of the main editor)
+   protected Metrics m_metrics = null;                                               // the registry
+   private Metrics.Timer m_save_timer = null;                                        // file saves
+   private Metrics.Counter m_save_failures = null;                                   // failed file saves
+   private Metrics.Counter m_saved_bytes = null;                                     // bytes written to the files
+   private Metrics.Timer m_journal_timer = null;                                     // change journal appends
+      
+   // multi-target mode: settings missing from our configuration come from the parent (main) editor
+   protected PropertiesEditor m_parent = null;                                       // NULL for the main editor
+   private ScheduledExecutorService m_shared_saver_scheduler = null;                 // background writer shared by the targets' savers
       
    // For option where extended config fields are utilized
-   protected ArrayList<String> m_extended_config_fields = null;                
    protected boolean m_extendable_config = false;                                    // config is extenable (default is FALSE)
 
    // scripts
    protected String m_service_restart_script = null;                                 // service restart script
-   protected String m_aws_set_creds_script = null;                                   // Special AWS creds handling script  
 
     // default constructor
     public PropertiesEditor(String verb,boolean extendable_config) {
         super(verb);
-        this.m_properties = new Properties();
-        this.m_editor_properties = new Properties();
+        this.m_properties = new PropertiesStore();
+        this.m_properties.setListener(this.m_key_change_hooks);
+        this.m_editor_properties = new PropertiesStore();
+        this.bindMetrics(new Metrics());
         this.enableExtendableConfig(extendable_config);
     }
     
@@ -78,8 +124,131 @@ public class PropertiesEditor extends BasicAuthenticator {
     */
     public void loadProperties(String editor_config_file) {
         // get the properties-editor configuration
-        Utils.getPropertiesFQ(this.m_editor_properties,editor_config_file);
+        this.m_editor_properties_file = editor_config_file;
+        this.m_editor_properties_document = this.loadDocument(editor_config_file);
+        this.m_editor_properties.replace(this.m_editor_properties_document.toMap());
 
+        // file locations (changes to these require a restart)
+        this.m_config_files_root = this.getProperty("config_files_root");
+        this.m_templates_root = this.getProperty("templates_root");
+        this.m_properties_file = this.getProperty("properties_file");
+        
+        // the remaining settings
+        this.applyEditorConfig();
+        
+        // the change journal (kept next to the properties file)
+        this.openJournal();
+        
+        // create the savers (write-behind if a debounce window is configured)
+        int debounce_ms = this.getIntProperty("save_debounce_ms",DEFAULT_SAVE_DEBOUNCE_MS);
+        int max_delay_ms = this.getIntProperty("save_max_delay_ms",DEFAULT_SAVE_MAX_DELAY_MS);
+        ScheduledExecutorService scheduler = (this.m_parent != null) ? this.m_parent.getSharedSaverScheduler() : null;
+        this.m_properties_saver = new WriteBehindSaver("properties",new WriteBehindSaver.Persister() {
+            @Override
+            public boolean persist(PropertiesSnapshot snapshot) {
+                return journalSaved(ChangeJournal.PROPERTIES,snapshot,writePropertiesFile(m_properties_document,snapshot,m_properties_file));
+            }
+        },debounce_ms,max_delay_ms,scheduler);
+        this.m_editor_properties_saver = new WriteBehindSaver("editor",new WriteBehindSaver.Persister() {
+            @Override
+            public boolean persist(PropertiesSnapshot snapshot) {
+                return journalSaved(ChangeJournal.EDITOR,snapshot,writePropertiesFile(m_editor_properties_document,snapshot,m_editor_properties_file));
+            }
+        },debounce_ms,max_delay_ms,scheduler);
+        this.m_editor_properties_saver.setPersisted(this.m_editor_properties.snapshot());
+        
+        // configuration changes journaled but not saved (i.e. lost in a crash) are re-applied
+        if (this.recoverJournal(ChangeJournal.EDITOR,this.m_editor_properties,this.m_editor_properties_saver)) {
+            this.applyEditorConfig();
+        }
+    }
+    
+    // open (and replay) the change journal, if enabled
+    private void openJournal() {
+        String enabled = this.getProperty("journal_enabled");
+        if (enabled == null || enabled.equalsIgnoreCase("true") == false) {
+            return;
+        }
+        String fq_filename = ChangeJournal.journalFile(this.resolveConfigFile(this.m_properties_file));
+        try {
+            this.m_journal = ChangeJournal.open(fq_filename,this.getIntProperty("journal_checkpoint_records",ChangeJournal.DEFAULT_CHECKPOINT_RECORDS));
+        }
+        catch (IOException ex) {
+            System.out.println("PropertiesEditor: Unable to open the change journal: " + fq_filename + " Exception: " + ex.getMessage());
+            this.m_journal = null;
+        }
+    }
+    
+    /**
+     * Get the change journal
+     * @return the journal, NULL if disabled
+     */
+    public ChangeJournal getJournal() {
+        return this.m_journal;
+    }
+    
+    /**
+     * Record the changes between two snapshots of a file in the journal
+     * @param file - ChangeJournal.PROPERTIES or ChangeJournal.EDITOR
+     * @param previous - the snapshot replaced
+     * @param updated - the published snapshot
+     * @param user - who made the changes (NULL if not known)
+     */
+    protected void journalChanges(int file,PropertiesSnapshot previous,PropertiesSnapshot updated,String user) {
+        if (this.m_journal != null) {
+            long start = System.nanoTime();
+            this.m_journal.append(file,ChangeJournal.diff(previous,updated),user,updated.getVersion());
+            this.m_journal_timer.stop(start);
+        }
+    }
+    
+    // a snapshot of a file was written: its changes are saved
+    private boolean journalSaved(int file,PropertiesSnapshot snapshot,boolean written) {
+        if (written && this.m_journal != null) {
+            this.m_journal.saved(file,snapshot.getVersion());
+        }
+        return written;
+    }
+    
+    /**
+     * Re-apply the changes journaled but not saved to a file just loaded (unless the file was changed by something else since)
+     * @param file - ChangeJournal.PROPERTIES or ChangeJournal.EDITOR
+     * @param store - the store for the file
+     * @param saver - the saver for the file
+     * @return TRUE if changes were re-applied (and queued for saving)
+     */
+    protected boolean recoverJournal(int file,PropertiesStore store,WriteBehindSaver saver) {
+        if (this.m_journal == null) {
+            return false;
+        }
+        String filename = (file == ChangeJournal.EDITOR) ? this.m_editor_properties_file : this.m_properties_file;
+        final Map<String,String> updates = this.m_journal.unsaved(file,store.snapshot().asMap(),new File(this.resolveConfigFile(filename)).lastModified());
+        if (updates.isEmpty()) {
+            return false;
+        }
+        PropertiesSnapshot recovered = store.update(new PropertiesStore.Edit() {
+            @Override
+            public void apply(Map<String,String> properties) {
+                for(Map.Entry<String,String> entry : updates.entrySet()) {
+                    if (entry.getValue() != null) {
+                        properties.put(entry.getKey(),entry.getValue());
+                    }
+                    else {
+                        properties.remove(entry.getKey());
+                    }
+                }
+            }
+        });
+        this.m_journal.recovered(file,recovered.getVersion());
+        saver.save(recovered);
+        System.out.println("PropertiesEditor: recovered " + updates.size() + " unsaved changes from the journal: " + updates.keySet());
+        return true;
+    }
+    
+    /**
+     * (Re)apply the mDSPropertiesEditor App (self) settings from its properties
+     */
+    protected void applyEditorConfig() {
         // establish defaults
         this.m_title = this.getProperty("title");
         this.m_configurator_config_fields = this.getProperty("config_fields");
@@ -91,26 +260,328 @@ public class PropertiesEditor extends BasicAuthenticator {
         this.m_div_hider_tag = this.getProperty("div_hider_tag");
         this.m_hide_template = this.getProperty("div_hide");
         this.m_scripts_root = this.getProperty("scripts_root");
-        this.m_config_files_root = this.getProperty("config_files_root");
-        this.m_templates_root = this.getProperty("templates_root");
         this.m_empty_slot_key = this.getProperty("default_key");
         this.m_empty_slot_value = this.getProperty("default_value");
         this.m_service_name = this.getProperty("service_name");
 
-        // initialize the extendable properties tmp list
-        this.m_extended_config_fields = new ArrayList<String>();
-        
-        // editor template and properties file
+        // editor template
         this.m_editor_file = this.getProperty("editor_template");
-        this.m_properties_file = this.getProperty("properties_file");
         
         // get the accessed scripts
         this.m_service_restart_script = this.getProperty("service_restart_script");
-        this.m_aws_set_creds_script = this.getProperty("aws_script");
+        
+        // (service) property revisions that can be reverted to
+        this.m_properties.setRevisionsKept(this.getIntProperty("revisions_kept",PropertiesStore.DEFAULT_REVISIONS));
         
         // enable/disable the extendable config feature
         this.extendableConfig();
     }
+    
+    /**
+     * Multi-target mode: take the settings missing from our own configuration from the parent (main) editor. Must be set before loadProperties().
+     * @param parent - the main editor
+     */
+    public void setParent(PropertiesEditor parent) {
+        this.m_parent = parent;
+        this.setMetrics(parent.getMetrics());
+    }
+    
+    /**
+     * Record into a metrics registry (the targets record into the main editor's)
+     * @param metrics - the registry
+     */
+    protected void setMetrics(Metrics metrics) {
+        this.bindMetrics(metrics);
+    }
+    
+    // bind our instruments
+    private void bindMetrics(Metrics metrics) {
+        this.m_metrics = metrics;
+        this.m_save_timer = this.getPhaseTimer("save");
+        this.m_save_failures = metrics.counter("properties_editor_save_failures_total","Property file saves that failed","");
+        this.m_saved_bytes = metrics.counter("properties_editor_saved_bytes_total","Bytes written to the property files","");
+        this.m_journal_timer = this.getPhaseTimer("journal");
+    }
+    
+    /**
+     * The metrics registry we record into
+     * @return the registry
+     */
+    public Metrics getMetrics() {
+        return this.m_metrics;
+    }
+    
+    /**
+     * The latency timer of a phase
+     * @param phase - the phase (i.e. "save")
+     * @return the timer
+     */
+    public Metrics.Timer getPhaseTimer(String phase) {
+        return this.m_metrics.timer(PHASE_METRIC,PHASE_METRIC_HELP,"phase=\"" + phase + "\"");
+    }
+    
+    /**
+     * Background writer shared by the savers of the targets (multi-target mode)
+     * @return the shared scheduler
+     */
+    protected synchronized ScheduledExecutorService getSharedSaverScheduler() {
+        if (this.m_shared_saver_scheduler == null) {
+            this.m_shared_saver_scheduler = WriteBehindSaver.createScheduler("properties-editor-saver-targets");
+        }
+        return this.m_shared_saver_scheduler;
+    }
+    
+    /**
+     * Estimated heap used by the loaded (service) properties: the document text plus, per entry, the key/value strings
+     * (shared by the document and the snapshot) and the map/document entry overhead
+     * @return the estimate in bytes (0 if not loaded)
+     */
+    protected long estimateLoadedBytes() {
+        PropertiesDocument document = this.m_properties_document;
+        if (document == null) {
+            return 0;
+        }
+        PropertiesSnapshot snapshot = this.m_properties.snapshot();
+        long bytes = 512 + 2L * document.length();
+        for(Map.Entry<String,String> entry : snapshot.asMap().entrySet()) {
+            bytes += 230 + 2L * (entry.getKey().length() + entry.getValue().length());
+        }
+        return bytes;
+    }
+    
+    /**
+     * Add a hook fired whenever one of its (service) property keys changes
+     * @param hook - the hook
+     */
+    public void addKeyChangeHook(KeyChangeHook hook) {
+        this.m_key_change_hooks.add(hook);
+    }
+    
+    /**
+     * Start watching both property files for external changes (if enabled)
+     */
+    public void startWatching() {
+        String enabled = this.getProperty("watch_files");
+        if (enabled != null && enabled.equalsIgnoreCase("false")) {
+            System.out.println("PropertiesEditor: file watching disabled");
+            return;
+        }
+        try {
+            this.m_watcher = new PropertiesFileWatcher(this.getIntProperty("watch_settle_ms",DEFAULT_WATCH_SETTLE_MS));
+            this.watchFiles(this.m_watcher);
+            this.m_watcher.start();
+        }
+        catch (IOException ex) {
+            System.out.println("PropertiesEditor: Unable to watch property files: " + ex.getMessage());
+            this.m_watcher = null;
+        }
+    }
+    
+    /**
+     * Watch both property files using a watcher shared with the main editor (multi-target mode)
+     * @param watcher - the shared watcher (NULL if watching is disabled)
+     */
+    public void startWatching(PropertiesFileWatcher watcher) {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            this.watchFiles(watcher);
+        }
+        catch (IOException ex) {
+            System.out.println("PropertiesEditor: Unable to watch property files: " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Get the file watcher
+     * @return the watcher, NULL if not watching (or using a shared one)
+     */
+    public PropertiesFileWatcher getWatcher() {
+        return this.m_watcher;
+    }
+    
+    // register both files with the watcher
+    private void watchFiles(PropertiesFileWatcher watcher) throws IOException {
+        watcher.watch(this.resolveConfigFile(this.m_properties_file),new PropertiesFileWatcher.Listener() {
+            @Override
+            public void fileChanged(String fq_filename) {
+                // not loaded (or unloaded) yet: the next request will read the current contents
+                synchronized (PropertiesEditor.this) {
+                    if (m_properties_document != null) {
+                        reloadChangedFile(m_properties,m_properties_document,m_properties_saver,fq_filename);
+                    }
+                }
+            }
+        });
+        watcher.watch(this.resolveConfigFile(this.m_editor_properties_file),new PropertiesFileWatcher.Listener() {
+            @Override
+            public void fileChanged(String fq_filename) {
+                // not loaded (or unloaded) yet: the next request will read the current contents
+                synchronized (PropertiesEditor.this) {
+                    if (m_editor_properties_document != null && reloadChangedFile(m_editor_properties,m_editor_properties_document,m_editor_properties_saver,fq_filename)) {
+                        applyEditorConfig();
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Reload an externally modified file: re-parse only if its checksum changed and merge the key-level differences into the store
+     * @param store - the store for the file
+     * @param document - the document for the file
+     * @param saver - the saver for the file
+     * @param fq_filename - the fully qualified filename
+     * @return TRUE if the store was updated
+     */
+    protected boolean reloadChangedFile(PropertiesStore store,PropertiesDocument document,WriteBehindSaver saver,String fq_filename) {
+        long start = System.nanoTime();
+        byte[] bytes = null;
+        try {
+            bytes = Files.readAllBytes(Paths.get(fq_filename));
+        }
+        catch (NoSuchFileException ex) {
+            // being replaced... the next event will pick it up
+            return false;
+        }
+        catch (IOException ex) {
+            System.out.println("PropertiesEditor: Unable to re-read: " + fq_filename + " Exception: " + ex.getMessage());
+            return false;
+        }
+        
+        // re-parse (skipped when the checksum matches what we last read or wrote)
+        final Map<String,String> base;
+        final Map<String,String> theirs;
+        synchronized (document) {
+            base = document.toMap();
+            if (document.reload(bytes) == false) {
+                return false;
+            }
+            theirs = document.toMap();
+        }
+        
+        // key-level differences made on disk
+        final Map<String,String> changed = new LinkedHashMap<String,String>();
+        final List<String> removed = new ArrayList<String>();
+        for(Map.Entry<String,String> entry : theirs.entrySet()) {
+            if (entry.getValue().equals(base.get(entry.getKey())) == false) {
+                changed.put(entry.getKey(),entry.getValue());
+            }
+        }
+        for(String key : base.keySet()) {
+            if (theirs.containsKey(key) == false) {
+                removed.add(key);
+            }
+        }
+        
+        // merge: the file wins when a key was also edited here but not yet saved
+        final long[] conflicts = new long[1];
+        PropertiesSnapshot previous = store.snapshot();
+        PropertiesSnapshot merged = store.update(new PropertiesStore.Edit() {
+            @Override
+            public void apply(Map<String,String> properties) {
+                for(Map.Entry<String,String> entry : changed.entrySet()) {
+                    String ours = properties.get(entry.getKey());
+                    if (ours != null && ours.equals(base.get(entry.getKey())) == false && ours.equals(entry.getValue()) == false) {
+                        System.out.println("PropertiesEditor: conflict on " + entry.getKey() + "... using the value from " + fq_filename);
+                        ++conflicts[0];
+                    }
+                    properties.put(entry.getKey(),entry.getValue());
+                }
+                for(String key : removed) {
+                    String ours = properties.get(key);
+                    if (ours != null && ours.equals(base.get(key)) == false) {
+                        System.out.println("PropertiesEditor: conflict on " + key + "... removed in " + fq_filename);
+                        ++conflicts[0];
+                    }
+                    properties.remove(key);
+                }
+                clearEmptyConfigSlots(properties);
+            }
+        });
+        
+        // journal what was changed on disk
+        int file = (store == this.m_editor_properties) ? ChangeJournal.EDITOR : ChangeJournal.PROPERTIES;
+        this.journalChanges(file,previous,merged,FILE_USER);
+        
+        // what is on disk now... and re-queue any pending (local) edits on top of it (otherwise the file holds everything)
+        saver.setPersisted(theirs);
+        if (saver.hasPending()) {
+            saver.save(merged);
+        }
+        else {
+            this.journalSaved(file,merged,true);
+        }
+        
+        long elapsed_us = (System.nanoTime() - start) / 1000;
+        this.m_reloads.incrementAndGet();
+        this.m_reload_conflicts.addAndGet(conflicts[0]);
+        this.m_last_reload_us.set(elapsed_us);
+        System.out.println("PropertiesEditor: reloaded " + fq_filename + " (" + changed.size() + " changed, " + removed.size() + " removed, " + conflicts[0] + " conflicts) in " + elapsed_us + "us");
+        return true;
+    }
+    
+    /**
+     * Number of external changes applied
+     * @return the reload count
+     */
+    public long getReloads() {
+        return this.m_reloads.get();
+    }
+    
+    /**
+     * Number of keys changed both here (unsaved) and externally
+     * @return the conflict count
+     */
+    public long getReloadConflicts() {
+        return this.m_reload_conflicts.get();
+    }
+    
+    /**
+     * Latency of the last reload
+     * @return the last reload latency in microseconds
+     */
+    public long getLastReloadMicros() {
+        return this.m_last_reload_us.get();
+    }
+    
+    /**
+     * Synchronously write out any pending (write-behind) saves
+     */
+    public void flush() {
+        if (this.m_properties_saver != null) {
+            this.m_properties_saver.flush();
+        }
+        if (this.m_editor_properties_saver != null) {
+            this.m_editor_properties_saver.flush();
+        }
+    }
+    
+    /**
+     * Shutdown: flush pending saves and stop the background writers
+     */
+    public void shutdown() {
+        if (this.m_watcher != null) {
+            this.m_watcher.stop();
+        }
+        if (this.m_properties_saver != null) {
+            this.m_properties_saver.shutdown();
+            System.out.println(this.m_properties_saver.toString());
+        }
+        if (this.m_editor_properties_saver != null) {
+            this.m_editor_properties_saver.shutdown();
+            System.out.println(this.m_editor_properties_saver.toString());
+        }
+        if (this.m_journal != null) {
+            this.m_journal.close();
+        }
+        synchronized (this) {
+            if (this.m_shared_saver_scheduler != null) {
+                this.m_shared_saver_scheduler.shutdown();
+            }
+        }
+    }
    
     /**
     * Get a string-based property for mDSPropertiesEditor App (self)
@@ -118,10 +589,13 @@ public class PropertiesEditor extends BasicAuthenticator {
     * @return - the property value if found, NULL otherwise
     */
     public String getProperty(String key) {
-        String prop = (String)this.m_editor_properties.get(key);
+        String prop = this.m_editor_properties.get(key);
         if (prop != null && prop.length() > 0) {
             return prop;
         }
+        if (this.m_parent != null) {
+            return this.m_parent.getProperty(key);
+        }
         return null;
     }
 
@@ -140,28 +614,83 @@ public class PropertiesEditor extends BasicAuthenticator {
         }
         return -1;
     }
+     
+    /**
+     * Get an integer-based property for mDSPropertiesEditor App (self) with a default
+     * @param key - name of the property
+     * @param default_value - value to use if the property is not set or cannot be parsed
+     * @return - the property value if found as an integer, default_value otherwise
+     */
+     public int getIntProperty(String key,int default_value) {
+        String s_value = this.getProperty(key);
+        if (s_value != null) {
+            try {
+                return Integer.parseInt(s_value.trim());
+            }
+            catch (NumberFormatException ex) {
+                System.out.println("Exception caught in getIntProperty (unable to parse integer): " + ex.getMessage() + " using default: " + default_value);
+            }
+        }
+        return default_value;
+    }
+    
+    /**
+     * Resolve a properties filename (relative to the config files root unless fully qualified)
+     * @param filename
+     * @return the fully qualified filename
+     */
+    protected String resolveConfigFile(String filename) {
+        if (filename != null && filename.startsWith("/")) {
+            return filename;
+        }
+        return Utils.getWorkingDirectory() + this.m_config_files_root + filename;
+    }
+    
+    /**
+     * Load a properties file as a document (an unreadable file is an empty document)
+     * @param filename
+     * @return the document
+     */
+    protected PropertiesDocument loadDocument(String filename) {
+        try {
+            return PropertiesDocument.load(this.resolveConfigFile(filename));
+        }
+        catch (IOException ex) {
+            System.out.println("Exception during Reading Properties File: " + ex.getMessage());
+            return PropertiesDocument.parse(new byte[0]);
+        }
+    }
     
     /**
-     * Write a properties file (with comments)
-     * @param comments
+     * Write a properties file: the changes are spliced into the document (keeping comments and order) which is then atomically saved
+     * @param document
      * @param props
      * @param filename
      * @return 
      */
-    protected boolean writePropertiesFile(String comments,Properties props,String filename) {
-        OutputStream output = null;
+    protected boolean writePropertiesFile(PropertiesDocument document,PropertiesSnapshot props,String filename) {
         boolean written = false;
 
         if (props.isEmpty() == false) {
+            long start = System.nanoTime();
             try {
-                String fq_filename = Utils.getWorkingDirectory() + this.m_config_files_root + filename;
-                output = new FileOutputStream(fq_filename);
-                props.store(output, comments);
+                String fq_filename = this.resolveConfigFile(filename);
+                int changed = 0;
+                synchronized (document) {
+                    changed = document.apply(props.asMap());
+                    document.save(fq_filename);
+                    this.m_saved_bytes.add(document.length());
+                }
                 written = true;
+                
+                // DEBUG
+                System.out.println("Wrote " + filename + " (" + changed + " keys changed)");
             } 
             catch (IOException ex) {
                 System.out.println("Exception caught: " + ex.getMessage() + " Filename: " + filename);
+                this.m_save_failures.increment();
             }
+            this.m_save_timer.stop(start);
         }
         else {
             System.out.println("No properties/changes to write out to filename: " + filename);
@@ -176,35 +705,45 @@ public class PropertiesEditor extends BasicAuthenticator {
        // DEBUG
        System.out.println("Saving PropertiesEditor Properties File...");
 
-       // rewrite the file
-       this.writePropertiesFile("Updated configurator property file",this.m_editor_properties, this.m_editor_properties_file);
+       // rewrite the file (possibly coalesced with other edits)
+       this.m_editor_properties_saver.save(this.m_editor_properties.snapshot());
     }
     
     /**
     * Save the properties file
     */
-    protected void savePropertiesFile() {
+    protected void savePropertiesFile(PropertiesSnapshot snapshot) {
+        // DEBUG
+        System.out.println("Saving Properties File...");
+
+        // rewrite the file (possibly coalesced with other edits)
+        this.m_properties_saver.save(snapshot);
+    }
+    
+    /**
+     * Update config_fields for any newly added fields to display (the empty one is put back at the end of the config_fields value)
+     * @param props - properties being edited
+     * @param extended_config_fields - the added fields
+     */
+    protected void extendConfigFields(Map<String,String> props,List<String> extended_config_fields) {
+        String config_fields = props.get("config_fields");
+        if (config_fields == null || extended_config_fields.isEmpty()) {
+            return;
+        }
+        
         // updating the config_fields for any new fields to display
         String added_config_fields = "";
-        for(int i=0;i<this.m_extended_config_fields.size();++i) {
-            added_config_fields += this.m_extended_config_fields.get(i);
-            if (i < this.m_extended_config_fields.size()-1) {
+        for(int i=0;i<extended_config_fields.size();++i) {
+            added_config_fields += extended_config_fields.get(i);
+            if (i < extended_config_fields.size()-1) {
                 added_config_fields += ";";
             }
         }
 
-        // append to config_fields if we have made additions...put the empty one back at the end of the config_fields value...
-        if (added_config_fields.length() > 0) {
-            this.m_config_fields = this.m_config_fields.replace(this.m_empty_slot_key,added_config_fields);
-            this.m_config_fields += ";" + this.m_empty_slot_key;
-            this.m_properties.put(("config_fields"), this.m_config_fields);
-        }
-
-        // DEBUG
-        System.out.println("Saving Properties File...");
-
-        // rewrite the file (with comments)
-        this.writePropertiesFile("Updated property file",this.m_properties,this.m_properties_file);
+        // append to config_fields...put the empty one back at the end of the config_fields value...
+        config_fields = config_fields.replace(this.m_empty_slot_key,added_config_fields);
+        config_fields += ";" + this.m_empty_slot_key;
+        props.put("config_fields",config_fields);
     }
     
     // set the extendable config
@@ -214,7 +753,7 @@ public class PropertiesEditor extends BasicAuthenticator {
     
     // determine if we want to enable extendable configuratoin
     protected void extendableConfig() {
-        String enabled = this.m_editor_properties.getProperty("extendable_config");
+        String enabled = this.getProperty("extendable_config");
         if (enabled != null && enabled.equalsIgnoreCase("true") == true) {
             this.enableExtendableConfig(true);
         }
@@ -229,46 +768,40 @@ public class PropertiesEditor extends BasicAuthenticator {
     }
    
     /**
-    * Add some empty configuration slots in the configuration table for adding new config entries
-    * @param props
+    * Read in the properties from a properties document into the store
+     * @param store
+     * @param document
+     * @return the loaded snapshot
     */
-    protected void addEmptyConfigSlots(Properties props) {
-        props.remove(this.m_empty_slot_key);
-        props.put(this.m_empty_slot_key,this.m_empty_slot_value);
-    }
-    
-    /**
-    * Open Properties and read in from properties file
-     * @param prop
-     * @param filename
-     * @return 
-    */
-    protected Properties getProperties(Properties prop,String filename) {
-       String fq_filename = Utils.getWorkingDirectory() + this.m_config_files_root + filename;
-       Properties filled_props = Utils.getPropertiesFQ(prop, fq_filename);
-       
-       // provide some defaults
-       this.m_config_fields = filled_props.getProperty("config_fields",null);
+    protected PropertiesSnapshot loadProperties(PropertiesStore store,PropertiesDocument document) {
+       final Map<String,String> filled_props = document.toMap();
        
-       // return the props
-       return filled_props;
+       // publish the loaded properties (dropping any empty slots an older editor may have saved)
+       return store.update(new PropertiesStore.Edit() {
+           @Override
+           public void apply(Map<String,String> properties) {
+               properties.clear();
+               properties.putAll(filled_props);
+               clearEmptyConfigSlots(properties);
+           }
+       });
     }
 
     // config_fields being used
-    protected boolean configFieldsEnabled() {
-        return !(this.m_config_fields == null);
+    protected boolean configFieldsEnabled(PropertiesSnapshot props) {
+        return !(props.get("config_fields") == null);
     }
     
     /**
      * Clear out the non-used extra configuration entry slots - don't try to store them...
      * @param props
      */
-   protected void clearEmptyConfigSlots(Properties props) {
-       Enumeration e = props.propertyNames();
-       while (e.hasMoreElements()) {
-           String key = (String) e.nextElement();
-           if (key.contains(this.m_empty_slot_key)) {
-               props.remove(key);
+   protected void clearEmptyConfigSlots(Map<String,String> props) {
+       Iterator<String> keys = props.keySet().iterator();
+       while (keys.hasNext()) {
+           String key = keys.next();
+           if (this.m_empty_slot_key != null && key.contains(this.m_empty_slot_key)) {
+               keys.remove();
            }
        }
    }
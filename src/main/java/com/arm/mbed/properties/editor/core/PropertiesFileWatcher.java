@@ -0,0 +1,183 @@
+/**
+ * @file    PropertiesFileWatcher.java
+ * @brief Watches the managed property files for external changes
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Properties File Watcher - a background WatchService thread notifying listeners when their (fully qualified) files are created or modified
+ * @author Doug Anson
+ */
+public class PropertiesFileWatcher implements Runnable {
+    /**
+     * Notified (on the watcher thread) when a watched file changes
+     */
+    public interface Listener {
+        /**
+         * The file has been created or modified
+         * @param fq_filename - the fully qualified filename
+         */
+        public void fileChanged(String fq_filename);
+    }
+
+    private final WatchService m_watch_service;
+    private final ConcurrentHashMap<Path,Listener> m_listeners = new ConcurrentHashMap<Path,Listener>();
+    private final Map<WatchKey,Path> m_directories = new HashMap<WatchKey,Path>();
+    private final long m_settle_ms;                                  // let writers finish before reading
+    private Thread m_thread = null;
+    private volatile boolean m_running = false;
+
+    /**
+     * Default constructor
+     * @param settle_ms - quiet period after an event before the listeners are notified
+     * @throws IOException
+     */
+    public PropertiesFileWatcher(long settle_ms) throws IOException {
+        this.m_watch_service = FileSystems.getDefault().newWatchService();
+        this.m_settle_ms = Math.max(0,settle_ms);
+    }
+
+    /**
+     * Watch a file
+     * @param fq_filename - the fully qualified filename
+     * @param listener - notified when the file changes
+     * @throws IOException
+     */
+    public void watch(String fq_filename,Listener listener) throws IOException {
+        Path file = Paths.get(fq_filename).toAbsolutePath().normalize();
+        Path dir = file.getParent();
+        synchronized (this.m_directories) {
+            if (this.m_directories.containsValue(dir) == false) {
+                // atomic renames (ours and most editors') show up as creates
+                WatchKey key = dir.register(this.m_watch_service,StandardWatchEventKinds.ENTRY_CREATE,StandardWatchEventKinds.ENTRY_MODIFY);
+                this.m_directories.put(key,dir);
+            }
+        }
+        this.m_listeners.put(file,listener);
+    }
+
+    /**
+     * Start the watcher thread
+     */
+    public synchronized void start() {
+        if (this.m_thread == null) {
+            this.m_running = true;
+            this.m_thread = new Thread(this,"properties-editor-watcher");
+            this.m_thread.setDaemon(true);
+            this.m_thread.start();
+        }
+    }
+
+    /**
+     * Stop the watcher thread
+     */
+    public synchronized void stop() {
+        this.m_running = false;
+        try {
+            this.m_watch_service.close();
+        }
+        catch (IOException ex) {
+            System.out.println("PropertiesFileWatcher: Exception caught on close: " + ex.getMessage());
+        }
+        if (this.m_thread != null) {
+            this.m_thread.interrupt();
+            this.m_thread = null;
+        }
+    }
+
+    /**
+     * Watcher thread
+     */
+    @Override
+    public void run() {
+        while (this.m_running) {
+            try {
+                // wait for the first event... then let the writer settle and collect everything else
+                Set<Path> changed = new LinkedHashSet<Path>();
+                WatchKey key = this.m_watch_service.take();
+                this.collect(key,changed);
+                if (this.m_settle_ms > 0) {
+                    Thread.sleep(this.m_settle_ms);
+                }
+                while ((key = this.m_watch_service.poll(0,TimeUnit.MILLISECONDS)) != null) {
+                    this.collect(key,changed);
+                }
+
+                // notify
+                for(Path file : changed) {
+                    Listener listener = this.m_listeners.get(file);
+                    if (listener != null) {
+                        try {
+                            listener.fileChanged(file.toString());
+                        }
+                        catch (RuntimeException ex) {
+                            System.out.println("PropertiesFileWatcher: Exception caught in listener for: " + file + " Exception: " + ex.getMessage());
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ClosedWatchServiceException ex) {
+                return;
+            }
+        }
+    }
+
+    // collect the watched files affected by the events of a key
+    private void collect(WatchKey key,Set<Path> changed) {
+        Path dir = null;
+        synchronized (this.m_directories) {
+            dir = this.m_directories.get(key);
+        }
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost: treat every watched file as changed
+                changed.addAll(this.m_listeners.keySet());
+            }
+            else if (dir != null) {
+                Path file = dir.resolve((Path)event.context()).normalize();
+                if (this.m_listeners.containsKey(file)) {
+                    changed.add(file);
+                }
+            }
+        }
+        key.reset();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * @file    PropertiesSnapshot.java
+ * @brief Immutable, versioned view of a set of properties
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Properties Snapshot - an immutable, versioned set of properties that can be read without locking. Snapshots of the same
+ * store share their unchanged properties (see PersistentMap).
+ * @author Doug Anson
+ */
+public class PropertiesSnapshot {
+    private final long m_version;                                // version (increases with every published change)
+    private final PersistentMap m_properties;                    // the (immutable) properties
+
+    // constructor
+    PropertiesSnapshot(long version,PersistentMap properties) {
+        this.m_version = version;
+        this.m_properties = properties;
+    }
+
+    /**
+     * Snapshot version
+     * @return the version
+     */
+    public long getVersion() {
+        return this.m_version;
+    }
+
+    /**
+     * Get a property value
+     * @param key - the property key
+     * @return the value, NULL if not present
+     */
+    public String get(String key) {
+        return this.m_properties.get(key);
+    }
+
+    /**
+     * Check for a property
+     * @param key - the property key
+     * @return TRUE if present
+     */
+    public boolean containsKey(String key) {
+        return this.m_properties.containsKey(key);
+    }
+
+    /**
+     * The property keys
+     * @return the (unmodifiable) keys
+     */
+    public Set<String> keys() {
+        return this.m_properties.keySet();
+    }
+
+    /**
+     * The properties as an unmodifiable map
+     * @return the properties
+     */
+    public Map<String,String> asMap() {
+        return this.m_properties;
+    }
+
+    /**
+     * The changes from this snapshot to another (of the same store): only the properties they do not share are compared
+     * @param updated - the later snapshot
+     * @return key -> value in the updated snapshot (NULL: removed) for each key added, changed or removed
+     */
+    public Map<String,String> changesTo(PropertiesSnapshot updated) {
+        return PersistentMap.diff(this.m_properties,updated.m_properties);
+    }
+
+    // the properties (shared by a reverted snapshot)
+    PersistentMap persistentMap() {
+        return this.m_properties;
+    }
+
+    /**
+     * Number of properties
+     * @return the number of properties
+     */
+    public int size() {
+        return this.m_properties.size();
+    }
+
+    /**
+     * Check for an empty snapshot
+     * @return TRUE if there are no properties
+     */
+    public boolean isEmpty() {
+        return this.m_properties.isEmpty();
+    }
+
+    /**
+     * Copy the snapshot into a (mutable) java.util.Properties
+     * @return the properties copy
+     */
+    public Properties toProperties() {
+        Properties props = new Properties();
+        props.putAll(this.m_properties);
+        return props;
+    }
+}
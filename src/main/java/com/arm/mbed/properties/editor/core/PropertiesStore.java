@@ -0,0 +1,397 @@
+/**
+ * @file    PropertiesStore.java
+ * @brief Properties store publishing immutable snapshots
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Properties Store - readers use the current immutable snapshot without locking, writers are serialized and publish a new snapshot atomically.
+ * The last published snapshots are kept as revisions (they share their unchanged properties) and any of them can be published again.
+ * @author Doug Anson
+ */
+public class PropertiesStore {
+    /**
+     * Default number of revisions kept
+     */
+    public static final int DEFAULT_REVISIONS = 20;
+
+    /**
+     * An edit applied to a private copy of the current properties
+     */
+    public interface Edit {
+        /**
+         * Apply the edit
+         * @param properties - mutable copy of the current properties
+         */
+        public void apply(Map<String,String> properties);
+    }
+
+    /**
+     * A published snapshot and when it was published
+     */
+    public static final class Revision {
+        private final PropertiesSnapshot m_snapshot;
+        private final long m_time_ms;
+
+        // constructor
+        private Revision(PropertiesSnapshot snapshot,long time_ms) {
+            this.m_snapshot = snapshot;
+            this.m_time_ms = time_ms;
+        }
+
+        /**
+         * The snapshot
+         * @return the snapshot
+         */
+        public PropertiesSnapshot getSnapshot() {
+            return this.m_snapshot;
+        }
+
+        /**
+         * Snapshot version
+         * @return the version
+         */
+        public long getVersion() {
+            return this.m_snapshot.getVersion();
+        }
+
+        /**
+         * When it was published
+         * @return milliseconds since the epoch
+         */
+        public long getTime() {
+            return this.m_time_ms;
+        }
+    }
+
+    /**
+     * Notified of every published snapshot, in publish order and one at a time, after the write lock is released: slow side
+     * effects do not hold up other writers (a snapshot published while the listener is busy is passed on by the thread notifying it)
+     */
+    public interface Listener {
+        /**
+         * A snapshot was published
+         * @param previous - the snapshot replaced
+         * @param current - the published snapshot
+         */
+        public void published(PropertiesSnapshot previous,PropertiesSnapshot current);
+    }
+
+    private final ReentrantLock m_write_lock = new ReentrantLock();
+    private volatile PropertiesSnapshot m_snapshot = null;
+    private volatile Listener m_listener = null;
+    private final ArrayDeque<PropertiesSnapshot[]> m_published = new ArrayDeque<PropertiesSnapshot[]>();   // not yet notified (write lock)
+    private final ReentrantLock m_listener_lock = new ReentrantLock();
+    private final ArrayDeque<Revision> m_revisions = new ArrayDeque<Revision>();   // oldest first (write lock)
+    private int m_revisions_kept = DEFAULT_REVISIONS;
+    private long m_unloaded_ms = 0;                                                 // revisions last dropped (write lock)
+
+    /**
+     * Default constructor (empty store)
+     */
+    public PropertiesStore() {
+        this.m_snapshot = new PropertiesSnapshot(0,PersistentMap.EMPTY);
+    }
+
+    /**
+     * Set the number of revisions kept
+     * @param kept - the number of (latest) published snapshots kept (at least 1: the current one)
+     */
+    public void setRevisionsKept(int kept) {
+        this.m_write_lock.lock();
+        try {
+            this.m_revisions_kept = Math.max(1,kept);
+            this.trimRevisions();
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * The revisions kept
+     * @return the revisions, newest (the current snapshot) first
+     */
+    public List<Revision> getRevisions() {
+        this.m_write_lock.lock();
+        try {
+            List<Revision> revisions = new ArrayList<Revision>(this.m_revisions.size());
+            Iterator<Revision> newest_first = this.m_revisions.descendingIterator();
+            while (newest_first.hasNext()) {
+                revisions.add(newest_first.next());
+            }
+            return revisions;
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * When the revisions were last dropped by unload(): the revisions kept are complete (up to the number kept) from then on
+     * @return milliseconds since the epoch, 0 if never
+     */
+    public long getUnloadedTime() {
+        this.m_write_lock.lock();
+        try {
+            return this.m_unloaded_ms;
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * Get a revision
+     * @param version - the snapshot version
+     * @return the revision, NULL if not kept
+     */
+    public Revision getRevision(long version) {
+        this.m_write_lock.lock();
+        try {
+            for(Revision revision : this.m_revisions) {
+                if (revision.getVersion() == version) {
+                    return revision;
+                }
+            }
+            return null;
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * Publish the properties of a revision again (as a new snapshot sharing them)
+     * @param version - the version of the revision
+     * @return the published snapshot, NULL if the revision is not kept
+     */
+    public PropertiesSnapshot revert(long version) {
+        this.m_write_lock.lock();
+        try {
+            Revision revision = this.getRevision(version);
+            if (revision == null) {
+                return null;
+            }
+            PropertiesSnapshot current = this.m_snapshot;
+            return this.publish(current,new PropertiesSnapshot(current.getVersion() + 1,revision.getSnapshot().persistentMap()));
+        }
+        finally {
+            this.m_write_lock.unlock();
+            this.notifyListener();
+        }
+    }
+
+    // drop the oldest revisions beyond the number kept (write lock held)
+    private void trimRevisions() {
+        while (this.m_revisions.size() > this.m_revisions_kept) {
+            this.m_revisions.removeFirst();
+        }
+    }
+
+    /**
+     * Set the listener
+     * @param listener - notified of every published snapshot (NULL for none)
+     */
+    public void setListener(Listener listener) {
+        this.m_write_lock.lock();
+        try {
+            this.m_listener = listener;
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * Get the current snapshot (lock free)
+     * @return the current snapshot
+     */
+    public PropertiesSnapshot snapshot() {
+        return this.m_snapshot;
+    }
+
+    /**
+     * Apply an edit and publish the resulting snapshot
+     * @param edit - the edit to apply
+     * @return the published snapshot
+     */
+    public PropertiesSnapshot update(Edit edit) {
+        this.m_write_lock.lock();
+        try {
+            PropertiesSnapshot current = this.m_snapshot;
+            PersistentMap.Editor editor = current.persistentMap().edit();
+            edit.apply(editor);
+            return this.publish(current,new PropertiesSnapshot(current.getVersion() + 1,editor.persistent()));
+        }
+        finally {
+            this.m_write_lock.unlock();
+            this.notifyListener();
+        }
+    }
+
+    // publish the new snapshot (kept as the latest revision) and queue it for the listener (write lock held)
+    private PropertiesSnapshot publish(PropertiesSnapshot previous,PropertiesSnapshot current) {
+        this.m_snapshot = current;
+        this.m_revisions.addLast(new Revision(current,System.currentTimeMillis()));
+        this.trimRevisions();
+        if (this.m_listener != null) {
+            this.m_published.addLast(new PropertiesSnapshot[] { previous, current });
+        }
+        return current;
+    }
+    
+    // notify the listener of the queued snapshots in publish order (write lock released)... if it is being notified already, that thread passes ours on
+    private void notifyListener() {
+        if (this.m_write_lock.isHeldByCurrentThread()) {
+            // nested in another write: the outermost one notifies
+            return;
+        }
+        do {
+            if (this.m_listener_lock.tryLock() == false) {
+                return;
+            }
+            try {
+                PropertiesSnapshot[] published = null;
+                while ((published = this.nextPublished()) != null) {
+                    Listener listener = this.m_listener;
+                    if (listener != null) {
+                        listener.published(published[0],published[1]);
+                    }
+                }
+            }
+            finally {
+                this.m_listener_lock.unlock();
+            }
+        }
+        while (this.hasPublished());    // queued after the last poll but before the unlock
+    }
+    
+    // the next snapshot to notify the listener of, NULL if none
+    private PropertiesSnapshot[] nextPublished() {
+        this.m_write_lock.lock();
+        try {
+            return this.m_published.pollFirst();
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+    
+    // snapshots waiting to be notified
+    private boolean hasPublished() {
+        this.m_write_lock.lock();
+        try {
+            return this.m_published.isEmpty() == false;
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * Replace all of the properties (i.e. on load)
+     * @param props - the new properties
+     * @return the published snapshot
+     */
+    public PropertiesSnapshot replace(Properties props) {
+        PersistentMap.Editor copy = PersistentMap.EMPTY.edit();
+        for(String key : props.stringPropertyNames()) {
+            copy.put(key,props.getProperty(key));
+        }
+        return this.replace(copy.persistent());
+    }
+
+    /**
+     * Replace all of the properties (i.e. on load)
+     * @param props - the new properties (in order)
+     * @return the published snapshot
+     */
+    public PropertiesSnapshot replace(Map<String,String> props) {
+        PersistentMap copy = PersistentMap.from(props);
+        this.m_write_lock.lock();
+        try {
+            PropertiesSnapshot current = this.m_snapshot;
+            return this.publish(current,new PropertiesSnapshot(current.getVersion() + 1,copy));
+        }
+        finally {
+            this.m_write_lock.unlock();
+            this.notifyListener();
+        }
+    }
+
+    /**
+     * Drop the properties and the revisions (the owner reloads them lazily). The listener is not notified: the contents did not change, they are just not held.
+     * @return the (empty) published snapshot
+     */
+    public PropertiesSnapshot unload() {
+        this.m_write_lock.lock();
+        try {
+            this.m_revisions.clear();
+            this.m_unloaded_ms = System.currentTimeMillis();
+            this.m_snapshot = new PropertiesSnapshot(this.m_snapshot.getVersion() + 1,PersistentMap.EMPTY);
+            return this.m_snapshot;
+        }
+        finally {
+            this.m_write_lock.unlock();
+        }
+    }
+
+    /**
+     * Set a single property
+     * @param key - the property key
+     * @param value - the property value
+     * @return the published snapshot
+     */
+    public PropertiesSnapshot put(final String key,final String value) {
+        return this.update(new Edit() {
+            @Override
+            public void apply(Map<String,String> properties) {
+                properties.put(key,value);
+            }
+        });
+    }
+
+    /**
+     * Get a single property from the current snapshot
+     * @param key - the property key
+     * @return the value, NULL if not present
+     */
+    public String get(String key) {
+        return this.m_snapshot.get(key);
+    }
+
+    /**
+     * Check for an empty store
+     * @return TRUE if the current snapshot is empty
+     */
+    public boolean isEmpty() {
+        return this.m_snapshot.isEmpty();
+    }
+}
@@ -0,0 +1,579 @@
+/**
+ * @file    Schema.java
+ * @brief Property schema: labels, groups and precompiled value validators per key or key pattern
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Schema - declares per key (or "*" glob key pattern) a label, group, type, range, allowed values, pattern and/or secrecy as
+ * "{key}.{attribute}=..." properties. Every definition is compiled once at load into validators; the effective rule of a
+ * key (its own attributes first, then those of the first matching pattern that sets them) is resolved once and cached,
+ * so checking an edit is a map lookup plus a few comparisons.
+ * @author Doug Anson
+ */
+public class Schema {
+    // attributes
+    public static final String LABEL = "label";
+    public static final String GROUP = "group";
+    public static final String TYPE = "type";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String VALUES = "values";
+    public static final String PATTERN = "pattern";
+    public static final String SECRET = "secret";
+    private static final List<String> ATTRIBUTES = Arrays.asList(LABEL,GROUP,TYPE,MIN,MAX,VALUES,PATTERN,SECRET);
+
+    // keys naming one of these are secret unless the schema says otherwise
+    private static final String[] SECRET_WORDS = { "password", "secret", "token" };
+
+    // value types
+    public static final String TYPE_STRING = "string";
+    public static final String TYPE_INT = "int";
+    public static final String TYPE_LONG = "long";
+    public static final String TYPE_NUMBER = "number";
+    public static final String TYPE_BOOLEAN = "boolean";
+    private static final List<String> TYPES = Arrays.asList(TYPE_STRING,TYPE_INT,TYPE_LONG,TYPE_NUMBER,TYPE_BOOLEAN);
+
+    /**
+     * A compiled value check
+     */
+    public interface Validator {
+        /**
+         * Check a value
+         * @param value - the value (not NULL)
+         * @return NULL if valid, otherwise what is wrong with it
+         */
+        public String validate(String value);
+    }
+
+    /**
+     * One or more values failed validation
+     */
+    public static class ValidationException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+        private final Map<String,String> m_errors;
+
+        /**
+         * Default constructor
+         * @param errors - key -> what is wrong with its value
+         */
+        public ValidationException(Map<String,String> errors) {
+            super("Validation failed: " + errors);
+            this.m_errors = Collections.unmodifiableMap(new LinkedHashMap<String,String>(errors));
+        }
+
+        /**
+         * The failures
+         * @return key -> what is wrong with its value (in order)
+         */
+        public Map<String,String> getErrors() {
+            return this.m_errors;
+        }
+    }
+
+    /**
+     * The effective rule of a key
+     */
+    public static final class Rule {
+        private final String m_label;
+        private final String m_group;
+        private final String m_description;
+        private final Validator[] m_validators;
+        private final Boolean m_secret;
+
+        private Rule(String label,String group,String description,Validator[] validators,Boolean secret) {
+            this.m_label = label;
+            this.m_group = group;
+            this.m_description = description;
+            this.m_validators = validators;
+            this.m_secret = secret;
+        }
+
+        /**
+         * Label
+         * @return the label (NULL if none)
+         */
+        public String getLabel() {
+            return this.m_label;
+        }
+
+        /**
+         * Group
+         * @return the group (NULL if none)
+         */
+        public String getGroup() {
+            return this.m_group;
+        }
+
+        /**
+         * Secrecy as declared
+         * @return TRUE/FALSE if the rule sets it, NULL if not (see Schema.isSecret())
+         */
+        public Boolean getSecret() {
+            return this.m_secret;
+        }
+
+        /**
+         * What the rule accepts (i.e. "int, 1 - 65535")
+         * @return the description ("" if anything is accepted)
+         */
+        public String getDescription() {
+            return this.m_description;
+        }
+
+        /**
+         * Check a value (NULL, a removal, is always valid)
+         * @param value - the value
+         * @return NULL if valid, otherwise what is wrong with it
+         */
+        public String validate(String value) {
+            if (value == null) {
+                return null;
+            }
+            for(Validator validator : this.m_validators) {
+                String error = validator.validate(value);
+                if (error != null) {
+                    return error;
+                }
+            }
+            return null;
+        }
+    }
+
+    // a compiled definition (of a key or a key pattern): the attributes it sets
+    private static final class Definition {
+        private final Pattern m_pattern;            // NULL for an exact key
+        private String m_label = null;
+        private String m_group = null;
+        private String m_type = null;
+        private Double m_min = null;
+        private Double m_max = null;
+        private Set<String> m_values = null;
+        private Pattern m_value_pattern = null;
+        private Boolean m_secret = null;
+
+        private Definition(Pattern pattern) {
+            this.m_pattern = pattern;
+        }
+    }
+
+    // most resolved rules cached (rules of further keys are resolved on every use)
+    private static final int MAX_CACHED_RULES = 65536;
+
+    // no checks (and the rule of keys without any definition)
+    private static final Validator[] NO_VALIDATORS = new Validator[0];
+    private static final Rule NO_RULE = new Rule(null,null,"",NO_VALIDATORS,null);
+
+    // definitions by key, pattern definitions in file order... and the resolved rules
+    private final Map<String,Definition> m_keys = new HashMap<String,Definition>();
+    private final List<Definition> m_patterns = new ArrayList<Definition>();
+    private final Map<String,String> m_labels = new LinkedHashMap<String,String>();
+    private final ConcurrentHashMap<String,Rule> m_rules = new ConcurrentHashMap<String,Rule>();
+
+    // constructor
+    private Schema() {
+    }
+
+    /**
+     * An empty schema (no labels, every value valid)
+     * @return the schema
+     */
+    public static Schema empty() {
+        return new Schema();
+    }
+
+    /**
+     * Compile a schema from its definitions. Invalid attributes are logged and ignored.
+     * @param definitions - "{key or pattern}.{attribute}" -> value (in order)
+     * @return the schema
+     */
+    public static Schema compile(Map<String,String> definitions) {
+        Schema schema = new Schema();
+        Map<String,Definition> patterns = new LinkedHashMap<String,Definition>();
+        for(Map.Entry<String,String> entry : definitions.entrySet()) {
+            int dot = entry.getKey().lastIndexOf('.');
+            String attribute = (dot > 0) ? entry.getKey().substring(dot + 1) : "";
+            if (ATTRIBUTES.contains(attribute) == false) {
+                System.out.println("Schema: unknown attribute (ignored): " + entry.getKey());
+                continue;
+            }
+            String key = entry.getKey().substring(0,dot);
+            Definition definition = null;
+            if (key.indexOf('*') >= 0) {
+                definition = patterns.get(key);
+                if (definition == null) {
+                    definition = new Definition(Schema.glob(key));
+                    patterns.put(key,definition);
+                }
+            }
+            else {
+                definition = schema.m_keys.get(key);
+                if (definition == null) {
+                    definition = new Definition(null);
+                    schema.m_keys.put(key,definition);
+                }
+            }
+            try {
+                Schema.set(definition,attribute,entry.getValue().trim());
+            }
+            catch (IllegalArgumentException ex) {
+                System.out.println("Schema: invalid " + entry.getKey() + " (ignored): " + ex.getMessage());
+            }
+            if (attribute.equals(LABEL) && definition.m_pattern == null) {
+                schema.m_labels.put(key,definition.m_label);
+            }
+        }
+        schema.m_patterns.addAll(patterns.values());
+        return schema;
+    }
+
+    /**
+     * Load and compile a schema file (a missing file is an empty schema)
+     * @param fq_filename - the fully qualified filename
+     * @return the schema
+     */
+    public static Schema load(String fq_filename) {
+        try {
+            long start = System.nanoTime();
+            Map<String,String> definitions = PropertiesDocument.load(fq_filename).toMap();
+            Schema schema = Schema.compile(definitions);
+            System.out.println("Schema: compiled " + schema.m_keys.size() + " keys and " + schema.m_patterns.size() + " patterns from " + fq_filename + " in " + ((System.nanoTime() - start) / 1000) + "us");
+            return schema;
+        }
+        catch (IOException ex) {
+            System.out.println("Schema: unable to read " + fq_filename + " (no labels or validation): " + ex.getMessage());
+            return Schema.empty();
+        }
+    }
+
+    /**
+     * The labels of the (exactly) defined keys
+     * @return key -> label (unmodifiable)
+     */
+    public Map<String,String> getLabels() {
+        return Collections.unmodifiableMap(this.m_labels);
+    }
+
+    /**
+     * The effective rule of a key
+     * @param key - the key
+     * @return the rule (a rule accepting anything if nothing applies)
+     */
+    public Rule getRule(String key) {
+        Rule rule = this.m_rules.get(key);
+        if (rule == null) {
+            rule = this.resolve(key);
+            if (this.m_rules.size() < MAX_CACHED_RULES) {
+                this.m_rules.put(key,rule);
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * Whether the values of a key are secret (never disclosed, i.e. in the history or revision diffs): as the schema
+     * declares it, otherwise as isSecretKey()
+     * @param key - the key
+     * @return TRUE if secret
+     */
+    public boolean isSecret(String key) {
+        Boolean secret = this.getRule(key).getSecret();
+        return (secret != null) ? secret : Schema.isSecretKey(key);
+    }
+
+    /**
+     * Whether a key names a secret: its name contains "password", "secret" or "token" (case insensitive)
+     * @param key - the key
+     * @return TRUE if secret
+     */
+    public static boolean isSecretKey(String key) {
+        String name = key.toLowerCase();
+        for(String word : SECRET_WORDS) {
+            if (name.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check a single value
+     * @param key - the key
+     * @param value - the value (NULL, a removal, is always valid)
+     * @return NULL if valid, otherwise what is wrong with it
+     */
+    public String validate(String key,String value) {
+        return this.getRule(key).validate(value);
+    }
+
+    /**
+     * Check a set of updates
+     * @param updates - key -> value (NULL values are removals)
+     * @throws ValidationException listing every invalid value
+     */
+    public void check(Map<String,String> updates) {
+        Map<String,String> errors = null;
+        for(Map.Entry<String,String> update : updates.entrySet()) {
+            String error = this.validate(update.getKey(),update.getValue());
+            if (error != null) {
+                if (errors == null) {
+                    errors = new LinkedHashMap<String,String>();
+                }
+                errors.put(update.getKey(),error);
+            }
+        }
+        if (errors != null) {
+            throw new ValidationException(errors);
+        }
+    }
+
+    /**
+     * Number of definitions (keys and patterns)
+     * @return the definition count
+     */
+    public int size() {
+        return this.m_keys.size() + this.m_patterns.size();
+    }
+
+    // the effective rule: the key's own attributes, then (per attribute) the first matching pattern that sets it
+    private Rule resolve(String key) {
+        List<Definition> applicable = new ArrayList<Definition>();
+        Definition exact = this.m_keys.get(key);
+        if (exact != null) {
+            applicable.add(exact);
+        }
+        for(Definition pattern : this.m_patterns) {
+            if (pattern.m_pattern.matcher(key).matches()) {
+                applicable.add(pattern);
+            }
+        }
+        if (applicable.isEmpty()) {
+            return NO_RULE;
+        }
+
+        // merge
+        Definition merged = new Definition(null);
+        for(Definition definition : applicable) {
+            merged.m_label = (merged.m_label != null) ? merged.m_label : definition.m_label;
+            merged.m_group = (merged.m_group != null) ? merged.m_group : definition.m_group;
+            merged.m_type = (merged.m_type != null) ? merged.m_type : definition.m_type;
+            merged.m_min = (merged.m_min != null) ? merged.m_min : definition.m_min;
+            merged.m_max = (merged.m_max != null) ? merged.m_max : definition.m_max;
+            merged.m_values = (merged.m_values != null) ? merged.m_values : definition.m_values;
+            merged.m_value_pattern = (merged.m_value_pattern != null) ? merged.m_value_pattern : definition.m_value_pattern;
+            merged.m_secret = (merged.m_secret != null) ? merged.m_secret : definition.m_secret;
+        }
+
+        // validators: type, then range, allowed values and pattern
+        List<Validator> validators = new ArrayList<Validator>();
+        StringBuilder description = new StringBuilder();
+        String type = (merged.m_type != null) ? merged.m_type : TYPE_STRING;
+        if (type.equals(TYPE_STRING) == false) {
+            validators.add(Schema.typeValidator(type));
+            description.append(type);
+        }
+        if (merged.m_min != null || merged.m_max != null) {
+            validators.add(Schema.rangeValidator(merged.m_min,merged.m_max));
+            Schema.describe(description,(merged.m_min != null ? Schema.format(merged.m_min) : "") + " - " + (merged.m_max != null ? Schema.format(merged.m_max) : ""));
+        }
+        if (merged.m_values != null) {
+            validators.add(Schema.valuesValidator(merged.m_values));
+            Schema.describe(description,"one of: " + Schema.join(merged.m_values));
+        }
+        if (merged.m_value_pattern != null) {
+            validators.add(Schema.patternValidator(merged.m_value_pattern));
+            Schema.describe(description,"pattern: " + merged.m_value_pattern.pattern());
+        }
+        return new Rule(merged.m_label,merged.m_group,description.toString(),validators.toArray(new Validator[validators.size()]),merged.m_secret);
+    }
+
+    // set (and compile) one attribute of a definition
+    private static void set(Definition definition,String attribute,String value) {
+        if (attribute.equals(LABEL)) {
+            definition.m_label = value;
+        }
+        else if (attribute.equals(GROUP)) {
+            definition.m_group = value;
+        }
+        else if (attribute.equals(TYPE)) {
+            if (TYPES.contains(value.toLowerCase()) == false) {
+                throw new IllegalArgumentException("unknown type: " + value + " (expected one of: " + TYPES + ")");
+            }
+            definition.m_type = value.toLowerCase();
+        }
+        else if (attribute.equals(MIN)) {
+            definition.m_min = Double.valueOf(value);
+        }
+        else if (attribute.equals(MAX)) {
+            definition.m_max = Double.valueOf(value);
+        }
+        else if (attribute.equals(VALUES)) {
+            Set<String> values = new LinkedHashSet<String>();
+            for(String allowed : value.split(";")) {
+                values.add(allowed.trim());
+            }
+            definition.m_values = values;
+        }
+        else if (attribute.equals(SECRET)) {
+            if (value.equalsIgnoreCase("true") == false && value.equalsIgnoreCase("false") == false) {
+                throw new IllegalArgumentException("expected true or false");
+            }
+            definition.m_secret = Boolean.valueOf(value);
+        }
+        else if (attribute.equals(PATTERN)) {
+            try {
+                definition.m_value_pattern = Pattern.compile(value);
+            }
+            catch (PatternSyntaxException ex) {
+                throw new IllegalArgumentException(ex.getDescription());
+            }
+        }
+    }
+
+    // a "*" glob over keys
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        String[] parts = glob.split("\\*",-1);
+        for(int i=0;i<parts.length;++i) {
+            String part = parts[i];
+            if (i > 0) {
+                regex.append(".*");
+            }
+            if (part.length() > 0) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    // type check
+    private static Validator typeValidator(final String type) {
+        return new Validator() {
+            @Override
+            public String validate(String value) {
+                try {
+                    if (type.equals(TYPE_INT)) {
+                        Integer.parseInt(value);
+                    }
+                    else if (type.equals(TYPE_LONG)) {
+                        Long.parseLong(value);
+                    }
+                    else if (type.equals(TYPE_NUMBER)) {
+                        if (Double.isNaN(Double.parseDouble(value))) {
+                            return "expected a number";
+                        }
+                    }
+                    else if (type.equals(TYPE_BOOLEAN)) {
+                        if (value.equalsIgnoreCase("true") == false && value.equalsIgnoreCase("false") == false) {
+                            return "expected true or false";
+                        }
+                    }
+                    return null;
+                }
+                catch (NumberFormatException ex) {
+                    return type.equals(TYPE_NUMBER) ? "expected a number" : "expected an integer";
+                }
+            }
+        };
+    }
+
+    // numeric range check (a non numeric value fails)
+    private static Validator rangeValidator(final Double min,final Double max) {
+        return new Validator() {
+            @Override
+            public String validate(String value) {
+                double number = 0;
+                try {
+                    number = Double.parseDouble(value);
+                }
+                catch (NumberFormatException ex) {
+                    return "expected a number";
+                }
+                if (min != null && number < min) {
+                    return "must be at least " + Schema.format(min);
+                }
+                if (max != null && number > max) {
+                    return "must be at most " + Schema.format(max);
+                }
+                return null;
+            }
+        };
+    }
+
+    // allowed values check
+    private static Validator valuesValidator(final Set<String> values) {
+        return new Validator() {
+            @Override
+            public String validate(String value) {
+                return values.contains(value) ? null : "must be one of: " + Schema.join(values);
+            }
+        };
+    }
+
+    // (full match) pattern check
+    private static Validator patternValidator(final Pattern pattern) {
+        return new Validator() {
+            @Override
+            public String validate(String value) {
+                return pattern.matcher(value).matches() ? null : "must match: " + pattern.pattern();
+            }
+        };
+    }
+
+    // append to a description
+    private static void describe(StringBuilder description,String part) {
+        if (description.length() > 0) {
+            description.append(", ");
+        }
+        description.append(part);
+    }
+
+    // a bound without a trailing ".0"
+    private static String format(double number) {
+        return (number == Math.rint(number) && Math.abs(number) < 1e15) ? Long.toString((long)number) : Double.toString(number);
+    }
+
+    // "a, b, c"
+    private static String join(Set<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for(String value : values) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * @file    ServerExecutors.java
+ * @brief Request executors for the HTTPS server
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server Executors - creates (and shuts down) the executor used to dispatch HTTP requests
+ * @author Doug Anson
+ */
+public class ServerExecutors {
+    // executor types
+    public static final String EXECUTOR_NONE = "none";                   // run on the HttpServer dispatcher thread (original behavior)
+    public static final String EXECUTOR_FIXED = "fixed";                 // fixed pool, unbounded queue
+    public static final String EXECUTOR_BOUNDED = "bounded";             // fixed pool, bounded queue (overflow runs on the dispatcher)
+    public static final String EXECUTOR_VIRTUAL = "virtual";             // one virtual thread per request (if the JVM supports it)
+
+    // defaults
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+
+    // worker thread names
+    private static final String THREAD_NAME_PREFIX = "properties-editor-worker-";
+
+    /**
+     * Create the request executor
+     * @param type - executor type (none, fixed, bounded, virtual)
+     * @param threads - number of worker threads (fixed/bounded)
+     * @param queue_size - queue size (bounded)
+     * @return the executor, or NULL for the HttpServer default (dispatcher thread) executor
+     */
+    public static ExecutorService create(String type,int threads,int queue_size) {
+        if (threads <= 0) {
+            threads = DEFAULT_THREADS;
+        }
+        if (queue_size <= 0) {
+            queue_size = DEFAULT_QUEUE_SIZE;
+        }
+        if (type == null || type.length() == 0) {
+            type = EXECUTOR_FIXED;
+        }
+
+        if (type.equalsIgnoreCase(EXECUTOR_NONE)) {
+            System.out.println("ServerExecutors: using the HTTP dispatcher thread for all requests");
+            return null;
+        }
+        if (type.equalsIgnoreCase(EXECUTOR_VIRTUAL)) {
+            ExecutorService executor = ServerExecutors.createVirtualThreadExecutor();
+            if (executor != null) {
+                System.out.println("ServerExecutors: using one virtual thread per request");
+                return executor;
+            }
+            System.out.println("ServerExecutors: virtual threads not supported by this JVM... using a fixed pool of " + threads + " threads");
+            type = EXECUTOR_FIXED;
+        }
+        if (type.equalsIgnoreCase(EXECUTOR_BOUNDED)) {
+            System.out.println("ServerExecutors: using a bounded pool of " + threads + " threads (queue size: " + queue_size + ")");
+            return new ThreadPoolExecutor(threads,threads,0L,TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<Runnable>(queue_size),
+                                          new WorkerThreadFactory(),
+                                          new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        if (type.equalsIgnoreCase(EXECUTOR_FIXED) == false) {
+            System.out.println("ServerExecutors: unknown executor type: " + type + "... using a fixed pool");
+        }
+        System.out.println("ServerExecutors: using a fixed pool of " + threads + " threads");
+        return new ThreadPoolExecutor(threads,threads,0L,TimeUnit.MILLISECONDS,
+                                      new LinkedBlockingQueue<Runnable>(),
+                                      new WorkerThreadFactory());
+    }
+
+    /**
+     * Shut down the request executor, waiting for in-flight requests to complete
+     * @param executor - the executor (may be NULL)
+     * @param timeout_sec - how long to wait for in-flight requests
+     */
+    public static void shutdown(ExecutorService executor,int timeout_sec) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout_sec,TimeUnit.SECONDS) == false) {
+                System.out.println("ServerExecutors: in-flight requests did not complete in " + timeout_sec + " seconds... forcing shutdown");
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // create a virtual thread per task executor (JDK 21+) without requiring it at compile time
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        }
+        catch (Exception ex) {
+            // not supported
+            return null;
+        }
+    }
+
+    // named worker threads
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger m_count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r,THREAD_NAME_PREFIX + this.m_count.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
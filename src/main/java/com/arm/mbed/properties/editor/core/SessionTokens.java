@@ -0,0 +1,279 @@
+/**
+ * @file    SessionTokens.java
+ * @brief Signed, expiring session tokens and a verified-credentials cache
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Session Tokens - after one successful (KDF checked) login the client gets a token "id.expiry.mac" (hex, HMAC-SHA256 signed
+ * with a per-process key). Tokens are checked with a constant time MAC comparison plus a lookup in a bounded (LRU) session
+ * table, so repeated requests never run the KDF. Clients that keep sending Basic credentials hit a bounded cache of
+ * already verified credentials (held as keyed MACs, never in plaintext).
+ * @author Doug Anson
+ */
+public class SessionTokens {
+    // defaults
+    public static final int DEFAULT_MAX_SESSIONS = 256;
+    public static final int DEFAULT_TIMEOUT_SEC = 3600;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+    private static final int ID_BYTES = 16;
+
+    private final SecureRandom m_random = new SecureRandom();
+    private final int m_max_sessions;
+    private final long m_timeout_ms;
+    private Mac m_mac = null;                        // keyed with a random per-process key (replaced by clear())
+
+    // session id -> session... and verified credential MAC -> verification (both bounded, least recently used evicted)
+    private final LinkedHashMap<String,Session> m_sessions;
+    private final LinkedHashMap<String,Verified> m_verified;
+
+    // statistics
+    private final AtomicLong m_issued = new AtomicLong(0);
+    private final AtomicLong m_session_hits = new AtomicLong(0);
+    private final AtomicLong m_credential_hits = new AtomicLong(0);
+
+    // a session
+    private static final class Session {
+        private final String m_user;
+        private final long m_expiry;
+
+        private Session(String user,long expiry) {
+            this.m_user = user;
+            this.m_expiry = expiry;
+        }
+    }
+
+    // verified credentials... and the token last issued for them (clients ignoring the cookie get the same one back)
+    private static final class Verified {
+        private final long m_expiry;
+        private String m_token = null;
+
+        private Verified(long expiry) {
+            this.m_expiry = expiry;
+        }
+    }
+
+    /**
+     * Default constructor
+     * @param max_sessions - maximum number of sessions (and verified credentials) held
+     * @param timeout_sec - session lifetime in seconds
+     */
+    public SessionTokens(int max_sessions,int timeout_sec) {
+        this.m_max_sessions = (max_sessions > 0) ? max_sessions : DEFAULT_MAX_SESSIONS;
+        this.m_timeout_ms = 1000L * ((timeout_sec > 0) ? timeout_sec : DEFAULT_TIMEOUT_SEC);
+        this.m_sessions = new LinkedHashMap<String,Session>(16,0.75f,true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Session> eldest) {
+                return this.size() > m_max_sessions;
+            }
+        };
+        this.m_verified = new LinkedHashMap<String,Verified>(16,0.75f,true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Verified> eldest) {
+                return this.size() > m_max_sessions;
+            }
+        };
+        this.clear();
+    }
+
+    /**
+     * Session lifetime
+     * @return the lifetime in seconds
+     */
+    public int getTimeoutSeconds() {
+        return (int)(this.m_timeout_ms / 1000);
+    }
+
+    /**
+     * Issue a token for an authenticated user
+     * @param user - the user
+     * @return the token
+     */
+    public synchronized String issue(String user) {
+        byte[] id = new byte[ID_BYTES];
+        this.m_random.nextBytes(id);
+        long expiry = System.currentTimeMillis() + this.m_timeout_ms;
+        String payload = SessionTokens.hex(id) + "." + Long.toHexString(expiry);
+        this.m_sessions.put(payload,new Session(user,expiry));
+        this.m_issued.incrementAndGet();
+        return payload + "." + SessionTokens.hex(this.mac(payload));
+    }
+
+    /**
+     * Issue a token for verified credentials... reusing the one issued for them before while it is still valid
+     * @param user - the user
+     * @param password - the (verified) password
+     * @return the token
+     */
+    public synchronized String issue(String user,String password) {
+        Verified verified = this.m_verified.get(this.credentialKey(user,password));
+        if (verified == null) {
+            return this.issue(user);
+        }
+        if (verified.m_token != null) {
+            Session session = this.m_sessions.get(verified.m_token.substring(0,verified.m_token.lastIndexOf('.')));
+            if (session != null && session.m_expiry > System.currentTimeMillis()) {
+                return verified.m_token;
+            }
+        }
+        verified.m_token = this.issue(user);
+        return verified.m_token;
+    }
+
+    /**
+     * Validate a token
+     * @param token - the token (may be NULL)
+     * @return the user the token was issued to, NULL if it is invalid, expired, evicted or revoked
+     */
+    public synchronized String validate(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0,dot);
+        if (MessageDigest.isEqual(SessionTokens.hex(this.mac(payload)).getBytes(StandardCharsets.US_ASCII),token.substring(dot + 1).getBytes(StandardCharsets.US_ASCII)) == false) {
+            return null;
+        }
+        Session session = this.m_sessions.get(payload);
+        if (session == null) {
+            return null;
+        }
+        if (session.m_expiry <= System.currentTimeMillis()) {
+            this.m_sessions.remove(payload);
+            return null;
+        }
+        this.m_session_hits.incrementAndGet();
+        return session.m_user;
+    }
+
+    /**
+     * Have these credentials already been verified (within the session lifetime)?
+     * @param user - the user
+     * @param password - the password
+     * @return true if they were verified earlier, false otherwise
+     */
+    public synchronized boolean isVerified(String user,String password) {
+        String key = this.credentialKey(user,password);
+        Verified verified = this.m_verified.get(key);
+        if (verified == null) {
+            return false;
+        }
+        if (verified.m_expiry <= System.currentTimeMillis()) {
+            this.m_verified.remove(key);
+            return false;
+        }
+        this.m_credential_hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remember verified credentials
+     * @param user - the user
+     * @param password - the (verified) password
+     */
+    public synchronized void setVerified(String user,String password) {
+        this.m_verified.put(this.credentialKey(user,password),new Verified(System.currentTimeMillis() + this.m_timeout_ms));
+    }
+
+    /**
+     * Revoke all sessions and verified credentials (i.e. the credentials changed). Outstanding tokens no longer verify.
+     */
+    public synchronized void clear() {
+        byte[] key = new byte[KEY_BYTES];
+        this.m_random.nextBytes(key);
+        try {
+            this.m_mac = Mac.getInstance(MAC_ALGORITHM);
+            this.m_mac.init(new SecretKeySpec(key,MAC_ALGORITHM));
+        }
+        catch (GeneralSecurityException ex) {
+            // HmacSHA256 is always available
+            throw new IllegalStateException(ex);
+        }
+        this.m_sessions.clear();
+        this.m_verified.clear();
+    }
+
+    /**
+     * Number of active (not yet evicted) sessions
+     * @return the session count
+     */
+    public synchronized int size() {
+        return this.m_sessions.size();
+    }
+
+    /**
+     * Number of tokens issued
+     * @return the issued count
+     */
+    public long getIssued() {
+        return this.m_issued.get();
+    }
+
+    /**
+     * Number of requests authenticated by a session token
+     * @return the session hit count
+     */
+    public long getSessionHits() {
+        return this.m_session_hits.get();
+    }
+
+    /**
+     * Number of requests authenticated from the verified credentials cache
+     * @return the credential cache hit count
+     */
+    public long getCredentialHits() {
+        return this.m_credential_hits.get();
+    }
+
+    // the cache key for a set of credentials
+    private String credentialKey(String user,String password) {
+        return SessionTokens.hex(this.mac(user + "\u0000" + password));
+    }
+
+    // HMAC-SHA256 with the current key (callers hold the lock)
+    private byte[] mac(String data) {
+        return this.m_mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // lower case hex
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf,16)).append(Character.forDigit(b & 0xf,16));
+        }
+        return hex.toString();
+    }
+}
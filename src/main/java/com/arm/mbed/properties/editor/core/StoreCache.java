@@ -0,0 +1,143 @@
+/**
+ * @file    StoreCache.java
+ * @brief LRU bookkeeping of loaded property stores under a memory budget
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Store Cache - tracks which (multi-target) stores are loaded, most recently used last, and unloads the least recently
+ * used ones once their estimated size exceeds the memory budget. Unloaded stores are reloaded lazily on their next use.
+ * @author Doug Anson
+ */
+public class StoreCache {
+    /**
+     * A store that can be unloaded
+     */
+    public interface Evictable {
+        /**
+         * Estimated heap used by the loaded store
+         * @return the estimate in bytes (0 if not loaded)
+         */
+        public long getLoadedBytes();
+
+        /**
+         * Write out any pending changes and drop the loaded store (it is reloaded on its next use)
+         */
+        public void unload();
+    }
+
+    // default budget
+    public static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+
+    private final long m_budget_bytes;
+    private final LinkedHashMap<Evictable,Long> m_loaded = new LinkedHashMap<Evictable,Long>(16,0.75f,true);
+    private long m_loaded_bytes = 0;
+
+    // statistics
+    private final AtomicLong m_evictions = new AtomicLong(0);
+
+    /**
+     * Default constructor
+     * @param budget_bytes - memory budget for the loaded stores
+     */
+    public StoreCache(long budget_bytes) {
+        this.m_budget_bytes = (budget_bytes > 0) ? budget_bytes : DEFAULT_BUDGET_BYTES;
+    }
+
+    /**
+     * Record a use of a loaded store (making it the most recently used) and evict others if over budget. The store just
+     * used is never evicted. Must not be called while holding a store's lock (eviction takes the evicted stores' locks).
+     * @param store - the store
+     */
+    public void touch(Evictable store) {
+        List<Evictable> evicted = new ArrayList<Evictable>();
+        synchronized (this) {
+            long bytes = store.getLoadedBytes();
+            Long previous = this.m_loaded.put(store,bytes);
+            this.m_loaded_bytes += bytes - ((previous != null) ? previous : 0);
+            Iterator<Map.Entry<Evictable,Long>> eldest = this.m_loaded.entrySet().iterator();
+            while (this.m_loaded_bytes > this.m_budget_bytes && eldest.hasNext()) {
+                Map.Entry<Evictable,Long> entry = eldest.next();
+                if (entry.getKey() != store) {
+                    this.m_loaded_bytes -= entry.getValue();
+                    evicted.add(entry.getKey());
+                    eldest.remove();
+                }
+            }
+        }
+
+        // unload outside of our lock
+        for(Evictable victim : evicted) {
+            victim.unload();
+            this.m_evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop tracking a store (i.e. it was unloaded by other means)
+     * @param store - the store
+     */
+    public synchronized void remove(Evictable store) {
+        Long bytes = this.m_loaded.remove(store);
+        if (bytes != null) {
+            this.m_loaded_bytes -= bytes;
+        }
+    }
+
+    /**
+     * Number of loaded stores
+     * @return the loaded store count
+     */
+    public synchronized int size() {
+        return this.m_loaded.size();
+    }
+
+    /**
+     * Estimated heap used by the loaded stores
+     * @return the estimate in bytes
+     */
+    public synchronized long getLoadedBytes() {
+        return this.m_loaded_bytes;
+    }
+
+    /**
+     * Memory budget
+     * @return the budget in bytes
+     */
+    public long getBudgetBytes() {
+        return this.m_budget_bytes;
+    }
+
+    /**
+     * Number of stores evicted
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return this.m_evictions.get();
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * @file    TemplateCache.java
+ * @brief In-memory cache of the HTML templates validated by file mtime/size
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Template Cache - loads each template once and reloads it only when its mtime or size changes (or when invalidated)
+ * @author Doug Anson
+ */
+public class TemplateCache {
+    // cached templates keyed by their fully qualified filename
+    private final ConcurrentHashMap<String,Entry> m_entries = new ConcurrentHashMap<String,Entry>();
+
+    // hit/miss counters
+    private final AtomicLong m_hits = new AtomicLong(0);
+    private final AtomicLong m_misses = new AtomicLong(0);
+
+    // a single cached template
+    private static final class Entry {
+        private final long m_mtime;
+        private final long m_size;
+        private final String m_contents;
+
+        private Entry(long mtime,long size,String contents) {
+            this.m_mtime = mtime;
+            this.m_size = size;
+            this.m_contents = contents;
+        }
+    }
+
+    /**
+     * Get a template (relative to the working directory)
+     * @param root - templates root directory
+     * @param filename - template filename
+     * @return - the template contents, NULL if the template cannot be read
+     */
+    public String get(String root,String filename) {
+        String fq_filename = Utils.getWorkingDirectory() + root + filename;
+        Path path = Paths.get(fq_filename);
+
+        // a single stat() to validate the cached copy
+        BasicFileAttributes attrs = null;
+        try {
+            attrs = Files.readAttributes(path,BasicFileAttributes.class);
+        }
+        catch (IOException ex) {
+            // template is gone... drop anything we have
+            this.m_entries.remove(fq_filename);
+            this.m_misses.incrementAndGet();
+            return null;
+        }
+
+        long mtime = attrs.lastModifiedTime().toMillis();
+        long size = attrs.size();
+        Entry entry = this.m_entries.get(fq_filename);
+        if (entry != null && entry.m_mtime == mtime && entry.m_size == size) {
+            this.m_hits.incrementAndGet();
+            return entry.m_contents;
+        }
+
+        // (re)load the template
+        this.m_misses.incrementAndGet();
+        String contents = Utils.fileToString(root,filename);
+        if (contents != null) {
+            this.m_entries.put(fq_filename,new Entry(mtime,size,contents));
+        }
+        return contents;
+    }
+
+    /**
+     * Invalidate a single cached template
+     * @param root - templates root directory
+     * @param filename - template filename
+     */
+    public void invalidate(String root,String filename) {
+        this.m_entries.remove(Utils.getWorkingDirectory() + root + filename);
+    }
+
+    /**
+     * Invalidate all cached templates
+     */
+    public void invalidateAll() {
+        this.m_entries.clear();
+    }
+
+    /**
+     * Number of cache hits
+     * @return
+     */
+    public long getHits() {
+        return this.m_hits.get();
+    }
+
+    /**
+     * Number of cache misses (loads and reloads)
+     * @return
+     */
+    public long getMisses() {
+        return this.m_misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateCache: entries: " + this.m_entries.size() + " hits: " + this.getHits() + " misses: " + this.getMisses();
+    }
+}
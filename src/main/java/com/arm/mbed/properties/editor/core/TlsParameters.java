@@ -0,0 +1,109 @@
+/**
+ * @file    TlsParameters.java
+ * @brief TLS parameters and session resumption settings for the HTTPS server
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * TLS Parameters - computes the server's SSLParameters once (from the keystore-backed context, filtered by the configured
+ * protocol and cipher suite allowlists) and sizes the server session cache so returning clients can resume instead of
+ * doing a full handshake
+ * @author Doug Anson
+ */
+public class TlsParameters {
+    // defaults
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+    public static final int DEFAULT_SESSION_TIMEOUT_SEC = 86400;
+
+    /**
+     * Create the server SSLParameters from the context's defaults, restricted to the allowlists
+     * @param context - the (initialized) SSL context the server uses
+     * @param protocols - ";" separated protocol allowlist in preference order (empty/NULL: the context defaults)
+     * @param cipher_suites - ";" separated cipher suite allowlist in preference order (empty/NULL: the context defaults)
+     * @return the SSLParameters (client authentication is not requested)
+     */
+    public static SSLParameters create(SSLContext context,String protocols,String cipher_suites) {
+        SSLParameters defaults = context.getDefaultSSLParameters();
+        SSLParameters supported = context.getSupportedSSLParameters();
+
+        SSLParameters parameters = new SSLParameters();
+        parameters.setProtocols(TlsParameters.allow("protocol",protocols,defaults.getProtocols(),supported.getProtocols()));
+        parameters.setCipherSuites(TlsParameters.allow("cipher suite",cipher_suites,defaults.getCipherSuites(),supported.getCipherSuites()));
+        parameters.setNeedClientAuth(false);
+        parameters.setUseCipherSuitesOrder(true);
+        System.out.println("TlsParameters: protocols: " + Arrays.toString(parameters.getProtocols()) + " cipher suites: " + parameters.getCipherSuites().length);
+        return parameters;
+    }
+
+    /**
+     * Size the server session cache used for resumption
+     * @param context - the SSL context the server uses
+     * @param cache_size - maximum number of cached sessions (0 = unlimited, < 0 = leave as is)
+     * @param timeout_sec - session lifetime in seconds (0 = unlimited, < 0 = leave as is)
+     */
+    public static void configureSessions(SSLContext context,int cache_size,int timeout_sec) {
+        SSLSessionContext sessions = context.getServerSessionContext();
+        if (sessions == null) {
+            System.out.println("TlsParameters: no server session context... session resumption not configured");
+            return;
+        }
+        if (cache_size >= 0) {
+            sessions.setSessionCacheSize(cache_size);
+        }
+        if (timeout_sec >= 0) {
+            sessions.setSessionTimeout(timeout_sec);
+        }
+        System.out.println("TlsParameters: session cache size: " + sessions.getSessionCacheSize() + " timeout: " + sessions.getSessionTimeout() + "s");
+    }
+
+    // the allowlisted entries the context supports (in allowlist order)... or the defaults if there is no usable allowlist
+    private static String[] allow(String what,String allowlist,String[] defaults,String[] supported) {
+        if (allowlist == null || allowlist.trim().length() == 0) {
+            return defaults;
+        }
+        List<String> supported_list = Arrays.asList(supported);
+        List<String> allowed = new ArrayList<String>();
+        for(String entry : allowlist.split(";")) {
+            String name = entry.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            if (supported_list.contains(name)) {
+                allowed.add(name);
+            }
+            else {
+                System.out.println("TlsParameters: " + what + " not supported (ignored): " + name);
+            }
+        }
+        if (allowed.isEmpty()) {
+            System.out.println("TlsParameters: no supported " + what + " in the allowlist... using the defaults");
+            return defaults;
+        }
+        return allowed.toArray(new String[allowed.size()]);
+    }
+}
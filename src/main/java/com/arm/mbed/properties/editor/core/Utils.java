@@ -23,14 +23,24 @@
 package com.arm.mbed.properties.editor.core;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Set;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -41,38 +51,78 @@ import java.util.Properties;
  * @author Doug Anson
  */
 public class Utils {
+    // the working directory cannot change under a running JVM... resolve it once
+    private static volatile String s_working_directory = null;
+    
     /**
     * Execute a script
      * @param root
      * @param script
+     * @return true if the script was started, false otherwise
     */
-    public static void executeScript(String root,String script) {
+    public static boolean executeScript(String root,String script) {
         try {
             //System.out.println("Executing: " + this.m_scripts_root + "/" + script);
             Runtime.getRuntime().exec(root + "/" + script);
+            return true;
         } 
         catch (IOException ex) {
             // Error
             System.out.println("Exception caught: " + ex.getMessage() + " script: " + script);
+            return false;
         }
     }
     
     /**
-     * convert the QueryString to a Map<>
+     * convert the (already decoded) QueryString to a Map<>
      * @param query
      * @return 
      */
     public static Map<String, String> queryToMap(String query){
         Map<String, String> result = new HashMap<String, String>();
-        if (query != null && query.length() > 0) {
-            for (String param : query.split("&")) {
-                String pair[] = param.split("=");
-                if (pair.length>1) {
-                    result.put(pair[0], pair[1]);
-                }else{
-                    result.put(pair[0], "");
+        int length = (query != null) ? query.length() : 0;
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&',start);
+            if (end < 0) {
+                end = length;
+            }
+            int equals = start;
+            while (equals < end && query.charAt(equals) != '=') {
+                ++equals;
+            }
+            if (end > start) {
+                result.put(query.substring(start,equals),(equals < end) ? query.substring(equals + 1,end) : "");
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+    
+    /**
+     * Parse a raw (still URL encoded) QueryString to a Map<> in one pass: names and values are percent-decoded as
+     * UTF-8 ('+' is a space, values may contain '=', invalid escapes are kept as is) and the value of the base64
+     * parameter (if any) is percent-decoded and base64 decoded in the same pass
+     * @param raw_query - the raw query (may be NULL)
+     * @param base64_param - name of the parameter whose value is base64 encoded UTF-8 (may be NULL)
+     * @return name -> decoded value
+     */
+    public static Map<String, String> parseQuery(String raw_query,String base64_param) {
+        Map<String, String> result = new HashMap<String, String>();
+        if (raw_query != null && raw_query.length() > 0) {
+            QueryDecoder decoder = new QueryDecoder(raw_query);
+            while (decoder.more()) {
+                String name = decoder.text(true);
+                String value = "";
+                if (decoder.skip('=')) {
+                    value = (base64_param != null && base64_param.equals(name)) ? decoder.utf8(decoder.base64(true)) : decoder.text(false);
+                }
+                decoder.skip('&');
+                if (name.length() > 0) {
+                    result.put(name,value);
                 }
             }
+            decoder.release();
         }
         return result;
     }
@@ -107,14 +157,132 @@ public class Utils {
         return prop;
     }
     
+    /**
+     * Close a stream, ignoring errors
+     * @param stream
+     */
+    @SuppressWarnings("empty-statement")
+    public static void closeQuietly(java.io.Closeable stream) {
+        try {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+        catch (IOException ex) {
+            // silent
+            ;
+        }
+    }
+    
+    /**
+     * Atomically replace a file: write a temp file in the same directory, fsync it and rename it over the target
+     * @param fq_filename - the fully qualified filename
+     * @param contents - the new contents
+     * @throws IOException
+     */
+    public static void atomicWrite(String fq_filename,byte[] contents) throws IOException {
+        Utils.atomicWrite(fq_filename,contents,null);
+    }
+    
+    /**
+     * Atomically replace a file: write a temp file in the same directory, fsync it and rename it over the target
+     * @param fq_filename - the fully qualified filename
+     * @param contents - the new contents
+     * @param permissions - posix permissions (i.e. "rw-------"), NULL keeps the existing file's permissions
+     * @throws IOException
+     */
+    public static void atomicWrite(String fq_filename,byte[] contents,String permissions) throws IOException {
+        Path target = Paths.get(fq_filename).toAbsolutePath();
+        Path dir = target.getParent();
+        Path tmp = Files.createTempFile(dir,"." + target.getFileName().toString(),".tmp");
+        try {
+            // keep the permissions of the file being replaced (temp files are created owner-only)
+            Utils.copyPermissions(target,tmp,permissions);
+            
+            // write and fsync the contents
+            FileChannel channel = FileChannel.open(tmp,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(contents);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            finally {
+                channel.close();
+            }
+            
+            // rename over the target
+            try {
+                Files.move(tmp,target,StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp,target,StandardCopyOption.REPLACE_EXISTING);
+            }
+            
+            // fsync the directory so the rename itself is durable
+            Utils.fsyncDirectory(dir);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+    
+    // apply the given (or the target's) posix permissions to the temp file
+    @SuppressWarnings("empty-statement")
+    private static void copyPermissions(Path target,Path tmp,String permissions) {
+        try {
+            Set<PosixFilePermission> perms = null;
+            if (permissions != null) {
+                perms = PosixFilePermissions.fromString(permissions);
+            }
+            else if (Files.exists(target)) {
+                perms = Files.getPosixFilePermissions(target);
+            }
+            else {
+                perms = PosixFilePermissions.fromString("rw-r--r--");
+            }
+            Files.setPosixFilePermissions(tmp,perms);
+        }
+        catch (UnsupportedOperationException ex) {
+            // not a posix filesystem
+            ;
+        }
+        catch (IOException ex) {
+            System.out.println("Utils: Unable to set permissions on: " + tmp + " Exception: " + ex.getMessage());
+        }
+    }
+    
+    // fsync a directory (not supported everywhere... best effort)
+    @SuppressWarnings("empty-statement")
+    private static void fsyncDirectory(Path dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir,StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            }
+            finally {
+                channel.close();
+            }
+        }
+        catch (IOException ex) {
+            // silent
+            ;
+        }
+    }
+    
     /**
      * Get the current working directory
      * @return 
      */
     @SuppressWarnings("empty-statement")
     public static String getWorkingDirectory() {
+       if (s_working_directory != null) {
+           return s_working_directory;
+       }
        try {
-           return new java.io.File(".").getCanonicalPath();
+           s_working_directory = new java.io.File(".").getCanonicalPath();
+           return s_working_directory;
        }
        catch (IOException ex) {
            // silent
@@ -135,8 +303,7 @@ public class Utils {
        InputStream input = null;
 
        try {
-           String current = new java.io.File( "." ).getCanonicalPath();
-           String fq_filename = current + root + filename;
+           String fq_filename = Utils.getWorkingDirectory() + root + filename;
            input = new FileInputStream(fq_filename);
            Reader reader = new BufferedReader(new InputStreamReader(input));
            StringBuilder builder = new StringBuilder();
@@ -155,29 +322,21 @@ public class Utils {
        return null;
     }
    
-    // decode a URL-safe string
+    // decode a URL-safe string (percent-decoded and base64 decoded in one pass, the value is not logged)
     public static String urlsafe_base64_decode(String encoded_str) {
-       try {
-           System.out.println("Decoding: " + encoded_str);
-           String tmp = URLDecoder.decode(encoded_str,"UTF-8");
-           return new String(Utils.base64_decode(tmp),"UTF-8");
-       }
-       catch (UnsupportedEncodingException ex) {
-           System.out.println("EXCEPTION Decoding: " + encoded_str + " Message: " + ex.getMessage());
-           return encoded_str;
+       if (encoded_str == null) {
+           return null;
        }
+       QueryDecoder decoder = new QueryDecoder(encoded_str);
+       String decoded = decoder.utf8(decoder.base64(true));
+       decoder.release();
+       return decoded;
     }
     
     // Local Base64 Encode - Author/Credit: https://gist.github.com/EmilHernvall/953733
     public static String base64_encode(byte[] data)
     {
-        char[] tbl = {
-            'A','B','C','D','E','F','G','H','I','J','K','L','M','N','O','P',
-            'Q','R','S','T','U','V','W','X','Y','Z','a','b','c','d','e','f',
-            'g','h','i','j','k','l','m','n','o','p','q','r','s','t','u','v',
-            'w','x','y','z','0','1','2','3','4','5','6','7','8','9','+','/' };
-
-        StringBuilder buffer = new StringBuilder();
+        StringBuilder buffer = new StringBuilder(((data.length + 2) / 3) * 4);
         int pad = 0;
         for (int i = 0; i < data.length; i += 3) {
 
@@ -195,72 +354,25 @@ public class Utils {
 
             for (int j = 0; j < 4 - pad; j++) {
                 int c = (b & 0xFC0000) >> 18;
-                buffer.append(tbl[c]);
+                buffer.append(BASE64_CHARS[c]);
                 b <<= 6;
             }
         }
         for (int j = 0; j < pad; j++) {
-            buffer.append("=");
+            buffer.append('=');
         }
 
         return buffer.toString();
     }
 
-    // Local Base64 Decode - - Author/Credit: https://gist.github.com/EmilHernvall/953733
+    // Local Base64 Decode (unknown characters, padding included, are skipped)
     public static byte[] base64_decode(String data)
     {
-        int[] tbl = {
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, -1, -1, 63, 52, 53, 54,
-            55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -1, -1, -1, -1, 0, 1, 2,
-            3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19,
-            20, 21, 22, 23, 24, 25, -1, -1, -1, -1, -1, -1, 26, 27, 28, 29, 30,
-            31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47,
-            48, 49, 50, 51, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-            -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 };
-        byte[] bytes = data.getBytes();
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        for (int i = 0; i < bytes.length; ) {
-            int b = 0;
-            if (tbl[bytes[i]] != -1) {
-                b = (tbl[bytes[i]] & 0xFF) << 18;
-            }
-            // skip unknown characters
-            else {
-                i++;
-                continue;
-            }
-
-            int num = 0;
-            if (i + 1 < bytes.length && tbl[bytes[i+1]] != -1) {
-                b = b | ((tbl[bytes[i+1]] & 0xFF) << 12);
-                num++;
-            }
-            if (i + 2 < bytes.length && tbl[bytes[i+2]] != -1) {
-                b = b | ((tbl[bytes[i+2]] & 0xFF) << 6);
-                num++;
-            }
-            if (i + 3 < bytes.length && tbl[bytes[i+3]] != -1) {
-                b = b | (tbl[bytes[i+3]] & 0xFF);
-                num++;
-            }
-
-            while (num > 0) {
-                int c = (b & 0xFF0000) >> 16;
-                buffer.write((char)c);
-                b <<= 8;
-                num--;
-            }
-            i += 4;
-        }
-        return buffer.toByteArray();
+        QueryDecoder decoder = new QueryDecoder(data);
+        int length = decoder.base64(false);
+        byte[] decoded = Arrays.copyOf(decoder.m_buffer,length);
+        decoder.release();
+        return decoded;
     }
     
     // simple ugly replacement of oddball characters
@@ -277,4 +389,196 @@ public class Utils {
         }
         return my_string;
     }
+    
+    // the base64 alphabet
+    private static final char[] BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // 6 bit value of each (standard or URL-safe alphabet) base64 character, 4 bit value of each hex digit (-1: neither)
+    private static final byte[] BASE64_VALUES = new byte[128];
+    private static final byte[] HEX_VALUES = new byte[128];
+    static {
+        Arrays.fill(BASE64_VALUES,(byte)-1);
+        Arrays.fill(HEX_VALUES,(byte)-1);
+        for(int i=0;i<BASE64_CHARS.length;++i) {
+            BASE64_VALUES[BASE64_CHARS[i]] = (byte)i;
+        }
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
+        for(int i=0;i<10;++i) {
+            HEX_VALUES['0' + i] = (byte)i;
+        }
+        for(int i=0;i<6;++i) {
+            HEX_VALUES['a' + i] = (byte)(10 + i);
+            HEX_VALUES['A' + i] = (byte)(10 + i);
+        }
+    }
+
+    // per thread decode buffer (reused across requests... larger ones are dropped after use)
+    private static final int DECODE_BUFFER_SIZE = 1024;
+    private static final int MAX_KEPT_DECODE_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> DECODE_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DECODE_BUFFER_SIZE];
+        }
+    };
+
+    // walks a (raw) query string once, decoding names and values into the thread's decode buffer
+    private static final class QueryDecoder {
+        private final String m_query;
+        private final int m_length;
+        private int m_pos = 0;
+        private byte[] m_buffer = DECODE_BUFFER.get();
+
+        private QueryDecoder(String query) {
+            this.m_query = query;
+            this.m_length = query.length();
+        }
+
+        // anything left?
+        private boolean more() {
+            return this.m_pos < this.m_length;
+        }
+
+        // consume the given delimiter if it is next
+        private boolean skip(char delimiter) {
+            if (this.m_pos < this.m_length && this.m_query.charAt(this.m_pos) == delimiter) {
+                ++this.m_pos;
+                return true;
+            }
+            return false;
+        }
+
+        // percent-decode (as UTF-8) up to the next '&' (or '=' for a name)... undecoded text is returned as is
+        private String text(boolean name) {
+            int start = this.m_pos;
+            int n = -1;
+            for(;this.m_pos < this.m_length;++this.m_pos) {
+                char c = this.m_query.charAt(this.m_pos);
+                if (c == '&' || (name && c == '=')) {
+                    break;
+                }
+                if (n < 0) {
+                    if (c != '%' && c != '+' && c < 0x80) {
+                        continue;
+                    }
+                    // first character to decode: copy the (ASCII) text before it
+                    n = this.reserve(0,this.m_pos - start);
+                    for(int i=start;i<this.m_pos;++i) {
+                        this.m_buffer[n++] = (byte)this.m_query.charAt(i);
+                    }
+                }
+                n = this.reserve(n,4);
+                int b = this.escaped();
+                if (b >= 0) {
+                    this.m_buffer[n++] = (byte)b;
+                    this.m_pos += 2;
+                }
+                else if (c == '+') {
+                    this.m_buffer[n++] = ' ';
+                }
+                else if (c < 0x80) {
+                    this.m_buffer[n++] = (byte)c;
+                }
+                else {
+                    n = this.encode(n,c);
+                }
+            }
+            return (n < 0) ? this.m_query.substring(start,this.m_pos) : this.utf8(n);
+        }
+
+        // base64 decode (percent-decoding first, up to the next '&', if in a query) into the buffer... unknown characters
+        // (padding included) are skipped and '+' is the base64 character, not a space
+        private int base64(boolean query) {
+            int n = this.reserve(0,((this.m_length - this.m_pos) * 3) / 4 + 1);
+            int bits = 0;
+            int count = 0;
+            for(;this.m_pos < this.m_length;++this.m_pos) {
+                int c = this.m_query.charAt(this.m_pos);
+                if (query) {
+                    if (c == '&') {
+                        break;
+                    }
+                    int b = this.escaped();
+                    if (b >= 0) {
+                        c = b;
+                        this.m_pos += 2;
+                    }
+                }
+                int value = (c < 0x80) ? BASE64_VALUES[c] : -1;
+                if (value >= 0) {
+                    bits = (bits << 6) | value;
+                    count += 6;
+                    if (count >= 8) {
+                        count -= 8;
+                        this.m_buffer[n++] = (byte)(bits >> count);
+                        bits &= (1 << count) - 1;
+                    }
+                }
+            }
+            return n;
+        }
+
+        // the byte of a valid "%XX" escape at the current position, -1 otherwise
+        private int escaped() {
+            if (this.m_query.charAt(this.m_pos) == '%' && this.m_pos + 2 < this.m_length) {
+                char hi = this.m_query.charAt(this.m_pos + 1);
+                char lo = this.m_query.charAt(this.m_pos + 2);
+                if (hi < 0x80 && lo < 0x80 && HEX_VALUES[hi] >= 0 && HEX_VALUES[lo] >= 0) {
+                    return (HEX_VALUES[hi] << 4) | HEX_VALUES[lo];
+                }
+            }
+            return -1;
+        }
+
+        // UTF-8 encode a (non ASCII) character of the raw query into the buffer
+        private int encode(int n,char c) {
+            int code_point = c;
+            if (Character.isHighSurrogate(c) && this.m_pos + 1 < this.m_length && Character.isLowSurrogate(this.m_query.charAt(this.m_pos + 1))) {
+                code_point = Character.toCodePoint(c,this.m_query.charAt(++this.m_pos));
+            }
+            else if (Character.isSurrogate(c)) {
+                code_point = '?';
+            }
+            if (code_point < 0x80) {
+                this.m_buffer[n++] = (byte)code_point;
+            }
+            else if (code_point < 0x800) {
+                this.m_buffer[n++] = (byte)(0xC0 | (code_point >> 6));
+                this.m_buffer[n++] = (byte)(0x80 | (code_point & 0x3F));
+            }
+            else if (code_point < 0x10000) {
+                this.m_buffer[n++] = (byte)(0xE0 | (code_point >> 12));
+                this.m_buffer[n++] = (byte)(0x80 | ((code_point >> 6) & 0x3F));
+                this.m_buffer[n++] = (byte)(0x80 | (code_point & 0x3F));
+            }
+            else {
+                this.m_buffer[n++] = (byte)(0xF0 | (code_point >> 18));
+                this.m_buffer[n++] = (byte)(0x80 | ((code_point >> 12) & 0x3F));
+                this.m_buffer[n++] = (byte)(0x80 | ((code_point >> 6) & 0x3F));
+                this.m_buffer[n++] = (byte)(0x80 | (code_point & 0x3F));
+            }
+            return n;
+        }
+
+        // make room for "more" bytes after the first n
+        private int reserve(int n,int more) {
+            if (n + more > this.m_buffer.length) {
+                this.m_buffer = Arrays.copyOf(this.m_buffer,Math.max(n + more,this.m_buffer.length * 2));
+            }
+            return n;
+        }
+
+        // the first n bytes of the buffer as (malformed sequences replaced) UTF-8 text
+        private String utf8(int n) {
+            return new String(this.m_buffer,0,n,StandardCharsets.UTF_8);
+        }
+
+        // keep the (grown) buffer for the thread's next decode, unless it is too large to hold on to
+        private void release() {
+            if (this.m_buffer.length <= MAX_KEPT_DECODE_BUFFER_SIZE) {
+                DECODE_BUFFER.set(this.m_buffer);
+            }
+        }
+    }
 }
@@ -0,0 +1,370 @@
+/**
+ * @file    WriteBehindSaver.java
+ * @brief Coalesces property saves into debounced background writes
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write Behind Saver - coalesces pending edits into a single write after a debounce window (bounded by a max delay) and skips writes that would not change the content.
+ * A failed write keeps its snapshot pending (unless a newer one arrived) and is retried with an exponential backoff.
+ * @author Doug Anson
+ */
+public class WriteBehindSaver {
+    /**
+     * Writes a snapshot out to its file
+     */
+    public interface Persister {
+        /**
+         * Persist the snapshot
+         * @param snapshot - the snapshot to write
+         * @return TRUE if written
+         */
+        public boolean persist(PropertiesSnapshot snapshot);
+    }
+
+    // retries of a failed write: the first after RETRY_INITIAL_MS, doubling up to RETRY_MAX_MS
+    private static final long RETRY_INITIAL_MS = 250;
+    private static final long RETRY_MAX_MS = 30000;
+
+    private final String m_name;                                  // name (for logging)
+    private final Persister m_persister;                          // does the actual write
+    private final long m_debounce_ms;                             // quiet period before writing (0 = write-through)
+    private final long m_max_delay_ms;                            // max time an edit may stay pending
+    private ScheduledExecutorService m_scheduler = null;          // background writer (guarded by this once constructed)
+    private boolean m_owns_scheduler = false;                     // FALSE if shared with other savers
+
+    // pending state (guarded by this)
+    private PropertiesSnapshot m_pending = null;
+    private long m_pending_since = 0;
+    private int m_pending_edits = 0;
+    private ScheduledFuture<?> m_scheduled = null;
+    private long m_retry_ms = 0;                                  // backoff of the next retry (0: the last write succeeded)
+
+    // serializes the actual writes
+    private final Object m_write_lock = new Object();
+    private byte[] m_persisted_hash = null;
+
+    // statistics (guarded by m_write_lock)
+    private long m_writes = 0;
+    private long m_skipped_writes = 0;
+    private long m_coalesced_edits = 0;
+    private long m_last_write_ns = 0;
+    private long m_max_write_ns = 0;
+    private long m_total_write_ns = 0;
+    private long m_failed_writes = 0;
+
+    /**
+     * Default constructor
+     * @param name - name used when logging
+     * @param persister - writes the snapshot out
+     * @param debounce_ms - quiet period before writing (0 disables write-behind)
+     * @param max_delay_ms - max time an edit may stay pending while edits keep arriving
+     */
+    public WriteBehindSaver(String name,Persister persister,long debounce_ms,long max_delay_ms) {
+        this(name,persister,debounce_ms,max_delay_ms,null);
+    }
+
+    /**
+     * Constructor with a shared background writer
+     * @param name - name used when logging
+     * @param persister - writes the snapshot out
+     * @param debounce_ms - quiet period before writing (0 disables write-behind)
+     * @param max_delay_ms - max time an edit may stay pending while edits keep arriving
+     * @param scheduler - background writer shared with other savers (NULL: create our own). Not shut down by shutdown().
+     */
+    public WriteBehindSaver(String name,Persister persister,long debounce_ms,long max_delay_ms,ScheduledExecutorService scheduler) {
+        this.m_name = name;
+        this.m_persister = persister;
+        this.m_debounce_ms = Math.max(0,debounce_ms);
+        this.m_max_delay_ms = Math.max(this.m_debounce_ms,max_delay_ms);
+        if (this.m_debounce_ms > 0) {
+            this.m_scheduler = scheduler;
+            if (this.m_scheduler == null) {
+                this.m_scheduler = WriteBehindSaver.createScheduler("properties-editor-saver-" + name);
+                this.m_owns_scheduler = true;
+            }
+        }
+    }
+
+    /**
+     * Create a background writer (may be shared by several savers)
+     * @param thread_name - name of the writer thread
+     * @return the scheduler
+     */
+    public static ScheduledExecutorService createScheduler(final String thread_name) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r,thread_name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Record the snapshot as what is already on disk (i.e. just loaded)
+     * @param snapshot - the loaded snapshot
+     */
+    public void setPersisted(PropertiesSnapshot snapshot) {
+        this.setPersisted(snapshot.asMap());
+    }
+
+    /**
+     * Record the properties as what is already on disk (i.e. just loaded or reloaded)
+     * @param properties - the properties on disk
+     */
+    public void setPersisted(Map<String,String> properties) {
+        synchronized (this.m_write_lock) {
+            this.m_persisted_hash = WriteBehindSaver.contentHash(properties);
+        }
+    }
+
+    /**
+     * Check for a pending (not yet written) save
+     * @return TRUE if a save is pending
+     */
+    public synchronized boolean hasPending() {
+        return this.m_pending != null;
+    }
+
+    /**
+     * Schedule a save of the snapshot (written immediately when write-behind is disabled)
+     * @param snapshot - the snapshot to save
+     */
+    public void save(PropertiesSnapshot snapshot) {
+        if (this.m_debounce_ms == 0) {
+            synchronized (this) {
+                this.m_pending = snapshot;
+                this.m_pending_edits++;
+            }
+            this.flush();
+            return;
+        }
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (this.m_pending == null) {
+                this.m_pending_since = now;
+            }
+            this.m_pending = snapshot;
+            this.m_pending_edits++;
+
+            // restart the debounce window... but never past the max delay
+            long delay = Math.min(this.m_debounce_ms,(this.m_pending_since + this.m_max_delay_ms) - now);
+            if (this.m_scheduled != null) {
+                this.m_scheduled.cancel(false);
+            }
+            this.m_scheduled = this.m_scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            },Math.max(0,delay),TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Synchronously write any pending snapshot
+     * @return TRUE if a write was made
+     */
+    public boolean flush() {
+        synchronized (this.m_write_lock) {
+            PropertiesSnapshot snapshot = null;
+            int edits = 0;
+            long since = 0;
+            synchronized (this) {
+                snapshot = this.m_pending;
+                edits = this.m_pending_edits;
+                since = this.m_pending_since;
+                this.m_pending = null;
+                this.m_pending_edits = 0;
+                if (this.m_scheduled != null) {
+                    this.m_scheduled.cancel(false);
+                    this.m_scheduled = null;
+                }
+            }
+            if (snapshot == null) {
+                return false;
+            }
+
+            // skip the write if the content is unchanged
+            byte[] hash = WriteBehindSaver.contentHash(snapshot.asMap());
+            if (hash != null && this.m_persisted_hash != null && Arrays.equals(hash,this.m_persisted_hash)) {
+                this.m_skipped_writes++;
+                System.out.println("WriteBehindSaver(" + this.m_name + "): content unchanged... skipping write (" + edits + " edits)");
+                return false;
+            }
+
+            long start = System.nanoTime();
+            boolean written = this.m_persister.persist(snapshot);
+            long elapsed = System.nanoTime() - start;
+            if (written) {
+                this.m_persisted_hash = hash;
+                this.m_writes++;
+                this.m_coalesced_edits += edits;
+                this.m_last_write_ns = elapsed;
+                this.m_max_write_ns = Math.max(this.m_max_write_ns,elapsed);
+                this.m_total_write_ns += elapsed;
+                System.out.println("WriteBehindSaver(" + this.m_name + "): wrote version " + snapshot.getVersion() + " (" + edits + " edits) in " + (elapsed / 1000) + "us");
+                synchronized (this) {
+                    this.m_retry_ms = 0;
+                }
+            }
+            else {
+                this.m_failed_writes++;
+                this.retry(snapshot,edits,since);
+            }
+            return written;
+        }
+    }
+
+    // a write failed: keep its snapshot pending (unless a newer one arrived, which is written instead) and retry later
+    private synchronized void retry(PropertiesSnapshot snapshot,int edits,long since) {
+        if (this.m_pending == null) {
+            this.m_pending = snapshot;
+            this.m_pending_since = since;
+        }
+        this.m_pending_edits += edits;
+        this.m_retry_ms = (this.m_retry_ms > 0) ? Math.min(RETRY_MAX_MS,this.m_retry_ms * 2) : RETRY_INITIAL_MS;
+        if (this.m_scheduler == null) {
+            // write-through: a background writer only for the retries
+            this.m_scheduler = WriteBehindSaver.createScheduler("properties-editor-saver-" + this.m_name);
+            this.m_owns_scheduler = true;
+        }
+        if (this.m_scheduled != null) {
+            this.m_scheduled.cancel(false);
+        }
+        System.out.println("WriteBehindSaver(" + this.m_name + "): unable to write version " + snapshot.getVersion() + "... retrying in " + this.m_retry_ms + "ms");
+        try {
+            this.m_scheduled = this.m_scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            },this.m_retry_ms,TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ex) {
+            // shut down: the snapshot stays pending
+            this.m_scheduled = null;
+        }
+    }
+
+    /**
+     * Flush any pending snapshot and stop the background writer
+     */
+    public void shutdown() {
+        this.flush();
+        ScheduledExecutorService scheduler = null;
+        synchronized (this) {
+            if (this.m_pending != null) {
+                System.out.println("WriteBehindSaver(" + this.m_name + "): version " + this.m_pending.getVersion() + " could not be written before shutdown");
+            }
+            if (this.m_owns_scheduler) {
+                scheduler = this.m_scheduler;
+            }
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Number of writes made
+     * @return the write count
+     */
+    public long getWrites() {
+        synchronized (this.m_write_lock) {
+            return this.m_writes;
+        }
+    }
+
+    /**
+     * Number of writes skipped because the content was unchanged
+     * @return the skipped write count
+     */
+    public long getSkippedWrites() {
+        synchronized (this.m_write_lock) {
+            return this.m_skipped_writes;
+        }
+    }
+
+    /**
+     * Number of writes that failed (each is retried)
+     * @return the failed write count
+     */
+    public long getFailedWrites() {
+        synchronized (this.m_write_lock) {
+            return this.m_failed_writes;
+        }
+    }
+
+    /**
+     * Latency of the last write
+     * @return the last write latency in microseconds
+     */
+    public long getLastWriteMicros() {
+        synchronized (this.m_write_lock) {
+            return this.m_last_write_ns / 1000;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (this.m_write_lock) {
+            long avg_ns = this.m_writes > 0 ? this.m_total_write_ns / this.m_writes : 0;
+            return "WriteBehindSaver(" + this.m_name + "): writes: " + this.m_writes + " skipped: " + this.m_skipped_writes + " failed: " + this.m_failed_writes + " edits: " + this.m_coalesced_edits +
+                   " last: " + (this.m_last_write_ns / 1000) + "us avg: " + (avg_ns / 1000) + "us max: " + (this.m_max_write_ns / 1000) + "us";
+        }
+    }
+
+    // hash of the snapshot content (keys and values, in order)
+    private static byte[] contentHash(Map<String,String> properties) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for(Map.Entry<String,String> entry : properties.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+                if (entry.getValue() != null) {
+                    digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte)0);
+            }
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is always available... never skip if it is not
+            return null;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ * @file    ConfigTableRenderer.java
+ * @brief Renders a configuration table as HTML
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import java.io.IOException;
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import com.arm.mbed.properties.editor.core.Schema;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Config Table Renderer - renders the (filtered or unfiltered) configuration table in a single linear pass with escaped cells.
+ * Paged views render only the rows of the requested page: the (sorted/filtered) row order is selected once per snapshot and view.
+ * @author Doug Anson
+ */
+public class ConfigTableRenderer {
+    // approximate size of the fixed markup in a single row (used to presize builders)
+    private static final int ROW_MARKUP_SIZE = 512;
+
+    // human readable key map
+    private Map<String,String> m_key_map = null;
+    
+    // empty (add a new entry) slot
+    private String m_empty_slot_key = null;
+    private String m_empty_slot_value = null;
+
+    // schema (key cells show the group and what the value accepts)
+    private Schema m_schema = null;
+
+    // the last row selection (snapshots are immutable: reused until the snapshot or the view changes)
+    private volatile Selection m_selection = null;
+
+    // the rows of a table selected for a view (sorted/filtered, without the empty slot)
+    private static final class Selection {
+        private final PropertiesSnapshot m_props;
+        private final Collection<String> m_keys;
+        private final String m_sort;
+        private final String m_filter;
+        private final List<String> m_rows;
+        private final boolean m_empty_slot;
+
+        private Selection(PropertiesSnapshot props,Collection<String> keys,TableView view,List<String> rows,boolean empty_slot) {
+            this.m_props = props;
+            this.m_keys = keys;
+            this.m_sort = view.getSort();
+            this.m_filter = view.getFilter();
+            this.m_rows = rows;
+            this.m_empty_slot = empty_slot;
+        }
+
+        // selected from the same snapshot/keys for the same sort and filter?
+        private boolean isFor(PropertiesSnapshot props,Collection<String> keys,TableView view) {
+            return this.m_props == props && this.m_keys == keys && this.m_sort.equals(view.getSort()) && this.m_filter.equals(view.getFilter());
+        }
+    }
+
+    /**
+     * A rendered page of the table
+     */
+    public static final class Page {
+        private final int m_page;
+        private final int m_pages;
+        private final int m_first;
+        private final int m_last;
+        private final int m_total;
+
+        private Page(int page,int pages,int first,int last,int total) {
+            this.m_page = page;
+            this.m_pages = pages;
+            this.m_first = first;
+            this.m_last = last;
+            this.m_total = total;
+        }
+
+        /**
+         * Rendered page
+         * @return the page (1 based, clamped to the last page)
+         */
+        public int getPage() {
+            return this.m_page;
+        }
+
+        /**
+         * Number of pages
+         * @return the page count (at least 1)
+         */
+        public int getPages() {
+            return this.m_pages;
+        }
+
+        /**
+         * Number of rows rendered (not counting the empty slot)
+         * @return the row count
+         */
+        public int getRows() {
+            return this.m_last - this.m_first;
+        }
+
+        /**
+         * Number of rows matching the view (all pages)
+         * @return the total row count
+         */
+        public int getTotal() {
+            return this.m_total;
+        }
+    }
+
+    /**
+     * Default Constructor
+     * @param key_map - human readable key map (may be NULL)
+     */
+    public ConfigTableRenderer(Map<String,String> key_map) {
+        this.m_key_map = key_map;
+    }
+
+    /**
+     * Set the empty (add a new entry) slot rendered when its key is listed but not present in the properties
+     * @param key - empty slot key
+     * @param value - empty slot value
+     */
+    public void setEmptySlot(String key,String value) {
+        this.m_empty_slot_key = key;
+        this.m_empty_slot_value = value;
+    }
+
+    /**
+     * Set the schema: the key cells' tooltips show the key's group and what its value accepts
+     * @param schema - the schema (NULL for none)
+     */
+    public void setSchema(Schema schema) {
+        this.m_schema = schema;
+    }
+
+    /**
+     * Render the table into a presized string
+     * @param props - the properties
+     * @param keys - the keys to render (in order)
+     * @param file - the properties file the table saves to
+     * @param editable_key - TRUE if the key cells are editable
+     * @return the HTML table
+     */
+    public String render(PropertiesSnapshot props,Iterable<String> keys,String file,boolean editable_key) {
+        StringBuilder table = new StringBuilder(this.estimateSize(props));
+        try {
+            this.render(table,props,keys,file,editable_key);
+        }
+        catch (IOException ex) {
+            // not possible with a StringBuilder
+            System.out.println("ConfigTableRenderer: Exception caught: " + ex.getMessage());
+        }
+        return table.toString();
+    }
+
+    /**
+     * Render the table
+     * @param out - where to render to
+     * @param props - the properties
+     * @param keys - the keys to render (in order)
+     * @param file - the properties file the table saves to
+     * @param editable_key - TRUE if the key cells are editable
+     * @throws IOException
+     */
+    public void render(Appendable out,PropertiesSnapshot props,Iterable<String> keys,String file,boolean editable_key) throws IOException {
+        // start the table
+        out.append("<table border=\"0\">");
+
+        // fill the table
+        for(String key : keys) {
+            String value = props.get(key);
+            if (value == null && key.equals(this.m_empty_slot_key)) {
+                value = this.m_empty_slot_value;
+            }
+            this.renderRow(out,key,value,file,editable_key);
+        }
+
+        // add the trailing tag
+        out.append("</table>");
+    }
+
+    /**
+     * Render one page of a view of the table (plus the empty slot, when listed or requested) followed by the page navigation.
+     * Only the rows of the page are rendered... the sorted/filtered row order is reused for further pages of the same snapshot.
+     * @param out - where to render to
+     * @param props - the properties
+     * @param keys - all keys of the table (in order)... pass the same instance for the same snapshot so the selection is reused
+     * @param file - the properties file the table saves to
+     * @param editable_key - TRUE if the key cells are editable
+     * @param empty_slot - TRUE to render the empty slot even if it is not listed in the keys
+     * @param view - the requested view
+     * @return the rendered page
+     * @throws IOException
+     */
+    public Page renderPage(Appendable out,PropertiesSnapshot props,Collection<String> keys,String file,boolean editable_key,boolean empty_slot,TableView view) throws IOException {
+        Selection selection = this.select(props,keys,view);
+        int total = selection.m_rows.size();
+        int pages = Math.max(1,(int)(((long)total + view.getPageSize() - 1) / view.getPageSize()));
+        int page = Math.min(view.getPage(),pages);
+        int first = (int)Math.min((long)(page - 1) * view.getPageSize(),total);
+        int last = (int)Math.min((long)first + view.getPageSize(),total);
+
+        // the rows of the page... then the empty (add a new entry) slot on every page
+        List<String> rows = selection.m_rows.subList(first,last);
+        if (this.m_empty_slot_key != null && (empty_slot || selection.m_empty_slot)) {
+            rows = new ArrayList<String>(rows);
+            rows.add(this.m_empty_slot_key);
+        }
+        this.render(out,props,rows,file,editable_key);
+
+        // page navigation (only needed once there is more than one page or a sort/filter to show)
+        Page rendered = new Page(page,pages,first,last,total);
+        if (pages > 1 || view.isSelective()) {
+            this.renderNavigation(out,view,rendered);
+        }
+        return rendered;
+    }
+
+    // select (sort/filter) the rows of a view... reusing the previous selection for the same snapshot, keys and view
+    private Selection select(PropertiesSnapshot props,Collection<String> keys,TableView view) {
+        Selection selection = this.m_selection;
+        if (selection != null && selection.isFor(props,keys,view)) {
+            return selection;
+        }
+        boolean empty_slot = false;
+        ArrayList<String> rows = new ArrayList<String>(keys.size());
+        for(String key : keys) {
+            if (key.equals(this.m_empty_slot_key)) {
+                empty_slot = true;
+            }
+            else if (view.matches(key,this.mapKeyToHumanReadable(key),props.get(key))) {
+                rows.add(key);
+            }
+        }
+        if (view.getSort().length() > 0) {
+            Collections.sort(rows,this.comparator(props,view.getSort()));
+        }
+        selection = new Selection(props,keys,view,rows,empty_slot);
+        this.m_selection = selection;
+        return selection;
+    }
+
+    // row order for a sort ("key", "value"... "-" prefixed for descending)
+    private Comparator<String> comparator(final PropertiesSnapshot props,String sort) {
+        final boolean by_value = sort.endsWith(TableView.SORT_VALUE);
+        final int direction = sort.startsWith("-") ? -1 : 1;
+        return new Comparator<String>() {
+            @Override
+            public int compare(String key1,String key2) {
+                int result = 0;
+                if (by_value) {
+                    result = compareIgnoreCase(props.get(key1),props.get(key2));
+                }
+                if (result == 0) {
+                    result = compareIgnoreCase(key1,key2);
+                }
+                return direction * result;
+            }
+        };
+    }
+
+    // case insensitive order (NULL first, ties broken by case)
+    private static int compareIgnoreCase(String str1,String str2) {
+        if (str1 == null || str2 == null) {
+            return (str1 == null) ? ((str2 == null) ? 0 : -1) : 1;
+        }
+        int result = String.CASE_INSENSITIVE_ORDER.compare(str1,str2);
+        return (result != 0) ? result : str1.compareTo(str2);
+    }
+
+    // page navigation: first/previous/next/last links plus the sort/filter form (links are relative: they keep the page's path)
+    private void renderNavigation(Appendable out,TableView view,Page page) throws IOException {
+        out.append("<form class=\"tableNavigation\" method=\"get\">");
+        if (page.m_total > 0) {
+            out.append("Rows ").append(String.valueOf(page.m_first + 1)).append(" - ").append(String.valueOf(page.m_last)).append(" of ").append(String.valueOf(page.m_total));
+        }
+        else {
+            out.append("No matching rows");
+        }
+        out.append("&nbsp;&nbsp;");
+        this.renderLink(out,view,1,page.m_page > 1,"&laquo; First");
+        this.renderLink(out,view,page.m_page - 1,page.m_page > 1,"&lsaquo; Prev");
+        out.append("Page ").append(String.valueOf(page.m_page)).append(" of ").append(String.valueOf(page.m_pages)).append("&nbsp;&nbsp;");
+        this.renderLink(out,view,page.m_page + 1,page.m_page < page.m_pages,"Next &rsaquo;");
+        this.renderLink(out,view,page.m_pages,page.m_page < page.m_pages,"Last &raquo;");
+
+        // sort and filter (the page size is kept)
+        out.append("<input type=\"text\" name=\"").append(TableView.FILTER).append("\" value=\"");
+        escapeHTML(out,view.getFilter());
+        out.append("\" placeholder=\"filter\">");
+        out.append("<select name=\"").append(TableView.SORT).append("\">");
+        this.renderOption(out,view,"","File order");
+        this.renderOption(out,view,TableView.SORT_KEY,"Key (A-Z)");
+        this.renderOption(out,view,"-" + TableView.SORT_KEY,"Key (Z-A)");
+        this.renderOption(out,view,TableView.SORT_VALUE,"Value (A-Z)");
+        this.renderOption(out,view,"-" + TableView.SORT_VALUE,"Value (Z-A)");
+        out.append("</select>");
+        out.append("<input type=\"hidden\" name=\"").append(TableView.PAGE_SIZE).append("\" value=\"").append(String.valueOf(view.getPageSize())).append("\">");
+        out.append("<button type=\"submit\" style=\"height:35px;width:80px\">APPLY</button>");
+        out.append("</form>");
+    }
+
+    // a navigation link (plain text if disabled)
+    private void renderLink(Appendable out,TableView view,int page,boolean enabled,String text) throws IOException {
+        if (enabled) {
+            out.append("<a href=\"?");
+            escapeHTML(out,view.toQuery(page));
+            out.append("\">").append(text).append("</a>");
+        }
+        else {
+            out.append(text);
+        }
+        out.append("&nbsp;&nbsp;");
+    }
+
+    // a sort option
+    private void renderOption(Appendable out,TableView view,String sort,String text) throws IOException {
+        out.append("<option value=\"").append(sort).append(sort.equals(view.getSort()) ? "\" selected>" : "\">").append(text).append("</option>");
+    }
+
+    // render a single row
+    private void renderRow(Appendable out,String key,String value,String file,boolean editable_key) throws IOException {
+        out.append("<tr>");
+
+        // Key
+        out.append("<td id=\"");
+        escapeHTML(out,key);
+        out.append("-key\"");
+        this.renderHint(out,key);
+        out.append(editable_key ? " contenteditable=\"true\">" : " contenteditable=\"false\">");
+        escapeHTML(out,this.mapKeyToHumanReadable(key));
+        out.append("</td>");
+
+        // Value
+        out.append("<td id=\"");
+        escapeHTML(out,key);
+        out.append("\" contenteditable=\"true\" align=\"left\" height=\"auto\" width=\"auto\">");
+        escapeHTML(out,value);
+        out.append("</td>");
+
+        // Save button
+        out.append("<td align=\"center\" height=\"35px\" width=\"210px\"><button name=\"save_button\" value=\"");
+        escapeHTML(out,key);
+        out.append("\" type=\"button\" onclick=\"saveData('");
+        escapeHTML(out,escapeJS(key));
+        out.append("','");
+        escapeHTML(out,escapeJS(file));
+        out.append("')\" style=\"height:35px;width:80px\">SAVE</button></td>");
+
+        // finish row
+        out.append("</tr>");
+    }
+
+    // the key's group and what its value accepts as a tooltip (if the schema has either)
+    private void renderHint(Appendable out,String key) throws IOException {
+        if (this.m_schema == null) {
+            return;
+        }
+        Schema.Rule rule = this.m_schema.getRule(key);
+        String group = rule.getGroup();
+        String description = rule.getDescription();
+        if (group == null && description.length() == 0) {
+            return;
+        }
+        out.append(" title=\"");
+        if (group != null) {
+            escapeHTML(out,group);
+            if (description.length() > 0) {
+                out.append(": ");
+            }
+        }
+        escapeHTML(out,description);
+        out.append('"');
+    }
+
+    // map the properties key to a human readable form
+    private String mapKeyToHumanReadable(String key) {
+        if (this.m_key_map != null) {
+            String readable_key = this.m_key_map.get(key);
+            if (readable_key != null) {
+                return readable_key;
+            }
+        }
+        return key;
+    }
+
+    // estimate the size of the rendered table
+    private int estimateSize(PropertiesSnapshot props) {
+        long size = 64 + (long)props.size() * ROW_MARKUP_SIZE;
+        return (int)Math.min(size,Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * HTML-escape a string (text and attribute safe)
+     * @param out - where to write the escaped string
+     * @param str - the string (NULL is rendered as "null")
+     * @throws IOException
+     */
+    public static void escapeHTML(Appendable out,String str) throws IOException {
+        if (str == null) {
+            out.append("null");
+            return;
+        }
+
+        // copy runs of safe characters in one go
+        int start = 0;
+        int length = str.length();
+        for(int i=0;i<length;++i) {
+            String replacement = null;
+            switch (str.charAt(i)) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '"': replacement = "&quot;"; break;
+                case '\'': replacement = "&#39;"; break;
+                default: break;
+            }
+            if (replacement != null) {
+                if (i > start) {
+                    out.append(str,start,i);
+                }
+                out.append(replacement);
+                start = i + 1;
+            }
+        }
+        if (start == 0) {
+            out.append(str);
+        }
+        else if (start < length) {
+            out.append(str,start,length);
+        }
+    }
+
+    // escape a value placed inside a single-quoted javascript string
+    private static String escapeJS(String str) {
+        if (str == null || (str.indexOf('\'') < 0 && str.indexOf('\\') < 0)) {
+            return str;
+        }
+        return str.replace("\\","\\\\").replace("'","\\'");
+    }
+}
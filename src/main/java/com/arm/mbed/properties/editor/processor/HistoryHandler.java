@@ -0,0 +1,165 @@
+/**
+ * @file    HistoryHandler.java
+ * @brief JSON history of the changes made to a property (from the change journal)
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.ChangeJournal;
+import com.arm.mbed.properties.editor.core.Json;
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.arm.mbed.properties.editor.core.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * History Handler - who changed a property, when and to what, read through the change journal's per-key index:
+ *
+ *   GET /api/history?key=mqtt_port&amp;since=2026-10-01T00:00:00Z&amp;limit=20
+ *       {"key":"...","file":"properties","complete_since":"...","changes":[{"seq":n,"time":"...","user":"...","value":"..."},...]}
+ *       newest first. "since" is an ISO-8601 instant or milliseconds since the epoch (default: everything), "file=editor"
+ *       selects the editor configuration. A removal has a null value and values of secret keys are masked. The journal
+ *       holds the changes since its last checkpoint ("complete_since", null if it was never compacted).
+ *
+ * @author Doug Anson
+ */
+public class HistoryHandler implements HttpHandler {
+    /**
+     * Context path the history is served under
+     */
+    public static final String CONTEXT = "/api/history";
+
+    // limits
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private final PropertiesEditorProcessor m_processor;
+    private final Metrics.Timer m_timer;
+    private final Metrics.Counter m_response_bytes;
+
+    /**
+     * Default constructor
+     * @param processor - the processor owning the properties
+     */
+    public HistoryHandler(PropertiesEditorProcessor processor) {
+        this.m_processor = processor;
+        this.m_timer = processor.getPhaseTimer("history");
+        this.m_response_bytes = processor.getResponseBytes("history");
+    }
+
+    /**
+     * HttpHandler handler method
+     * @param t - the HttpExchange instance
+     * @throws IOException
+     */
+    @Override
+    public void handle(HttpExchange t) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (t.getRequestMethod().equalsIgnoreCase("GET") == false) {
+                JsonResponse.sendMethodNotAllowed(t,"GET",this.m_response_bytes);
+                return;
+            }
+            ChangeJournal journal = this.m_processor.getJournal();
+            if (journal == null) {
+                JsonResponse.sendError(t,404,"The change journal is disabled",this.m_response_bytes);
+                return;
+            }
+            Map<String,String> query = Utils.parseQuery(t.getRequestURI().getRawQuery(),null);
+            String key = query.get("key");
+            if (key == null || key.length() == 0) {
+                JsonResponse.sendError(t,400,"Expected ?key=",this.m_response_bytes);
+                return;
+            }
+            boolean editor = "editor".equalsIgnoreCase(query.get("file"));
+            long since = 0;
+            int limit = DEFAULT_LIMIT;
+            try {
+                since = HistoryHandler.parseTime(query.get("since"));
+                if (query.get("limit") != null) {
+                    limit = Math.max(1,Math.min(MAX_LIMIT,Integer.parseInt(query.get("limit").trim())));
+                }
+            }
+            catch (NumberFormatException | DateTimeParseException ex) {
+                JsonResponse.sendError(t,400,"Bad since/limit: " + ex.getMessage(),this.m_response_bytes);
+                return;
+            }
+
+            // the key's changes
+            int file = editor ? ChangeJournal.EDITOR : ChangeJournal.PROPERTIES;
+            List<ChangeJournal.Change> changes = this.m_processor.getHistory(file,key,since,limit);
+            StringBuilder json = new StringBuilder(128 + changes.size() * 128);
+            json.append("{\"key\":");
+            Json.writeString(json,key);
+            json.append(",\"file\":\"").append(editor ? "editor" : "properties").append("\",\"complete_since\":");
+            long checkpoint = journal.getCheckpointTime();
+            if (checkpoint > 0) {
+                Json.writeString(json,Instant.ofEpochMilli(checkpoint).toString());
+            }
+            else {
+                json.append("null");
+            }
+            json.append(",\"changes\":[");
+            for(int i=0;i<changes.size();++i) {
+                ChangeJournal.Change change = changes.get(i);
+                json.append((i > 0) ? ",{\"seq\":" : "{\"seq\":").append(change.getSeq()).append(",\"time\":");
+                Json.writeString(json,Instant.ofEpochMilli(change.getTime()).toString());
+                json.append(",\"user\":");
+                HistoryHandler.writeNullable(json,change.getUser());
+                json.append(",\"value\":");
+                HistoryHandler.writeNullable(json,this.m_processor.maskSecret(file,key,change.getValue()));
+                json.append('}');
+            }
+            json.append("]}");
+            JsonResponse.send(t,200,json,this.m_response_bytes);
+        }
+        finally {
+            t.close();
+            this.m_timer.stop(start);
+        }
+    }
+
+    // ISO-8601 instant or milliseconds since the epoch (none: 0)
+    private static long parseTime(String value) {
+        if (value == null || value.trim().length() == 0) {
+            return 0;
+        }
+        value = value.trim();
+        if (value.matches("-?[0-9]+")) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    // a JSON string or null
+    private static void writeNullable(StringBuilder json,String value) throws IOException {
+        if (value == null) {
+            json.append("null");
+        }
+        else {
+            Json.writeString(json,value);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * @file    JsonResponse.java
+ * @brief JSON responses of the API handlers
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.Json;
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * JSON Response - sends the (never cached) JSON bodies of the API handlers, counting them into the handler's response bytes
+ * @author Doug Anson
+ */
+final class JsonResponse {
+    /**
+     * Content type of the JSON bodies
+     */
+    static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    // static only
+    private JsonResponse() {
+    }
+
+    /**
+     * Send a JSON body
+     * @param t - the HttpExchange instance
+     * @param status - the HTTP status
+     * @param bytes - the (UTF-8) JSON body
+     * @param response_bytes - the handler's response bytes counter
+     * @throws IOException
+     */
+    static void send(HttpExchange t,int status,byte[] bytes,Metrics.Counter response_bytes) throws IOException {
+        t.getResponseHeaders().set("Content-Type",CONTENT_TYPE);
+        t.getResponseHeaders().set("Cache-Control","no-store");
+        t.sendResponseHeaders(status,bytes.length);
+        OutputStream out = t.getResponseBody();
+        try {
+            out.write(bytes);
+            response_bytes.add(bytes.length);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Send a JSON body
+     * @param t - the HttpExchange instance
+     * @param status - the HTTP status
+     * @param json - the JSON body
+     * @param response_bytes - the handler's response bytes counter
+     * @throws IOException
+     */
+    static void send(HttpExchange t,int status,CharSequence json,Metrics.Counter response_bytes) throws IOException {
+        JsonResponse.send(t,status,json.toString().getBytes(StandardCharsets.UTF_8),response_bytes);
+    }
+
+    /**
+     * Send a JSON object of strings as {"key":"value",...}
+     * @param t - the HttpExchange instance
+     * @param status - the HTTP status
+     * @param properties - the object (NULL values as null)
+     * @param response_bytes - the handler's response bytes counter
+     * @throws IOException
+     */
+    static void sendObject(HttpExchange t,int status,Map<String,String> properties,Metrics.Counter response_bytes) throws IOException {
+        StringBuilder json = new StringBuilder(64 + properties.size() * 64);
+        Json.writeObject(json,properties);
+        JsonResponse.send(t,status,json,response_bytes);
+    }
+
+    /**
+     * Send an error as {"error":"..."}
+     * @param t - the HttpExchange instance
+     * @param status - the HTTP status
+     * @param message - the error message
+     * @param response_bytes - the handler's response bytes counter
+     * @throws IOException
+     */
+    static void sendError(HttpExchange t,int status,String message,Metrics.Counter response_bytes) throws IOException {
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"error\":");
+        Json.writeString(json,message);
+        json.append('}');
+        JsonResponse.send(t,status,json,response_bytes);
+    }
+
+    /**
+     * Send 405 with the allowed methods
+     * @param t - the HttpExchange instance
+     * @param allowed - the allowed methods (i.e. "GET, POST")
+     * @param response_bytes - the handler's response bytes counter
+     * @throws IOException
+     */
+    static void sendMethodNotAllowed(HttpExchange t,String allowed,Metrics.Counter response_bytes) throws IOException {
+        t.getResponseHeaders().set("Allow",allowed);
+        JsonResponse.sendError(t,405,"Method not allowed: " + t.getRequestMethod(),response_bytes);
+    }
+}
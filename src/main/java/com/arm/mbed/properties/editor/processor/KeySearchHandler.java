@@ -0,0 +1,101 @@
+/**
+ * @file    KeySearchHandler.java
+ * @brief JSON autocomplete of the property keys and their labels
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.KeyIndex;
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.arm.mbed.properties.editor.core.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Key Search Handler - autocomplete from the key index (no scan of the properties):
+ *
+ *   GET /api/keys?prefix=mq&amp;limit=20   the keys whose key or label starts with the prefix (case insensitive)
+ *                                       as {"key":"label",...} in key/label order
+ *
+ * @author Doug Anson
+ */
+public class KeySearchHandler implements HttpHandler {
+    /**
+     * Context path the autocomplete is served under
+     */
+    public static final String CONTEXT = "/api/keys";
+
+    // largest accepted limit
+    private static final int MAX_LIMIT = 1000;
+
+    private final PropertiesEditorProcessor m_processor;
+    private final Metrics.Timer m_timer;
+    private final Metrics.Counter m_response_bytes;
+
+    /**
+     * Default constructor
+     * @param processor - the processor owning the properties
+     */
+    public KeySearchHandler(PropertiesEditorProcessor processor) {
+        this.m_processor = processor;
+        this.m_timer = processor.getPhaseTimer("keys");
+        this.m_response_bytes = processor.getResponseBytes("keys");
+    }
+
+    /**
+     * HttpHandler handler method
+     * @param t - the HttpExchange instance
+     * @throws IOException
+     */
+    @Override
+    public void handle(HttpExchange t) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (t.getRequestMethod().equalsIgnoreCase("GET") == false) {
+                JsonResponse.sendMethodNotAllowed(t,"GET",this.m_response_bytes);
+                return;
+            }
+            Map<String,String> query = Utils.parseQuery(t.getRequestURI().getRawQuery(),null);
+            int limit = KeyIndex.DEFAULT_LIMIT;
+            if (query.get("limit") != null) {
+                try {
+                    limit = Math.max(1,Math.min(MAX_LIMIT,Integer.parseInt(query.get("limit").trim())));
+                }
+                catch (NumberFormatException ex) {
+                    JsonResponse.sendError(t,400,"Bad limit: " + query.get("limit"),this.m_response_bytes);
+                    return;
+                }
+            }
+
+            // search
+            long search_start = System.nanoTime();
+            Map<String,String> matches = this.m_processor.searchKeys(query.get("prefix"),limit);
+            long search_us = (System.nanoTime() - search_start) / 1000;
+            t.getResponseHeaders().set("Server-Timing","search;dur=" + (search_us / 1000) + "." + String.format("%03d",search_us % 1000));
+            JsonResponse.sendObject(t,200,matches,this.m_response_bytes);
+        }
+        finally {
+            t.close();
+            this.m_timer.stop(start);
+        }
+    }
+}
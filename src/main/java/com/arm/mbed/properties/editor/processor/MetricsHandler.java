@@ -0,0 +1,87 @@
+/**
+ * @file    MetricsHandler.java
+ * @brief Prometheus (text format) export of the editor's metrics
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Metrics Handler - the metrics of the editor (and its targets) for Prometheus to scrape:
+ *
+ *   GET /metrics   latency per phase (p50/p90/p99, sum, count), bytes written, saves, script forks and the editor's
+ *                  other statistics in the text exposition format
+ *
+ * @author Doug Anson
+ */
+public class MetricsHandler implements HttpHandler {
+    /**
+     * Context path the metrics are served under
+     */
+    public static final String CONTEXT = "/metrics";
+
+    private final Metrics m_metrics;
+
+    /**
+     * Default constructor
+     * @param processor - the (main) processor whose metrics are exported
+     */
+    public MetricsHandler(PropertiesEditorProcessor processor) {
+        this.m_metrics = processor.getMetrics();
+    }
+
+    /**
+     * HttpHandler handler method
+     * @param t - the HttpExchange instance
+     * @throws IOException
+     */
+    @Override
+    public void handle(HttpExchange t) throws IOException {
+        try {
+            if (t.getRequestMethod().equalsIgnoreCase("GET") == false) {
+                t.getResponseHeaders().set("Allow","GET");
+                t.sendResponseHeaders(405,-1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(4096);
+            this.m_metrics.write(text);
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            t.getResponseHeaders().set("Content-Type",Metrics.CONTENT_TYPE);
+            t.getResponseHeaders().set("Cache-Control","no-store");
+            t.sendResponseHeaders(200,bytes.length);
+            OutputStream out = t.getResponseBody();
+            try {
+                out.write(bytes);
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            t.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * @file    PropertiesApiHandler.java
+ * @brief JSON API for reading and updating the properties
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.Json;
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import com.arm.mbed.properties.editor.core.Schema;
+import com.arm.mbed.properties.editor.core.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Properties API Handler - JSON access to the (service) properties without rendering the page:
+ *
+ *   GET    /api/properties         all properties as {"key":"value",...}
+ *   GET    /api/properties/{key}   one property as {"key":"value"}
+ *   PUT    /api/properties/{key}   set one property from {"value":"..."}, returns {"key":"value"}
+ *   DELETE /api/properties/{key}   remove one property, returns the removed {"key":"value"}
+ *   POST   /api/properties         apply a batch {"key":"value",...} (null removes) as one update and one save,
+ *                                  then restart the service if ?restart=true. Returns the affected entries.
+ *
+ * Values failing the schema (and the empty slot key, default_key) are rejected (nothing is applied) with
+ * 422 {"error":"...","errors":{"key":"what is wrong",...}}
+ *
+ * @author Doug Anson
+ */
+public class PropertiesApiHandler implements HttpHandler {
+    /**
+     * Context path the API is served under
+     */
+    public static final String CONTEXT = "/api/properties";
+
+    // Defaults
+    private static final int DEFAULT_MAX_BODY_CHARS = 1048576;
+
+    private final PropertiesEditorProcessor m_processor;
+    private final int m_max_body_chars;
+    private final Metrics.Timer m_timer;
+    private final Metrics.Counter m_response_bytes;
+
+    /**
+     * Default constructor
+     * @param processor - the processor owning the properties
+     */
+    public PropertiesApiHandler(PropertiesEditorProcessor processor) {
+        this.m_processor = processor;
+        this.m_max_body_chars = processor.getIntProperty("api_max_body_chars",DEFAULT_MAX_BODY_CHARS);
+        this.m_timer = processor.getPhaseTimer("api");
+        this.m_response_bytes = processor.getResponseBytes("api");
+    }
+
+    /**
+     * HttpHandler handler method
+     * @param t - the HttpExchange instance
+     * @throws IOException
+     */
+    @Override
+    public void handle(HttpExchange t) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String key = this.getKey(t);
+            String method = t.getRequestMethod().toUpperCase();
+            if (key == null) {
+                if (method.equals("GET")) {
+                    JsonResponse.sendObject(t,200,this.m_processor.getPropertiesSnapshot().asMap(),this.m_response_bytes);
+                }
+                else if (method.equals("POST")) {
+                    this.postBatch(t);
+                }
+                else {
+                    JsonResponse.sendMethodNotAllowed(t,"GET, POST",this.m_response_bytes);
+                }
+            }
+            else if (method.equals("GET")) {
+                this.getProperty(t,key);
+            }
+            else if (method.equals("PUT")) {
+                this.putProperty(t,key);
+            }
+            else if (method.equals("DELETE")) {
+                this.deleteProperty(t,key);
+            }
+            else {
+                JsonResponse.sendMethodNotAllowed(t,"GET, PUT, DELETE",this.m_response_bytes);
+            }
+        }
+        catch (Schema.ValidationException ex) {
+            this.sendValidationErrors(t,ex.getErrors());
+        }
+        catch (Json.LimitException ex) {
+            JsonResponse.sendError(t,413,ex.getMessage(),this.m_response_bytes);
+        }
+        catch (Json.ParseException ex) {
+            JsonResponse.sendError(t,400,"Malformed JSON: " + ex.getMessage(),this.m_response_bytes);
+        }
+        finally {
+            t.close();
+            this.m_timer.stop(start);
+        }
+    }
+
+    // POST a batch of updates: one snapshot edit, one save and (optionally) one restart
+    private void postBatch(HttpExchange t) throws IOException {
+        long start = System.nanoTime();
+        Map<String,String> batch = this.readBody(t);
+        long parsed = System.nanoTime();
+        if (batch.isEmpty()) {
+            JsonResponse.sendError(t,400,"Empty batch",this.m_response_bytes);
+            return;
+        }
+        
+        // apply
+        PropertiesSnapshot updated = this.m_processor.updateProperties(batch,PropertiesEditorProcessor.getUser(t));
+        long applied = System.nanoTime();
+        
+        // restart if asked (pending saves are flushed first)
+        String restart = Utils.parseQuery(t.getRequestURI().getRawQuery(),null).get("restart");
+        if (restart != null && restart.equalsIgnoreCase("true")) {
+            this.m_processor.restartService();
+        }
+        long restarted = System.nanoTime();
+        
+        // the affected entries (removed keys are null)
+        Map<String,String> affected = new LinkedHashMap<String,String>();
+        for(String key : batch.keySet()) {
+            affected.put(key,updated.get(key));
+        }
+        
+        // timing
+        long parse_us = (parsed - start) / 1000;
+        long apply_us = (applied - parsed) / 1000;
+        long restart_us = (restarted - applied) / 1000;
+        System.out.println("PropertiesApiHandler: batch of " + batch.size() + " keys (version " + updated.getVersion() + ") parse: " + parse_us + "us apply+save: " + apply_us + "us restart: " + restart_us + "us");
+        t.getResponseHeaders().set("Server-Timing","parse;dur=" + microsToMillis(parse_us) + ", apply;dur=" + microsToMillis(apply_us) + ", restart;dur=" + microsToMillis(restart_us));
+        JsonResponse.sendObject(t,200,affected,this.m_response_bytes);
+    }
+    
+    // Server-Timing durations are in (fractional) milliseconds
+    private static String microsToMillis(long us) {
+        return (us / 1000) + "." + String.format("%03d",us % 1000);
+    }
+
+    // GET a single property
+    private void getProperty(HttpExchange t,String key) throws IOException {
+        String value = this.m_processor.getPropertiesSnapshot().get(key);
+        if (value == null) {
+            JsonResponse.sendError(t,404,"No such key: " + key,this.m_response_bytes);
+        }
+        else {
+            JsonResponse.sendObject(t,200,Collections.singletonMap(key,value),this.m_response_bytes);
+        }
+    }
+
+    // PUT a single property: {"value":"..."}
+    private void putProperty(HttpExchange t,String key) throws IOException {
+        Map<String,String> body = this.readBody(t);
+        String value = body.get("value");
+        if (value == null) {
+            JsonResponse.sendError(t,400,"Expected {\"value\":\"...\"}",this.m_response_bytes);
+            return;
+        }
+        PropertiesSnapshot updated = this.m_processor.updateProperties(Collections.singletonMap(key,value),PropertiesEditorProcessor.getUser(t));
+        JsonResponse.sendObject(t,200,Collections.singletonMap(key,updated.get(key)),this.m_response_bytes);
+    }
+
+    // DELETE a single property
+    private void deleteProperty(HttpExchange t,String key) throws IOException {
+        String value = this.m_processor.getPropertiesSnapshot().get(key);
+        if (value == null) {
+            JsonResponse.sendError(t,404,"No such key: " + key,this.m_response_bytes);
+            return;
+        }
+        Map<String,String> removal = new HashMap<String,String>();
+        removal.put(key,null);
+        this.m_processor.updateProperties(removal,PropertiesEditorProcessor.getUser(t));
+        JsonResponse.sendObject(t,200,Collections.singletonMap(key,value),this.m_response_bytes);
+    }
+
+    // the (decoded) key from the path, NULL for the collection itself (the context is CONTEXT or a target's /targets/{name}/api/properties)
+    private String getKey(HttpExchange t) {
+        String path = t.getRequestURI().getPath();
+        String context = t.getHttpContext().getPath();
+        if (path.length() <= context.length() + 1) {
+            return null;
+        }
+        return path.substring(context.length() + 1);
+    }
+
+    // parse the request body as it arrives (size capped)
+    private Map<String,String> readBody(HttpExchange t) throws IOException {
+        // refuse declared oversized bodies without reading them (at most 4 UTF-8 bytes per character)
+        String length = t.getRequestHeaders().getFirst("Content-Length");
+        if (length != null) {
+            try {
+                if (Long.parseLong(length.trim()) > 4L * this.m_max_body_chars) {
+                    throw new Json.LimitException(this.m_max_body_chars);
+                }
+            }
+            catch (NumberFormatException ex) {
+                throw new Json.ParseException("bad Content-Length: " + length);
+            }
+        }
+        Reader in = new InputStreamReader(t.getRequestBody(),StandardCharsets.UTF_8);
+        try {
+            return Json.readObject(in,this.m_max_body_chars);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    // 422 with each invalid key and what is wrong with its value: {"error":"...","errors":{"key":"...",...}}
+    private void sendValidationErrors(HttpExchange t,Map<String,String> errors) throws IOException {
+        StringBuilder json = new StringBuilder(64 + errors.size() * 64);
+        json.append("{\"error\":");
+        Json.writeString(json,"Validation failed: " + errors.size() + (errors.size() == 1 ? " invalid value" : " invalid values"));
+        json.append(",\"errors\":");
+        Json.writeObject(json,errors);
+        json.append('}');
+        JsonResponse.send(t,422,json,this.m_response_bytes);
+    }
+}
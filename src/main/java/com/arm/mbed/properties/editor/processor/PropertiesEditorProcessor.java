@@ -22,36 +22,148 @@
  */
 package com.arm.mbed.properties.editor.processor;
 
-import com.arm.mbed.properties.editor.Main;
+import com.arm.mbed.properties.editor.core.AwsCredentialsHook;
+import com.arm.mbed.properties.editor.core.ChangeJournal;
+import com.arm.mbed.properties.editor.core.CompressedPage;
+import com.arm.mbed.properties.editor.core.KeyIndex;
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.arm.mbed.properties.editor.core.PageTemplate;
+import com.arm.mbed.properties.editor.core.PasswordHash;
 import com.arm.mbed.properties.editor.core.PropertiesEditor;
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import com.arm.mbed.properties.editor.core.PropertiesStore;
+import com.arm.mbed.properties.editor.core.Schema;
+import com.arm.mbed.properties.editor.core.SessionTokens;
+import com.arm.mbed.properties.editor.core.StoreCache;
+import com.arm.mbed.properties.editor.core.TemplateCache;
 import com.arm.mbed.properties.editor.core.Utils;
+import com.sun.net.httpserver.Authenticator;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Enumeration;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Properties Editor Processor - the primary class implementing a HTML processor for the properties editor
  * @author Doug Anson
  */
-public class PropertiesEditorProcessor extends PropertiesEditor implements HttpHandler {  
+public class PropertiesEditorProcessor extends PropertiesEditor implements HttpHandler, StoreCache.Evictable {  
     // Defaults
     private static String CSS_DEFAULT_FILE = "css.tpl";
     private static String SCRIPTS_DEFAULT_FILE = "scripts.tpl";
+    private static String JQUERY_DEFAULT_FILE = "jquery.min.js";
+    private static String SCHEMA_DEFAULT_FILE = "schema.properties";
+    private static final String JS_CONTENT_TYPE = "application/javascript; charset=UTF-8";
+
+    /**
+     * Shown instead of the value of a secret key (see maskSecret())
+     */
+    public static final String MASKED = "********";
     
     // the HTTP verb we respond to...
     private static String HTTP_VERB_DEFAULT = "get";
     
+    // page slots
+    private static final String CONFIG_TABLE_SLOT = "__CONFIG_TABLE__";
+    private static final String CONFIGURATOR_CONFIG_TABLE_SLOT = "__CONFIGURATOR_CONFIG_TABLE__";
+    
+    // HTTP-date (IMF-fixdate)
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'",Locale.US);
+    
+    // compression defaults (the page size is dominated by the inlined CSS/scripts, so the static size decides)
+    private static final int DEFAULT_COMPRESSION_MIN_BYTES = 1024;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    
+    // response writer buffer size
+    private static final int RESPONSE_BUFFER_SIZE = 8192;
+    
+    // session cookie (issued after a successful Basic login)
+    private static final String SESSION_COOKIE = "pe_session";
+    private static final String ADMIN_PASSWORD_KEY = "admin_password";
+    
+    // multi-target mode: targets are served under /targets/{name}/
+    public static final String TARGETS_CONTEXT = "/targets/";
+    private static final String TARGET_CONFIG_SUFFIX = ".properties";
+    
     // template files
     private String m_css_file = null;
     private String m_scripts_file = null;
+    private String m_jquery_file = JQUERY_DEFAULT_FILE;
+    
+    // separately served CSS/JS (NULL when inlined)
+    private StaticResources m_static_resources = null;
+    
+    // template cache
+    private TemplateCache m_template_cache = null;
     
-    // Human readable key map
+    // compiled page (read without a lock... recompiled under its own lock, never the one edits hold while they save)
+    private volatile CompiledPage m_page = null;
+    private long m_page_generation = 0;
+    private final Object m_page_lock = new Object();
+    
+    // response compression
+    private boolean m_compression_enabled = true;
+    private int m_compression_min_bytes = DEFAULT_COMPRESSION_MIN_BYTES;
+    private int m_compression_level = DEFAULT_COMPRESSION_LEVEL;
+    
+    // conditional GET support: validators change whenever the page could render differently
+    private final String m_etag_prefix = Long.toHexString(System.currentTimeMillis());
+    private volatile PageValidators m_validators = null;
+    private final AtomicLong m_page_requests = new AtomicLong(0);
+    private final AtomicLong m_not_modified = new AtomicLong(0);
+    
+    // authentication: sessions/verified credentials and the credentials they were established with
+    // (checked on every request without our lock: edits hold it while they journal and save)
+    private volatile SessionTokens m_sessions = new SessionTokens(SessionTokens.DEFAULT_MAX_SESSIONS,SessionTokens.DEFAULT_TIMEOUT_SEC);
+    private volatile String m_session_credentials = null;
+    private final Object m_session_lock = new Object();
+    private int m_password_hash_iterations = PasswordHash.DEFAULT_ITERATIONS;
+    
+    // multi-target mode: our context path, the targets (main editor only) and the cache bounding their loaded stores
+    private String m_context_path = "/";
+    private final LinkedHashMap<String,PropertiesEditorProcessor> m_targets = new LinkedHashMap<String,PropertiesEditorProcessor>();
+    private StoreCache m_store_cache = null;
+    
+    // Human readable key map (the labels of the schema) and the schema the (service) properties are checked against
     private HashMap<String,String> m_key_map = null;
+    private Schema m_schema = Schema.empty();
+    
+    // configuration table renderer... the config_fields keys of the last rendered snapshot and the table page sizes
+    private ConfigTableRenderer m_table_renderer = null;
+    private volatile ConfigFields m_config_fields = null;
+    private int m_table_page_size = TableView.DEFAULT_PAGE_SIZE;
+    private int m_table_max_page_size = TableView.DEFAULT_MAX_PAGE_SIZE;
+    
+    // prefix index over the (service) keys and their labels (autocomplete)
+    private KeyIndex m_key_index = null;
+    
+    // metrics: page request/render latency, page bytes and script forks
+    private Metrics.Timer m_handle_timer = null;
+    private Metrics.Timer m_render_timer = null;
+    private Metrics.Timer m_script_timer = null;
+    private Metrics.Counter m_script_failures = null;
+    private Metrics.Counter m_response_bytes = null;
     
     /**
      * Default Constructor
@@ -59,7 +171,11 @@ public class PropertiesEditorProcessor extends PropertiesEditor implements HttpH
      */
     public PropertiesEditorProcessor(boolean extendable_config) {
         super(PropertiesEditorProcessor.HTTP_VERB_DEFAULT,extendable_config);
-        this.initHumanReadableKeyMap();
+        this.m_key_map = new HashMap<String,String>();
+        this.m_table_renderer = new ConfigTableRenderer(this.m_key_map);
+        this.m_key_index = new KeyIndex(this.m_key_map);
+        this.m_template_cache = new TemplateCache();
+        this.setMetrics(this.getMetrics());
         
         // pull in the CSS and scripts filenames
         this.m_css_file = this.getProperty("css_template");
@@ -72,237 +188,586 @@ public class PropertiesEditorProcessor extends PropertiesEditor implements HttpH
         }
     }
 
+    // a compiled page, its precompressed form, its generation (increases with every recompile) and the template contents it was compiled from
+    private static final class CompiledPage {
+        private final PageTemplate m_template;
+        private final CompressedPage m_compressed;
+        private final long m_generation;
+        private final String m_css;
+        private final String m_scripts;
+        private final String m_editor;
+        private final String m_jquery;
+        private final long m_config_version;
+        
+        private CompiledPage(PageTemplate template,CompressedPage compressed,long generation,String css,String scripts,String editor,String jquery,long config_version) {
+            this.m_template = template;
+            this.m_compressed = compressed;
+            this.m_generation = generation;
+            this.m_css = css;
+            this.m_scripts = scripts;
+            this.m_editor = editor;
+            this.m_jquery = jquery;
+            this.m_config_version = config_version;
+        }
+        
+        // compiled from these template instances (the template cache hands back the same instance until a template changes)
+        private boolean isCompiledFrom(String css,String scripts,String editor,String jquery,long config_version) {
+            return css == this.m_css && scripts == this.m_scripts && editor == this.m_editor && jquery == this.m_jquery && config_version == this.m_config_version;
+        }
+    }
+    
+    // the config_fields keys of a snapshot (parsed once: the same list lets the renderer reuse its row selection)
+    private static final class ConfigFields {
+        private final PropertiesSnapshot m_props;
+        private final List<String> m_keys;
+        
+        private ConfigFields(PropertiesSnapshot props,List<String> keys) {
+            this.m_props = props;
+            this.m_keys = keys;
+        }
+    }
+    
+    // the ETag of a page state and when that state was first seen
+    private static final class PageValidators {
+        private final String m_etag;
+        private final long m_last_modified;
+        private final String m_last_modified_header;
+        
+        private PageValidators(String etag,long last_modified) {
+            this(etag,last_modified,HTTP_DATE.format(Instant.ofEpochMilli(last_modified).atZone(ZoneOffset.UTC)));
+        }
+        
+        private PageValidators(String etag,long last_modified,String last_modified_header) {
+            this.m_etag = etag;
+            this.m_last_modified = last_modified;
+            this.m_last_modified_header = last_modified_header;
+        }
+        
+        // the same state in a given content coding
+        private PageValidators forCoding(String coding) {
+            return new PageValidators(this.m_etag.substring(0,this.m_etag.length() - 1) + "-" + coding + "\"",this.m_last_modified,this.m_last_modified_header);
+        }
+        
+        // the same state in a given table view (its canonical query is URL encoded: valid ETag characters)
+        private PageValidators forView(TableView view) {
+            String query = view.toQuery(view.getPage());
+            if (query.length() == 0) {
+                return this;
+            }
+            return new PageValidators(this.m_etag.substring(0,this.m_etag.length() - 1) + "-" + query + "\"",this.m_last_modified,this.m_last_modified_header);
+        }
+    }
+
     /**
-     * initialize the HTTP response HTML content
+     * initialize the HTTP response page (recompiled only when one of the templates has changed)... package-private for the benchmarks
      */
-    private String initializeResponse(String html) {
-        // initialize the table with the CSS first
-        html += Utils.fileToString(this.m_templates_root,this.m_css_file);
-
-        // add scripts
-        html += Utils.fileToString(this.m_templates_root,this.m_scripts_file).replace("__SERVICE_NAME__", this.m_service_name);
+    CompiledPage initializeResponse() {
+        String css = this.getTemplate(this.m_css_file);
+        String scripts = this.getTemplate(this.m_scripts_file);
+        String editor = this.getTemplate(this.m_editor_file);
+        String jquery = this.getTemplate(this.m_jquery_file);
+        
+        // unchanged templates (the title/service name change only on a config reload): the current page
+        long config_version = this.m_editor_properties.snapshot().getVersion();
+        CompiledPage page = this.m_page;
+        if (page != null && page.isCompiledFrom(css,scripts,editor,jquery,config_version)) {
+            return page;
+        }
+        synchronized (this.m_page_lock) {
+            page = this.m_page;
+            if (page != null && page.isCompiledFrom(css,scripts,editor,jquery,config_version)) {
+                return page;
+            }
+            page = this.compileResponse(css,scripts,editor,jquery,config_version);
+            this.m_page = page;
+            return page;
+        }
+    }
+    
+    // compile the page from the templates (under the page lock)
+    private CompiledPage compileResponse(String css,String scripts,String editor,String jquery,long config_version) {
+        // update some of the key variables
+        String page_css = this.substitute(css);
+        String page_scripts = this.substitute(scripts);
+        String html = null;
+        if (this.m_static_resources != null) {
+            // CSS and scripts are served (and cached) separately... the page only links to them (names are per target, identical content is shared)
+            String prefix = this.m_context_path.substring(1);
+            html = "<link rel=\"stylesheet\" type=\"text/css\" href=\"" + this.m_static_resources.publish(prefix + "editor.css","text/css; charset=UTF-8",innerContent(page_css,"style").getBytes(StandardCharsets.UTF_8)) + "\">\n";
+            if (jquery.length() > 0) {
+                html += "<script src=\"" + this.m_static_resources.publish(prefix + this.m_jquery_file,JS_CONTENT_TYPE,jquery.getBytes(StandardCharsets.UTF_8)) + "\"></script>\n";
+            }
+            html += "<script src=\"" + this.m_static_resources.publish(prefix + "editor.js",JS_CONTENT_TYPE,innerContent(page_scripts,"script").getBytes(StandardCharsets.UTF_8)) + "\"></script>\n";
+        }
+        else {
+            // initialize the table with the CSS first... then add scripts
+            html = page_css;
+            if (jquery.length() > 0) {
+                html += "<script type=\"text/javascript\">" + jquery + "</script>\n";
+            }
+            html += page_scripts;
+        }
 
         // add the table templates/editor page
-        html += Utils.fileToString(this.m_templates_root,this.m_editor_file).replace("__SERVICE_NAME__", this.m_service_name);
-
-        // update some of the key variables
-        html = html.replace("__TITLE__",this.m_title).replace("__SERVICE_NAME__", this.m_service_name);
+        html += this.substitute(editor);
 
-        // return the html
-        return html;
+        // split the page at the dynamic content
+        PageTemplate template = PageTemplate.compile(html,this.m_div_hider_tag + "1__",this.m_div_hider_tag + "2__",CONFIG_TABLE_SLOT,CONFIGURATOR_CONFIG_TABLE_SLOT);
+        
+        // compress the static parts once (when compression is enabled and the page is large enough to benefit)
+        CompressedPage compressed = null;
+        if (this.m_compression_enabled) {
+            compressed = new CompressedPage(template,this.m_compression_level);
+            if (compressed.getStaticBytes() < this.m_compression_min_bytes) {
+                compressed = null;
+            }
+        }
+        return new CompiledPage(template,compressed,++this.m_page_generation,css,scripts,editor,jquery,config_version);
     } 
     
-    // initialize the human readable KeyMap
-    private void initHumanReadableKeyMap() {
-        this.m_key_map = new HashMap<String,String>();
+    // substitute the page variables
+    private String substitute(String template) {
+        return template.replace("__TITLE__",this.m_title)
+                       .replace("__SERVICE_NAME__",this.m_service_name)
+                       .replace("__EMPTY_SLOT_KEY__",this.m_empty_slot_key != null ? this.m_empty_slot_key : "");
+    }
+    
+    // the content between the first opening and the last closing tag (i.e. the CSS inside <style>...</style>)
+    private static String innerContent(String template,String tag) {
+        int open = template.indexOf("<" + tag);
+        int start = (open >= 0) ? template.indexOf('>',open) + 1 : -1;
+        int end = template.lastIndexOf("</" + tag);
+        if (start <= 0 || end < start) {
+            return template;
+        }
+        return template.substring(start,end);
+    }
+    
+    // get a template from the cache
+    private String getTemplate(String filename) {
+        String template = this.m_template_cache.get(this.m_templates_root,filename);
+        if (template == null) {
+            System.out.println("PropertiesEditorProcessor: Unable to read template: " + filename);
+            return "";
+        }
+        return template;
+    }
+    
+    /**
+     * Load up the properties editor (self) properties file
+     * @param editor_config_file - name of the property editor properties file (fully qualified)
+     */
+    @Override
+    public void loadProperties(String editor_config_file) {
+        // targets share the main editor's templates
+        PropertiesEditorProcessor main = this.getMainProcessor();
+        if (main != null) {
+            this.m_template_cache = main.m_template_cache;
+        }
+        super.loadProperties(editor_config_file);
+        this.m_table_renderer.setEmptySlot(this.m_empty_slot_key,this.m_empty_slot_value);
         
-        // for now... just make this static
-        this.m_key_map.put("api_key","Pelion API Key");
-        this.m_key_map.put("mds_api_token","Pelion API Key");
-        this.m_key_map.put("mds_gw_address","Bridge (Override) IP Address");
-        this.m_key_map.put("mds_enable_long_poll","Enable Bridge Long Polling");
-        this.m_key_map.put("api_endpoint_address","Pelion API Address");
-        this.m_key_map.put("mds_address","Pelion API Address");
-        this.m_key_map.put("mds_max_shadow_create_threads","Pelion Max Threads in Shadow Create");
-        this.m_key_map.put("mds_gw_port","Bridge Webhook Port");
-        this.m_key_map.put("mds_bridge_error_level","Bridge Debug Level");
-        this.m_key_map.put("mds_remove_on_deregistration","Remove Device on De-registration");
-        this.m_key_map.put("iotf_legacy_bridge","Watson IoT Enable Legacy Mode");
-        this.m_key_map.put("iotf_api_key","Watson IoT API Key");
-        this.m_key_map.put("iotf_auth_token","Watson IoT Authentication Token");
-        this.m_key_map.put("threads_core_pool_size","Bridge Threading Pool Size");
-        this.m_key_map.put("threads_max_pool_size","Bridge Threading Max Pool Size");
-        this.m_key_map.put("threads_keep_alive_time","Bridge Thread Keep Alive (sec)");
-        this.m_key_map.put("aws_iot_region","AWS Region");
-        this.m_key_map.put("aws_iot_access_key_id","AWS Access Key ID");
-        this.m_key_map.put("aws_iot_secret_access_key","AWS Access Key Secret");
-        this.m_key_map.put("google_cloud_auth_json","Google Cloud Auth JSON");
-        this.m_key_map.put("google_cloud_region","Google Cloud Region");
-        this.m_key_map.put("google_cloud_mqtt_port","Google MQTT Port");
-        this.m_key_map.put("iot_event_hub_name","Microsoft IoTHub Name");
-        this.m_key_map.put("iot_event_hub_sas_token","Microsoft IoTHub SAS Token (iothubowner)");
-        this.m_key_map.put("iot_event_hub_device_id_prefix","IoTHub Device Prefix");
-        this.m_key_map.put("iot_event_hub_enable_device_id_prefix","Enable Device Prefix");
-        this.m_key_map.put("iot_event_hub_connect_string","IoTHub Connect String");
-        this.m_key_map.put("mqtt_address","MQTT Broker IP Address");
-        this.m_key_map.put("mqtt_port","MQTT Broker Port");
-        this.m_key_map.put("mqtt_use_ssl","MQTT Connection Using SSL");
-        this.m_key_map.put("mqtt_username","MQTT Connection Username");
-        this.m_key_map.put("mqtt_password","MQTT Connection Password");
-        this.m_key_map.put("mqtt_client_id","MQTT Connection ClientID");
-        this.m_key_map.put("mqtt_mds_topic_root","MQTT Topic Root");
-        this.m_key_map.put("mqtt_no_client_creds","MQTT Broker Using Client Creds");
-        this.m_key_map.put("mqtt_import_keystore","MQTT Broker Using Keystore");
-        this.m_key_map.put("mqtt_connect_retries","MQTT Connect Attempts");
-        this.m_key_map.put("heath_check_sleep_time_ms","Health Check Interval (ms)");
-        this.m_key_map.put("webhook_validator_key","Webhook Statistic Key");
-        this.m_key_map.put("webhook_validator_description","Webhook Functional Check");
-        this.m_key_map.put("webhook_validator_interval_ms","Webhook Check Interval (ms)");
-        this.m_key_map.put("database_validator_key","Database Statistic Key");
-        this.m_key_map.put("database_validator_description","Database Connection Check");
-        this.m_key_map.put("database_validator_interval_ms","Database Check Interval (ms)");
-        this.m_key_map.put("long_poll_validator_key","Long Poll Statistic Key");
-        this.m_key_map.put("long_poll_validator_description","Long Poll Functional Check");
-        this.m_key_map.put("long_poll_validator_interval_ms","Long Poll Check Interval (ms)");
-        this.m_key_map.put("mqtt_validator_key","MQTT Connections Statistic Key");
-        this.m_key_map.put("mqtt_validator_description","MQTT Connections Check");
-        this.m_key_map.put("mqtt_validator_interval_ms","MQTT Connections Check Interval (ms)");
-        this.m_key_map.put("shadow_count_validator_key","Device Shadow Count Key");
-        this.m_key_map.put("shadow_count_validator_description","Device Shadow Count");
-        this.m_key_map.put("shadow_count_validator_interval_ms","Device Shadow Count Check Interval (ms)");
-        this.m_key_map.put("thread_count_validator_key","Thread Count Key");
-        this.m_key_map.put("thread_count_validator_description","Active Thread Count");
-        this.m_key_map.put("thread_count_validator_interval_ms","Thread Count Check Interval (ms)");
-    }
-    
-    // map the properties key to a human readable form
-    private String mapKeyToHumanReadable(String key) {
-        if (this.m_key_map != null && this.m_key_map.containsKey(key) == true) {
-            return this.m_key_map.get(key);
-        }
-        return key;
-    }
-
-    /**
-     * Build out the HTML table representing the properties file 
-     */
-    private String createConfigTableAsHTMLFiltered(Properties props,String file, boolean editable_key,String config_fields) {
-        // start the table
-        String table = "<table border=\"0\">";
-        boolean shown = true;
-
-        // enumerate through the properties and fill the table
-        String[] fields_to_show = this.getConfigFields(config_fields);
-        for(int i=0;i<fields_to_show.length;++i) {
-            // Get the Key
-            String key = fields_to_show[i];
-            
-            // Get the Value
-            String value = props.getProperty(key);     
-            
-            // Convert the Key to human readable
-            String readable_key = this.mapKeyToHumanReadable(key);
-            
-            table += "<tr>";
-
-            // Create the Key HTML
-            if (editable_key)
-                table += "<td id=\"" + key + "-key\" contenteditable=\"true\">" + readable_key + "</td>&nbsp;&nbsp";
-            else
-                table += "<td id=\"" + key + "-key\" contenteditable=\"false\">" + readable_key + "</td>&nbsp;&nbsp";
-
-            table += "<td id=\"" + key + "\" contenteditable=\"true\" align=\"left\" height=\"" + "auto" + "\" width=\"" + "auto" + "\">" + value + "</td>";
-            String save_button = "<button name=\"save_button\" value=\"" + key + "\" type=\"button\" onclick=saveData('" + key + "','" + file + "') style=\"height:35px;width:80px\">SAVE</button>";
-            table += "<td align=\"center\" height=\"35px\" width=\"210px\">" + save_button + "</td>";
-
-            // finish row
-            table += "</tr>";
-        }
-
-        // add the trailing tag
-        table += "</table>";
-
-        // return the table
-        return table;
-    }
-
-    /**
-     * Build out the HTML table representing the properties file 
-     */
-    private String createConfigTableAsHTMLNoFilter(Properties props,String file, boolean editable_key) {
-        // start the table
-        String table = "<table border=\"0\">";
-        boolean shown = true;
-
-        // enumerate through the properties and fill the table
-        Enumeration e = props.propertyNames();
-        while (e.hasMoreElements()) {
-            // Get the Key
-            String key = (String) e.nextElement();
-            
-            // Get the Value
-            String value = props.getProperty(key);     
-            
-            // Convert the Key to human readable
-            String readable_key = this.mapKeyToHumanReadable(key);
-            
-            table += "<tr>";
-
-            // Key
-            if (editable_key)
-                table += "<td id=\"" + key + "-key\" contenteditable=\"true\">" + readable_key + "</td>";
-            else
-                table += "<td id=\"" + key + "-key\" contenteditable=\"false\">" + readable_key + "</td>";
-
-            // Value          
-            table += "<td id=\"" + key + "\" contenteditable=\"true\" align=\"left\" height=\"" + "auto" + "\" width=\"" + "auto" + "\">" + value + "</td>";
-            String save_button = "<button name=\"save_button\" value=\"" + key + "\" type=\"button\" onclick=saveData('" + key + "','" + file + "') style=\"height:35px;width:80px\">SAVE</button>";
-            table += "<td align=\"center\" height=\"35px\" width=\"210px\">" + save_button + "</td>";
-
-            // finish row
-            table += "</tr>";
+        // schema: labels and value checks (targets share the main editor's unless they name their own)
+        String schema_file = this.getSchemaFile();
+        if (main != null && schema_file.equals(main.getSchemaFile())) {
+            this.m_schema = main.m_schema;
+        }
+        else {
+            this.m_schema = Schema.load(this.resolveConfigFile(schema_file));
+        }
+        this.m_key_map.clear();
+        this.m_key_map.putAll(this.m_schema.getLabels());
+        this.m_table_renderer.setSchema(this.m_schema);
+        
+        // response compression
+        String compression = this.getProperty("compression_enabled");
+        this.m_compression_enabled = (compression == null || compression.equalsIgnoreCase("false") == false);
+        this.m_compression_min_bytes = this.getIntProperty("compression_min_bytes",DEFAULT_COMPRESSION_MIN_BYTES);
+        this.m_compression_level = Math.max(1,Math.min(9,this.getIntProperty("compression_level",DEFAULT_COMPRESSION_LEVEL)));
+        
+        // configuration table paging
+        this.m_table_max_page_size = this.getIntProperty("table_max_page_size",TableView.DEFAULT_MAX_PAGE_SIZE);
+        this.m_table_page_size = this.getIntProperty("table_page_size",TableView.DEFAULT_PAGE_SIZE);
+        
+        // authentication: sessions and stored password hashes
+        this.m_sessions = new SessionTokens(this.getIntProperty("session_cache_size",SessionTokens.DEFAULT_MAX_SESSIONS),
+                                            this.getIntProperty("session_timeout_sec",SessionTokens.DEFAULT_TIMEOUT_SEC));
+        this.m_password_hash_iterations = this.getIntProperty("password_hash_iterations",PasswordHash.DEFAULT_ITERATIONS);
+        this.hashAdminPassword();
+        
+        // keep the AWS CLI credentials in sync with the aws_iot_* keys (written only when they change)... the host has one set: not for targets
+        if (main == null) {
+            String aws_dir = this.getProperty("aws_credentials_dir");
+            String aws_mode = this.getProperty("aws_credentials_mode");
+            this.addKeyChangeHook(new AwsCredentialsHook((aws_dir != null && aws_dir.length() > 0) ? aws_dir : AwsCredentialsHook.DEFAULT_DIRECTORY,
+                                                         (aws_mode != null && aws_mode.length() > 0) ? aws_mode : AwsCredentialsHook.DEFAULT_MODE));
+        }
+        
+        // static resources (CSS/JS served separately under content-hashed URLs)
+        String jquery_file = this.getProperty("jquery_file");
+        if (jquery_file != null && jquery_file.length() > 0) {
+            this.m_jquery_file = jquery_file;
+        }
+        String static_resources = this.getProperty("static_resources");
+        if (main != null) {
+            // served from the main editor's /static/ context
+            this.m_static_resources = main.m_static_resources;
+        }
+        else if (static_resources == null || static_resources.equalsIgnoreCase("false") == false) {
+            this.m_static_resources = new StaticResources();
         }
-
-        // add the trailing tag
-        table += "</table>";
-
-        // return the table
-        return table;
     }
-
+    
+    // the schema file (configurations from before schema_file keep the labels that used to be built in)
+    private String getSchemaFile() {
+        String schema_file = this.getProperty("schema_file");
+        return (schema_file != null && schema_file.length() > 0) ? schema_file : SCHEMA_DEFAULT_FILE;
+    }
+    
+    // the main editor (multi-target mode), NULL if we are the main editor
+    private PropertiesEditorProcessor getMainProcessor() {
+        if (this.m_parent instanceof PropertiesEditorProcessor) {
+            return (PropertiesEditorProcessor)this.m_parent;
+        }
+        return null;
+    }
+    
     /**
-     * Build out the configuration table (properties from a properties file) as HTML content
+     * Multi-target mode: load every *.properties file in targets_dir as a target (its own properties_file, config_fields,
+     * title...; other settings default to ours) served under /targets/{name}/. The targets' loaded stores share one LRU
+     * cache bounded by target_cache_budget_kb and are reloaded lazily after being evicted.
+     * @return the targets by name (empty if targets_dir is not set)
      */
-    private String buildConfigurationTable(String html,Properties props,String file,String key,String config_fields) { 
-        return this.buildConfigurationTable(html, props, file, key, false, config_fields);
+    public Map<String,PropertiesEditorProcessor> loadTargets() {
+        String targets_dir = this.getProperty("targets_dir");
+        if (targets_dir == null) {
+            return this.m_targets;
+        }
+        File[] files = new File(this.resolveConfigFile(targets_dir)).listFiles();
+        if (files == null) {
+            System.out.println("PropertiesEditorProcessor: Unable to list targets in: " + this.resolveConfigFile(targets_dir));
+            return this.m_targets;
+        }
+        Arrays.sort(files);
+        this.m_store_cache = new StoreCache(1024L * this.getIntProperty("target_cache_budget_kb",(int)(StoreCache.DEFAULT_BUDGET_BYTES / 1024)));
+        for(File file : files) {
+            String name = file.getName();
+            if (file.isFile() == false || name.endsWith(TARGET_CONFIG_SUFFIX) == false) {
+                continue;
+            }
+            name = name.substring(0,name.length() - TARGET_CONFIG_SUFFIX.length());
+            if (name.matches("[A-Za-z0-9_.-]+") == false) {
+                System.out.println("PropertiesEditorProcessor: ignoring target with an unusable name: " + file.getName());
+                continue;
+            }
+            PropertiesEditorProcessor target = new PropertiesEditorProcessor(this.m_extendable_config);
+            target.setParent(this);
+            target.m_context_path = TARGETS_CONTEXT + name + "/";
+            target.m_store_cache = this.m_store_cache;
+            target.loadProperties(file.getAbsolutePath());
+            target.startWatching(this.getWatcher());
+            this.m_targets.put(name,target);
+        }
+        System.out.println("PropertiesEditorProcessor: loaded " + this.m_targets.size() + " targets (store cache budget: " + (this.m_store_cache.getBudgetBytes() / 1024) + "KB)");
+        return this.m_targets;
     }
-
+    
+    /**
+     * Get the targets (multi-target mode)
+     * @return the targets by name
+     */
+    public Map<String,PropertiesEditorProcessor> getTargets() {
+        return Collections.unmodifiableMap(this.m_targets);
+    }
+    
+    /**
+     * Get the cache bounding the targets' loaded stores
+     * @return the store cache, NULL if not in multi-target mode
+     */
+    public StoreCache getStoreCache() {
+        return this.m_store_cache;
+    }
+    
+    /**
+     * Get the context path we are served under
+     * @return the context path ("/" or /targets/{name}/)
+     */
+    public String getContextPath() {
+        return this.m_context_path;
+    }
+    
+    /**
+     * Estimated heap used by our loaded (service) properties
+     * @return the estimate in bytes (0 if not loaded)
+     */
+    @Override
+    public long getLoadedBytes() {
+        return this.estimateLoadedBytes();
+    }
+    
+    /**
+     * Write out any pending saves and drop the loaded (service) properties: they are reloaded on the next request
+     */
+    @Override
+    public void unload() {
+        synchronized (this) {
+            if (this.m_properties_document == null) {
+                return;
+            }
+            this.m_properties_saver.flush();
+            this.m_properties.unload();
+            this.m_properties_document = null;
+            this.m_key_index.clear();
+        }
+        if (this.m_store_cache != null) {
+            this.m_store_cache.remove(this);
+        }
+        
+        // DEBUG
+        System.out.println("PropertiesEditorProcessor: unloaded " + this.m_properties_file);
+    }
+    
+    /**
+     * Shutdown: the targets first (their savers may use the main editor's writer), then ourselves
+     */
+    @Override
+    public void shutdown() {
+        for(PropertiesEditorProcessor target : this.m_targets.values()) {
+            target.shutdown();
+        }
+        super.shutdown();
+    }
+    
+    // replace a (legacy) plaintext admin password in our configuration with its hash
+    private synchronized void hashAdminPassword() {
+        String password = this.getProperty(ADMIN_PASSWORD_KEY);
+        if (password != null && PasswordHash.isHash(password) == false) {
+            System.out.println("PropertiesEditorProcessor: storing the admin password as a PBKDF2 hash");
+            this.m_editor_properties.put(ADMIN_PASSWORD_KEY,PasswordHash.hash(password,this.m_password_hash_iterations));
+            this.savePropertiesEditorConfigFile();
+        }
+    }
+    
+    /**
+     * Get the authentication sessions
+     * @return the session tokens
+     */
+    public SessionTokens getSessionTokens() {
+        return this.m_sessions;
+    }
+    
+    /**
+     * Get the static resources handler (to be served at StaticResources.CONTEXT)
+     * @return the static resources, NULL if CSS/JS are inlined into the page
+     */
+    public StaticResources getStaticResources() {
+        return this.m_static_resources;
+    }
+    
+    /**
+     * Get the template cache
+     * @return the template cache
+     */
+    public TemplateCache getTemplateCache() {
+        return this.m_template_cache;
+    }
+    
+    /**
+     * Record into a metrics registry (the targets record into the main editor's)
+     * @param metrics - the registry
+     */
+    @Override
+    protected void setMetrics(Metrics metrics) {
+        super.setMetrics(metrics);
+        this.m_handle_timer = this.getPhaseTimer("handle");
+        this.m_render_timer = this.getPhaseTimer("render");
+        this.m_script_timer = this.getPhaseTimer("script");
+        this.m_script_failures = metrics.counter("properties_editor_script_failures_total","Scripts that could not be started","");
+        this.m_response_bytes = this.getResponseBytes("page");
+        if (this.m_parent == null) {
+            this.registerMetricSources(metrics);
+        }
+    }
+    
+    /**
+     * The response bytes counter of a handler
+     * @param handler - the handler (i.e. "api")
+     * @return the counter
+     */
+    public Metrics.Counter getResponseBytes(String handler) {
+        return this.getMetrics().counter("properties_editor_response_bytes_total","Response body bytes written (after compression)","handler=\"" + handler + "\"");
+    }
+    
+    // the existing statistics (of the main editor and its targets) sampled on export
+    private void registerMetricSources(Metrics metrics) {
+        metrics.register("properties_editor_not_modified_total","Page requests answered with 304 Not Modified",Metrics.COUNTER,"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.getNotModified();
+            }
+        });
+        metrics.register("properties_editor_reloads_total","External changes to the property files applied",Metrics.COUNTER,"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.getReloads();
+            }
+        });
+        metrics.register("properties_editor_reload_conflicts_total","Keys changed both in the editor and externally",Metrics.COUNTER,"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.getReloadConflicts();
+            }
+        });
+        metrics.register("properties_editor_hooks_fired_total","Key change hooks fired",Metrics.COUNTER,"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.m_key_change_hooks.getFired();
+            }
+        });
+        metrics.register("properties_editor_template_cache_lookups_total","Template cache lookups",Metrics.COUNTER,"result=\"hit\"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.m_template_cache.getHits();
+            }
+        });
+        metrics.register("properties_editor_template_cache_lookups_total","Template cache lookups",Metrics.COUNTER,"result=\"miss\"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.m_template_cache.getMisses();
+            }
+        });
+        metrics.register("properties_editor_key_index_builds_total","Key index builds",Metrics.COUNTER,"kind=\"rebuild\"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.m_key_index.getRebuilds();
+            }
+        });
+        metrics.register("properties_editor_key_index_builds_total","Key index builds",Metrics.COUNTER,"kind=\"incremental\"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.m_key_index.getUpdates();
+            }
+        });
+        metrics.register("properties_editor_sessions","Active authentication sessions",Metrics.GAUGE,"",new TargetsSum() {
+            @Override
+            protected long value(PropertiesEditorProcessor editor) {
+                return editor.m_sessions.size();
+            }
+        });
+        metrics.register("properties_editor_targets_loaded","Targets with their properties loaded",Metrics.GAUGE,"",new Metrics.Source() {
+            @Override
+            public double sample() {
+                return (m_store_cache != null) ? m_store_cache.size() : 0;
+            }
+        });
+        metrics.register("properties_editor_target_evictions_total","Targets unloaded to stay within the store cache budget",Metrics.COUNTER,"",new Metrics.Source() {
+            @Override
+            public double sample() {
+                return (m_store_cache != null) ? m_store_cache.getEvictions() : 0;
+            }
+        });
+    }
+    
+    // a statistic summed over the main editor and its targets
+    private abstract class TargetsSum implements Metrics.Source {
+        protected abstract long value(PropertiesEditorProcessor editor);
+        
+        @Override
+        public double sample() {
+            long sum = this.value(PropertiesEditorProcessor.this);
+            for(PropertiesEditorProcessor target : m_targets.values()) {
+                sum += this.value(target);
+            }
+            return sum;
+        }
+    }
+    
+    /**
+     * Build out one page (view) of the (service) configuration table as HTML content
+     */
+    private void buildConfigurationTable(Writer out,PropertiesSnapshot props,String file,boolean filtered,TableView view) throws IOException {
+        if (filtered == true) {
+            // filtered and ordered by config_fields (the empty slot is rendered if listed)
+            this.m_table_renderer.renderPage(out,props,this.getConfigFieldsKeys(props),file,true,false,view);
+        }
+        else {
+            // every key in the file... with the empty slot at the end
+            this.m_table_renderer.renderPage(out,props,props.keys(),file,true,true,view);
+        }
+    }
+    
+    // the config_fields keys of a snapshot (reused while the snapshot is current)
+    private List<String> getConfigFieldsKeys(PropertiesSnapshot props) {
+        ConfigFields config_fields = this.m_config_fields;
+        if (config_fields == null || config_fields.m_props != props) {
+            config_fields = new ConfigFields(props,Arrays.asList(this.getConfigFields(props.get("config_fields"))));
+            this.m_config_fields = config_fields;
+        }
+        return config_fields.m_keys;
+    }
+    
     /**
      * Build out the configuration table (properties from a properties file) as HTML content
      */
-    private String buildConfigurationTable(String html,Properties props,String file,String key,boolean editable_key,String config_fields) {
-        String preference_table = "";
-
+    private void buildConfigurationTable(Writer out,PropertiesSnapshot props,String file,boolean editable_key,boolean filtered,String config_fields,boolean empty_slot) throws IOException {
         // see if we have config_fields enabled... if we do, we filter and order based on that...
-        if (this.configFieldsEnabled() == true) {
+        if (filtered == true) {
             // create the actual configuration table has HTML
-            preference_table = this.createConfigTableAsHTMLFiltered(props,file,editable_key,config_fields);
+            this.m_table_renderer.render(out,props,Arrays.asList(this.getConfigFields(config_fields)),file,editable_key);
+        }
+        else if (empty_slot == true) {
+            // create the actual configuration table has HTML (with the empty slot at the end)
+            ArrayList<String> keys = new ArrayList<String>(props.size() + 1);
+            keys.addAll(props.keys());
+            keys.add(this.m_empty_slot_key);
+            this.m_table_renderer.render(out,props,keys,file,editable_key);
         }
         else {
             // create the actual configuration table has HTML
-            preference_table = this.createConfigTableAsHTMLNoFilter(props,file,editable_key);
+            this.m_table_renderer.render(out,props,props.keys(),file,editable_key);
         }
-
-        // fill in the body
-        html = html.replace(key,preference_table);
-
-        // return the table
-        return html;
     }
 
     /**
-     * Display the properties as HTML
+     * Make sure the (service) properties are loaded... and record the use with the store cache (multi-target mode).
+     * Not to be called while holding our lock: the cache may unload other targets.
      */
-    private String displayConfig(String html) {
+    private void loadConfig() {
+        this.ensureLoaded();
+        if (this.m_store_cache != null) {
+            this.m_store_cache.touch(this);
+        }
+    }
+    
+    // load the (service) properties if they are not (or no longer) loaded
+    private void ensureLoaded() {
         if (this.m_properties.isEmpty()) {
-            this.getProperties(this.m_properties,this.m_properties_file);
-            this.addEmptyConfigSlots(this.m_properties);
+            synchronized (this) {
+                if (this.m_properties.isEmpty()) {
+                    this.m_properties_document = this.loadDocument(this.m_properties_file);
+                    this.m_properties_saver.setPersisted(this.loadProperties(this.m_properties,this.m_properties_document));
+                    
+                    // edits journaled but not saved (i.e. lost in a crash) are re-applied
+                    this.recoverJournal(ChangeJournal.PROPERTIES,this.m_properties,this.m_properties_saver);
+                }
+            }
         }
-        return this.buildConfigurationTable(html,this.m_properties,this.m_properties_file,"__CONFIG_TABLE__",true,this.m_config_fields);
     }
-
-    /**
-     * Display the PropertiesEditor App Admin (self) properties as HTML
-     */
-    private String displayPropertiesEditorConfig(String html) {
-        if (this.m_editor_properties.isEmpty()) this.getProperties(this.m_editor_properties,this.m_editor_properties_file);
-        return this.buildConfigurationTable(html,this.m_editor_properties,m_editor_properties_file,"__CONFIGURATOR_CONFIG_TABLE__",this.m_configurator_config_fields);
-    } 
+    
+    // the current (service) properties, reloaded if they were unloaded since loadConfig()
+    private PropertiesSnapshot loadedSnapshot() {
+        PropertiesSnapshot snapshot = this.m_properties.snapshot();
+        if (snapshot.isEmpty()) {
+            this.ensureLoaded();
+            snapshot = this.m_properties.snapshot();
+        }
+        return snapshot;
+    }
 
     /**
      * Update an expandable properties file
      */
-    private void updateExpandableConfiguration(Properties props, String key,String value,String file, String new_key) {
+    private void updateExpandableConfiguration(Map<String,String> props, String key,String value,String file, String new_key) {
         if (new_key != null && new_key.equals(key) == false) {
             // DEBUG
             System.out.println("config(new key): Setting " + new_key + " = " + value);
@@ -325,63 +790,295 @@ public class PropertiesEditorProcessor extends PropertiesEditor implements HttpH
     /**
      * Update the properties file
      */
-    private void updateProperties(String key,String value,String file,String new_key) {
+    private synchronized void updateProperties(final String key,String value,final String file,final String new_key,String user) {
+        // (re)loaded under our lock: the edit is never applied to an unloaded store
+        this.ensureLoaded();
         
         // remove all new lines...
         if (value != null) {
             value = Utils.replaceAllCharOccurances(value,(char)160,' ');
             value = value.trim();
         }
+        final String new_value = value;
         
-        if (key.equalsIgnoreCase(this.m_empty_slot_key) == true) {
-            if (new_key.equalsIgnoreCase(this.m_empty_slot_key) == true) {
-                // note that you must edit the KEY as well as the value
-                System.out.println("updateProperties: You have to edit KEY and VALUE to add a new value to the properties list.. ignoring");
-
-                // clear out the empty slots
-                this.clearEmptyConfigSlots(this.m_properties);
+        // bad values are rejected (the page re-renders the current value)
+        String checked_key = (key.equalsIgnoreCase(this.m_empty_slot_key) && new_key != null) ? new_key : key;
+        String error = this.m_schema.validate(checked_key,new_value);
+        if (error != null) {
+            System.out.println("updateProperties: Rejected " + checked_key + ": " + error);
+            return;
+        }
+        
+        // apply the edit to a private copy and publish it in one step
+        PropertiesSnapshot previous = this.m_properties.snapshot();
+        PropertiesSnapshot updated = this.m_properties.update(new PropertiesStore.Edit() {
+            @Override
+            public void apply(Map<String,String> properties) {
+                if (key.equalsIgnoreCase(m_empty_slot_key) == true) {
+                    if (new_key == null || new_key.equalsIgnoreCase(m_empty_slot_key) == true) {
+                        // note that you must edit the KEY as well as the value
+                        System.out.println("updateProperties: You have to edit KEY and VALUE to add a new value to the properties list.. ignoring");
+                    }
+                    else {
+                        // DEBUG
+                        System.out.println("updateProperties: Adding new key/value entry: " + key + " = " + new_value);
+
+                        // update expandable configuration
+                        updateExpandableConfiguration(properties,key,new_value,file,new_key);
+
+                        // update the expanded config_fields list
+                        ArrayList<String> extended_config_fields = new ArrayList<String>();
+                        extended_config_fields.add(new_key);
+                        extendConfigFields(properties,extended_config_fields);
+                    }
+
+                    // clear out the empty slots
+                    clearEmptyConfigSlots(properties);
+                }
+                else {
+                    // DEBUG
+                    System.out.println("updateProperties: Updating " + key + " = " + new_value);
+
+                    // save the updated value in preferences
+                    properties.put(key, new_value);
+                }
             }
-            else {
-                // DEBUG
-                System.out.println("updateProperties: Adding new key/value entry: " + key + " = " + value);
+        });
+        
+        // the key (or the key that replaced the empty slot) may have been added
+        this.m_key_index.update(previous,updated,Arrays.asList(key,new_key));
+        this.journalChanges(ChangeJournal.PROPERTIES,previous,updated,user);
 
-                // update expandable configuration
-                this.updateExpandableConfiguration(this.m_properties,key,value,file,new_key);
+        // save the file
+        this.savePropertiesFile(updated);
+    }
 
-                // update the expanded config_fields list
-                this.m_extended_config_fields.add(new_key);
+    /**
+     * Get the current (service) properties, loading them if needed
+     * @return the current snapshot
+     */
+    public PropertiesSnapshot getPropertiesSnapshot() {
+        this.loadConfig();
+        return this.loadedSnapshot();
+    }
+    
+    /**
+     * Apply a set of (service) property changes as one update and one save
+     * @param updates - key/value pairs to set (a NULL value removes the key)
+     * @return the updated snapshot
+     * @throws Schema.ValidationException if any value fails the schema (nothing is applied)
+     */
+    public PropertiesSnapshot updateProperties(Map<String,String> updates) {
+        return this.updateProperties(updates,null);
+    }
+    
+    /**
+     * Apply a set of (service) property changes as one update and one save
+     * @param updates - key/value pairs to set (a NULL value removes the key)
+     * @param user - who makes the changes (journaled... NULL if not known)
+     * @return the updated snapshot
+     * @throws Schema.ValidationException if any value fails the schema (nothing is applied)
+     */
+    public PropertiesSnapshot updateProperties(Map<String,String> updates,String user) {
+        // bad values (and the empty slot key) are rejected before anything is applied
+        this.checkEmptySlotKeys(updates);
+        this.m_schema.check(updates);
+        this.loadConfig();
+        return this.applyUpdates(updates,user);
+    }
+    
+    // keys containing the empty slot key are never stored (clearEmptyConfigSlots()): setting one would only add another empty slot to config_fields
+    private void checkEmptySlotKeys(Map<String,String> updates) {
+        if (this.m_empty_slot_key == null) {
+            return;
+        }
+        Map<String,String> errors = null;
+        for(Map.Entry<String,String> update : updates.entrySet()) {
+            if (update.getValue() != null && update.getKey().contains(this.m_empty_slot_key)) {
+                if (errors == null) {
+                    errors = new LinkedHashMap<String,String>();
+                }
+                errors.put(update.getKey(),"reserved for adding a new key: edit the key first");
             }
-
-            // clear out the empty slots
-            this.clearEmptyConfigSlots(this.m_properties);
         }
-        else {
-            // DEBUG
-            System.out.println("updateProperties: Updating " + key + " = " + value);
-
-            // save the updated value in preferences
-            this.m_properties.put(key, value);
+        if (errors != null) {
+            throw new Schema.ValidationException(errors);
         }
-
+    }
+    
+    // apply the (service) property changes under our lock
+    private synchronized PropertiesSnapshot applyUpdates(final Map<String,String> updates,String user) {
+        this.ensureLoaded();
+        PropertiesSnapshot previous = this.m_properties.snapshot();
+        PropertiesSnapshot updated = this.m_properties.update(new PropertiesStore.Edit() {
+            @Override
+            public void apply(Map<String,String> properties) {
+                ArrayList<String> extended_config_fields = new ArrayList<String>();
+                for(Map.Entry<String,String> entry : updates.entrySet()) {
+                    if (entry.getValue() == null) {
+                        properties.remove(entry.getKey());
+                    }
+                    else {
+                        if (properties.containsKey(entry.getKey()) == false) {
+                            extended_config_fields.add(entry.getKey());
+                        }
+                        properties.put(entry.getKey(),entry.getValue());
+                    }
+                }
+                
+                // make any new keys visible in a filtered table
+                extendConfigFields(properties,extended_config_fields);
+                clearEmptyConfigSlots(properties);
+            }
+        });
+        this.m_key_index.update(previous,updated,updates.keySet());
+        this.journalChanges(ChangeJournal.PROPERTIES,previous,updated,user);
+        
         // save the file
-        this.savePropertiesFile();
+        this.savePropertiesFile(updated);
+        return updated;
+    }
 
-         // empty our config file additions
-        this.m_extended_config_fields.clear();
+    /**
+     * The (service) property revisions kept
+     * @return the revisions, newest (the current properties) first
+     */
+    public List<PropertiesStore.Revision> getRevisions() {
+        this.loadConfig();
+        return this.m_properties.getRevisions();
+    }
+    
+    /**
+     * When the (service) property revisions were last dropped: they are not kept while the properties are unloaded (a
+     * target evicted from the store cache)... the earliest revision kept after that is the reload
+     * @return milliseconds since the epoch, 0 if never
+     */
+    public long getRevisionsDroppedTime() {
+        return this.m_properties.getUnloadedTime();
+    }
+    
+    /**
+     * Revert the (service) properties to a revision: published as a new revision and saved with one write
+     * @param version - the version of the revision
+     * @param user - who reverts (journaled... NULL if not known)
+     * @return the published snapshot, NULL if the revision is no longer kept
+     */
+    public PropertiesSnapshot revertProperties(long version,String user) {
+        this.loadConfig();
+        return this.applyRevert(version,user);
+    }
+    
+    // revert under our lock
+    private synchronized PropertiesSnapshot applyRevert(long version,String user) {
+        this.ensureLoaded();
+        PropertiesSnapshot previous = this.m_properties.snapshot();
+        PropertiesSnapshot reverted = this.m_properties.revert(version);
+        if (reverted == null) {
+            return null;
+        }
+        Map<String,String> changes = previous.changesTo(reverted);
+        
+        // DEBUG
+        System.out.println("revertProperties: reverted to version " + version + " (" + changes.size() + " keys changed)");
+        
+        this.m_key_index.update(previous,reverted,changes.keySet());
+        this.journalChanges(ChangeJournal.PROPERTIES,previous,reverted,user);
+        
+        // save the file
+        this.savePropertiesFile(reverted);
+        return reverted;
+    }
 
-        // put back the empty config slots
-        this.addEmptyConfigSlots(this.m_properties);
+    /**
+     * Autocomplete: the (service) keys whose key or label starts with a prefix (case insensitive)
+     * @param prefix - the prefix
+     * @param limit - most keys returned
+     * @return the matching keys and their labels, in order
+     */
+    public Map<String,String> searchKeys(String prefix,int limit) {
+        this.loadConfig();
+        return this.m_key_index.search(this.loadedSnapshot(),prefix,limit);
+    }
+    
+    /**
+     * The journaled changes to a key since a time (from the journal's checkpoint on)
+     * @param file - ChangeJournal.PROPERTIES or ChangeJournal.EDITOR
+     * @param key - the key
+     * @param since_ms - earliest change returned (milliseconds since the epoch)
+     * @param limit - most changes returned
+     * @return the changes, newest first (empty if the journal is disabled)
+     */
+    public List<ChangeJournal.Change> getHistory(int file,String key,long since_ms,int limit) {
+        if (this.m_journal == null) {
+            return new ArrayList<ChangeJournal.Change>();
+        }
+        return this.m_journal.history(file,key,since_ms,limit);
+    }
+    
+    /**
+     * The schema the (service) properties are checked against
+     * @return the schema
+     */
+    public Schema getSchema() {
+        return this.m_schema;
     }
 
+    /**
+     * A value as it may be disclosed (i.e. in the history or revision diffs): MASKED if its key is secret
+     * @param file - ChangeJournal.PROPERTIES or ChangeJournal.EDITOR
+     * @param key - the key
+     * @param value - the value (NULL: removed, never masked)
+     * @return the value or MASKED
+     */
+    public String maskSecret(int file,String key,String value) {
+        if (value == null) {
+            return null;
+        }
+        boolean secret = (file == ChangeJournal.EDITOR) ? Schema.isSecretKey(key) : this.m_schema.isSecret(key);
+        return secret ? MASKED : value;
+    }
+    
+    /**
+     * The prefix index over the (service) keys
+     * @return the key index
+     */
+    public KeyIndex getKeyIndex() {
+        return this.m_key_index;
+    }
+    
+    /**
+     * Restart the service (after writing out any pending saves)
+     */
+    public void restartService() {
+        // make sure any pending saves are on disk first
+        this.flush();
+        
+        // then restart!
+        System.out.println("Restarting Service...");
+        long start = System.nanoTime();
+        if (Utils.executeScript(this.m_scripts_root,this.m_service_restart_script) == false) {
+            this.m_script_failures.increment();
+        }
+        this.m_script_timer.stop(start);
+    }
+    
     /**
      * Update the mDSPropertiesEditor App (self) properties file
      */
-    private void updatedPropertiesEditorConfiguration(String key,String value,String file) {
-        // DEBUG
-        System.out.println("updatedPropertiesEditorConfiguration: Updating " + key + " = " + value);
+    private synchronized void updatedPropertiesEditorConfiguration(String key,String value,String file,String user) {
+        // passwords are only ever stored hashed (and not logged)
+        if (key.equals(ADMIN_PASSWORD_KEY) && value != null && PasswordHash.isHash(value) == false) {
+            value = PasswordHash.hash(value,this.m_password_hash_iterations);
+            System.out.println("updatedPropertiesEditorConfiguration: Updating " + key + " (hashed)");
+        }
+        else {
+            // DEBUG
+            System.out.println("updatedPropertiesEditorConfiguration: Updating " + key + " = " + value);
+        }
 
         // save the updated value the preferences
-        this.m_editor_properties.put(key, value);
+        PropertiesSnapshot previous = this.m_editor_properties.snapshot();
+        this.journalChanges(ChangeJournal.EDITOR,previous,this.m_editor_properties.put(key, value),user);
 
         // save the file
         this.savePropertiesEditorConfigFile();
@@ -390,54 +1087,54 @@ public class PropertiesEditorProcessor extends PropertiesEditor implements HttpH
     /**
      * If the configuration table has no entries, hide it from display (using CCS primatives)
      */
-    private String checkAndHideTable(String html,String div_name,String table_index,Properties table_properties) {
-        // build out the TAG
-        String tag = this.m_div_hider_tag + table_index + "__";
-
+    private void checkAndHideTable(Writer out,String div_name,boolean empty) throws IOException {
         // see if we have properties
-        if (table_properties.isEmpty()) {
+        if (empty) {
             // hide the table via DIV...
-            String div = this.m_hide_template.replace("__NAME__", div_name);
-            html = html.replace(tag, div);
-        }
-        else {
-            // show the table... 
-            html = html.replace(tag,"");
+            out.write(this.m_hide_template.replace("__NAME__", div_name));
         }
-
-        return html;
     }
 
     /**
-     * Make sure that every table we display has something to display... if its empty, hide it...
+     * Per-request page rendering: both tables come from the snapshots taken when the request started
      */
-    private String hideEmptyTables(String html) {
-        html = this.checkAndHideTable(html,"config_table","1",this.m_properties);
-        html = this.checkAndHideTable(html,"configurator_config_table","2",this.m_editor_properties);
-        return html;
-    }
-
-    // conditionally check and update the AWS IoT CLI creds - NOTE: sensitive to changes in the configuration file!
-    private void updateAWSCreds() {
-        String region = (String)this.m_properties.get("aws_iot_region");
-        String key_id = (String)this.m_properties.get("aws_iot_access_key_id");
-        String access_key = (String)this.m_properties.get("aws_iot_secret_access_key");
-
-        // DEBUG
-        //System.out.println("updateAWSCreds: region: " + region + " key_id: " + key_id + " access_key: " + access_key);
-
-        if (region != null && region.length() > 0 && region.equalsIgnoreCase("AWS_region_goes_here") == false &&
-            key_id != null && key_id.length() > 0 && key_id.equalsIgnoreCase("AWS_Access_Key_ID_goes_here") == false && 
-            access_key != null && access_key.length() > 0 && access_key.equalsIgnoreCase("AWS_Secret_Access_Key_goes_here") == false) {
-
-            // set the AWS CLI creds...
-            String args = region + " " + key_id + " " + access_key;
-
-            // DEBUG
-            //System.out.println("updateAWSCreds: calling: set_aws_creds.sh " + args);
+    private class PageRenderer implements PageTemplate.SlotWriter {
+        private final PropertiesSnapshot m_config;
+        private final PropertiesSnapshot m_editor_config;
+        private final boolean m_filtered;
+        private final TableView m_view;
+
+        // constructor
+        private PageRenderer(PropertiesSnapshot config,PropertiesSnapshot editor_config,TableView view) {
+            this.m_config = config;
+            this.m_editor_config = editor_config;
+            this.m_filtered = configFieldsEnabled(config);
+            this.m_view = view;
+        }
 
-            // execute
-            Utils.executeScript(this.m_scripts_root,this.m_aws_set_creds_script + " " + args);
+        /**
+         * Fill in the dynamic parts of the page: tables and DIV's for tables that need to be hidden
+         * @param slot - the slot name
+         * @param out - the response writer
+         * @throws IOException 
+         */
+        @Override
+        public void writeSlot(String slot,Writer out) throws IOException {
+            if (slot.equals(CONFIG_TABLE_SLOT)) {
+                // Display the requested page of the properties as HTML
+                buildConfigurationTable(out,this.m_config,m_properties_file,this.m_filtered,this.m_view);
+            }
+            else if (slot.equals(CONFIGURATOR_CONFIG_TABLE_SLOT)) {
+                // Display the PropertiesEditor App Admin (self) properties as HTML
+                buildConfigurationTable(out,this.m_editor_config,m_editor_properties_file,false,this.m_filtered,m_configurator_config_fields,false);
+            }
+            else if (slot.equals(m_div_hider_tag + "1__")) {
+                // the empty (add a new entry) slot means the config table always has a row
+                checkAndHideTable(out,"config_table",false);
+            }
+            else if (slot.equals(m_div_hider_tag + "2__")) {
+                checkAndHideTable(out,"configurator_config_table",this.m_editor_config.isEmpty());
+            }
         }
     }
 
@@ -448,63 +1145,274 @@ public class PropertiesEditorProcessor extends PropertiesEditor implements HttpH
      */
      @Override
      public void handle(HttpExchange t) throws IOException {
-        String html = "";
+        long start = System.nanoTime();
+        try {
+            this.handlePage(t);
+        }
+        finally {
+            this.m_handle_timer.stop(start);
+        }
+     }
+     
+     // handle a page request: apply any edit/restart, then render (or revalidate) the page
+     private void handlePage(HttpExchange t) throws IOException {
+        // convert the query string (one pass: the edited value is decoded with it)...
+        Map<String,String> query = Utils.parseQuery(t.getRequestURI().getRawQuery(),"updated_value");
 
-        // convert the query string...
-        Map<String,String> query = Utils.queryToMap(t.getRequestURI().getQuery());
+        // make sure the properties are loaded (before any update is applied to them)
+        this.loadConfig();
 
         // update individual settings for a given configuration...
-        if (query.get("updated_key") != null) {
+        if (query.get("updated_key") != null && query.get("updated_value") != null) {
             String file = query.get("file"); 
 
             // Properties Editor Configuration
-            if (file.equalsIgnoreCase(Main.PROPERTIES_EDITOR_DEFAULT_CONFIG)) {
+            if (file != null && file.equalsIgnoreCase(this.m_editor_properties_file)) {
                 // Update PropertiesEditor Configuration
-                this.updatedPropertiesEditorConfiguration(query.get("updated_key"),Utils.urlsafe_base64_decode(query.get("updated_value")),file);
+                this.updatedPropertiesEditorConfiguration(query.get("updated_key"),query.get("updated_value"),file,PropertiesEditorProcessor.getUser(t));
             }
             else {
                 // Update Configuration
-                this.updateProperties(query.get("updated_key"),Utils.urlsafe_base64_decode(query.get("updated_value")),file,query.get("new_key"));
+                this.updateProperties(query.get("updated_key"),query.get("updated_value"),file,query.get("new_key"),PropertiesEditorProcessor.getUser(t));
             }
         }
 
-        // reset AWS IoT account creds 
-        this.updateAWSCreds();
-        
         // see if the parameters state that we want to restart
         if (query.containsKey("service") && query.get("service") != null && query.get("service").equalsIgnoreCase("restart") == true) {
-            // then restart!
-            System.out.println("Restarting Service...");
-            Utils.executeScript(this.m_scripts_root,this.m_service_restart_script);
+            this.restartService();
         }
 
         // initialize the response
-        html = this.initializeResponse(html);
-
-        // build out the display response
-        html = this.displayConfig(html);
-        html = this.displayPropertiesEditorConfig(html);
+        CompiledPage page = this.initializeResponse();
+        TableView view = TableView.fromParameters(query,this.m_table_page_size,this.m_table_max_page_size);
+        PageRenderer renderer = new PageRenderer(this.loadedSnapshot(),this.m_editor_properties.snapshot(),view);
+        
+        // negotiate the content coding
+        String coding = null;
+        if (page.m_compressed != null) {
+            coding = CompressedPage.negotiate(t.getRequestHeaders().getFirst("Accept-Encoding"));
+            t.getResponseHeaders().set("Vary","Accept-Encoding");
+        }
+        
+        // validators for exactly what we are about to render (each coding is its own representation)
+        PageValidators validators = this.getValidators(page,renderer,coding);
+        this.m_page_requests.incrementAndGet();
+        t.getResponseHeaders().set("ETag",validators.m_etag);
+        t.getResponseHeaders().set("Last-Modified",validators.m_last_modified_header);
+        t.getResponseHeaders().set("Cache-Control","private, no-cache");
+        
+        // unchanged since the client last rendered it (and the request only selects a view): skip rendering entirely
+        if (TableView.isViewQuery(query) && this.notModified(t,validators)) {
+            this.m_not_modified.incrementAndGet();
+            t.sendResponseHeaders(304,-1);
+            t.close();
+            return;
+        }
 
-        // update DIV's for tables that need to be hidden
-        html = this.hideEmptyTables(html);
+        // stream the response (chunked) as UTF-8 
+        t.getResponseHeaders().set("Content-Type","text/html; charset=UTF-8");
+        long render_start = System.nanoTime();
+        OutputStream body = new Metrics.CountingOutputStream(t.getResponseBody(),this.m_response_bytes);
+        if (coding != null) {
+            // static parts were compressed once, the tables are compressed as they are written
+            t.getResponseHeaders().set("Content-Encoding",coding);
+            t.sendResponseHeaders(200,0);
+            page.m_compressed.render(body,coding,renderer);
+            this.m_render_timer.stop(render_start);
+            return;
+        }
+        t.sendResponseHeaders(200,0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(body,StandardCharsets.UTF_8),RESPONSE_BUFFER_SIZE);
+        try {
+            page.m_template.render(out,renderer);
+        }
+        finally {
+            // clean up
+            out.close();
+            this.m_render_timer.stop(render_start);
+        }
+     }
 
-        // send the response and close
-        t.sendResponseHeaders(200,html.length());
-        OutputStream os = t.getResponseBody();
-        os.write(html.getBytes());
+     // validators for the page state: properties version, editor config version and compiled page (template) generation
+     private PageValidators getValidators(CompiledPage page,PageRenderer renderer,String coding) {
+        String etag = "\"" + this.m_etag_prefix + "-" + renderer.m_config.getVersion() + "-" + renderer.m_editor_config.getVersion() + "-" + page.m_generation + "\"";
+        PageValidators validators = this.m_validators;
+        if (validators == null || validators.m_etag.equals(etag) == false) {
+            // a new state: HTTP dates have one second resolution... never reuse the previous state's date
+            long last_modified = (System.currentTimeMillis() / 1000) * 1000;
+            if (validators != null && last_modified <= validators.m_last_modified) {
+                last_modified = validators.m_last_modified + 1000;
+            }
+            validators = new PageValidators(etag,last_modified);
+            this.m_validators = validators;
+        }
+        validators = validators.forView(renderer.m_view);
+        if (coding != null) {
+            return validators.forCoding(coding);
+        }
+        return validators;
+     }
+     
+     // evaluate If-None-Match (takes precedence) or If-Modified-Since
+     private boolean notModified(HttpExchange t,PageValidators validators) {
+        String if_none_match = t.getRequestHeaders().getFirst("If-None-Match");
+        if (if_none_match != null) {
+            for(String tag : if_none_match.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(validators.m_etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String if_modified_since = t.getRequestHeaders().getFirst("If-Modified-Since");
+        if (if_modified_since != null) {
+            try {
+                long since = ZonedDateTime.parse(if_modified_since.trim(),DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return validators.m_last_modified <= since;
+            }
+            catch (DateTimeParseException ex) {
+                // invalid dates are ignored
+                return false;
+            }
+        }
+        return false;
+     }
+     
+     /**
+      * Number of page (GET) requests
+      * @return the page request count
+      */
+     public long getPageRequests() {
+        return this.m_page_requests.get();
+     }
+     
+     /**
+      * Number of page requests answered with 304 Not Modified
+      * @return the not modified count
+      */
+     public long getNotModified() {
+        return this.m_not_modified.get();
+     }
+     
+     /**
+      * Fraction of page requests answered with 304 Not Modified
+      * @return the 304 hit ratio (0.0 - 1.0)
+      */
+     public double getNotModifiedRatio() {
+        long requests = this.m_page_requests.get();
+        return requests > 0 ? (double)this.m_not_modified.get() / requests : 0.0;
+     }
 
-        // clean up
-        os.close();
+     /**
+      * Authenticate a request: a valid session cookie is accepted without checking credentials... otherwise Basic
+      * authentication is performed and a new session cookie is issued on success
+      * @param t - the HttpExchange instance
+      * @return the authentication result
+      */
+     @Override
+     public Authenticator.Result authenticate(HttpExchange t) {
+        SessionTokens sessions = this.checkSessionCredentials();
+        for(String cookie : this.getSessionCookies(t)) {
+            String user = sessions.validate(cookie);
+            if (user != null) {
+                return new Authenticator.Success(new HttpPrincipal(user,this.getRealm()));
+            }
+        }
+        Authenticator.Result result = super.authenticate(t);
+        if (result instanceof Authenticator.Success) {
+            // one session per set of verified credentials (clients that ignore the cookie do not fill up the session table)
+            String token = sessions.issue(((Authenticator.Success)result).getPrincipal().getUsername(),this.getBasicPassword(t));
+            t.getResponseHeaders().add("Set-Cookie",SESSION_COOKIE + "=" + token + "; Path=" + this.m_context_path + "; Max-Age=" + sessions.getTimeoutSeconds() + "; Secure; HttpOnly; SameSite=Strict");
+        }
+        return result;
+     }
+     
+     // the sessions... revoked first if the admin credentials changed since they were established
+     private SessionTokens checkSessionCredentials() {
+        String credentials = this.getProperty("admin_username") + "\u0000" + this.getProperty(ADMIN_PASSWORD_KEY);
+        if (credentials.equals(this.m_session_credentials) == false) {
+            synchronized (this.m_session_lock) {
+                if (credentials.equals(this.m_session_credentials) == false) {
+                    if (this.m_session_credentials != null) {
+                        System.out.println("PropertiesEditorProcessor: admin credentials changed... revoking sessions");
+                    }
+                    this.m_sessions.clear();
+                    this.m_session_credentials = credentials;
+                }
+            }
+        }
+        return this.m_sessions;
+     }
+     
+     // the password from the (already accepted) Basic Authorization header
+     private String getBasicPassword(HttpExchange t) {
+        String authorization = t.getRequestHeaders().getFirst("Authorization");
+        try {
+            String credentials = new String(Utils.base64_decode(authorization.substring(authorization.indexOf(' ') + 1).trim()),StandardCharsets.UTF_8);
+            return credentials.substring(credentials.indexOf(':') + 1);
+        }
+        catch (RuntimeException ex) {
+            return "";
+        }
+     }
+     
+     /**
+      * Who made a request (journaled with the changes it makes)
+      * @param t - the HttpExchange instance
+      * @return the authenticated user, NULL if not authenticated
+      */
+     public static String getUser(HttpExchange t) {
+        HttpPrincipal principal = t.getPrincipal();
+        return (principal != null) ? principal.getUsername() : null;
+     }
+     
+     // our session cookie values (the main editor's and a target's may both be sent)
+     private List<String> getSessionCookies(HttpExchange t) {
+        List<String> values = new ArrayList<String>();
+        List<String> cookies = t.getRequestHeaders().get("Cookie");
+        if (cookies == null) {
+            return values;
+        }
+        for(String header : cookies) {
+            for(String cookie : header.split(";")) {
+                cookie = cookie.trim();
+                if (cookie.startsWith(SESSION_COOKIE + "=")) {
+                    values.add(cookie.substring(SESSION_COOKIE.length() + 1));
+                }
+            }
+        }
+        return values;
      }
 
      /**
-      * Primary authenticator extending BasicAuthenticator's checkCredentials() method
+      * Primary authenticator extending BasicAuthenticator's checkCredentials() method. The (expensive) hash check runs only
+      * for credentials not verified before.
       * @param user - input username
       * @param pwd - input secret
       * @return true - authenticated, false - otherwise
       */
      @Override
      public boolean checkCredentials(String user, String pwd) {
-        return user.equals(getProperty("admin_username")) && pwd.equals(getProperty("admin_password"));
+        String username = this.getProperty("admin_username");
+        String stored = this.getProperty(ADMIN_PASSWORD_KEY);
+        if (username == null || stored == null || user == null || pwd == null) {
+            return false;
+        }
+        if (MessageDigest.isEqual(user.getBytes(StandardCharsets.UTF_8),username.getBytes(StandardCharsets.UTF_8)) == false) {
+            return false;
+        }
+        SessionTokens sessions = this.checkSessionCredentials();
+        if (sessions.isVerified(user,pwd)) {
+            return true;
+        }
+        boolean verified = PasswordHash.isHash(stored) ? PasswordHash.verify(stored,pwd) : MessageDigest.isEqual(pwd.getBytes(StandardCharsets.UTF_8),stored.getBytes(StandardCharsets.UTF_8));
+        if (verified) {
+            sessions.setVerified(user,pwd);
+        }
+        return verified;
      }
 }
@@ -0,0 +1,228 @@
+/**
+ * @file    RevisionsHandler.java
+ * @brief JSON list, diff and revert of the (service) property revisions
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.ChangeJournal;
+import com.arm.mbed.properties.editor.core.Json;
+import com.arm.mbed.properties.editor.core.Metrics;
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import com.arm.mbed.properties.editor.core.PropertiesStore;
+import com.arm.mbed.properties.editor.core.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Revisions Handler - the last revisions_kept versions of the (service) properties (they share their unchanged
+ * properties, so keeping them is cheap), what changed between two of them and a revert to any of them:
+ *
+ *   GET  /api/revisions                       {"current":n,"complete_since":"...","revisions":[{"version":n,"time":"...","size":n,"changed":n},...]}
+ *                                             newest first... "changed" counts the keys changed from the revision before.
+ *                                             A target evicted from the store cache drops its revisions (they are not kept
+ *                                             unloaded): "complete_since" is when that last happened, null if never
+ *   GET  /api/revisions/diff?from=n&amp;to=m      {"from":n,"to":m,"changes":{"key":"value in m",...}} (null: removed in m),
+ *                                             "to" defaults to the current version
+ *   POST /api/revisions/revert?version=n      publish revision n again as a new revision, saved with one write (then
+ *                                             restart the service if &amp;restart=true). Without a version: undo the last change.
+ *                                             Returns {"version":new,"reverted_to":n,"changes":{...}}
+ *
+ * Values of secret keys are masked. A revision no longer kept (beyond revisions_kept or dropped on eviction) is 404.
+ *
+ * @author Doug Anson
+ */
+public class RevisionsHandler implements HttpHandler {
+    /**
+     * Context path the revisions are served under
+     */
+    public static final String CONTEXT = "/api/revisions";
+
+    private final PropertiesEditorProcessor m_processor;
+    private final Metrics.Timer m_timer;
+    private final Metrics.Counter m_response_bytes;
+
+    /**
+     * Default constructor
+     * @param processor - the processor owning the properties
+     */
+    public RevisionsHandler(PropertiesEditorProcessor processor) {
+        this.m_processor = processor;
+        this.m_timer = processor.getPhaseTimer("revisions");
+        this.m_response_bytes = processor.getResponseBytes("revisions");
+    }
+
+    /**
+     * HttpHandler handler method
+     * @param t - the HttpExchange instance
+     * @throws IOException
+     */
+    @Override
+    public void handle(HttpExchange t) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String path = t.getRequestURI().getPath().substring(t.getHttpContext().getPath().length());
+            String method = t.getRequestMethod().toUpperCase();
+            Map<String,String> query = Utils.parseQuery(t.getRequestURI().getRawQuery(),null);
+            if (path.length() == 0 || path.equals("/")) {
+                if (method.equals("GET")) {
+                    this.list(t);
+                }
+                else {
+                    JsonResponse.sendMethodNotAllowed(t,"GET",this.m_response_bytes);
+                }
+            }
+            else if (path.equals("/diff")) {
+                if (method.equals("GET")) {
+                    this.diff(t,query);
+                }
+                else {
+                    JsonResponse.sendMethodNotAllowed(t,"GET",this.m_response_bytes);
+                }
+            }
+            else if (path.equals("/revert")) {
+                if (method.equals("POST")) {
+                    this.revert(t,query);
+                }
+                else {
+                    JsonResponse.sendMethodNotAllowed(t,"POST",this.m_response_bytes);
+                }
+            }
+            else {
+                JsonResponse.sendError(t,404,"No such resource: " + path,this.m_response_bytes);
+            }
+        }
+        catch (NumberFormatException ex) {
+            JsonResponse.sendError(t,400,"Bad version: " + ex.getMessage(),this.m_response_bytes);
+        }
+        finally {
+            t.close();
+            this.m_timer.stop(start);
+        }
+    }
+
+    // the revisions, newest first
+    private void list(HttpExchange t) throws IOException {
+        List<PropertiesStore.Revision> revisions = this.m_processor.getRevisions();
+        StringBuilder json = new StringBuilder(64 + revisions.size() * 96);
+        json.append("{\"current\":").append(this.m_processor.getPropertiesSnapshot().getVersion()).append(",\"complete_since\":");
+        long dropped = this.m_processor.getRevisionsDroppedTime();
+        if (dropped > 0) {
+            Json.writeString(json,Instant.ofEpochMilli(dropped).toString());
+        }
+        else {
+            json.append("null");
+        }
+        json.append(",\"revisions\":[");
+        for(int i=0;i<revisions.size();++i) {
+            PropertiesStore.Revision revision = revisions.get(i);
+            json.append((i > 0) ? ",{\"version\":" : "{\"version\":").append(revision.getVersion()).append(",\"time\":");
+            Json.writeString(json,Instant.ofEpochMilli(revision.getTime()).toString());
+            json.append(",\"size\":").append(revision.getSnapshot().size()).append(",\"changed\":");
+            if (i + 1 < revisions.size()) {
+                json.append(revisions.get(i + 1).getSnapshot().changesTo(revision.getSnapshot()).size());
+            }
+            else {
+                json.append("null");
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        JsonResponse.send(t,200,json,this.m_response_bytes);
+    }
+
+    // what changed between two revisions
+    private void diff(HttpExchange t,Map<String,String> query) throws IOException {
+        if (query.get("from") == null) {
+            JsonResponse.sendError(t,400,"Expected ?from=",this.m_response_bytes);
+            return;
+        }
+        long from_version = Long.parseLong(query.get("from").trim());
+        long to_version = (query.get("to") != null) ? Long.parseLong(query.get("to").trim()) : this.m_processor.getPropertiesSnapshot().getVersion();
+        PropertiesStore.Revision from = this.getRevision(t,from_version);
+        PropertiesStore.Revision to = (from != null) ? this.getRevision(t,to_version) : null;
+        if (to == null) {
+            return;
+        }
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"from\":").append(from.getVersion()).append(",\"to\":").append(to.getVersion()).append(",\"changes\":");
+        this.writeChanges(json,from.getSnapshot().changesTo(to.getSnapshot()));
+        json.append('}');
+        JsonResponse.send(t,200,json,this.m_response_bytes);
+    }
+
+    // publish a revision again (by default: the one before the current)
+    private void revert(HttpExchange t,Map<String,String> query) throws IOException {
+        long version = 0;
+        if (query.get("version") != null) {
+            version = Long.parseLong(query.get("version").trim());
+        }
+        else {
+            List<PropertiesStore.Revision> revisions = this.m_processor.getRevisions();
+            if (revisions.size() < 2) {
+                JsonResponse.sendError(t,404,"No earlier revision to revert to",this.m_response_bytes);
+                return;
+            }
+            version = revisions.get(1).getVersion();
+        }
+        PropertiesSnapshot previous = this.m_processor.getPropertiesSnapshot();
+        PropertiesSnapshot reverted = this.m_processor.revertProperties(version,PropertiesEditorProcessor.getUser(t));
+        if (reverted == null) {
+            JsonResponse.sendError(t,404,"Revision " + version + " is no longer kept",this.m_response_bytes);
+            return;
+        }
+
+        // restart if asked (pending saves are flushed first)
+        String restart = query.get("restart");
+        if (restart != null && restart.equalsIgnoreCase("true")) {
+            this.m_processor.restartService();
+        }
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"version\":").append(reverted.getVersion()).append(",\"reverted_to\":").append(version).append(",\"changes\":");
+        this.writeChanges(json,previous.changesTo(reverted));
+        json.append('}');
+        JsonResponse.send(t,200,json,this.m_response_bytes);
+    }
+
+    // a revision... NULL (and 404 sent) if not kept
+    private PropertiesStore.Revision getRevision(HttpExchange t,long version) throws IOException {
+        for(PropertiesStore.Revision revision : this.m_processor.getRevisions()) {
+            if (revision.getVersion() == version) {
+                return revision;
+            }
+        }
+        JsonResponse.sendError(t,404,"Revision " + version + " is not kept",this.m_response_bytes);
+        return null;
+    }
+
+    // the changes as a JSON object (in key order, secret values masked)
+    private void writeChanges(StringBuilder json,Map<String,String> changes) throws IOException {
+        Map<String,String> sorted = new TreeMap<String,String>();
+        for(Map.Entry<String,String> change : changes.entrySet()) {
+            sorted.put(change.getKey(),this.m_processor.maskSecret(ChangeJournal.PROPERTIES,change.getKey(),change.getValue()));
+        }
+        Json.writeObject(json,sorted);
+    }
+}
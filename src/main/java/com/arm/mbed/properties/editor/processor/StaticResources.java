@@ -0,0 +1,214 @@
+/**
+ * @file    StaticResources.java
+ * @brief Serves the page's CSS/JS assets from memory under content-hashed URLs
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.CompressedPage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Static Resources - immutable assets held as in-memory byte buffers (plus a gzip copy) under URLs containing their content hash,
+ * so they can be cached by the browser for a year and only the dynamic page has to be fetched again
+ * @author Doug Anson
+ */
+public class StaticResources implements HttpHandler {
+    /**
+     * Context path the resources are served under
+     */
+    public static final String CONTEXT = "/static/";
+
+    // immutable: the URL changes whenever the content does... private: they are served behind the editor's login, so
+    // shared caches must not keep them
+    private static final String CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+    // a single resource
+    private static final class Resource {
+        private final String m_content_type;
+        private final byte[] m_bytes;
+        private final byte[] m_gzip;             // NULL if compressing does not pay off
+        private final String m_etag;
+        private final String m_gzip_etag;        // each coding is its own representation (as for the page)
+
+        private Resource(String content_type,byte[] bytes,byte[] gzip,String hash) {
+            this.m_content_type = content_type;
+            this.m_bytes = bytes;
+            this.m_gzip = gzip;
+            this.m_etag = "\"" + hash + "\"";
+            this.m_gzip_etag = "\"" + hash + "-" + CompressedPage.GZIP + "\"";
+        }
+    }
+
+    // resources by path... and the current/previous path for each name (so a replaced version can be dropped once no name uses it)
+    private final ConcurrentHashMap<String,Resource> m_resources = new ConcurrentHashMap<String,Resource>();
+    private final ConcurrentHashMap<String,String> m_current = new ConcurrentHashMap<String,String>();
+    private final ConcurrentHashMap<String,String> m_previous = new ConcurrentHashMap<String,String>();
+
+    /**
+     * Default constructor
+     */
+    public StaticResources() {
+    }
+
+    /**
+     * Publish (or replace) a resource. The previous version stays available so pages rendered just before the change still load.
+     * The URL only depends on the file name and the content: pages publishing the same content (i.e. several targets) share one copy.
+     * @param name - resource name, optionally qualified by its publisher (i.e. "editor.css" or "targets/a/editor.css")
+     * @param content_type - the content type
+     * @param bytes - the content
+     * @return the content-hashed URL path (i.e. /static/editor.0123456789abcdef.css)
+     */
+    public synchronized String publish(String name,String content_type,byte[] bytes) {
+        String hash = StaticResources.hash(bytes);
+        String file = name.substring(name.lastIndexOf('/') + 1);
+        int dot = file.lastIndexOf('.');
+        String path = (dot > 0) ? CONTEXT + file.substring(0,dot) + "." + hash + file.substring(dot) : CONTEXT + file + "." + hash;
+
+        String current = this.m_current.get(name);
+        if (path.equals(current)) {
+            return path;
+        }
+        if (this.m_resources.containsKey(path) == false) {
+            this.m_resources.put(path,new Resource(content_type,bytes,StaticResources.gzip(bytes),hash));
+        }
+        this.m_current.put(name,path);
+        if (current != null) {
+            String previous = this.m_previous.put(name,current);
+            if (previous != null && this.m_current.containsValue(previous) == false && this.m_previous.containsValue(previous) == false) {
+                this.m_resources.remove(previous);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Number of resources held
+     * @return the resource count
+     */
+    public int size() {
+        return this.m_resources.size();
+    }
+
+    /**
+     * HttpHandler handler method
+     * @param t - the HttpExchange instance
+     * @throws IOException
+     */
+    @Override
+    public void handle(HttpExchange t) throws IOException {
+        try {
+            String method = t.getRequestMethod().toUpperCase();
+            if (method.equals("GET") == false && method.equals("HEAD") == false) {
+                t.getResponseHeaders().set("Allow","GET, HEAD");
+                t.sendResponseHeaders(405,-1);
+                return;
+            }
+            Resource resource = this.m_resources.get(t.getRequestURI().getPath());
+            if (resource == null) {
+                t.sendResponseHeaders(404,-1);
+                return;
+            }
+
+            // the gzip copy was made once when the resource was published
+            boolean gzip = resource.m_gzip != null && CompressedPage.GZIP.equals(CompressedPage.negotiate(t.getRequestHeaders().getFirst("Accept-Encoding")));
+            String etag = gzip ? resource.m_gzip_etag : resource.m_etag;
+            t.getResponseHeaders().set("Cache-Control",CACHE_CONTROL);
+            t.getResponseHeaders().set("ETag",etag);
+            t.getResponseHeaders().set("Vary","Accept-Encoding");
+            if (StaticResources.matches(t.getRequestHeaders().getFirst("If-None-Match"),etag)) {
+                t.sendResponseHeaders(304,-1);
+                return;
+            }
+            byte[] body = gzip ? resource.m_gzip : resource.m_bytes;
+            if (gzip) {
+                t.getResponseHeaders().set("Content-Encoding",CompressedPage.GZIP);
+            }
+            t.getResponseHeaders().set("Content-Type",resource.m_content_type);
+            if (method.equals("HEAD")) {
+                t.sendResponseHeaders(200,-1);
+                return;
+            }
+            t.sendResponseHeaders(200,body.length);
+            OutputStream out = t.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        finally {
+            t.close();
+        }
+    }
+
+    // does If-None-Match name the ETag (or "*")? Weak comparison, as for the page
+    private static boolean matches(String if_none_match,String etag) {
+        if (if_none_match == null) {
+            return false;
+        }
+        for(String tag : if_none_match.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // first 64 bits of the SHA-256 of the content (hex)
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(16);
+            for(int i = 0; i < 8; ++i) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xf,16)).append(Character.forDigit(digest[i] & 0xf,16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is always available
+            return Integer.toHexString(Arrays.hashCode(bytes));
+        }
+    }
+
+    // compress once (NULL if it does not make the resource smaller)
+    private static byte[] gzip(byte[] bytes) {
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 3 + 32);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(bytes);
+            out.close();
+            return compressed.size() < bytes.length ? compressed.toByteArray() : null;
+        }
+        catch (IOException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * @file    TableView.java
+ * @brief The requested view (page, page size, sort and filter) of the configuration table
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2017. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.Utils;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table View - the slice of the configuration table a request asks for: "page" (1 based), "page_size", "sort" (key, value,
+ * "-" prefixed for descending... none keeps the file/config_fields order) and "filter" (case insensitive substring of the key,
+ * its label or its value). Parsed from the raw query string so filters may contain "&amp;" and "=".
+ * @author Doug Anson
+ */
+public class TableView {
+    // query parameters
+    public static final String PAGE = "page";
+    public static final String PAGE_SIZE = "page_size";
+    public static final String SORT = "sort";
+    public static final String FILTER = "filter";
+    private static final List<String> PARAMETERS = Arrays.asList(PAGE,PAGE_SIZE,SORT,FILTER);
+
+    // sort orders
+    public static final String SORT_KEY = "key";
+    public static final String SORT_VALUE = "value";
+    private static final List<String> SORTS = Arrays.asList("",SORT_KEY,"-" + SORT_KEY,SORT_VALUE,"-" + SORT_VALUE);
+
+    // defaults
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+    private static final int MAX_FILTER_LENGTH = 256;
+
+    private final int m_page;
+    private final int m_page_size;
+    private final int m_default_page_size;
+    private final String m_sort;
+    private final String m_filter;
+
+    /**
+     * Default constructor
+     * @param page - requested page (1 based, clamped to 1)
+     * @param page_size - rows per page (clamped to 1..max_page_size)
+     * @param default_page_size - the page size when none is requested
+     * @param sort - sort order (unknown orders keep the file order)
+     * @param filter - substring filter (NULL/empty: no filter)
+     */
+    public TableView(int page,int page_size,int default_page_size,String sort,String filter) {
+        this.m_page = Math.max(1,page);
+        this.m_page_size = Math.max(1,page_size);
+        this.m_default_page_size = default_page_size;
+        this.m_sort = (sort != null && SORTS.contains(sort)) ? sort : "";
+        String trimmed = (filter != null) ? filter.trim() : "";
+        this.m_filter = (trimmed.length() > MAX_FILTER_LENGTH) ? trimmed.substring(0,MAX_FILTER_LENGTH) : trimmed;
+    }
+
+    /**
+     * Parse the view from a (raw, still URL encoded) query string
+     * @param raw_query - the raw query (may be NULL)
+     * @param default_page_size - rows per page when "page_size" is not given
+     * @param max_page_size - largest accepted page size
+     * @return the view
+     */
+    public static TableView fromQuery(String raw_query,int default_page_size,int max_page_size) {
+        return TableView.fromParameters(Utils.parseQuery(raw_query,null),default_page_size,max_page_size);
+    }
+
+    /**
+     * Build the view from the (decoded) query parameters
+     * @param query - the query parameters
+     * @param default_page_size - rows per page when "page_size" is not given
+     * @param max_page_size - largest accepted page size
+     * @return the view
+     */
+    public static TableView fromParameters(Map<String,String> query,int default_page_size,int max_page_size) {
+        int max = (max_page_size > 0) ? max_page_size : DEFAULT_MAX_PAGE_SIZE;
+        int page_size = Math.min(max,(default_page_size > 0) ? default_page_size : DEFAULT_PAGE_SIZE);
+        int default_size = page_size;
+        int page = 1;
+        if (query.get(PAGE) != null) {
+            page = TableView.parseInt(query.get(PAGE),1);
+        }
+        if (query.get(PAGE_SIZE) != null) {
+            page_size = Math.min(max,TableView.parseInt(query.get(PAGE_SIZE),page_size));
+        }
+        return new TableView(page,page_size,default_size,query.get(SORT),query.get(FILTER));
+    }
+
+    /**
+     * Does the (decoded) query only select a view... i.e. it has no side effects and the page may be revalidated?
+     * @param query - the query parameters
+     * @return true if every parameter is a view parameter (or there are none), false otherwise
+     */
+    public static boolean isViewQuery(Map<String,String> query) {
+        return PARAMETERS.containsAll(query.keySet());
+    }
+
+    /**
+     * Requested page
+     * @return the page (1 based)
+     */
+    public int getPage() {
+        return this.m_page;
+    }
+
+    /**
+     * Rows per page
+     * @return the page size
+     */
+    public int getPageSize() {
+        return this.m_page_size;
+    }
+
+    /**
+     * Sort order
+     * @return "" (file order), "key", "-key", "value" or "-value"
+     */
+    public String getSort() {
+        return this.m_sort;
+    }
+
+    /**
+     * Substring filter
+     * @return the filter ("" if none)
+     */
+    public String getFilter() {
+        return this.m_filter;
+    }
+
+    /**
+     * Is this view sorted or filtered (i.e. rows have to be selected from the whole table)?
+     * @return true if sorted or filtered, false otherwise
+     */
+    public boolean isSelective() {
+        return this.m_sort.length() > 0 || this.m_filter.length() > 0;
+    }
+
+    /**
+     * Does a key (its label or value) pass the filter?
+     * @param key - the key
+     * @param label - the key's label
+     * @param value - the value (may be NULL)
+     * @return true if it passes, false otherwise
+     */
+    public boolean matches(String key,String label,String value) {
+        return this.m_filter.length() == 0 || TableView.containsIgnoreCase(key,this.m_filter) || TableView.containsIgnoreCase(label,this.m_filter) || TableView.containsIgnoreCase(value,this.m_filter);
+    }
+
+    /**
+     * The canonical query string of this view at a given page (only non default parameters, URL encoded)
+     * @param page - the page
+     * @return the query (without "?"... "" for the default view of page 1)
+     */
+    public String toQuery(int page) {
+        StringBuilder query = new StringBuilder();
+        if (page > 1) {
+            query.append(PAGE).append('=').append(page);
+        }
+        if (this.m_page_size != this.m_default_page_size) {
+            TableView.separate(query).append(PAGE_SIZE).append('=').append(this.m_page_size);
+        }
+        if (this.m_sort.length() > 0) {
+            TableView.separate(query).append(SORT).append('=').append(TableView.encode(this.m_sort));
+        }
+        if (this.m_filter.length() > 0) {
+            TableView.separate(query).append(FILTER).append('=').append(TableView.encode(this.m_filter));
+        }
+        return query.toString();
+    }
+
+    // case insensitive substring match without copying the string
+    private static boolean containsIgnoreCase(String str,String part) {
+        if (str == null) {
+            return false;
+        }
+        int last = str.length() - part.length();
+        for(int i=0;i<=last;++i) {
+            if (str.regionMatches(true,i,part,0,part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // parse a positive integer
+    private static int parseInt(String value,int default_value) {
+        try {
+            return Math.max(1,Integer.parseInt(value.trim()));
+        }
+        catch (NumberFormatException ex) {
+            return default_value;
+        }
+    }
+
+    // parameter separator
+    private static StringBuilder separate(StringBuilder query) {
+        if (query.length() > 0) {
+            query.append('&');
+        }
+        return query;
+    }
+
+    // URL encode
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value,"UTF-8");
+        }
+        catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            return value;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the key change hooks and the AWS credentials hook
+ */
+public class AwsCredentialsHookTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public AwsCredentialsHookTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( AwsCredentialsHookTest.class );
+    }
+
+    /**
+     * Credentials are written (owner-only) when the AWS keys change... and only then
+     */
+    public void testWritesOnlyOnChange() throws IOException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + "/target/aws-credentials-test/.aws");
+        new File(dir,"config").delete();
+        new File(dir,"credentials").delete();
+
+        AwsCredentialsHook hook = new AwsCredentialsHook(dir.getAbsolutePath(),"600");
+        KeyChangeHooks hooks = new KeyChangeHooks();
+        hooks.add(hook);
+        PropertiesStore store = new PropertiesStore();
+        store.setListener(hooks);
+
+        // placeholders: nothing written
+        store.put("aws_iot_region","AWS_region_goes_here");
+        store.put("aws_iot_access_key_id","AWS_Access_Key_ID_goes_here");
+        store.put("aws_iot_secret_access_key","AWS_Secret_Access_Key_goes_here");
+        assertEquals( 0, hook.getWrites() );
+
+        // real values: written once all three are set
+        store.put("aws_iot_region","us-east-1");
+        store.put("aws_iot_access_key_id","AKID");
+        store.put("aws_iot_secret_access_key","secret");
+        assertEquals( 1, hook.getWrites() );
+        assertEquals( "[default]\naws_access_key_id = AKID\naws_secret_access_key = secret\n", new String(Files.readAllBytes(new File(dir,"credentials").toPath()),StandardCharsets.UTF_8) );
+        assertEquals( "[default]\nregion = us-east-1\n", new String(Files.readAllBytes(new File(dir,"config").toPath()),StandardCharsets.UTF_8) );
+        assertEquals( "rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(dir,"credentials").toPath())) );
+
+        // unrelated and unchanged values: no rewrite
+        store.put("mqtt_port","1883");
+        store.put("aws_iot_region","us-east-1");
+        assertEquals( 1, hook.getWrites() );
+
+        store.put("aws_iot_region","eu-west-1");
+        assertEquals( 2, hook.getWrites() );
+    }
+
+    /**
+     * By default the files (and a created directory) are owner-only... other users may read them only with an explicit mode
+     */
+    public void testDefaultMode() throws IOException
+    {
+        assertEquals( "rw-------", PosixFilePermissions.toString(writeCredentials("aws-credentials-default-test",null)) );
+        assertEquals( "rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(Utils.getWorkingDirectory() + "/target/aws-credentials-default-test/.aws").toPath())) );
+        assertEquals( "rw-------", PosixFilePermissions.toString(writeCredentials("aws-credentials-invalid-test","not a mode")) );
+
+        // opt-in: a bridge running as another user
+        assertEquals( "rw-r--r--", PosixFilePermissions.toString(writeCredentials("aws-credentials-shared-test","644")) );
+        assertEquals( "rwxr-xr-x", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(Utils.getWorkingDirectory() + "/target/aws-credentials-shared-test/.aws").toPath())) );
+    }
+
+    // write the credentials into a fresh directory with the given mode (NULL = default)... the credentials file permissions
+    private static Set<PosixFilePermission> writeCredentials(String test,String mode) throws IOException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + "/target/" + test + "/.aws");
+        new File(dir,"config").delete();
+        new File(dir,"credentials").delete();
+        dir.delete();
+
+        AwsCredentialsHook hook = (mode != null) ? new AwsCredentialsHook(dir.getAbsolutePath(),mode) : new AwsCredentialsHook(dir.getAbsolutePath());
+        KeyChangeHooks hooks = new KeyChangeHooks();
+        hooks.add(hook);
+        PropertiesStore store = new PropertiesStore();
+        store.setListener(hooks);
+        store.put("aws_iot_region","us-east-1");
+        store.put("aws_iot_access_key_id","AKID");
+        store.put("aws_iot_secret_access_key","secret");
+        assertEquals( 1, hook.getWrites() );
+        return Files.getPosixFilePermissions(new File(dir,"credentials").toPath());
+    }
+
+    /**
+     * Hooks run after the store's write lock is released: other writers are not held up by their side effects
+     */
+    public void testHooksOutsideWriteLock() throws Exception
+    {
+        final PropertiesStore store = new PropertiesStore();
+        final boolean[] other_writer_done = { false };
+        KeyChangeHooks hooks = new KeyChangeHooks();
+        hooks.add(new KeyChangeHook() {
+            @Override
+            public String[] getKeys() {
+                return new String[] { "watched" };
+            }
+
+            @Override
+            public void keysChanged(PropertiesSnapshot snapshot,Set<String> changed) {
+                Thread writer = new Thread() {
+                    @Override
+                    public void run() {
+                        store.put("other","value");
+                    }
+                };
+                writer.start();
+                try {
+                    writer.join(10000);
+                }
+                catch (InterruptedException ex) {
+                    // checked below
+                }
+                other_writer_done[0] = (writer.isAlive() == false);
+            }
+        });
+        store.setListener(hooks);
+        store.put("watched","changed");
+        assertTrue( other_writer_done[0] );
+        assertEquals( "value", store.get("other") );
+    }
+}
@@ -0,0 +1,283 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the change journal
+ */
+public class ChangeJournalTest
+    extends TestCase
+{
+    private static final String DIR = "/target/change-journal-test/";
+
+    // changes recorded in the large journal
+    private static final int CHANGES = 100000;
+    private static final int KEYS = 1000;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ChangeJournalTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ChangeJournalTest.class );
+    }
+
+    // a fresh journal file (and no checkpoint)
+    private static String journalFile(String name)
+    {
+        File dir = new File(Utils.getWorkingDirectory() + DIR);
+        dir.mkdirs();
+        File journal = new File(dir,name + ChangeJournal.SUFFIX);
+        journal.delete();
+        new File(journal.getPath() + ChangeJournal.CHECKPOINT_SUFFIX).delete();
+        return journal.getAbsolutePath();
+    }
+
+    // one change
+    private static Map<String,String> change(String key,String value)
+    {
+        Map<String,String> change = new LinkedHashMap<String,String>();
+        change.put(key,value);
+        return change;
+    }
+
+    /**
+     * Changes are recorded with their user and time, listed per key (newest first) and survive a reopen
+     */
+    public void testHistory() throws Exception
+    {
+        String file = journalFile("history");
+        ChangeJournal journal = ChangeJournal.open(file,0);
+        long before = System.currentTimeMillis();
+        assertTrue( journal.append(ChangeJournal.PROPERTIES,change("mqtt_port","1883"),"admin",1) );
+        assertTrue( journal.append(ChangeJournal.PROPERTIES,change("mqtt_host","broker"),null,2) );
+        assertTrue( journal.append(ChangeJournal.PROPERTIES,change("mqtt_port","8883"),"ops",3) );
+        assertTrue( journal.append(ChangeJournal.EDITOR,change("mqtt_port","editor é"),"admin",1) );
+        assertTrue( journal.append(ChangeJournal.PROPERTIES,change("mqtt_port",null),"ops",4) );
+        assertFalse( journal.append(ChangeJournal.PROPERTIES,Collections.<String,String>emptyMap(),"ops",5) );
+
+        List<ChangeJournal.Change> history = journal.history(ChangeJournal.PROPERTIES,"mqtt_port",0,100);
+        assertEquals( 3, history.size() );
+        assertNull( history.get(0).getValue() );
+        assertEquals( "8883", history.get(1).getValue() );
+        assertEquals( "ops", history.get(1).getUser() );
+        assertEquals( "1883", history.get(2).getValue() );
+        assertEquals( "admin", history.get(2).getUser() );
+        assertEquals( 1, history.get(2).getSeq() );
+        assertTrue( history.get(2).getTime() >= before );
+        assertEquals( 2, journal.history(ChangeJournal.PROPERTIES,"mqtt_port",0,2).size() );
+        assertEquals( 0, journal.history(ChangeJournal.PROPERTIES,"mqtt_port",System.currentTimeMillis() + 60000,100).size() );
+        assertNull( journal.history(ChangeJournal.PROPERTIES,"mqtt_host",0,100).get(0).getUser() );
+        assertEquals( "editor é", journal.history(ChangeJournal.EDITOR,"mqtt_port",0,100).get(0).getValue() );
+        assertEquals( 0, journal.history(ChangeJournal.PROPERTIES,"no_such_key",0,100).size() );
+        journal.close();
+        assertFalse( journal.append(ChangeJournal.PROPERTIES,change("mqtt_port","1"),"admin",6) );
+
+        // replayed on open: the index and sequence numbers continue
+        journal = ChangeJournal.open(file,0);
+        assertEquals( 5, journal.getRecords() );
+        assertEquals( 5, journal.getSeq() );
+        assertEquals( 3, journal.history(ChangeJournal.PROPERTIES,"mqtt_port",0,100).size() );
+        journal.append(ChangeJournal.PROPERTIES,change("mqtt_port","1884"),"admin",5);
+        assertEquals( 6, journal.history(ChangeJournal.PROPERTIES,"mqtt_port",0,100).get(0).getSeq() );
+        journal.close();
+    }
+
+    /**
+     * The changes between two snapshots
+     */
+    public void testDiff()
+    {
+        PropertiesStore store = new PropertiesStore();
+        Map<String,String> props = new LinkedHashMap<String,String>();
+        props.put("a","1");
+        props.put("b","2");
+        props.put("c","3");
+        PropertiesSnapshot previous = store.replace(props);
+        props.put("b","two");
+        props.remove("c");
+        props.put("d","4");
+        Map<String,String> diff = ChangeJournal.diff(previous,store.replace(props));
+        assertEquals( 3, diff.size() );
+        assertEquals( "two", diff.get("b") );
+        assertEquals( "4", diff.get("d") );
+        assertTrue( diff.containsKey("c") && diff.get("c") == null );
+    }
+
+    /**
+     * A record cut short is discarded on replay and appends continue where it started
+     */
+    public void testTornRecord() throws Exception
+    {
+        String file = journalFile("torn");
+        ChangeJournal journal = ChangeJournal.open(file,0);
+        journal.append(ChangeJournal.PROPERTIES,change("a","1"),"admin",1);
+        journal.append(ChangeJournal.PROPERTIES,change("a","2"),"admin",2);
+        journal.close();
+
+        // corrupt the last byte of the second record (its value)
+        RandomAccessFile raf = new RandomAccessFile(file,"rw");
+        long last = 0;
+        for(long i=0;i<raf.length();++i) {
+            raf.seek(i);
+            if (raf.read() != 0) {
+                last = i;
+            }
+        }
+        raf.seek(last);
+        raf.write('9');
+        raf.close();
+
+        journal = ChangeJournal.open(file,0);
+        assertEquals( 1, journal.getRecords() );
+        journal.append(ChangeJournal.PROPERTIES,change("a","3"),"admin",3);
+        journal.close();
+        journal = ChangeJournal.open(file,0);
+        List<ChangeJournal.Change> history = journal.history(ChangeJournal.PROPERTIES,"a",0,100);
+        assertEquals( 2, history.size() );
+        assertEquals( "3", history.get(0).getValue() );
+        assertEquals( "1", history.get(1).getValue() );
+        journal.close();
+    }
+
+    /**
+     * Changes not marked saved are re-applied to a file still holding the saved value... a file changed by something else
+     * wins, unless it was not written since the changes
+     */
+    public void testUnsaved() throws Exception
+    {
+        String file = journalFile("unsaved");
+        ChangeJournal journal = ChangeJournal.open(file,0);
+        journal.append(ChangeJournal.PROPERTIES,change("a","1"),"admin",1);
+        journal.append(ChangeJournal.PROPERTIES,change("b","1"),"admin",1);
+        journal.append(ChangeJournal.PROPERTIES,change("d","old"),"admin",1);
+        journal.append(ChangeJournal.PROPERTIES,change("e","1"),"admin",1);
+        journal.saved(ChangeJournal.PROPERTIES,1);
+        journal.append(ChangeJournal.PROPERTIES,change("a","2"),"admin",2);
+        Map<String,String> changes = change("b","2");
+        changes.put("c","new");
+        journal.append(ChangeJournal.PROPERTIES,changes,"admin",3);
+        journal.append(ChangeJournal.PROPERTIES,change("d",null),"admin",4);
+        journal.append(ChangeJournal.PROPERTIES,change("f","unknown"),"admin",5);
+        journal.close();
+
+        // "crash" and the file written since: a=1 (saved), b changed on disk, d as before the unsaved edits... the saved
+        // values of c and f are unknown (not journaled before) so the file's win
+        Map<String,String> contents = new HashMap<String,String>();
+        contents.put("a","1");
+        contents.put("b","external");
+        contents.put("d","old");
+        contents.put("e","1");
+        contents.put("f","file");
+        journal = ChangeJournal.open(file,0);
+        long written = System.currentTimeMillis() + 1000;
+        Map<String,String> unsaved = journal.unsaved(ChangeJournal.PROPERTIES,contents,written);
+        assertEquals( 2, unsaved.size() );
+        assertEquals( "2", unsaved.get("a") );
+        assertTrue( unsaved.containsKey("d") && unsaved.get("d") == null );
+        assertEquals( 0, journal.unsaved(ChangeJournal.EDITOR,contents,written).size() );
+
+        // not written since the unsaved changes: all of them
+        Map<String,String> untouched = journal.unsaved(ChangeJournal.PROPERTIES,contents,0);
+        assertEquals( 5, untouched.size() );
+        assertEquals( "2", untouched.get("b") );
+        assertEquals( "new", untouched.get("c") );
+        assertEquals( "unknown", untouched.get("f") );
+
+        // once re-applied and saved: nothing left
+        journal.recovered(ChangeJournal.PROPERTIES,10);
+        journal.saved(ChangeJournal.PROPERTIES,10);
+        contents.putAll(untouched);
+        contents.remove("d");
+        assertEquals( 0, journal.unsaved(ChangeJournal.PROPERTIES,contents,0).size() );
+        journal.close();
+    }
+
+    /**
+     * Compaction (once everything is saved) writes a checkpoint and restarts the journal... unsaved changes later are
+     * compared with the checkpoint's values
+     */
+    public void testCompaction() throws Exception
+    {
+        String file = journalFile("compaction");
+        ChangeJournal journal = ChangeJournal.open(file,10);
+        for(int i=0;i<12;++i) {
+            journal.append(ChangeJournal.PROPERTIES,change("k" + (i % 3),"v" + i),"admin",i + 1);
+        }
+        journal.append(ChangeJournal.EDITOR,change("title","T"),"admin",1);
+        assertEquals( 13, journal.getRecords() );
+
+        // not compacted while the editor change is unsaved
+        journal.saved(ChangeJournal.PROPERTIES,12);
+        assertEquals( 13, journal.getRecords() );
+        assertEquals( 0, journal.getCheckpointTime() );
+        journal.saved(ChangeJournal.EDITOR,1);
+        assertEquals( 0, journal.getRecords() );
+        assertTrue( journal.getCheckpointTime() > 0 );
+        assertTrue( new File(file + ChangeJournal.CHECKPOINT_SUFFIX).length() > 0 );
+        assertEquals( 0, journal.history(ChangeJournal.PROPERTIES,"k0",0,100).size() );
+
+        // continues after the checkpoint
+        journal.append(ChangeJournal.PROPERTIES,change("k0","after"),"ops",13);
+        journal.close();
+        journal = ChangeJournal.open(file,10);
+        assertEquals( 14, journal.getSeq() );
+        assertEquals( 1, journal.getRecords() );
+        assertEquals( "after", journal.history(ChangeJournal.PROPERTIES,"k0",0,100).get(0).getValue() );
+
+        // k0 was "v9" at the checkpoint
+        Map<String,String> contents = new HashMap<String,String>();
+        contents.put("k0","v9");
+        long written = System.currentTimeMillis() + 1000;
+        assertEquals( "after", journal.unsaved(ChangeJournal.PROPERTIES,contents,written).get("k0") );
+        contents.put("k0","external");
+        assertEquals( 0, journal.unsaved(ChangeJournal.PROPERTIES,contents,written).size() );
+        journal.close();
+    }
+
+    /**
+     * A large journal replays every change and lists a key's history through the index (JournalBenchmark measures the
+     * append, replay and history times)
+     */
+    public void testLargeReplay() throws Exception
+    {
+        String file = journalFile("replay");
+        ChangeJournal journal = ChangeJournal.open(file,CHANGES * 2);
+        Map<String,String> batch = new LinkedHashMap<String,String>();
+        for(int i=0;i<CHANGES;++i) {
+            batch.put("mqtt_key_" + (i % KEYS),"value_" + i + "_some_typical_length_config_value");
+            if (batch.size() == 100) {
+                journal.append(ChangeJournal.PROPERTIES,batch,"admin",i);
+                batch.clear();
+            }
+        }
+        journal.close();
+
+        journal = ChangeJournal.open(file,CHANGES * 2);
+        assertEquals( CHANGES, journal.getRecords() );
+        List<ChangeJournal.Change> history = journal.history(ChangeJournal.PROPERTIES,"mqtt_key_99",0,1000);
+        assertEquals( CHANGES / KEYS, history.size() );
+        assertEquals( "value_" + (CHANGES - KEYS + 99) + "_some_typical_length_config_value", history.get(0).getValue() );
+        assertEquals( "value_99_some_typical_length_config_value", history.get(history.size() - 1).getValue() );
+        journal.close();
+    }
+}
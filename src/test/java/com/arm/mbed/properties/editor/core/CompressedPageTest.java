@@ -0,0 +1,139 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the precompressed page
+ */
+public class CompressedPageTest 
+    extends TestCase
+{
+    private static final int ROWS = 200;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CompressedPageTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( CompressedPageTest.class );
+    }
+
+    // a page shaped like the editor: large inlined CSS/scripts around two tables
+    private static PageTemplate page()
+    {
+        StringBuilder css = new StringBuilder("<html><head><style>");
+        for(int i = 0; i < 400; ++i) {
+            css.append(".row").append(i).append(" { color: #").append(Integer.toHexString(0x100000 + i * 7919)).append("; padding: 2px; }\n");
+        }
+        css.append("</style></head><body caf\u00e9>");
+        return PageTemplate.compile(css + "<table>__T1__</table><div>__T2__</div>\u20ac</body></html>","__T1__","__T2__");
+    }
+
+    // slot contents: table rows
+    private static final PageTemplate.SlotWriter ROWS_WRITER = new PageTemplate.SlotWriter() {
+        @Override
+        public void writeSlot(String slot,Writer out) throws IOException {
+            for(int i = 0; i < ROWS; ++i) {
+                out.write("<tr><td id=\"key" + i + "-key\">" + slot + "_key_" + i + "</td><td>value \u00e9 " + (i * 31) + "</td></tr>\n");
+            }
+        }
+    };
+
+    // the uncompressed rendering
+    private static byte[] plain(PageTemplate template) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(bytes,StandardCharsets.UTF_8);
+        template.render(out,ROWS_WRITER);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    // read everything
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length = 0;
+        while ((length = in.read(buffer)) > 0) {
+            bytes.write(buffer,0,length);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Both codings decode to exactly the uncompressed page
+     */
+    public void testRoundTrip() throws IOException
+    {
+        PageTemplate template = page();
+        CompressedPage compressed = new CompressedPage(template,6);
+        byte[] expected = plain(template);
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        compressed.render(gzip,CompressedPage.GZIP,ROWS_WRITER);
+        assertTrue( java.util.Arrays.equals(expected,readAll(new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray())))) );
+
+        ByteArrayOutputStream deflate = new ByteArrayOutputStream();
+        compressed.render(deflate,CompressedPage.DEFLATE,ROWS_WRITER);
+        assertTrue( java.util.Arrays.equals(expected,readAll(new InflaterInputStream(new ByteArrayInputStream(deflate.toByteArray())))) );
+
+        assertTrue( gzip.size() < expected.length / 4 );
+    }
+
+    /**
+     * Accept-Encoding negotiation
+     */
+    public void testNegotiate()
+    {
+        assertNull( CompressedPage.negotiate(null) );
+        assertNull( CompressedPage.negotiate("identity") );
+        assertEquals( CompressedPage.GZIP, CompressedPage.negotiate("gzip, deflate, br") );
+        assertEquals( CompressedPage.DEFLATE, CompressedPage.negotiate("deflate") );
+        assertEquals( CompressedPage.DEFLATE, CompressedPage.negotiate("gzip;q=0, deflate") );
+        assertEquals( CompressedPage.DEFLATE, CompressedPage.negotiate("gzip;q=0.5, deflate;q=0.8") );
+        assertEquals( CompressedPage.GZIP, CompressedPage.negotiate("*") );
+        assertNull( CompressedPage.negotiate("gzip;q=0") );
+    }
+
+    /**
+     * Bytes saved: splicing independently compressed segments costs a little ratio against gzip of the whole page, but
+     * not much (CompressedPageBenchmark measures the CPU each coding takes)
+     */
+    public void testCompressedSize() throws IOException
+    {
+        PageTemplate template = page();
+        long raw_bytes = plain(template).length;
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(new GZIPOutputStream(full),StandardCharsets.UTF_8);
+        template.render(out,ROWS_WRITER);
+        out.close();
+        ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+        new CompressedPage(template,6).render(spliced,CompressedPage.GZIP,ROWS_WRITER);
+        assertTrue( spliced.size() < raw_bytes / 4 );
+        assertTrue( spliced.size() < full.size() * 3 / 2 );
+    }
+}
@@ -0,0 +1,88 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the flat JSON reader/writer
+ */
+public class JsonTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public JsonTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( JsonTest.class );
+    }
+
+    /**
+     * Written objects read back to the same (ordered) key/value pairs
+     */
+    public void testRoundTrip() throws IOException
+    {
+        Map<String,String> props = new LinkedHashMap<String,String>();
+        props.put("mqtt_address","127.0.0.1");
+        props.put("google_cloud_auth_json","{\"type\":\"service_account\",\n\"key\":\"a\\\\b\"}");
+        props.put("control","\u0001\t\r");
+        props.put("unicode","caf\u00e9 \u20ac");
+
+        StringBuilder json = new StringBuilder();
+        Json.writeObject(json,props);
+        assertEquals( -1, json.indexOf("\n") );
+        assertEquals( props, Json.readObject(new StringReader(json.toString()),0) );
+    }
+
+    /**
+     * Non-string scalars are kept as text, null is kept as NULL
+     */
+    public void testScalars() throws IOException
+    {
+        Map<String,String> props = Json.readObject(new StringReader(" { \"a\" : 1883, \"b\":true, \"c\":null, \"d\":\"\\u0041\\/\" } "),0);
+        assertEquals( "1883", props.get("a") );
+        assertEquals( "true", props.get("b") );
+        assertTrue( props.containsKey("c") );
+        assertNull( props.get("c") );
+        assertEquals( "A/", props.get("d") );
+    }
+
+    /**
+     * Malformed and oversized input is rejected
+     */
+    public void testRejects() throws IOException
+    {
+        String[] bad = { "", "[]", "{\"a\":}", "{\"a\":\"b\"", "{\"a\":\"b\"} x", "{a:\"b\"}", "{\"a\":\"\\q\"}" };
+        for(String json : bad) {
+            try {
+                Json.readObject(new StringReader(json),0);
+                fail( "accepted: " + json );
+            }
+            catch (Json.ParseException ex) {
+                // expected
+            }
+        }
+        try {
+            Json.readObject(new StringReader("{\"a\":\"0123456789\"}"),10);
+            fail( "size limit not applied" );
+        }
+        catch (Json.LimitException ex) {
+            // expected
+        }
+    }
+}
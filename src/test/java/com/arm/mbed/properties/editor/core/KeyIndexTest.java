@@ -0,0 +1,187 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the key index
+ */
+public class KeyIndexTest
+    extends TestCase
+{
+    // 100k keys clustered by prefix
+    private static final int LARGE_KEYS = 100000;
+    private static final String[] PREFIXES = { "mqtt_", "aws_iot_", "iot_event_hub_", "webhook_validator_", "database_validator_" };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public KeyIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( KeyIndexTest.class );
+    }
+
+    // labels like the editor's human readable key map
+    private static Map<String,String> labels()
+    {
+        Map<String,String> labels = new HashMap<String,String>();
+        labels.put("mqtt_client_id","MQTT Connection ClientID");
+        labels.put("mqtt_port","MQTT Port");
+        labels.put("aws_iot_region","AWS Region");
+        return labels;
+    }
+
+    // a store with the given keys
+    private static PropertiesStore store(String... keys)
+    {
+        LinkedHashMap<String,String> props = new LinkedHashMap<String,String>();
+        for(String key : keys) {
+            props.put(key,"value of " + key);
+        }
+        PropertiesStore store = new PropertiesStore();
+        store.replace(props);
+        return store;
+    }
+
+    /**
+     * Prefixes match keys and labels (case insensitive), each key once, in term order (the label "AWS Region" first), up to the limit
+     */
+    public void testSearch()
+    {
+        PropertiesStore store = store("mqtt_port","mqtt_client_id","aws_iot_region","aws_iot_access_key_id","Mixed_Case");
+        KeyIndex index = new KeyIndex(labels());
+        assertEquals( Arrays.asList("mqtt_client_id","mqtt_port"), Arrays.asList(index.search(store.snapshot(),"MQ",10).keySet().toArray()) );
+        assertEquals( "MQTT Connection ClientID", index.search(store.snapshot(),"mqtt_c",10).get("mqtt_client_id") );
+        assertEquals( Arrays.asList("aws_iot_region","aws_iot_access_key_id"), Arrays.asList(index.search(store.snapshot(),"aws",10).keySet().toArray()) );
+        assertEquals( Collections.singleton("aws_iot_region"), index.search(store.snapshot(),"aws r",10).keySet() );
+        assertEquals( "Mixed_Case", index.search(store.snapshot(),"mixed",10).get("Mixed_Case") );
+        assertEquals( 1, index.search(store.snapshot(),"mq",1).size() );
+        assertTrue( index.search(store.snapshot(),"zz",10).isEmpty() );
+        assertEquals( 5, index.search(store.snapshot(),"",10).size() );
+        assertEquals( 1, index.getRebuilds() );
+    }
+
+    /**
+     * Edits are merged into the index (no rebuild)... a reload is reindexed on the next search
+     */
+    public void testIncrementalUpdates()
+    {
+        PropertiesStore store = store("mqtt_port","aws_iot_region");
+        KeyIndex index = new KeyIndex(labels());
+        assertEquals( 1, index.search(store.snapshot(),"mqtt",10).size() );
+
+        // add one, remove one
+        PropertiesSnapshot previous = store.snapshot();
+        PropertiesSnapshot current = store.update(new PropertiesStore.Edit() {
+            @Override
+            public void apply(Map<String,String> properties) {
+                properties.put("mqtt_client_id","id");
+                properties.remove("aws_iot_region");
+            }
+        });
+        index.update(previous,current,Arrays.asList("mqtt_client_id","aws_iot_region"));
+        assertEquals( 2, index.search(current,"mqtt",10).size() );
+        assertTrue( index.search(current,"aws",10).isEmpty() );
+        assertEquals( "MQTT Connection ClientID", index.search(current,"mqtt connection",10).get("mqtt_client_id") );
+
+        // value changes do not change the index
+        previous = current;
+        current = store.put("mqtt_port","1884");
+        index.update(previous,current,Collections.singleton("mqtt_port"));
+        assertEquals( 2, index.search(current,"mqtt",10).size() );
+        assertEquals( 1, index.getRebuilds() );
+        assertEquals( 2, index.getUpdates() );
+
+        // a reload (or any publish the index was not told about) is picked up by the next search
+        LinkedHashMap<String,String> reloaded = new LinkedHashMap<String,String>();
+        reloaded.put("iot_event_hub_name","hub");
+        current = store.replace(reloaded);
+        assertEquals( Collections.singleton("iot_event_hub_name"), index.search(current,"iot",10).keySet() );
+        assertTrue( index.search(current,"mqtt",10).isEmpty() );
+        assertEquals( 2, index.getRebuilds() );
+
+        // an older snapshot never rolls the index back
+        assertEquals( Collections.singleton("iot_event_hub_name"), index.search(previous,"iot",10).keySet() );
+    }
+
+    /**
+     * Random batches of added/removed keys merge into the same index a rebuild produces
+     */
+    public void testMergeMatchesRebuild()
+    {
+        final java.util.Random random = new java.util.Random(42);
+        PropertiesStore store = store("mqtt_port","mqtt_client_id","aws_iot_region");
+        KeyIndex index = new KeyIndex(labels());
+        index.search(store.snapshot(),"",1);
+        for(int batch = 0; batch < 200; ++batch) {
+            final java.util.List<String> touched = new java.util.ArrayList<String>();
+            for(int i = 0; i < 1 + random.nextInt(5); ++i) {
+                touched.add(PREFIXES[random.nextInt(PREFIXES.length)] + random.nextInt(20));
+            }
+            if (random.nextInt(10) == 0) {
+                touched.add("mqtt_client_id");
+            }
+            PropertiesSnapshot previous = store.snapshot();
+            PropertiesSnapshot current = store.update(new PropertiesStore.Edit() {
+                @Override
+                public void apply(Map<String,String> properties) {
+                    for(String key : touched) {
+                        if (properties.containsKey(key) && random.nextBoolean()) {
+                            properties.remove(key);
+                        }
+                        else {
+                            properties.put(key,"v");
+                        }
+                    }
+                }
+            });
+            index.update(previous,current,touched);
+            assertEquals( new java.util.ArrayList<String>(new KeyIndex(labels()).search(current,"",Integer.MAX_VALUE).keySet()), new java.util.ArrayList<String>(index.search(current,"",Integer.MAX_VALUE).keySet()) );
+        }
+        assertEquals( 1, index.getRebuilds() );
+    }
+
+    /**
+     * 100k keys: every key is indexed, searches find exact keys and prefixes, an edit copies the index once (no rescan
+     * or re-sort)... KeyIndexBenchmark measures the build, search and update times
+     */
+    public void testLargeIndex()
+    {
+        String[] keys = new String[LARGE_KEYS];
+        for(int i = 0; i < LARGE_KEYS; ++i) {
+            keys[i] = PREFIXES[i % PREFIXES.length] + "setting_" + i;
+        }
+        PropertiesStore store = store(keys);
+        KeyIndex index = new KeyIndex(labels());
+        assertEquals( KeyIndex.DEFAULT_LIMIT, index.search(store.snapshot(),"iot_event_hub_",KeyIndex.DEFAULT_LIMIT).size() );
+        assertEquals( LARGE_KEYS, index.size() );
+        assertEquals( Collections.singleton("webhook_validator_setting_12348"), index.search(store.snapshot(),"webhook_validator_setting_12348",10).keySet() );
+        for(String key : index.search(store.snapshot(),"database",KeyIndex.DEFAULT_LIMIT).keySet()) {
+            assertTrue( key, key.startsWith("database_validator_") );
+        }
+
+        // an edit adding a key
+        PropertiesSnapshot previous = store.snapshot();
+        PropertiesSnapshot current = store.put("mqtt_added_key","value");
+        index.update(previous,current,Collections.singleton("mqtt_added_key"));
+        assertEquals( Collections.singleton("mqtt_added_key"), index.search(current,"mqtt_added",10).keySet() );
+        assertEquals( LARGE_KEYS + 1, index.size() );
+        assertEquals( 1, index.getRebuilds() );
+    }
+}
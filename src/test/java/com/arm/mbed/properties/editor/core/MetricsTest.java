@@ -0,0 +1,118 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the metrics
+ */
+public class MetricsTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MetricsTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MetricsTest.class );
+    }
+
+    /**
+     * Quantiles are estimated within the bucket resolution (~6%)
+     */
+    public void testQuantiles()
+    {
+        Metrics.Timer timer = new Metrics().timer("t_seconds","test","");
+        assertEquals( 0, timer.getQuantileNanos(0.5) );
+        for(long i = 1; i <= 10000; ++i) {
+            timer.record(i * 1000);
+        }
+        assertEquals( 10000, timer.getCount() );
+        assertEquals( 50005000L * 1000, timer.getSumNanos() );
+        assertTrue( Math.abs(timer.getQuantileNanos(0.5) - 5000000) < 5000000 * 0.07 );
+        assertTrue( Math.abs(timer.getQuantileNanos(0.99) - 9900000) < 9900000 * 0.07 );
+        timer.record(-5);
+        assertEquals( 0, timer.getQuantileNanos(0.00001) );
+        timer.record(Long.MAX_VALUE);
+        assertTrue( timer.getQuantileNanos(1.0) > 0 );
+    }
+
+    /**
+     * The registry writes the Prometheus text format: one HELP/TYPE per family, labels merged with the quantile
+     */
+    public void testExposition() throws IOException
+    {
+        Metrics metrics = new Metrics();
+        metrics.timer("phase_seconds","Phase latency","phase=\"save\"").record(2000000);
+        metrics.timer("phase_seconds","Phase latency","phase=\"render\"").record(1000);
+        assertSame( metrics.counter("saves_total","Saves",""), metrics.counter("saves_total","Saves","") );
+        metrics.counter("saves_total","Saves","").add(3);
+        metrics.register("sessions","Sessions",Metrics.GAUGE,"",new Metrics.Source() {
+            @Override
+            public double sample() {
+                return 1.5;
+            }
+        });
+        StringBuilder text = new StringBuilder();
+        metrics.write(text);
+        String out = text.toString();
+        assertTrue( out, out.startsWith("# HELP phase_seconds Phase latency\n# TYPE phase_seconds summary\n") );
+        assertEquals( out.indexOf("# TYPE phase_seconds"), out.lastIndexOf("# TYPE phase_seconds") );
+        assertTrue( out, out.contains("phase_seconds{phase=\"save\",quantile=\"0.5\"} 0.00") );
+        assertTrue( out, out.contains("phase_seconds_sum{phase=\"save\"} 0.002\n") );
+        assertTrue( out, out.contains("phase_seconds_count{phase=\"render\"} 1\n") );
+        assertTrue( out, out.contains("# TYPE saves_total counter\nsaves_total 3\n") );
+        assertTrue( out, out.contains("# TYPE sessions gauge\nsessions 1.5\n") );
+        try {
+            metrics.counter("phase_seconds","Phase latency","");
+            fail("a name was registered with two types");
+        }
+        catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Recording from many threads loses nothing... bytes written through a counting stream are counted
+     */
+    public void testConcurrentRecording() throws Exception
+    {
+        final Metrics.Timer timer = new Metrics().timer("t_seconds","test","");
+        Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < 100000; ++j) {
+                        timer.record(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals( 800000, timer.getCount() );
+
+        Metrics.Counter bytes = new Metrics().counter("bytes_total","test","");
+        Metrics.CountingOutputStream out = new Metrics.CountingOutputStream(new ByteArrayOutputStream(),bytes);
+        out.write(new byte[100],10,50);
+        out.write(1);
+        out.close();
+        assertEquals( 51, bytes.get() );
+    }
+}
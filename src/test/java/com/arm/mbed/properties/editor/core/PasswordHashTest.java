@@ -0,0 +1,56 @@
+package com.arm.mbed.properties.editor.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the PBKDF2 password hashes
+ */
+public class PasswordHashTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PasswordHashTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PasswordHashTest.class );
+    }
+
+    /**
+     * Hashes verify their own password only... and are salted
+     */
+    public void testHashAndVerify()
+    {
+        String hash = PasswordHash.hash("s3cret \u00e9",1000);
+        assertTrue( PasswordHash.isHash(hash) );
+        assertTrue( hash.startsWith(PasswordHash.PREFIX + "1000$") );
+        assertTrue( PasswordHash.verify(hash,"s3cret \u00e9") );
+        assertFalse( PasswordHash.verify(hash,"s3cret") );
+        assertFalse( PasswordHash.verify(hash,null) );
+        assertFalse( hash.equals(PasswordHash.hash("s3cret \u00e9",1000)) );
+    }
+
+    /**
+     * Plaintext and malformed values never verify
+     */
+    public void testMalformed()
+    {
+        assertFalse( PasswordHash.isHash("admin") );
+        assertFalse( PasswordHash.verify("admin","admin") );
+        assertFalse( PasswordHash.verify(PasswordHash.PREFIX + "x$y$z","admin") );
+        assertFalse( PasswordHash.verify(PasswordHash.PREFIX + "1000$$","admin") );
+        assertFalse( PasswordHash.verify(PasswordHash.PREFIX + "1000","admin") );
+    }
+}
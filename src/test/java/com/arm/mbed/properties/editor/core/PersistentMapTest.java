@@ -0,0 +1,251 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the persistent map and the store's revisions
+ */
+public class PersistentMapTest
+    extends TestCase
+{
+    // properties in the store whose revisions are kept
+    private static final int KEYS = 20000;
+
+    // revisions kept (one edited key each)
+    private static final int REVISIONS = 50;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PersistentMapTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PersistentMapTest.class );
+    }
+
+    // a property set
+    private static Map<String,String> properties(int size)
+    {
+        Map<String,String> props = new LinkedHashMap<String,String>();
+        for(int i=0;i<size;++i) {
+            props.put("mqtt_key_" + i,"value " + i + " for a typical bridge setting");
+        }
+        return props;
+    }
+
+    /**
+     * Random puts and removes behave (and iterate) like a LinkedHashMap... every version stays as it was
+     */
+    public void testAgainstLinkedHashMap()
+    {
+        Random random = new Random(7);
+        Map<String,String> expected = new LinkedHashMap<String,String>();
+        PersistentMap map = PersistentMap.EMPTY;
+        List<PersistentMap> versions = new ArrayList<PersistentMap>();
+        List<Map<String,String>> expected_versions = new ArrayList<Map<String,String>>();
+        for(int round=0;round<200;++round) {
+            PersistentMap.Editor editor = map.edit();
+            for(int i=0;i<random.nextInt(50);++i) {
+                String key = "k" + random.nextInt(2000);
+                if (random.nextInt(3) == 0) {
+                    assertEquals( expected.remove(key), editor.remove(key) );
+                }
+                else {
+                    String value = "v" + random.nextInt(5);
+                    assertEquals( expected.put(key,value), editor.put(key,value) );
+                }
+            }
+            map = editor.persistent();
+            versions.add(map);
+            expected_versions.add(new LinkedHashMap<String,String>(expected));
+        }
+        for(int i=0;i<versions.size();++i) {
+            assertEquals( expected_versions.get(i), versions.get(i) );
+            assertEquals( new ArrayList<String>(expected_versions.get(i).keySet()), new ArrayList<String>(versions.get(i).keySet()) );
+            assertEquals( expected_versions.get(i).size(), versions.get(i).size() );
+        }
+        assertNull( map.get("missing") );
+        assertFalse( map.containsKey("missing") );
+        assertFalse( map.containsKey(null) );
+
+        // no change: the same map
+        String key = map.keySet().iterator().next();
+        assertSame( map, map.with(key,map.get(key)) );
+        assertSame( map, map.without("missing") );
+        try {
+            map.put("a","b");
+            fail( "persistent maps are immutable" );
+        }
+        catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Keys whose hashes are the same
+     */
+    public void testCollisions()
+    {
+        // "Aa", "BB" and "AaAa", "AaBB", "BBAa", "BBBB" have equal hashCodes
+        PersistentMap map = PersistentMap.EMPTY.with("Aa","1").with("BB","2").with("AaAa","3").with("AaBB","4").with("BBAa","5").with("BBBB","6");
+        assertEquals( "1", map.get("Aa") );
+        assertEquals( "2", map.get("BB") );
+        assertEquals( "6", map.get("BBBB") );
+        assertEquals( 6, map.size() );
+        PersistentMap removed = map.without("AaBB").without("Aa");
+        assertEquals( 4, removed.size() );
+        assertNull( removed.get("AaBB") );
+        assertEquals( "5", removed.get("BBAa") );
+        assertEquals( "2", removed.get("BB") );
+        assertEquals( "4", map.get("AaBB") );
+
+        Map<String,String> diff = PersistentMap.diff(map,removed.with("BB","two"));
+        assertEquals( 3, diff.size() );
+        assertEquals( "two", diff.get("BB") );
+        assertTrue( diff.containsKey("Aa") && diff.get("Aa") == null );
+    }
+
+    /**
+     * Keys removed while iterating an editor (as the empty slot clean up does) and added back at the end
+     */
+    public void testEditorIteration()
+    {
+        PersistentMap map = PersistentMap.from(properties(100));
+        PersistentMap.Editor editor = map.edit();
+        Iterator<String> keys = editor.keySet().iterator();
+        int seen = 0;
+        while (keys.hasNext()) {
+            String key = keys.next();
+            ++seen;
+            if (key.endsWith("0")) {
+                keys.remove();
+            }
+        }
+        assertEquals( 100, seen );
+        assertEquals( 90, editor.size() );
+        editor.put("mqtt_key_10","back");
+        editor.put("mqtt_key_1","changed");
+        PersistentMap edited = editor.persistent();
+        List<String> order = new ArrayList<String>(edited.keySet());
+        assertEquals( "mqtt_key_1", order.get(0) );
+        assertEquals( "mqtt_key_10", order.get(order.size() - 1) );
+        assertEquals( 100, map.size() );
+        assertEquals( "value 1 for a typical bridge setting", map.get("mqtt_key_1") );
+
+        // clear() and putAll(): a new order
+        editor = edited.edit();
+        editor.clear();
+        editor.put("z","1");
+        editor.put("a","2");
+        assertEquals( "[z, a]", editor.persistent().keySet().toString() );
+
+        // many removals: renumbered, in order
+        editor = PersistentMap.from(properties(5000)).edit();
+        for(int i=0;i<4990;++i) {
+            editor.remove("mqtt_key_" + i);
+        }
+        assertEquals( "[mqtt_key_4990, mqtt_key_4991, mqtt_key_4992, mqtt_key_4993, mqtt_key_4994, mqtt_key_4995, mqtt_key_4996, mqtt_key_4997, mqtt_key_4998, mqtt_key_4999]",
+                      editor.persistent().keySet().toString() );
+    }
+
+    /**
+     * The diff of two versions compares only what they do not share
+     */
+    public void testDiff()
+    {
+        PersistentMap map = PersistentMap.from(properties(10000));
+        PersistentMap.Editor editor = map.edit();
+        editor.put("mqtt_key_5","changed");
+        editor.put("mqtt_key_6","value 6 for a typical bridge setting");
+        editor.remove("mqtt_key_7");
+        editor.put("added","new");
+        PersistentMap edited = editor.persistent();
+        Map<String,String> diff = PersistentMap.diff(map,edited);
+        assertEquals( 3, diff.size() );
+        assertEquals( "changed", diff.get("mqtt_key_5") );
+        assertEquals( "new", diff.get("added") );
+        assertTrue( diff.containsKey("mqtt_key_7") && diff.get("mqtt_key_7") == null );
+        assertEquals( 3, PersistentMap.diff(edited,map).size() );
+        assertTrue( PersistentMap.diff(map,map).isEmpty() );
+        assertEquals( 10000, PersistentMap.diff(PersistentMap.EMPTY,map).size() );
+
+        // unrelated maps with the same contents
+        assertTrue( PersistentMap.diff(map,PersistentMap.from(properties(10000))).isEmpty() );
+    }
+
+    /**
+     * Revisions: kept up to the limit, reverted as a new snapshot, dropped on unload
+     */
+    public void testRevisions()
+    {
+        PropertiesStore store = new PropertiesStore();
+        store.setRevisionsKept(3);
+        PropertiesSnapshot loaded = store.replace(properties(10));
+        store.put("mqtt_key_1","one");
+        PropertiesSnapshot second = store.put("mqtt_key_2","two");
+        store.put("mqtt_key_3","three");
+        List<PropertiesStore.Revision> revisions = store.getRevisions();
+        assertEquals( 3, revisions.size() );
+        assertEquals( store.snapshot().getVersion(), revisions.get(0).getVersion() );
+        assertEquals( second.getVersion() - 1, revisions.get(2).getVersion() );
+        assertNull( store.getRevision(loaded.getVersion()) );
+        assertNull( store.revert(loaded.getVersion()) );
+
+        // revert: a new version with the old properties
+        PropertiesSnapshot reverted = store.revert(second.getVersion());
+        assertEquals( second.getVersion() + 2, reverted.getVersion() );
+        assertEquals( "value 3 for a typical bridge setting", reverted.get("mqtt_key_3") );
+        assertEquals( "two", reverted.get("mqtt_key_2") );
+        assertEquals( second.asMap(), reverted.asMap() );
+        Map<String,String> changes = store.getRevision(reverted.getVersion() - 1).getSnapshot().changesTo(reverted);
+        assertEquals( 1, changes.size() );
+        assertEquals( "value 3 for a typical bridge setting", changes.get("mqtt_key_3") );
+        assertTrue( store.getRevision(reverted.getVersion()).getTime() >= store.getRevision(second.getVersion()).getTime() );
+
+        assertEquals( 0, store.getUnloadedTime() );
+        store.unload();
+        assertEquals( 0, store.getRevisions().size() );
+        assertTrue( store.getUnloadedTime() > 0 );
+    }
+
+    /**
+     * Many revisions of single key edits on a large store: each holds its own edit and differs from the one before by
+     * that key only (StoreBenchmark.put measures an edit's time and the memory it allocates)
+     */
+    public void testManyRevisions()
+    {
+        PropertiesStore store = new PropertiesStore();
+        store.setRevisionsKept(REVISIONS);
+        store.replace(properties(KEYS));
+        for(int i=0;i<REVISIONS;++i) {
+            store.put("mqtt_key_" + (i * 397 % KEYS),"edited value " + i);
+        }
+        List<PropertiesStore.Revision> revisions = store.getRevisions();
+        assertEquals( REVISIONS, revisions.size() );
+        for(int i=0;i+1<revisions.size();++i) {
+            int edit = REVISIONS - 1 - i;
+            Map<String,String> changes = revisions.get(i + 1).getSnapshot().changesTo(revisions.get(i).getSnapshot());
+            assertEquals( Collections.singletonMap("mqtt_key_" + (edit * 397 % KEYS),"edited value " + edit), changes );
+            assertEquals( KEYS, revisions.get(i).getSnapshot().size() );
+        }
+        assertEquals( "value 1 for a typical bridge setting", revisions.get(REVISIONS - 1).getSnapshot().get("mqtt_key_1") );
+    }
+}
@@ -0,0 +1,169 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the properties document model
+ */
+public class PropertiesDocumentTest 
+    extends TestCase
+{
+    private static final String SAMPLE = 
+        "#\n" +
+        "# bridge configuration\n" +
+        "#\n" +
+        "mqtt_address=127.0.0.1\n" +
+        "! another comment style\n" +
+        "mqtt_port : 1883\n" +
+        "\n" +
+        "iot_event_hub_connect_string = HostName=hub;\\\n" +
+        "    SharedAccessKey=abc\n" +
+        "key\\ with\\ spaces=x\\ty\n" +
+        "unicode=caf\\u00e9\n" +
+        "last_no_newline=end";
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PropertiesDocumentTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PropertiesDocumentTest.class );
+    }
+
+    // parse with java.util.Properties for comparison
+    private static Map<String,String> load(String text) throws IOException
+    {
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1)));
+        Map<String,String> map = new LinkedHashMap<String,String>();
+        for(String key : props.stringPropertyNames()) {
+            map.put(key,props.getProperty(key));
+        }
+        return map;
+    }
+
+    private static PropertiesDocument parse(String text)
+    {
+        return PropertiesDocument.parse(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Parsing matches java.util.Properties and keeps the file order
+     */
+    public void testParseMatchesProperties() throws IOException
+    {
+        PropertiesDocument document = parse(SAMPLE);
+        assertEquals( load(SAMPLE), new java.util.HashMap<String,String>(document.toMap()) );
+        assertEquals( "mqtt_address", document.toMap().keySet().iterator().next() );
+        assertEquals( "HostName=hub;SharedAccessKey=abc", document.get("iot_event_hub_connect_string") );
+        assertEquals( "caf\u00e9", document.get("unicode") );
+        assertEquals( SAMPLE.indexOf("mqtt_port"), document.getOffset("mqtt_port") );
+    }
+
+    /**
+     * An unchanged document is written back byte for byte
+     */
+    public void testRoundTrip()
+    {
+        assertEquals( SAMPLE, new String(parse(SAMPLE).toBytes(),StandardCharsets.ISO_8859_1) );
+    }
+
+    /**
+     * A single edit only replaces the value region: comments, order and the other entries are untouched
+     */
+    public void testSpliceSingleValue() throws IOException
+    {
+        PropertiesDocument document = parse(SAMPLE);
+        document.set("mqtt_port","8883");
+        String text = new String(document.toBytes(),StandardCharsets.ISO_8859_1);
+        assertEquals( SAMPLE.replace("mqtt_port : 1883","mqtt_port : 8883"), text );
+
+        // continued lines collapse into one, later offsets follow
+        int offset = document.getOffset("unicode");
+        document.set("iot_event_hub_connect_string","HostName=other");
+        text = new String(document.toBytes(),StandardCharsets.ISO_8859_1);
+        assertTrue( text.contains("iot_event_hub_connect_string = HostName\\=other\nkey\\ with") );
+        assertTrue( document.getOffset("unicode") < offset );
+        assertEquals( text.indexOf("unicode=caf"), document.getOffset("unicode") );
+        assertEquals( load(text), new java.util.HashMap<String,String>(document.toMap()) );
+    }
+
+    /**
+     * Applying a snapshot adds, changes and removes keys
+     */
+    public void testApply() throws IOException
+    {
+        PropertiesDocument document = parse(SAMPLE);
+        Map<String,String> props = document.toMap();
+        props.remove("mqtt_address");
+        props.put("unicode","\u20ac uro");
+        props.put("new key","a:b");
+        assertEquals( 3, document.apply(props) );
+        String text = new String(document.toBytes(),StandardCharsets.ISO_8859_1);
+        assertFalse( text.contains("mqtt_address") );
+        assertTrue( text.contains("# bridge configuration") );
+        assertTrue( text.endsWith("last_no_newline=end\nnew\\ key=a\\:b\n") );
+        assertEquals( load(text), new java.util.HashMap<String,String>(props) );
+    }
+
+    /**
+     * Saves replace the file atomically
+     */
+    public void testAtomicSave() throws IOException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + "/target/properties-document-test");
+        dir.mkdirs();
+        File file = new File(dir,"service.properties");
+        Files.write(file.toPath(),SAMPLE.getBytes(StandardCharsets.ISO_8859_1));
+
+        PropertiesDocument document = PropertiesDocument.load(file.getAbsolutePath());
+        document.set("mqtt_address","10.0.0.1");
+        document.save(file.getAbsolutePath());
+
+        assertEquals( "10.0.0.1", PropertiesDocument.load(file.getAbsolutePath()).get("mqtt_address") );
+        assertEquals( 1, dir.list().length );
+    }
+
+    /**
+     * Reloads re-parse only when the content differs from what was last read or written
+     */
+    public void testReloadSkipsOwnWrites() throws IOException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + "/target/properties-document-reload-test");
+        dir.mkdirs();
+        File file = new File(dir,"reload.properties");
+        Files.write(file.toPath(),SAMPLE.getBytes(StandardCharsets.ISO_8859_1));
+
+        PropertiesDocument document = PropertiesDocument.load(file.getAbsolutePath());
+        assertFalse( document.reload(Files.readAllBytes(file.toPath())) );
+
+        document.set("mqtt_port","8883");
+        document.save(file.getAbsolutePath());
+        assertFalse( document.reload(Files.readAllBytes(file.toPath())) );
+
+        String external = SAMPLE.replace("mqtt_address=127.0.0.1","mqtt_address=192.168.1.1");
+        assertTrue( document.reload(external.getBytes(StandardCharsets.ISO_8859_1)) );
+        assertEquals( "192.168.1.1", document.get("mqtt_address") );
+        assertEquals( "1883", document.get("mqtt_port") );
+    }
+}
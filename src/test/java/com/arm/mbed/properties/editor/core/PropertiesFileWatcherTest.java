@@ -0,0 +1,70 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the property file watcher
+ */
+public class PropertiesFileWatcherTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PropertiesFileWatcherTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PropertiesFileWatcherTest.class );
+    }
+
+    /**
+     * Atomic replacements of a watched file are reported, other files in the directory are not
+     */
+    public void testAtomicReplaceIsReported() throws IOException, InterruptedException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + "/target/properties-watcher-test");
+        dir.mkdirs();
+        final File file = new File(dir,"service.properties");
+        Files.write(file.toPath(),"a=1\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        final CountDownLatch changed = new CountDownLatch(1);
+        final String[] reported = new String[1];
+        PropertiesFileWatcher watcher = new PropertiesFileWatcher(50);
+        watcher.watch(file.getAbsolutePath(),new PropertiesFileWatcher.Listener() {
+            @Override
+            public void fileChanged(String fq_filename) {
+                reported[0] = fq_filename;
+                changed.countDown();
+            }
+        });
+        watcher.start();
+        try {
+            Files.write(new File(dir,"other.properties").toPath(),"b=2\n".getBytes(StandardCharsets.ISO_8859_1));
+            Utils.atomicWrite(file.getAbsolutePath(),"a=2\n".getBytes(StandardCharsets.ISO_8859_1));
+
+            // polling WatchService implementations can take several seconds
+            assertTrue( changed.await(30,TimeUnit.SECONDS) );
+            assertEquals( file.getAbsoluteFile().toPath().normalize().toString(), reported[0] );
+        }
+        finally {
+            watcher.stop();
+        }
+    }
+}
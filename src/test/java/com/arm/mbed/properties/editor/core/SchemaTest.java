@@ -0,0 +1,174 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the schema
+ */
+public class SchemaTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public SchemaTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( SchemaTest.class );
+    }
+
+    // a small schema
+    private static Schema schema()
+    {
+        Map<String,String> definitions = new LinkedHashMap<String,String>();
+        definitions.put("mqtt_port.label","MQTT Port");
+        definitions.put("mqtt_port.type","int");
+        definitions.put("mqtt_port.min","1");
+        definitions.put("mqtt_port.max","65535");
+        definitions.put("mqtt_use_ssl.type","boolean");
+        definitions.put("mqtt_version.values","3.1; 3.1.1");
+        definitions.put("aws_iot_region.pattern","[a-z]+-[a-z]+-[0-9]");
+        definitions.put("ratio.type","number");
+        definitions.put("*_interval_ms.type","int");
+        definitions.put("*_interval_ms.min","1");
+        definitions.put("*_interval_ms.group","Timing");
+        definitions.put("slow_interval_ms.min","1000");
+        definitions.put("mqtt_port.color","blue");
+        definitions.put("broken.type","color");
+        definitions.put("broken.min","ten");
+        definitions.put("*_key.secret","true");
+        definitions.put("public_token.secret","false");
+        definitions.put("broken.secret","maybe");
+        return Schema.compile(definitions);
+    }
+
+    /**
+     * Types, ranges, allowed values and patterns are checked... removals and keys without a definition always pass
+     */
+    public void testValidate()
+    {
+        Schema schema = schema();
+        assertNull( schema.validate("mqtt_port","1883") );
+        assertEquals( "expected an integer", schema.validate("mqtt_port","http") );
+        assertEquals( "must be at least 1", schema.validate("mqtt_port","0") );
+        assertEquals( "must be at most 65535", schema.validate("mqtt_port","65536") );
+        assertNull( schema.validate("mqtt_use_ssl","TRUE") );
+        assertEquals( "expected true or false", schema.validate("mqtt_use_ssl","yes") );
+        assertNull( schema.validate("mqtt_version","3.1.1") );
+        assertEquals( "must be one of: 3.1, 3.1.1", schema.validate("mqtt_version","5") );
+        assertNull( schema.validate("aws_iot_region","us-east-1") );
+        assertEquals( "must match: [a-z]+-[a-z]+-[0-9]", schema.validate("aws_iot_region","us-east-1x") );
+        assertNull( schema.validate("ratio","0.5") );
+        assertEquals( "expected a number", schema.validate("ratio","NaN") );
+        assertNull( schema.validate("mqtt_port",null) );
+        assertNull( schema.validate("anything","goes") );
+        assertEquals( "int, 1 - 65535", schema.getRule("mqtt_port").getDescription() );
+        assertEquals( "", schema.getRule("anything").getDescription() );
+    }
+
+    /**
+     * A key's own attributes win over the pattern's, the rest comes from the pattern... invalid attributes are ignored
+     */
+    public void testPatterns()
+    {
+        Schema schema = schema();
+        assertEquals( "must be at least 1", schema.validate("fast_interval_ms","0") );
+        assertEquals( "must be at least 1000", schema.validate("slow_interval_ms","999") );
+        assertEquals( "expected an integer", schema.validate("slow_interval_ms","1000.5") );
+        assertEquals( "Timing", schema.getRule("slow_interval_ms").getGroup() );
+        assertNull( schema.getRule("slow_interval_ms").getLabel() );
+        assertNull( schema.validate("broken","anything") );
+        assertEquals( "MQTT Port", schema.getLabels().get("mqtt_port") );
+        assertEquals( 1, schema.getLabels().size() );
+        assertSame( schema.getRule("fast_interval_ms"), schema.getRule("fast_interval_ms") );
+    }
+
+    /**
+     * Checking a set of updates reports every invalid value (in order)
+     */
+    public void testCheck()
+    {
+        Schema schema = schema();
+        Map<String,String> updates = new LinkedHashMap<String,String>();
+        updates.put("mqtt_use_ssl","true");
+        schema.check(updates);
+        updates.put("mqtt_port","0");
+        updates.put("removed",null);
+        updates.put("mqtt_version","4");
+        try {
+            schema.check(updates);
+            fail("invalid updates accepted");
+        }
+        catch (Schema.ValidationException ex) {
+            assertEquals( Arrays.asList("mqtt_port","mqtt_version"), Arrays.asList(ex.getErrors().keySet().toArray()) );
+            assertEquals( "must be at least 1", ex.getErrors().get("mqtt_port") );
+        }
+    }
+
+    /**
+     * Secret keys: as declared, otherwise those naming a password, secret or token
+     */
+    public void testSecret()
+    {
+        Schema schema = schema();
+        assertTrue( schema.isSecret("api_key") );
+        assertFalse( schema.isSecret("public_token") );
+        assertTrue( schema.isSecret("Admin_Password") );
+        assertTrue( schema.isSecret("aws_iot_secret_access_key") );
+        assertTrue( schema.isSecret("mds_api_token") );
+        assertFalse( schema.isSecret("mqtt_port") );
+        assertFalse( schema.isSecret("broken") );
+        assertNull( schema.getRule("mqtt_port").getSecret() );
+
+        // the shipped schema
+        schema = Schema.load(Utils.getWorkingDirectory() + "/conf/schema.properties");
+        String[] secrets = { "api_key", "iotf_api_key", "google_cloud_auth_json", "mqtt_password", "iot_event_hub_sas_token", "iotf_auth_token", "mds_api_token", "aws_iot_secret_access_key" };
+        for(String key : secrets) {
+            assertTrue( key, schema.isSecret(key) );
+        }
+        assertFalse( schema.isSecret("mqtt_port") );
+        assertFalse( schema.isSecret("aws_iot_region") );
+    }
+
+    /**
+     * The shipped schema loads with every label and accepts the shipped properties
+     */
+    public void testShippedSchema()
+    {
+        Schema schema = Schema.load(Utils.getWorkingDirectory() + "/conf/schema.properties");
+        assertEquals( 56, schema.getLabels().size() );
+        assertEquals( "MQTT Broker Port", schema.getLabels().get("mqtt_port") );
+        assertEquals( "expected true or false", schema.validate("mqtt_use_ssl","maybe") );
+        assertEquals( "must be at most 65535", schema.validate("mqtt_port","70000") );
+        assertEquals( "Health Checks", schema.getRule("webhook_validator_interval_ms").getGroup() );
+        assertTrue( Schema.load(Utils.getWorkingDirectory() + "/conf/no-such-schema.properties").getLabels().isEmpty() );
+    }
+
+    /**
+     * Validating a value is a cached rule lookup plus its checks (SchemaBenchmark measures it)
+     */
+    public void testRuleCache()
+    {
+        Schema schema = Schema.load(Utils.getWorkingDirectory() + "/conf/schema.properties");
+        String[][] checks = { { "mqtt_port", "1883" }, { "mqtt_use_ssl", "true" }, { "webhook_validator_interval_ms", "60000" }, { "mqtt_client_id", "client" } };
+        for(String[] check : checks) {
+            assertNull( check[0], schema.validate(check[0],check[1]) );
+            assertSame( schema.getRule(check[0]), schema.getRule(check[0]) );
+        }
+        assertEquals( "must be at least 1", schema.validate("webhook_validator_interval_ms","0") );
+    }
+}
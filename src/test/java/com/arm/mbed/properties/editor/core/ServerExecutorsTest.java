@@ -0,0 +1,138 @@
+package com.arm.mbed.properties.editor.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the request executors
+ */
+public class ServerExecutorsTest 
+    extends TestCase
+{
+    private static final long SLOW_REQUEST_MS = 2000;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ServerExecutorsTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ServerExecutorsTest.class );
+    }
+
+    // issue a GET and return the response code
+    private static int get(int port,String path) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)new URL("http://127.0.0.1:" + port + path).openConnection();
+        int code = connection.getResponseCode();
+        InputStream input = connection.getInputStream();
+        while (input.read() >= 0) { }
+        input.close();
+        return code;
+    }
+
+    // run the slow/fast scenario and return how long the fast request took
+    private static long fastRequestMillisWhileSlowRunning(ExecutorService executor) throws Exception
+    {
+        final CountDownLatch slow_started = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1",0),0);
+        server.createContext("/",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange t) throws IOException {
+                if (t.getRequestURI().getPath().equals("/slow")) {
+                    slow_started.countDown();
+                    try {
+                        Thread.sleep(SLOW_REQUEST_MS);
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                t.sendResponseHeaders(200,-1);
+                t.close();
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        final int port = server.getAddress().getPort();
+        try {
+            Thread slow = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        get(port,"/slow");
+                    }
+                    catch (IOException ex) {
+                        // ignored
+                    }
+                }
+            };
+            slow.start();
+            assertTrue( slow_started.await(5,TimeUnit.SECONDS) );
+
+            long start = System.nanoTime();
+            assertEquals( 200, get(port,"/fast") );
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            slow.join();
+            return elapsed;
+        }
+        finally {
+            server.stop(0);
+            ServerExecutors.shutdown(executor,1);
+        }
+    }
+
+    /**
+     * A fast request is served while a slow one is in progress (fixed pool)
+     */
+    public void testFixedPoolDoesNotSerialize() throws Exception
+    {
+        ExecutorService executor = ServerExecutors.create(ServerExecutors.EXECUTOR_FIXED,4,0);
+        assertNotNull( executor );
+        long elapsed = fastRequestMillisWhileSlowRunning(executor);
+        assertTrue( "fast request took " + elapsed + "ms", elapsed < SLOW_REQUEST_MS / 2 );
+    }
+
+    /**
+     * A fast request is served while a slow one is in progress (bounded pool)
+     */
+    public void testBoundedPoolDoesNotSerialize() throws Exception
+    {
+        ExecutorService executor = ServerExecutors.create(ServerExecutors.EXECUTOR_BOUNDED,2,4);
+        long elapsed = fastRequestMillisWhileSlowRunning(executor);
+        assertTrue( "fast request took " + elapsed + "ms", elapsed < SLOW_REQUEST_MS / 2 );
+    }
+
+    /**
+     * Virtual threads are used when available, a pool otherwise... "none" keeps the dispatcher thread
+     */
+    public void testExecutorTypes() throws Exception
+    {
+        ExecutorService executor = ServerExecutors.create(ServerExecutors.EXECUTOR_VIRTUAL,2,0);
+        assertNotNull( executor );
+        ServerExecutors.shutdown(executor,1);
+        assertTrue( executor.isShutdown() );
+        assertNull( ServerExecutors.create(ServerExecutors.EXECUTOR_NONE,2,0) );
+    }
+}
@@ -0,0 +1,89 @@
+package com.arm.mbed.properties.editor.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the session tokens and the verified credentials cache
+ */
+public class SessionTokensTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public SessionTokensTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( SessionTokensTest.class );
+    }
+
+    /**
+     * Issued tokens validate... tampered, unknown and revoked ones do not
+     */
+    public void testTokens()
+    {
+        SessionTokens sessions = new SessionTokens(10,60);
+        String token = sessions.issue("admin");
+        assertEquals( "admin", sessions.validate(token) );
+        assertEquals( 1, sessions.getSessionHits() );
+
+        // tampered MAC, tampered expiry, garbage
+        String tampered = token.substring(0,token.length() - 1) + (token.endsWith("0") ? "1" : "0");
+        assertNull( sessions.validate(tampered) );
+        String[] parts = token.split("\\.");
+        assertNull( sessions.validate(parts[0] + ".ffffffffffff." + parts[2]) );
+        assertNull( sessions.validate("nonsense") );
+        assertNull( sessions.validate(null) );
+
+        // a token from another process (key) does not validate
+        assertNull( new SessionTokens(10,60).validate(token) );
+
+        // revoked
+        sessions.clear();
+        assertNull( sessions.validate(token) );
+        assertEquals( 0, sessions.size() );
+    }
+
+    /**
+     * The session table is bounded (least recently used sessions are evicted)
+     */
+    public void testBounded()
+    {
+        SessionTokens sessions = new SessionTokens(3,60);
+        String first = sessions.issue("admin");
+        String second = sessions.issue("admin");
+        sessions.issue("admin");
+        assertEquals( "admin", sessions.validate(first) );
+        sessions.issue("admin");
+        assertEquals( 3, sessions.size() );
+        assertNull( sessions.validate(second) );
+        assertEquals( "admin", sessions.validate(first) );
+    }
+
+    /**
+     * Verified credentials are remembered (keyed by user and password) and revoked with the sessions
+     */
+    public void testVerifiedCredentials()
+    {
+        SessionTokens sessions = new SessionTokens(10,60);
+        assertFalse( sessions.isVerified("admin","admin") );
+        sessions.setVerified("admin","admin");
+        assertTrue( sessions.isVerified("admin","admin") );
+        assertFalse( sessions.isVerified("admin","other") );
+        assertFalse( sessions.isVerified("other","admin") );
+        assertEquals( 1, sessions.getCredentialHits() );
+        sessions.clear();
+        assertFalse( sessions.isVerified("admin","admin") );
+    }
+}
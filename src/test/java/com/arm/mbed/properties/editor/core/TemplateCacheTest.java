@@ -0,0 +1,89 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the template cache
+ */
+public class TemplateCacheTest 
+    extends TestCase
+{
+    private static final String ROOT = "/target/template-cache-test/";
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TemplateCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TemplateCacheTest.class );
+    }
+
+    // write a template file under the test root
+    private File writeTemplate(String filename,String contents) throws IOException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + ROOT);
+        dir.mkdirs();
+        File file = new File(dir,filename);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    /**
+     * Templates are read once and then served from memory
+     */
+    public void testHitsAfterFirstLoad() throws IOException
+    {
+        this.writeTemplate("hits.tpl","<p>hello</p>");
+        TemplateCache cache = new TemplateCache();
+        assertEquals( "<p>hello</p>", cache.get(ROOT,"hits.tpl") );
+        assertEquals( "<p>hello</p>", cache.get(ROOT,"hits.tpl") );
+        assertEquals( "<p>hello</p>", cache.get(ROOT,"hits.tpl") );
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 2, cache.getHits() );
+    }
+
+    /**
+     * A changed template (size/mtime) is reloaded, as is an invalidated one
+     */
+    public void testReloadOnChangeAndInvalidate() throws IOException
+    {
+        File file = this.writeTemplate("reload.tpl","one");
+        TemplateCache cache = new TemplateCache();
+        assertEquals( "one", cache.get(ROOT,"reload.tpl") );
+
+        this.writeTemplate("reload.tpl","three");
+        file.setLastModified(file.lastModified() + 2000);
+        assertEquals( "three", cache.get(ROOT,"reload.tpl") );
+        assertEquals( 2, cache.getMisses() );
+
+        cache.invalidate(ROOT,"reload.tpl");
+        assertEquals( "three", cache.get(ROOT,"reload.tpl") );
+        assertEquals( 3, cache.getMisses() );
+    }
+
+    /**
+     * Missing templates are reported as NULL
+     */
+    public void testMissingTemplate()
+    {
+        TemplateCache cache = new TemplateCache();
+        assertNull( cache.get(ROOT,"does-not-exist.tpl") );
+    }
+}
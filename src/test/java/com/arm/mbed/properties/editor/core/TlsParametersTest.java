@@ -0,0 +1,202 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the TLS parameters
+ */
+public class TlsParametersTest 
+    extends TestCase
+{
+    private static final String KEYSTORE = "mdsconfigurator.jks";
+    private static final char[] PASSWORD = "arm1234".toCharArray();
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TlsParametersTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TlsParametersTest.class );
+    }
+
+    // the server context (from the sample keystore)
+    private static SSLContext serverContext() throws Exception
+    {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        FileInputStream fis = new FileInputStream(Utils.getWorkingDirectory() + "/" + KEYSTORE);
+        try {
+            ks.load(fis,PASSWORD);
+        }
+        finally {
+            fis.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks,PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(),null,null);
+        return context;
+    }
+
+    // a client context trusting anything (the sample certificate is self signed and expired)
+    private static SSLContext clientContext() throws Exception
+    {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null,new TrustManager[] { new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain,String auth_type) {
+            }
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain,String auth_type) {
+            }
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }},null);
+        return context;
+    }
+
+    // run a handshake between two engines in memory (plus one application record so TLS 1.3 tickets are delivered)
+    private static void handshake(SSLEngine client,SSLEngine server) throws Exception
+    {
+        int size = Math.max(client.getSession().getPacketBufferSize(),server.getSession().getPacketBufferSize());
+        int app_size = Math.max(client.getSession().getApplicationBufferSize(),server.getSession().getApplicationBufferSize());
+        ByteBuffer to_server = ByteBuffer.allocate(size);
+        ByteBuffer to_client = ByteBuffer.allocate(size);
+        ByteBuffer client_in = ByteBuffer.allocate(app_size);
+        ByteBuffer server_in = ByteBuffer.allocate(app_size);
+        ByteBuffer request = ByteBuffer.wrap("GET".getBytes("UTF-8"));
+        ByteBuffer response = ByteBuffer.wrap("OK".getBytes("UTF-8"));
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        client.beginHandshake();
+        server.beginHandshake();
+        for(int i = 0; i < 1000 && (request.hasRemaining() || response.hasRemaining() || client_in.position() < 2); ++i) {
+            TlsParametersTest.step(client,request,to_server);
+            TlsParametersTest.step(server,server_in.position() > 0 ? response : empty,to_client);
+            TlsParametersTest.unwrap(server,to_server,server_in);
+            TlsParametersTest.unwrap(client,to_client,client_in);
+        }
+        assertEquals( SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING, client.getHandshakeStatus() );
+        assertEquals( 2, client_in.position() );
+    }
+
+    // produce (handshake or application) records and run any delegated tasks
+    private static void step(SSLEngine engine,ByteBuffer out,ByteBuffer net) throws Exception
+    {
+        SSLEngineResult result;
+        do {
+            result = engine.wrap(out,net);
+            TlsParametersTest.runTasks(engine);
+        } while (result.bytesProduced() > 0 && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP);
+    }
+
+    // consume the peer's records
+    private static void unwrap(SSLEngine engine,ByteBuffer net,ByteBuffer in) throws Exception
+    {
+        net.flip();
+        SSLEngineResult result;
+        do {
+            result = engine.unwrap(net,in);
+            TlsParametersTest.runTasks(engine);
+        } while (net.hasRemaining() && result.bytesConsumed() > 0);
+        net.compact();
+    }
+
+    // delegated tasks (certificate checks, key generation)
+    private static void runTasks(SSLEngine engine)
+    {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    // one connection: a server engine configured like Main does it and a client engine for host:port
+    private static SSLEngine[] connect(SSLContext server_context,SSLParameters parameters,SSLContext client_context,int port) throws Exception
+    {
+        SSLEngine server = server_context.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setSSLParameters(parameters);
+        SSLEngine client = client_context.createSSLEngine("localhost",port);
+        client.setUseClientMode(true);
+        TlsParametersTest.handshake(client,server);
+        return new SSLEngine[] { client, server };
+    }
+
+    /**
+     * Allowlists keep the supported entries in order... and fall back to the defaults when nothing usable is left
+     */
+    public void testAllowlists() throws Exception
+    {
+        SSLContext context = serverContext();
+        SSLParameters parameters = TlsParameters.create(context,"TLSv1.2; TLSv9.9 ;TLSv1.3",null);
+        assertEquals( Arrays.asList("TLSv1.2","TLSv1.3"), Arrays.asList(parameters.getProtocols()) );
+        assertEquals( Arrays.asList(context.getDefaultSSLParameters().getCipherSuites()), Arrays.asList(parameters.getCipherSuites()) );
+        assertFalse( parameters.getNeedClientAuth() );
+
+        parameters = TlsParameters.create(context,"SSLv9",null);
+        assertEquals( Arrays.asList(context.getDefaultSSLParameters().getProtocols()), Arrays.asList(parameters.getProtocols()) );
+
+        String suite = context.getDefaultSSLParameters().getCipherSuites()[0];
+        parameters = TlsParameters.create(context,"TLSv1.3","NO_SUCH_SUITE;" + suite);
+        assertEquals( Arrays.asList(suite), Arrays.asList(parameters.getCipherSuites()) );
+    }
+
+    /**
+     * Session cache settings are applied to the server session context
+     */
+    public void testSessionSettings() throws Exception
+    {
+        SSLContext context = serverContext();
+        TlsParameters.configureSessions(context,123,456);
+        assertEquals( 123, context.getServerSessionContext().getSessionCacheSize() );
+        assertEquals( 456, context.getServerSessionContext().getSessionTimeout() );
+    }
+
+    /**
+     * Resumption works with the computed parameters (TlsBenchmark measures full against resumed handshakes)
+     */
+    public void testResumption() throws Exception
+    {
+        SSLContext server_context = serverContext();
+        TlsParameters.configureSessions(server_context,TlsParameters.DEFAULT_SESSION_CACHE_SIZE,TlsParameters.DEFAULT_SESSION_TIMEOUT_SEC);
+        for(String protocol : new String[] { "TLSv1.3", "TLSv1.2" }) {
+            SSLParameters parameters = TlsParameters.create(server_context,protocol,null);
+            SSLContext client_context = clientContext();
+
+            // the second connection to the same peer is resumed... a new peer is not
+            SSLEngine[] first = connect(server_context,parameters,client_context,1);
+            SSLEngine[] second = connect(server_context,parameters,client_context,1);
+            SSLEngine[] other = connect(server_context,parameters,client_context,2);
+            assertEquals( protocol, second[1].getSession().getProtocol() );
+            if (protocol.equals("TLSv1.2")) {
+                assertTrue( Arrays.equals(first[0].getSession().getId(),second[0].getSession().getId()) );
+                assertFalse( Arrays.equals(first[0].getSession().getId(),other[0].getSession().getId()) );
+            }
+        }
+    }
+}
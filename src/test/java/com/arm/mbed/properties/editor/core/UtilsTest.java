@@ -0,0 +1,141 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the query string and base64 decoding utilities
+ */
+public class UtilsTest
+    extends TestCase
+{
+    // length of the edited value decoded (characters)
+    private static final int VALUE_LENGTH = 8192;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public UtilsTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( UtilsTest.class );
+    }
+
+    // a value as the page sends it: base64 of the UTF-8 text, then URL encoded
+    private static String encode(String value) throws Exception
+    {
+        return URLEncoder.encode(Utils.base64_encode(value.getBytes(StandardCharsets.UTF_8)),"UTF-8");
+    }
+
+    /**
+     * Raw queries are percent-decoded (UTF-8, '+' is a space) and values keep any '='
+     */
+    public void testParseQuery()
+    {
+        Map<String,String> query = Utils.parseQuery("a=1&b=x%3Dy%26z&c=&d&e=a+b&f=%E2%82%AC%zz%4&g=k=v&h%5B%5D=2&&=x",null);
+        assertEquals( "1", query.get("a") );
+        assertEquals( "x=y&z", query.get("b") );
+        assertEquals( "", query.get("c") );
+        assertEquals( "", query.get("d") );
+        assertEquals( "a b", query.get("e") );
+        assertEquals( "€%zz%4", query.get("f") );
+        assertEquals( "k=v", query.get("g") );
+        assertEquals( "2", query.get("h[]") );
+        assertEquals( 8, query.size() );
+
+        // unencoded non ASCII characters (a surrogate pair too) and malformed UTF-8
+        query = Utils.parseQuery("name=café+%F0%9F%98%80😀&bad=%FF",null);
+        assertEquals( "café 😀😀", query.get("name") );
+        assertEquals( "�", query.get("bad") );
+
+        assertTrue( Utils.parseQuery(null,null).isEmpty() );
+        assertTrue( Utils.parseQuery("",null).isEmpty() );
+    }
+
+    /**
+     * The base64 parameter is percent-decoded and base64 decoded in the same pass ('+' stays a base64 character)
+     */
+    public void testBase64Parameter() throws Exception
+    {
+        // "?>?>" encodes to "Pz4/Pg==" and "ûï>>" to "w7vDrz4+Pg=="... '/', '+' and padding
+        String[] values = { "", "a", "?>?>", "ûï>>", "key=value&other", "café € 😀" };
+        for(String value : values) {
+            String encoded = UtilsTest.encode(value);
+            Map<String,String> query = Utils.parseQuery("updated_key=k&updated_value=" + encoded + "&file=f%20g","updated_value");
+            assertEquals( value, query.get("updated_value") );
+            assertEquals( "f g", query.get("file") );
+            assertEquals( value, Utils.urlsafe_base64_decode(encoded) );
+
+            // unencoded base64 decodes the same
+            assertEquals( value, Utils.parseQuery("updated_value=" + Utils.base64_encode(value.getBytes(StandardCharsets.UTF_8)),"updated_value").get("updated_value") );
+        }
+        assertNull( Utils.urlsafe_base64_decode(null) );
+
+        // only the named parameter is base64 decoded
+        assertEquals( "YQ==", Utils.parseQuery("other=YQ%3D%3D&updated_value=YQ%3D%3D","updated_value").get("other") );
+    }
+
+    /**
+     * base64 encode/decode round trips all byte values and skips anything outside the alphabet
+     */
+    public void testBase64() throws Exception
+    {
+        Random random = new Random(42);
+        for(int length=0;length<100;++length) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = Utils.base64_encode(data);
+            assertEquals( java.util.Base64.getEncoder().encodeToString(data), encoded );
+            assertTrue( Arrays.equals(data,Utils.base64_decode(encoded)) );
+        }
+        assertEquals( "hello", new String(Utils.base64_decode(" aGVs\nbG8=é "),StandardCharsets.UTF_8) );
+        assertEquals( "ûï", new String(Utils.base64_decode("w7vDrw"),StandardCharsets.UTF_8) );
+    }
+
+    /**
+     * Decoded (already) query strings split on the first '=' only
+     */
+    public void testQueryToMap()
+    {
+        Map<String,String> query = Utils.queryToMap("a=b=c&d&e=");
+        assertEquals( "b=c", query.get("a") );
+        assertEquals( "", query.get("d") );
+        assertEquals( "", query.get("e") );
+        assertEquals( 3, query.size() );
+        assertTrue( Utils.queryToMap(null).isEmpty() );
+    }
+
+    /**
+     * A multi-KB edit decodes in one pass (UtilsBenchmark.parseEditQuery measures its time and allocation)
+     */
+    public void testDecodeLargeEdit() throws Exception
+    {
+        StringBuilder value = new StringBuilder();
+        while (value.length() < VALUE_LENGTH) {
+            value.append("mqtt://broker.example.com:1883/topic_\u00e9").append(value.length()).append(' ');
+        }
+        String expected = value.substring(0,VALUE_LENGTH);
+        String raw_query = "updated_key=mqtt_client_id&updated_value=" + UtilsTest.encode(expected) + "&file=service.properties&new_key=";
+        Map<String,String> query = Utils.parseQuery(raw_query,"updated_value");
+        assertEquals( expected, query.get("updated_value") );
+        assertEquals( "mqtt_client_id", query.get("updated_key") );
+        assertEquals( "service.properties", query.get("file") );
+        assertEquals( "", query.get("new_key") );
+        assertEquals( 4, query.size() );
+    }
+}
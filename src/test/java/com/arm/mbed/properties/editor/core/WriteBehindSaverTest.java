@@ -0,0 +1,173 @@
+package com.arm.mbed.properties.editor.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the write-behind saver
+ */
+public class WriteBehindSaverTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public WriteBehindSaverTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( WriteBehindSaverTest.class );
+    }
+
+    // records each persisted snapshot
+    private static class RecordingPersister implements WriteBehindSaver.Persister
+    {
+        protected final List<PropertiesSnapshot> m_written = Collections.synchronizedList(new ArrayList<PropertiesSnapshot>());
+
+        @Override
+        public boolean persist(PropertiesSnapshot snapshot) {
+            this.m_written.add(snapshot);
+            return true;
+        }
+    }
+
+    // fails the first writes, then records like RecordingPersister
+    private static class FailingPersister extends RecordingPersister
+    {
+        private int m_failures;
+
+        private FailingPersister(int failures) {
+            this.m_failures = failures;
+        }
+
+        @Override
+        public synchronized boolean persist(PropertiesSnapshot snapshot) {
+            if (this.m_failures > 0) {
+                --this.m_failures;
+                return false;
+            }
+            return super.persist(snapshot);
+        }
+    }
+
+    // wait (up to 5s) for the persister to have written
+    private static void awaitWrites(RecordingPersister persister,int writes) throws InterruptedException
+    {
+        for(int i=0;i<100 && persister.m_written.size() < writes;++i) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * A failed write stays pending and is retried (write-through and write-behind)
+     */
+    public void testRetriesFailedWrite() throws Exception
+    {
+        for(long debounce_ms : new long[] { 0, 50 }) {
+            FailingPersister persister = new FailingPersister(1);
+            WriteBehindSaver saver = new WriteBehindSaver("test",persister,debounce_ms,debounce_ms);
+            PropertiesStore store = new PropertiesStore();
+            PropertiesSnapshot snapshot = store.put("mqtt_port","8883");
+            saver.save(snapshot);
+            if (debounce_ms > 0) {
+                assertFalse( saver.flush() );
+            }
+            assertEquals( 0, persister.m_written.size() );
+            assertTrue( saver.hasPending() );
+            assertEquals( 1, saver.getFailedWrites() );
+
+            // the retry writes it
+            awaitWrites(persister,1);
+            assertEquals( 1, persister.m_written.size() );
+            assertSame( snapshot, persister.m_written.get(0) );
+            assertFalse( saver.hasPending() );
+            assertEquals( 1, saver.getWrites() );
+            saver.shutdown();
+        }
+
+        // a newer snapshot arriving before the retry is the one written
+        FailingPersister persister = new FailingPersister(1);
+        WriteBehindSaver saver = new WriteBehindSaver("test",persister,0,0);
+        PropertiesStore store = new PropertiesStore();
+        saver.save(store.put("a","1"));
+        PropertiesSnapshot newer = store.put("b","2");
+        saver.save(newer);
+        assertFalse( saver.hasPending() );
+        Thread.sleep(500);
+        assertEquals( 1, persister.m_written.size() );
+        assertSame( newer, persister.m_written.get(0) );
+        saver.shutdown();
+    }
+
+    /**
+     * Edits inside the debounce window are coalesced into one write of the latest snapshot
+     */
+    public void testCoalescesEdits() throws Exception
+    {
+        RecordingPersister persister = new RecordingPersister();
+        WriteBehindSaver saver = new WriteBehindSaver("test",persister,200,5000);
+        PropertiesStore store = new PropertiesStore();
+        for(int i=0;i<10;++i) {
+            saver.save(store.put("key_" + i,"value"));
+        }
+        assertEquals( 0, persister.m_written.size() );
+
+        Thread.sleep(1000);
+        assertEquals( 1, persister.m_written.size() );
+        assertEquals( 10, persister.m_written.get(0).size() );
+        assertEquals( 1, saver.getWrites() );
+        saver.shutdown();
+    }
+
+    /**
+     * flush() writes synchronously, unchanged content is not rewritten
+     */
+    public void testFlushAndSkipUnchanged()
+    {
+        RecordingPersister persister = new RecordingPersister();
+        WriteBehindSaver saver = new WriteBehindSaver("test",persister,60000,60000);
+        PropertiesStore store = new PropertiesStore();
+        saver.setPersisted(store.put("mqtt_port","1883"));
+
+        // same content as on disk
+        saver.save(store.put("mqtt_port","1883"));
+        assertFalse( saver.flush() );
+        assertEquals( 1, saver.getSkippedWrites() );
+
+        // changed content
+        saver.save(store.put("mqtt_port","1884"));
+        assertTrue( saver.flush() );
+        assertEquals( 1, persister.m_written.size() );
+        assertEquals( "1884", persister.m_written.get(0).get("mqtt_port") );
+
+        // nothing pending
+        assertFalse( saver.flush() );
+        saver.shutdown();
+    }
+
+    /**
+     * Without a debounce window every save is written immediately
+     */
+    public void testWriteThrough()
+    {
+        RecordingPersister persister = new RecordingPersister();
+        WriteBehindSaver saver = new WriteBehindSaver("test",persister,0,0);
+        PropertiesStore store = new PropertiesStore();
+        saver.save(store.put("a","1"));
+        saver.save(store.put("b","2"));
+        assertEquals( 2, persister.m_written.size() );
+        saver.shutdown();
+    }
+}
@@ -0,0 +1,211 @@
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.PropertiesSnapshot;
+import com.arm.mbed.properties.editor.core.PropertiesStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the configuration table renderer
+ */
+public class ConfigTableRendererTest 
+    extends TestCase
+{
+    // page size for the paged renders
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ConfigTableRendererTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ConfigTableRendererTest.class );
+    }
+
+    // build a synthetic properties set
+    private static PropertiesSnapshot createProperties(int count, List<String> keys)
+    {
+        Properties props = new Properties();
+        for(int i=0;i<count;++i) {
+            String key = "mqtt_key_" + i;
+            props.put(key,"value_" + i + "_some_typical_length_config_value");
+            keys.add(key);
+        }
+        return new PropertiesStore().replace(props);
+    }
+
+    /**
+     * Keys, labels and values are escaped in the rendered cells
+     */
+    public void testEscaping()
+    {
+        HashMap<String,String> labels = new HashMap<String,String>();
+        labels.put("k'1","Label <b>");
+        Properties props = new Properties();
+        props.put("k'1","{\"a\":\"<script>&\"}");
+        ConfigTableRenderer renderer = new ConfigTableRenderer(labels);
+        String table = renderer.render(new PropertiesStore().replace(props),Arrays.asList("k'1"),"service.properties",true);
+        assertTrue( table.contains(">Label &lt;b&gt;</td>") );
+        assertTrue( table.contains(">{&quot;a&quot;:&quot;&lt;script&gt;&amp;&quot;}</td>") );
+        assertTrue( table.contains("id=\"k&#39;1\"") );
+        assertTrue( table.contains("onclick=\"saveData('k\\&#39;1','service.properties')\"") );
+        assertFalse( table.contains("<script>") );
+    }
+
+    /**
+     * Filtered keys missing from the properties render as "null" (as before)
+     */
+    public void testMissingValue()
+    {
+        ConfigTableRenderer renderer = new ConfigTableRenderer(null);
+        String table = renderer.render(new PropertiesStore().snapshot(),Arrays.asList("missing"),"service.properties",false);
+        assertTrue( table.contains("contenteditable=\"false\">missing</td>") );
+        assertTrue( table.contains("width=\"auto\">null</td>") );
+    }
+
+    /**
+     * The empty slot renders its placeholder value
+     */
+    public void testEmptySlot()
+    {
+        ConfigTableRenderer renderer = new ConfigTableRenderer(null);
+        renderer.setEmptySlot("New_Key_Goes_Here","New_Value_Goes_Here");
+        String table = renderer.render(new PropertiesStore().snapshot(),Arrays.asList("New_Key_Goes_Here"),"service.properties",true);
+        assertTrue( table.contains("width=\"auto\">New_Value_Goes_Here</td>") );
+    }
+
+    /**
+     * Large property sets render every row, in order (their render time and allocation are measured by RenderBenchmark)
+     */
+    public void testLargePropertySets()
+    {
+        ConfigTableRenderer renderer = new ConfigTableRenderer(new HashMap<String,String>());
+        List<String> small_keys = new ArrayList<String>();
+        String small_table = renderer.render(createProperties(10000,small_keys),small_keys,"service.properties",true);
+        List<String> large_keys = new ArrayList<String>();
+        String large_table = renderer.render(createProperties(50000,large_keys),large_keys,"service.properties",true);
+        assertTrue( large_table.length() > 4 * small_table.length() );
+        assertTrue( large_table.indexOf("id=\"mqtt_key_0\"") < large_table.indexOf("id=\"mqtt_key_25000\"") );
+        assertTrue( large_table.indexOf("id=\"mqtt_key_25000\"") < large_table.indexOf("id=\"mqtt_key_49999\"") );
+        assertTrue( large_table.contains(">value_49999_some_typical_length_config_value<") );
+    }
+
+    // render a page of a view
+    private static String renderPage(ConfigTableRenderer renderer,PropertiesSnapshot props,List<String> keys,String query) throws java.io.IOException
+    {
+        StringBuilder out = new StringBuilder();
+        renderer.renderPage(out,props,keys,"service.properties",true,true,TableView.fromQuery(query,10,50));
+        return out.toString();
+    }
+
+    /**
+     * Views are parsed from the raw query: clamped sizes, unknown sorts ignored, encoded filters decoded
+     */
+    public void testTableView()
+    {
+        TableView view = TableView.fromQuery("page=3&page_size=5000&sort=-value&filter=a%26b%3Dc",10,50);
+        assertEquals( 3, view.getPage() );
+        assertEquals( 50, view.getPageSize() );
+        assertEquals( "-value", view.getSort() );
+        assertEquals( "a&b=c", view.getFilter() );
+        assertEquals( "page=2&page_size=50&sort=-value&filter=a%26b%3Dc", view.toQuery(2) );
+
+        TableView defaults = TableView.fromQuery("page=-2&page_size=x&sort=bogus",10,50);
+        assertEquals( 1, defaults.getPage() );
+        assertEquals( 10, defaults.getPageSize() );
+        assertFalse( defaults.isSelective() );
+        assertEquals( "", defaults.toQuery(1) );
+
+        assertTrue( TableView.isViewQuery(Collections.<String,String>emptyMap()) );
+        assertTrue( TableView.isViewQuery(Collections.singletonMap("page","2")) );
+        assertFalse( TableView.isViewQuery(Collections.singletonMap("updated_key","k")) );
+    }
+
+    /**
+     * Pages hold only their slice of rows (plus the empty slot)... filters and sorts apply before paging
+     */
+    public void testPaging() throws Exception
+    {
+        HashMap<String,String> labels = new HashMap<String,String>();
+        labels.put("mqtt_key_7","Seventh Label");
+        ConfigTableRenderer renderer = new ConfigTableRenderer(labels);
+        renderer.setEmptySlot("New_Key_Goes_Here","New_Value_Goes_Here");
+        List<String> keys = new ArrayList<String>();
+        PropertiesSnapshot props = createProperties(35,keys);
+
+        // page 2 of 10 rows: rows 10-19 in file order, the empty slot and the navigation
+        String page = renderPage(renderer,props,keys,"page=2");
+        assertTrue( page.contains("id=\"mqtt_key_10\"") );
+        assertTrue( page.contains("id=\"mqtt_key_19\"") );
+        assertFalse( page.contains("id=\"mqtt_key_9\"") );
+        assertFalse( page.contains("id=\"mqtt_key_20\"") );
+        assertTrue( page.contains("New_Value_Goes_Here") );
+        assertTrue( page.contains("Rows 11 - 20 of 35") );
+        assertTrue( page.contains("<a href=\"?page=3\">") );
+
+        // past the end: the last page
+        String last = renderPage(renderer,props,keys,"page=99");
+        assertTrue( last.contains("Page 4 of 4") );
+        assertTrue( last.contains("id=\"mqtt_key_34\"") );
+
+        // filters match keys, labels and values (case insensitive)... and carry over into the links
+        String filtered = renderPage(renderer,props,keys,"filter=KEY_3");
+        assertTrue( filtered.contains("Rows 1 - 6 of 6") );
+        assertTrue( filtered.contains("id=\"mqtt_key_30\"") );
+        assertFalse( filtered.contains("id=\"mqtt_key_4\"") );
+        assertTrue( renderPage(renderer,props,keys,"filter=seventh").contains("Rows 1 - 1 of 1") );
+        assertTrue( renderPage(renderer,props,keys,"filter=value_12_").contains("id=\"mqtt_key_12\"") );
+        assertTrue( renderPage(renderer,props,keys,"filter=nothing+here").contains("No matching rows") );
+        assertTrue( renderPage(renderer,props,keys,"filter=key&page=2").contains("<a href=\"?page=3&amp;filter=key\">") );
+
+        // sorts: descending keys (case insensitive)
+        String sorted = renderPage(renderer,props,keys,"sort=-key");
+        assertTrue( sorted.indexOf("id=\"mqtt_key_9\"") < sorted.indexOf("id=\"mqtt_key_8\"") );
+        assertFalse( sorted.contains("id=\"mqtt_key_0\"") );
+        assertTrue( sorted.contains("<option value=\"-key\" selected>") );
+
+        // a single page of an unsorted/unfiltered table needs no navigation
+        assertFalse( renderPage(renderer,props,keys,"page_size=50").contains("<form") );
+    }
+
+    /**
+     * A page renders only its rows: the same output from 1k or 100k properties (RenderBenchmark measures its time)
+     */
+    public void testPagedRenderSize() throws Exception
+    {
+        ConfigTableRenderer renderer = new ConfigTableRenderer(new HashMap<String,String>());
+        TableView view = TableView.fromQuery("page=10",PAGE_SIZE,PAGE_SIZE);
+        int[] lengths = new int[2];
+        int[] counts = { 1000, 100000 };
+        for(int c=0;c<counts.length;++c) {
+            List<String> keys = new ArrayList<String>();
+            PropertiesSnapshot props = createProperties(counts[c],keys);
+            StringBuilder out = new StringBuilder();
+            ConfigTableRenderer.Page page = renderer.renderPage(out,props,keys,"service.properties",true,true,view);
+            assertEquals( PAGE_SIZE, page.getRows() );
+            assertTrue( out.indexOf("id=\"mqtt_key_900\"") >= 0 && out.indexOf("id=\"mqtt_key_999\"") >= 0 );
+            assertTrue( out.indexOf("id=\"mqtt_key_899\"") < 0 && out.indexOf("id=\"mqtt_key_1000\"") < 0 );
+            lengths[c] = out.length();
+        }
+
+        // 100x the properties: about the same output (only the navigation's row counts differ)
+        assertTrue( Math.abs(lengths[1] - lengths[0]) < lengths[0] / 10 );
+    }
+}
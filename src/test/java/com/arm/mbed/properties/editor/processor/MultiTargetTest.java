@@ -0,0 +1,450 @@
+package com.arm.mbed.properties.editor.processor;
+
+import com.arm.mbed.properties.editor.core.ChangeJournal;
+import com.arm.mbed.properties.editor.core.StoreCache;
+import com.arm.mbed.properties.editor.core.Utils;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the multi-target mode
+ */
+public class MultiTargetTest
+    extends TestCase
+{
+    private static final String DIR = "/target/multi-target-test/";
+    private static final String AUTHORIZATION = "Basic " + Utils.base64_encode("admin:admin".getBytes(StandardCharsets.UTF_8));
+    private static final int TARGETS = 40;
+    private static final int KEYS = 60;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MultiTargetTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MultiTargetTest.class );
+    }
+
+    // write a file
+    private static void write(File file,String contents) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(),contents.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // a service properties file
+    private static String service(int target)
+    {
+        StringBuilder props = new StringBuilder("# service " + target + "\n");
+        for(int i = 0; i < KEYS; ++i) {
+            props.append("key_").append(i).append("=value ").append(target).append('.').append(i).append(" for a typical bridge setting\n");
+        }
+        return props.toString();
+    }
+
+    // set up the main configuration (based on the shipped one), its service file and the targets... returns the main configuration file
+    private static String setUp(String name,int targets,int budget_kb) throws IOException
+    {
+        File dir = new File(Utils.getWorkingDirectory() + DIR + name);
+        File[] old = new File(dir,"targets").listFiles();
+        if (old != null) {
+            for(File file : old) {
+                file.delete();
+            }
+        }
+        old = dir.listFiles();
+        if (old != null) {
+            for(File file : old) {
+                if (file.getName().endsWith(ChangeJournal.SUFFIX) || file.getName().endsWith(ChangeJournal.CHECKPOINT_SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+        StringBuilder main = new StringBuilder();
+        for(String line : new String(Files.readAllBytes(new File(Utils.getWorkingDirectory() + "/conf/properties-editor.properties").toPath()),StandardCharsets.ISO_8859_1).split("\n")) {
+            if (line.matches("^(config_files_root|properties_file|targets_dir|target_cache_budget_kb|save_debounce_ms|admin_password|password_hash_iterations|static_resources)=.*") == false) {
+                main.append(line).append('\n');
+            }
+        }
+        main.append("config_files_root=" + DIR + name + "/\nproperties_file=service.properties\ntargets_dir=targets\ntarget_cache_budget_kb=" + budget_kb + "\n");
+        main.append("save_debounce_ms=0\nadmin_password=admin\npassword_hash_iterations=1000\nstatic_resources=true\n");
+        write(new File(dir,"properties-editor.properties"),main.toString());
+        write(new File(dir,"service.properties"),service(0));
+        write(new File(dir,"schema.properties"),"key_3.type=int\nkey_3.min=1\n");
+        for(int i = 1; i <= targets; ++i) {
+            write(new File(dir,"targets/t" + i + ".properties"),"properties_file=" + dir.getAbsolutePath() + "/service-" + i + ".properties\ntitle=Target " + i + "\n");
+            write(new File(dir,"service-" + i + ".properties"),service(i));
+        }
+        return new File(dir,"properties-editor.properties").getAbsolutePath();
+    }
+
+    // serve the editor (and its targets) like Main does, over HTTP
+    private static HttpServer serve(PropertiesEditorProcessor processor) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1",0),0);
+        server.createContext("/",processor).setAuthenticator(processor);
+        server.createContext(StaticResources.CONTEXT,processor.getStaticResources()).setAuthenticator(processor);
+        server.createContext(PropertiesApiHandler.CONTEXT,new PropertiesApiHandler(processor)).setAuthenticator(processor);
+        server.createContext(KeySearchHandler.CONTEXT,new KeySearchHandler(processor)).setAuthenticator(processor);
+        server.createContext(MetricsHandler.CONTEXT,new MetricsHandler(processor)).setAuthenticator(processor);
+        server.createContext(HistoryHandler.CONTEXT,new HistoryHandler(processor)).setAuthenticator(processor);
+        server.createContext(RevisionsHandler.CONTEXT,new RevisionsHandler(processor)).setAuthenticator(processor);
+        for(PropertiesEditorProcessor target : processor.getTargets().values()) {
+            server.createContext(target.getContextPath(),target).setAuthenticator(target);
+            server.createContext(target.getContextPath() + PropertiesApiHandler.CONTEXT.substring(1),new PropertiesApiHandler(target)).setAuthenticator(target);
+            server.createContext(target.getContextPath() + KeySearchHandler.CONTEXT.substring(1),new KeySearchHandler(target)).setAuthenticator(target);
+            server.createContext(target.getContextPath() + HistoryHandler.CONTEXT.substring(1),new HistoryHandler(target)).setAuthenticator(target);
+            server.createContext(target.getContextPath() + RevisionsHandler.CONTEXT.substring(1),new RevisionsHandler(target)).setAuthenticator(target);
+        }
+        server.start();
+        return server;
+    }
+
+    // request a page/resource... returns the body
+    private static String get(HttpServer server,String path,String method,String body) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + path).openConnection();
+        connection.setRequestProperty("Authorization",AUTHORIZATION);
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals( path, 200, connection.getResponseCode() );
+        InputStream in = connection.getInputStream();
+        String response = new String(readAll(in),StandardCharsets.UTF_8);
+        in.close();
+        return response;
+    }
+
+    // read everything
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length = 0;
+        while ((length = in.read(buffer)) > 0) {
+            bytes.write(buffer,0,length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Each target serves its own file under its own context (page and API)... with the main editor's other settings
+     */
+    public void testTargets() throws Exception
+    {
+        PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
+        processor.loadProperties(setUp("targets",3,1024));
+        Map<String,PropertiesEditorProcessor> targets = processor.loadTargets();
+        assertEquals( 3, targets.size() );
+        HttpServer server = serve(processor);
+        try {
+            String main_page = get(server,"/","GET",null);
+            String page = get(server,"/targets/t2/","GET",null);
+            assertTrue( page.contains("Target 2") );
+            assertTrue( page.contains("value 2.7 for a typical bridge setting") );
+            assertFalse( page.contains("value 0.7 for a typical bridge setting") );
+            assertTrue( main_page.contains("value 0.7 for a typical bridge setting") );
+
+            // the API of a target edits its own file only
+            assertEquals( "{\"key_7\":\"value 2.7 for a typical bridge setting\"}", get(server,"/targets/t2/api/properties/key_7","GET",null) );
+            get(server,"/targets/t2/api/properties","POST","{\"key_7\":\"edited\"}");
+            assertEquals( "edited", targets.get("t2").getPropertiesSnapshot().get("key_7") );
+            assertEquals( "value 0.7 for a typical bridge setting", processor.getPropertiesSnapshot().get("key_7") );
+            assertEquals( "value 3.7 for a typical bridge setting", targets.get("t3").getPropertiesSnapshot().get("key_7") );
+
+            // values failing the schema are rejected as a whole (422) with what is wrong with each
+            HttpURLConnection rejected = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/targets/t2/api/properties").openConnection();
+            rejected.setRequestProperty("Authorization",AUTHORIZATION);
+            rejected.setRequestMethod("POST");
+            rejected.setDoOutput(true);
+            rejected.getOutputStream().write("{\"key_3\":\"0\",\"key_7\":\"not applied\"}".getBytes(StandardCharsets.UTF_8));
+            assertEquals( 422, rejected.getResponseCode() );
+            assertEquals( "{\"error\":\"Validation failed: 1 invalid value\",\"errors\":{\"key_3\":\"must be at least 1\"}}", new String(readAll(rejected.getErrorStream()),StandardCharsets.UTF_8) );
+            assertEquals( "edited", targets.get("t2").getPropertiesSnapshot().get("key_7") );
+            assertSame( processor.getSchema(), targets.get("t2").getSchema() );
+
+            // autocomplete follows the edits made through the API (merged into the index, not rebuilt)
+            String keys = get(server,"/targets/t2/api/keys?prefix=KEY_5&limit=2","GET",null);
+            assertEquals( "{\"key_5\":\"key_5\",\"key_50\":\"key_50\"}", keys );
+            get(server,"/targets/t2/api/properties","POST","{\"zeta_added\":\"new\",\"key_59\":null}");
+            assertEquals( "{\"zeta_added\":\"zeta_added\"}", get(server,"/targets/t2/api/keys?prefix=zeta","GET",null) );
+            assertEquals( "{}", get(server,"/targets/t2/api/keys?prefix=key_59","GET",null) );
+            assertEquals( 1, targets.get("t2").getKeyIndex().getRebuilds() );
+
+            // the targets record into the main editor's metrics
+            String metrics = get(server,"/metrics","GET",null);
+            assertTrue( metrics, metrics.contains("# TYPE properties_editor_phase_seconds summary\n") );
+            assertTrue( metrics, metrics.contains("properties_editor_phase_seconds_count{phase=\"handle\"} 2\n") );
+            assertTrue( metrics, metrics.contains("properties_editor_phase_seconds_count{phase=\"save\"} 3\n") );
+            assertTrue( metrics, metrics.contains("properties_editor_phase_seconds_count{phase=\"api\"} 4\n") );
+            assertTrue( metrics, metrics.contains("properties_editor_phase_seconds{phase=\"render\",quantile=\"0.99\"} ") );
+            assertTrue( metrics, metrics.contains("properties_editor_key_index_builds_total{kind=\"incremental\"} 1\n") );
+            assertTrue( metrics, metrics.contains("properties_editor_response_bytes_total{handler=\"page\"} " + (main_page.length() + page.length()) + "\n") );
+            assertTrue( metrics, metrics.contains("properties_editor_response_bytes_total{handler=\"keys\"} " + (keys.length() + "{\"zeta_added\":\"zeta_added\"}".length() + "{}".length()) + "\n") );
+
+            // the empty slot key is never set (nor added to config_fields)
+            HttpURLConnection reserved = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/targets/t2/api/properties/New_Key_Goes_Here").openConnection();
+            reserved.setRequestProperty("Authorization",AUTHORIZATION);
+            reserved.setRequestMethod("PUT");
+            reserved.setDoOutput(true);
+            reserved.getOutputStream().write("{\"value\":\"new\"}".getBytes(StandardCharsets.UTF_8));
+            assertEquals( 422, reserved.getResponseCode() );
+            assertTrue( new String(readAll(reserved.getErrorStream()),StandardCharsets.UTF_8).contains("\"New_Key_Goes_Here\":\"reserved") );
+            assertFalse( targets.get("t2").getPropertiesSnapshot().containsKey("New_Key_Goes_Here") );
+
+            // authentication and page rendering do not wait for the processor's lock (held by edits while they journal and save)
+            synchronized (processor) {
+                for(String path : new String[] { "/metrics", "/" }) {
+                    HttpURLConnection request = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + path).openConnection();
+                    request.setRequestProperty("Authorization",AUTHORIZATION);
+                    request.setReadTimeout(10000);
+                    assertEquals( path, 200, request.getResponseCode() );
+                    readAll(request.getInputStream());
+                }
+            }
+
+            // identical CSS/JS is published once for all targets
+            int resources = processor.getStaticResources().size();
+            get(server,"/targets/t1/","GET",null);
+            get(server,"/targets/t3/","GET",null);
+            assertEquals( resources, processor.getStaticResources().size() );
+        }
+        finally {
+            server.stop(0);
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * Revisions: listed, compared and reverted to (one click undo) through the API, the revert saved to the file
+     */
+    public void testRevisions() throws Exception
+    {
+        String config = setUp("revisions",1,1024);
+        File service = new File(new File(config).getParentFile(),"service.properties");
+        PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
+        processor.loadProperties(config);
+        processor.loadTargets();
+        HttpServer server = serve(processor);
+        try {
+            long loaded = processor.getPropertiesSnapshot().getVersion();
+            get(server,"/api/properties","POST","{\"key_1\":\"bad value\",\"aws_iot_secret_access_key\":\"secret\"}");
+            get(server,"/api/properties","POST","{\"key_2\":\"worse value\",\"key_3\":null}");
+            long current = processor.getPropertiesSnapshot().getVersion();
+            assertEquals( loaded + 2, current );
+
+            String list = get(server,"/api/revisions","GET",null);
+            assertTrue( list, list.startsWith("{\"current\":" + current + ",\"complete_since\":null,\"revisions\":[{\"version\":" + current + ",\"time\":\"") );
+            assertTrue( list, list.contains(",\"size\":" + (KEYS) + ",\"changed\":2},{\"version\":" + (current - 1)) );
+            assertTrue( list, list.endsWith(",\"size\":" + KEYS + ",\"changed\":null}]}") );
+
+            String diff = get(server,"/api/revisions/diff?from=" + loaded,"GET",null);
+            assertEquals( "{\"from\":" + loaded + ",\"to\":" + current + ",\"changes\":{\"aws_iot_secret_access_key\":\"********\",\"key_1\":\"bad value\",\"key_2\":\"worse value\",\"key_3\":null}}", diff );
+
+            // undo the last change, then revert to the loaded properties
+            String undo = get(server,"/api/revisions/revert","POST",null);
+            assertEquals( "{\"version\":" + (current + 1) + ",\"reverted_to\":" + (current - 1) + ",\"changes\":{\"key_2\":\"value 0.2 for a typical bridge setting\",\"key_3\":\"value 0.3 for a typical bridge setting\"}}", undo );
+            assertEquals( "bad value", processor.getPropertiesSnapshot().get("key_1") );
+            String revert = get(server,"/api/revisions/revert?version=" + loaded,"POST",null);
+            assertEquals( "value 0.1 for a typical bridge setting", processor.getPropertiesSnapshot().get("key_1") );
+            assertNull( processor.getPropertiesSnapshot().get("aws_iot_secret_access_key") );
+            processor.flush();
+            String saved = new String(Files.readAllBytes(service.toPath()),StandardCharsets.ISO_8859_1);
+            assertTrue( saved.contains("key_1=value 0.1 ") && saved.contains("key_3=value 0.3 ") && saved.contains("aws_iot_secret_access_key") == false );
+            assertTrue( processor.searchKeys("aws_iot_secret",10).isEmpty() );
+
+            // ...through a target too, and a revision not kept
+            get(server,"/targets/t1/api/properties","POST","{\"key_1\":\"target edit\"}");
+            String target_revert = get(server,"/targets/t1/api/revisions/revert","POST",null);
+            assertEquals( "value 1.1 for a typical bridge setting", processor.getTargets().get("t1").getPropertiesSnapshot().get("key_1") );
+            HttpURLConnection missing = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/revisions/diff?from=12345").openConnection();
+            missing.setRequestProperty("Authorization",AUTHORIZATION);
+            assertEquals( 404, missing.getResponseCode() );
+            String not_kept = new String(readAll(missing.getErrorStream()),StandardCharsets.UTF_8);
+            HttpURLConnection get_revert = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/revisions/revert").openConnection();
+            get_revert.setRequestProperty("Authorization",AUTHORIZATION);
+            assertEquals( 405, get_revert.getResponseCode() );
+            String not_allowed = new String(readAll(get_revert.getErrorStream()),StandardCharsets.UTF_8);
+
+            // an unloaded (evicted) target drops its revisions... and says since when they are complete
+            processor.getTargets().get("t1").unload();
+            String reloaded = get(server,"/targets/t1/api/revisions","GET",null);
+            assertTrue( reloaded, reloaded.matches("\\{\"current\":[0-9]+,\"complete_since\":\"[0-9T:.Z-]+\",\"revisions\":\\[\\{[^{]*\\}\\]\\}") );
+
+            // every response (errors too) is counted
+            long revisions_bytes = list.length() + diff.length() + undo.length() + revert.length() + target_revert.length() + not_kept.length() + not_allowed.length() + reloaded.length();
+            assertEquals( revisions_bytes, processor.getResponseBytes("revisions").get() );
+        }
+        finally {
+            server.stop(0);
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * Edits are journaled (with the user): an edit not yet saved when the editor stopped is re-applied by the next one
+     */
+    public void testJournal() throws Exception
+    {
+        // saves held back: the edit is only in the journal when the first editor "crashes"
+        String config = setUp("journal",1,1024);
+        File config_file = new File(config);
+        write(config_file,new String(Files.readAllBytes(config_file.toPath()),StandardCharsets.ISO_8859_1)
+                .replace("save_debounce_ms=0\n","save_debounce_ms=600000\nsave_max_delay_ms=600000\n"));
+        File service = new File(config_file.getParentFile(),"service.properties");
+
+        PropertiesEditorProcessor crashed = new PropertiesEditorProcessor(false);
+        crashed.loadProperties(config);
+        crashed.loadTargets();
+        PropertiesEditorProcessor recovered = null;
+        HttpServer server = serve(crashed);
+        try {
+            get(server,"/api/properties","POST","{\"key_7\":\"journaled\",\"key_8\":null,\"mds_api_token\":\"token\"}");
+            assertTrue( new String(Files.readAllBytes(service.toPath()),StandardCharsets.ISO_8859_1).contains("key_7=value 0.7 ") );
+            String history = get(server,"/api/history?key=key_7","GET",null);
+            assertTrue( history, history.startsWith("{\"key\":\"key_7\",\"file\":\"properties\",\"complete_since\":null,\"changes\":[{\"seq\":") );
+            assertTrue( history, history.endsWith(",\"user\":\"admin\",\"value\":\"journaled\"}]}") );
+            long history_bytes = history.length();
+            String editor_history = get(server,"/api/history?key=admin_password&file=editor","GET",null);
+            assertTrue( editor_history.endsWith("\"changes\":[]}") );
+            history = get(server,"/api/history?key=mds_api_token","GET",null);
+            assertTrue( history, history.endsWith(",\"user\":\"admin\",\"value\":\"********\"}]}") );
+            String target_history = get(server,"/targets/t1/api/history?key=key_7","GET",null);
+            assertTrue( target_history.endsWith("\"changes\":[]}") );
+            history_bytes += editor_history.length() + history.length() + target_history.length();
+            assertEquals( history_bytes, crashed.getResponseBytes("history").get() );
+            crashed.getJournal().close();
+
+            // the next editor re-applies the edit (and saves it)
+            recovered = new PropertiesEditorProcessor(false);
+            recovered.loadProperties(config);
+            assertEquals( "journaled", recovered.getPropertiesSnapshot().get("key_7") );
+            assertNull( recovered.getPropertiesSnapshot().get("key_8") );
+            List<ChangeJournal.Change> changes = recovered.getHistory(ChangeJournal.PROPERTIES,"key_7",0,10);
+            assertEquals( 1, changes.size() );
+            assertEquals( "admin", changes.get(0).getUser() );
+            recovered.shutdown();
+            assertTrue( new String(Files.readAllBytes(service.toPath()),StandardCharsets.ISO_8859_1).contains("key_7=journaled") );
+
+            // ...and nothing is re-applied once saved
+            recovered = new PropertiesEditorProcessor(false);
+            recovered.loadProperties(config);
+            assertEquals( "journaled", recovered.getPropertiesSnapshot().get("key_7") );
+            assertEquals( KEYS, recovered.getPropertiesSnapshot().size() );
+        }
+        finally {
+            server.stop(0);
+            if (recovered != null) {
+                recovered.shutdown();
+            }
+            crashed.shutdown();
+        }
+    }
+
+    /**
+     * Loaded stores stay within the budget: the least recently used are written out, unloaded and reloaded on their next use
+     */
+    public void testEviction() throws Exception
+    {
+        PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
+        processor.loadProperties(setUp("eviction",10,40));
+        Map<String,PropertiesEditorProcessor> targets = processor.loadTargets();
+        StoreCache cache = processor.getStoreCache();
+        try {
+            targets.get("t1").updateProperties(Collections.singletonMap("key_1","edited before eviction"));
+            for(PropertiesEditorProcessor target : targets.values()) {
+                assertEquals( KEYS, target.getPropertiesSnapshot().size() );
+                assertTrue( cache.getLoadedBytes() <= cache.getBudgetBytes() || cache.size() == 1 );
+            }
+            assertTrue( cache.getEvictions() > 0 );
+            assertTrue( cache.size() < targets.size() );
+
+            // t1 was evicted: reloaded with the edit that was pending/written before
+            assertEquals( "edited before eviction", targets.get("t1").getPropertiesSnapshot().get("key_1") );
+            assertEquals( KEYS, targets.get("t1").getPropertiesSnapshot().size() );
+        }
+        finally {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * Configurations from before schema_file keep their labels and checks: schema.properties is used by default
+     */
+    public void testDefaultSchemaFile() throws Exception
+    {
+        File config = new File(setUp("default-schema",1,1024));
+        write(config,new String(Files.readAllBytes(config.toPath()),StandardCharsets.ISO_8859_1).replaceAll("(?m)^schema_file=.*\n",""));
+        PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
+        processor.loadProperties(config.getAbsolutePath());
+        Map<String,PropertiesEditorProcessor> targets = processor.loadTargets();
+        try {
+            assertNull( processor.getProperty("schema_file") );
+            assertEquals( "must be at least 1", processor.getSchema().validate("key_3","0") );
+            assertSame( processor.getSchema(), targets.get("t1").getSchema() );
+        }
+        finally {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * Every target's properties count against the store cache while loaded and are released on unload (the cost of
+     * reloading an evicted target is measured by TargetBenchmark)
+     */
+    public void testLoadedBytes() throws Exception
+    {
+        String config = setUp("memory",TARGETS,64 * 1024);
+        PropertiesEditorProcessor processor = new PropertiesEditorProcessor(false);
+        processor.loadProperties(config);
+        processor.loadTargets();
+        HttpServer server = serve(processor);
+        try {
+            Map<String,PropertiesEditorProcessor> targets = processor.getTargets();
+            for(int i = 1; i <= TARGETS; ++i) {
+                assertTrue( get(server,"/targets/t" + i + "/","GET",null).contains("value " + i + ".7 for a typical bridge setting") );
+            }
+            assertEquals( TARGETS, processor.getStoreCache().size() );
+            long loaded = processor.getStoreCache().getLoadedBytes();
+            long per_target = targets.get("t1").getLoadedBytes();
+            assertTrue( per_target > KEYS * 40 );
+            assertTrue( loaded >= TARGETS * per_target / 2 );
+            for(PropertiesEditorProcessor target : targets.values()) {
+                target.unload();
+                assertEquals( 0, target.getLoadedBytes() );
+            }
+            assertEquals( 0, processor.getStoreCache().size() );
+            assertEquals( 0, processor.getStoreCache().getLoadedBytes() );
+        }
+        finally {
+            server.stop(0);
+            processor.shutdown();
+        }
+    }
+}
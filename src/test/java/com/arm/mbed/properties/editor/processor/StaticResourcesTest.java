@@ -0,0 +1,88 @@
+package com.arm.mbed.properties.editor.processor;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the static resources
+ */
+public class StaticResourcesTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public StaticResourcesTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( StaticResourcesTest.class );
+    }
+
+    // a request (with optional Accept-Encoding and If-None-Match)... the connection, response received
+    private static HttpURLConnection request(HttpServer server,String path,String accept_encoding,String if_none_match) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)new URL("http://127.0.0.1:" + server.getAddress().getPort() + path).openConnection();
+        connection.setRequestProperty("Accept-Encoding",(accept_encoding != null) ? accept_encoding : "identity");
+        if (if_none_match != null) {
+            connection.setRequestProperty("If-None-Match",if_none_match);
+        }
+        connection.getResponseCode();
+        return connection;
+    }
+
+    /**
+     * Each coding has its own strong ETag (a cached gzip body never validates an identity request)... and the
+     * resources are cacheable by the browser only
+     */
+    public void testValidatorsPerCoding() throws Exception
+    {
+        StaticResources resources = new StaticResources();
+        StringBuilder css = new StringBuilder();
+        for(int i = 0; i < 200; ++i) {
+            css.append(".row").append(i).append(" { padding: 2px; }\n");
+        }
+        String path = resources.publish("editor.css","text/css; charset=UTF-8",css.toString().getBytes(StandardCharsets.UTF_8));
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1",0),0);
+        server.createContext(StaticResources.CONTEXT,resources);
+        server.start();
+        try {
+            HttpURLConnection identity = request(server,path,null,null);
+            HttpURLConnection gzip = request(server,path,"gzip",null);
+            assertEquals( 200, identity.getResponseCode() );
+            assertNull( identity.getHeaderField("Content-Encoding") );
+            assertEquals( "gzip", gzip.getHeaderField("Content-Encoding") );
+            String etag = identity.getHeaderField("ETag");
+            String gzip_etag = gzip.getHeaderField("ETag");
+            assertTrue( etag, etag.matches("\"[0-9a-f]{16}\"") );
+            assertEquals( etag.substring(0,etag.length() - 1) + "-gzip\"", gzip_etag );
+            assertEquals( "private, max-age=31536000, immutable", identity.getHeaderField("Cache-Control") );
+            assertEquals( "Accept-Encoding", gzip.getHeaderField("Vary") );
+
+            // revalidation: only the coding's own ETag (or a weak/listed form of it) is not modified
+            assertEquals( 304, request(server,path,null,etag).getResponseCode() );
+            assertEquals( 304, request(server,path,"gzip","\"other\", W/" + gzip_etag).getResponseCode() );
+            assertEquals( 200, request(server,path,null,gzip_etag).getResponseCode() );
+            assertEquals( 200, request(server,path,"gzip",etag).getResponseCode() );
+            assertEquals( 404, request(server,StaticResources.CONTEXT + "missing.css",null,null).getResponseCode() );
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+}
@@ -1,4 +1,3 @@
-<script src="http://ajax.googleapis.com/ajax/libs/jquery/1.11.1/jquery.min.js"></script>
 <script type="text/javascript" >
 function trim(value) {
         return value.replace(/^\s+|\s+$/gm,'');
@@ -22,7 +21,68 @@ function fixScrolling(elem) {
      window.location = url;
  }
 
+ // the table view (page, page_size, sort, filter) of the current URL... never its actions (service=restart, updated_key=...)
+ function viewSearch() {
+     var kept = [];
+     var params = window.location.search.substring(1).split("&");
+     for (var i = 0; i < params.length; i++) {
+          var name = params[i].split("=")[0];
+          if (name == "page" || name == "page_size" || name == "sort" || name == "filter") {
+               kept.push(params[i]);
+          }
+     }
+     return (kept.length > 0) ? "?" + kept.join("&") : "";
+ }
+
+ // why a save request failed: the schema errors (422), the API's error message or the HTTP status
+ function saveError(request) {
+     if (request.status == 0) {
+          return "The editor could not be reached";
+     }
+     var response = null;
+     try {
+          response = JSON.parse(request.responseText);
+     }
+     catch (e) {
+          return "HTTP " + request.status + " " + request.statusText;
+     }
+     if (response.errors) {
+          var messages = [];
+          for (var name in response.errors) {
+               messages.push(name + ": " + response.errors[name]);
+          }
+          return messages.join("\n");
+     }
+     return (response.error) ? response.error : "HTTP " + request.status + " " + request.statusText;
+ }
+
  function saveData(key,file) {
+     var key_elem = document.getElementById(key+"-key");
+     if (key_elem.isContentEditable) {
+          // service properties (editable keys): POST the change as JSON... no URL length limits
+          var batch = {};
+          var new_key = key_elem.textContent;
+          var value = trim(document.getElementById(key).textContent.replace(/\u00a0/g," "));
+          if (key == "__EMPTY_SLOT_KEY__" && (trim(new_key).length == 0 || new_key.toLowerCase().indexOf(key.toLowerCase()) >= 0)) {
+               // the empty slot itself is never stored
+               alert("Not saved\nYou have to edit KEY and VALUE to add a new value to the properties list");
+               return;
+          }
+          batch[(key == "__EMPTY_SLOT_KEY__") ? new_key : key] = value;
+          var request = new XMLHttpRequest();
+          request.open("POST", window.location.protocol + "//" + window.location.host + window.location.pathname.replace(/[^\/]*$/, "") + "api/properties");
+          request.setRequestHeader("Content-Type","application/json; charset=UTF-8");
+          request.onloadend = function() {
+               if (request.status < 200 || request.status >= 300) {
+                    // not saved: say why and keep the edit on screen
+                    alert("Not saved\n" + saveError(request));
+                    return;
+               }
+               window.location = window.location.protocol + "//" + window.location.host + window.location.pathname + viewSearch();
+          };
+          request.send(JSON.stringify(batch));
+          return;
+     }
       var Base64={_keyStr:"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/=",encode:function(e){var t="";var n,r,i,s,o,u,a;var f=0;e=Base64._utf8_encode(e);while(f<e.length){n=e.charCodeAt(f++);r=e.charCodeAt(f++);i=e.charCodeAt(f++);s=n>>2;o=(n&3)<<4|r>>4;u=(r&15)<<2|i>>6;a=i&63;if(isNaN(r)){u=a=64}else if(isNaN(i)){a=64}t=t+this._keyStr.charAt(s)+this._keyStr.charAt(o)+this._keyStr.charAt(u)+this._keyStr.charAt(a)}return t},decode:function(e){var t="";var n,r,i;var s,o,u,a;var f=0;e=e.replace(/[^A-Za-z0-9\+\/\=]/g,"");while(f<e.length){s=this._keyStr.indexOf(e.charAt(f++));o=this._keyStr.indexOf(e.charAt(f++));u=this._keyStr.indexOf(e.charAt(f++));a=this._keyStr.indexOf(e.charAt(f++));n=s<<2|o>>4;r=(o&15)<<4|u>>2;i=(u&3)<<6|a;t=t+String.fromCharCode(n);if(u!=64){t=t+String.fromCharCode(r)}if(a!=64){t=t+String.fromCharCode(i)}}t=Base64._utf8_decode(t);return t},_utf8_encode:function(e){e=e.replace(/\r\n/g,"\n");var t="";for(var n=0;n<e.length;n++){var r=e.charCodeAt(n);if(r<128){t+=String.fromCharCode(r)}else if(r>127&&r<2048){t+=String.fromCharCode(r>>6|192);t+=String.fromCharCode(r&63|128)}else{t+=String.fromCharCode(r>>12|224);t+=String.fromCharCode(r>>6&63|128);t+=String.fromCharCode(r&63|128)}}return t},_utf8_decode:function(e){var t="";var n=0;var r=c1=c2=0;while(n<e.length){r=e.charCodeAt(n);if(r<128){t+=String.fromCharCode(r);n++}else if(r>191&&r<224){c2=e.charCodeAt(n+1);t+=String.fromCharCode((r&31)<<6|c2&63);n+=2}else{c2=e.charCodeAt(n+1);c3=e.charCodeAt(n+2);t+=String.fromCharCode((r&15)<<12|(c2&63)<<6|c3&63);n+=3}}return t}}
      var raw_value = document.getElementById(key).textContent;
      var new_value = encodeURIComponent(Base64.encode(raw_value));